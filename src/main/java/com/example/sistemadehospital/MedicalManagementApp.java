@@ -1,20 +1,54 @@
 package com.example.sistemadehospital;
 
+import dao.CursorCita;
+import dao.CursorPaciente;
+import dao.Pagina;
+import dto.AgendaMedico;
+import dto.ConflictoCita;
+import dto.HistorialEnVersion;
+import dto.HorarioDisponible;
+import dto.MedicoResumen;
+import dto.PacienteResumen;
+import dto.ProximaCita;
+import dto.ResultadoLote;
+import dto.ResultadoRegistro;
+import dto.VersionHistorialResumen;
+import importacion.*;
 import model.*;
+import service.CacheProximasCitas;
+import service.CierreProgramadoCitas;
 import service.MedicalService;
+import service.ModoLote;
+import service.PoliticaCierre;
+import service.Recurrencia;
+import service.SincronizacionNodos;
+import util.BusCambios;
+import util.CacheSegundoNivel;
+import util.EstadisticasPool;
 import util.JPAUtil;
+import util.LecturasReplica;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.Period;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 public class MedicalManagementApp {
 
+    private static final int TAMANIO_PAGINA = 20;
+    private static final int CITAS_POR_MEDICO = 5;
+    private static final int HORARIOS_SUGERIDOS = 10;
+
     private Scanner scanner = new Scanner(System.in);
     private MedicalService medicalService = new MedicalService();
+    private CierreProgramadoCitas cierreCitas = new CierreProgramadoCitas(PoliticaCierre.desdePropiedades());
     private DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
     private DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
 
@@ -25,6 +59,18 @@ public class MedicalManagementApp {
 
     public void iniciar() {
         System.out.println("=== SISTEMA DE GESTIÓN MÉDICA ===");
+        medicalService.prepararIndiceDisponibilidad();
+        medicalService.reanudarEliminacionesPendientes();
+        // -Dhospital.bus.activo=true: avisa y recibe los cambios de otras instancias sobre la misma base
+        SincronizacionNodos.getInstancia().iniciar();
+        // -Dhospital.cierre.activo=false lo desactiva; sin -Dhospital.cierre.estado no corre solo
+        if (!"false".equalsIgnoreCase(System.getProperty("hospital.cierre.activo"))) {
+            if (cierreCitas.getPolitica().configurada()) {
+                cierreCitas.iniciar(CierreProgramadoCitas.INTERVALO);
+            } else {
+                System.out.println("Cierre programado de citas inactivo: falta -Dhospital.cierre.estado (ATENDIDA o CANCELADA)");
+            }
+        }
 
         boolean continuar = true;
         while (continuar) {
@@ -40,11 +86,16 @@ public class MedicalManagementApp {
                 case 6 -> mostrarMenuConsultas();
                 case 7 -> mostrarMenuEliminacion();
                 case 8 -> crearDatosSemilla();
+                case 9 -> importarDatosMasivos();
+                case 10 -> agendarPrimerHorarioDisponible();
+                case 11 -> agendarSerieDeCitas();
+                case 12 -> mostrarMenuOperacionesMasivas();
                 case 0 -> continuar = false;
                 default -> System.out.println("Opción inválida");
             }
         }
 
+        cierreCitas.detener();
         JPAUtil.closeEntityManagerFactory();
         System.out.println("¡Gracias por usar el sistema!");
     }
@@ -61,6 +112,10 @@ public class MedicalManagementApp {
         System.out.println("6. Consultas");
         System.out.println("7. Eliminar");
         System.out.println("8. Crear datos de semilla");
+        System.out.println("9. Importar datos desde archivo (CSV/JSON)");
+        System.out.println("10. Agendar en el primer horario libre de una especialidad");
+        System.out.println("11. Agendar serie de citas de seguimiento");
+        System.out.println("12. Operaciones masivas sobre citas");
         System.out.println("0. Salir");
         System.out.println("=".repeat(50));
     }
@@ -86,9 +141,15 @@ public class MedicalManagementApp {
             String email = scanner.nextLine();
 
             Paciente paciente = new Paciente(nombre, dpi, fechaNacimiento, telefono, email);
-            medicalService.registrarPaciente(paciente);
+            ResultadoRegistro resultado = medicalService.registrarPaciente(paciente);
 
-            System.out.println("Paciente registrado exitosamente");
+            if (resultado.creado()) {
+                System.out.println("Paciente registrado exitosamente con ID " + resultado.id());
+            } else if (resultado.enEliminacion()) {
+                System.out.println("El DPI " + dpi + " es de un paciente que se está eliminando, intente de nuevo en unos momentos");
+            } else {
+                System.out.println("Ya existe un paciente con DPI " + dpi + " (ID " + resultado.id() + ")");
+            }
 
         } catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
@@ -153,9 +214,15 @@ public class MedicalManagementApp {
             String email = scanner.nextLine();
 
             Medico medico = new Medico(nombre, colegiado, especialidades[opcionEsp - 1], email);
-            medicalService.registrarMedico(medico);
+            ResultadoRegistro resultado = medicalService.registrarMedico(medico);
 
-            System.out.println("Médico registrado exitosamente");
+            if (resultado.creado()) {
+                System.out.println("Médico registrado exitosamente con ID " + resultado.id());
+            } else if (resultado.enEliminacion()) {
+                System.out.println("El colegiado " + colegiado + " es de un médico que se está eliminando, intente de nuevo en unos momentos");
+            } else {
+                System.out.println("Ya existe un médico con colegiado " + colegiado + " (ID " + resultado.id() + ")");
+            }
 
         } catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
@@ -179,7 +246,69 @@ public class MedicalManagementApp {
             System.out.print("Motivo de la consulta: ");
             String motivo = scanner.nextLine();
 
-            medicalService.agendarCita(pacienteId, medicoId, fechaHora, motivo);
+            // Las citas del paciente se pueden leer de la réplica: que ya incluyan la recién agendada
+            List<Cita> citas = LecturasReplica.conEscriturasPropias(() -> {
+                medicalService.agendarCita(pacienteId, medicoId, fechaHora, motivo);
+                return medicalService.listarCitasPaciente(pacienteId);
+            });
+            System.out.println("Cita agendada exitosamente. Citas del paciente:");
+            for (Cita c : citas) {
+                System.out.printf("%d | %s | Dr. %s | %s\n",
+                        c.getId(),
+                        c.getFechaHora().format(dateTimeFormatter),
+                        c.getMedico().getNombre(),
+                        c.getEstado().getDescripcion());
+            }
+
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void agendarPrimerHorarioDisponible() {
+        System.out.println("\n--- PRIMER HORARIO LIBRE POR ESPECIALIDAD ---");
+
+        try {
+            Especialidad[] especialidades = Especialidad.values();
+            for (int i = 0; i < especialidades.length; i++) {
+                System.out.println((i + 1) + ". " + especialidades[i]);
+            }
+            int opcionEsp = leerEntero("Seleccione especialidad (1-" + especialidades.length + "): ");
+            if (opcionEsp < 1 || opcionEsp > especialidades.length) {
+                System.out.println("Opción inválida");
+                return;
+            }
+
+            System.out.print("Buscar desde (dd/MM/yyyy HH:mm): ");
+            LocalDateTime desde = leerFechaHora();
+            System.out.print("Buscar hasta (dd/MM/yyyy HH:mm): ");
+            LocalDateTime hasta = leerFechaHora();
+            int minutos = leerEntero("Duración en minutos: ");
+
+            List<HorarioDisponible> horarios = medicalService.buscarHorariosDisponibles(
+                    especialidades[opcionEsp - 1], desde, hasta, Duration.ofMinutes(minutos), HORARIOS_SUGERIDOS);
+            if (horarios.isEmpty()) {
+                System.out.println("No hay horarios libres en ese rango");
+                return;
+            }
+            for (int i = 0; i < horarios.size(); i++) {
+                HorarioDisponible h = horarios.get(i);
+                System.out.printf("%d. %s - %s | Dr(a). %s (ID %d)%n", i + 1,
+                        h.inicio().format(dateTimeFormatter), h.fin().toLocalTime(), h.medicoNombre(), h.medicoId());
+            }
+
+            int opcion = leerEntero("Horario a agendar (0 para salir): ");
+            if (opcion < 1 || opcion > horarios.size()) {
+                return;
+            }
+            HorarioDisponible elegido = horarios.get(opcion - 1);
+
+            listarPacientes();
+            long pacienteId = leerEntero("ID del paciente: ");
+            System.out.print("Motivo de la consulta: ");
+            String motivo = scanner.nextLine();
+
+            medicalService.agendarCita(pacienteId, elegido.medicoId(), elegido.inicio(), motivo);
             System.out.println("Cita agendada exitosamente");
 
         } catch (Exception e) {
@@ -187,6 +316,54 @@ public class MedicalManagementApp {
         }
     }
 
+    private void agendarSerieDeCitas() {
+        System.out.println("\n--- AGENDAR SERIE DE CITAS ---");
+
+        try {
+            listarPacientes();
+            long pacienteId = leerEntero("ID del paciente: ");
+
+            listarMedicos();
+            long medicoId = leerEntero("ID del médico: ");
+
+            System.out.print("Primera cita (dd/MM/yyyy HH:mm): ");
+            LocalDateTime inicio = leerFechaHora();
+
+            System.out.println("1. Semanal");
+            System.out.println("2. Cada dos semanas");
+            System.out.println("3. Mensual");
+            Period periodo = switch (leerEntero("Frecuencia (1-3): ")) {
+                case 1 -> Period.ofWeeks(1);
+                case 2 -> Period.ofWeeks(2);
+                case 3 -> Period.ofMonths(1);
+                default -> null;
+            };
+            if (periodo == null) {
+                System.out.println("Opción inválida");
+                return;
+            }
+            int repeticiones = leerEntero("Número de citas: ");
+
+            System.out.print("Motivo de la consulta: ");
+            String motivo = scanner.nextLine();
+
+            ModoLote modo = confirmar("¿Agendar solo si todas las fechas están libres? (s/n): ")
+                    ? ModoLote.TODO_O_NADA : ModoLote.MEJOR_ESFUERZO;
+
+            ResultadoLote resultado = medicalService.agendarSerie(pacienteId, medicoId,
+                    new Recurrencia(inicio, periodo, repeticiones, null), motivo, modo);
+
+            System.out.println("Citas agendadas: " + resultado.citaIds().size());
+            for (ConflictoCita c : resultado.conflictos()) {
+                System.out.println("  No agendada " + c.solicitud().fechaHora().format(dateTimeFormatter) +
+                        " -> " + c.razon());
+            }
+
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
     private void cambiarEstadoCita() {
         System.out.println("\n--- CAMBIAR ESTADO DE CITA ---");
 
@@ -206,8 +383,9 @@ public class MedicalManagementApp {
                 return;
             }
 
-            medicalService.cambiarEstadoCita(citaId, estados[opcionEstado - 1]);
-            System.out.println("Estado de cita actualizado exitosamente");
+            EstadoCita anterior = medicalService.cambiarEstadoCita(citaId, estados[opcionEstado - 1]);
+            System.out.println("Estado de cita actualizado exitosamente (" + anterior.getDescripcion() +
+                    " -> " + estados[opcionEstado - 1].getDescripcion() + ")");
 
         } catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
@@ -220,73 +398,273 @@ public class MedicalManagementApp {
         System.out.println("2. Listar médicos con próximas citas");
         System.out.println("3. Buscar citas por rango de fechas");
         System.out.println("4. Ver historial médico de un paciente");
+        System.out.println("5. Estado del pool de conexiones");
+        System.out.println("6. Versiones anteriores de un historial médico");
+        System.out.println("7. Buscar paciente (nombre, DPI o teléfono)");
+        System.out.println("8. Estadísticas de las cachés (médicos, agendas y avisos entre instancias)");
 
-        int opcion = leerEntero("Seleccione una opción (1-4): ");
+        int opcion = leerEntero("Seleccione una opción (1-8): ");
 
         switch (opcion) {
             case 1 -> listarPacientesConCitas();
             case 2 -> listarMedicosConProximasCitas();
             case 3 -> buscarCitasPorRangoFechas();
             case 4 -> verHistorialMedico();
+            case 5 -> mostrarEstadoPool();
+            case 6 -> verVersionesHistorial();
+            case 7 -> buscarPacientes();
+            case 8 -> mostrarEstadisticasCache();
+            default -> System.out.println("Opción inválida");
+        }
+    }
+
+    private void mostrarEstadoPool() {
+        EstadisticasPool e = JPAUtil.getEstadisticasPool();
+        System.out.println("\n--- POOL DE CONEXIONES (" + JPAUtil.getEntorno() + ") ---");
+        System.out.printf("Activas: %d | Inactivas: %d | Hilos esperando: %d | Total: %d de %d%n",
+                e.activas(), e.inactivas(), e.esperando(), e.total(), e.maximo());
+        System.out.println("Timeouts de adquisición: " + e.timeouts());
+        imprimirDistribucion("Espera para obtener conexión", e.adquisicion());
+        imprimirDistribucion("Tiempo con la conexión prestada", e.uso());
+
+        JPAUtil.getEstadisticasPoolReplica().ifPresent(r -> {
+            System.out.println("\n--- POOL DE LA RÉPLICA DE LECTURA ---");
+            System.out.printf("Activas: %d | Inactivas: %d | Hilos esperando: %d | Total: %d de %d%n",
+                    r.activas(), r.inactivas(), r.esperando(), r.total(), r.maximo());
+            imprimirDistribucion("Espera para obtener conexión", r.adquisicion());
+            LecturasReplica.Estadisticas l = LecturasReplica.estadisticas();
+            System.out.printf("%nLecturas en la réplica %d | esperas por escrituras propias %d | " +
+                            "al primario por atraso %d | por fallo de la réplica %d | en pausa tras un fallo %d%n",
+                    l.lecturasReplica(), l.esperas(), l.desviadas(), l.fallosReplica(), l.omitidas());
+        });
+    }
+
+    private void mostrarEstadisticasCache() {
+        List<CacheSegundoNivel.EstadisticasRegion> regiones = CacheSegundoNivel.estadisticas();
+        System.out.println("\n--- CACHÉ DE MÉDICOS ---");
+        if (regiones.isEmpty()) {
+            System.out.println("La caché de segundo nivel está desactivada (-Dhospital.cache.activa=false)");
+        }
+        for (CacheSegundoNivel.EstadisticasRegion r : regiones) {
+            System.out.printf("%s: %d entradas (máx. %d, TTL %d s) | aciertos %d | fallos %d (%.1f%% aciertos) | " +
+                            "guardados %d | desalojos %d | expiraciones %d%n",
+                    r.region(), r.entradas(), r.maxEntradas(), r.ttl().toSeconds(), r.aciertos(), r.fallos(),
+                    r.tasaAciertos() * 100, r.guardados(), r.desalojos(), r.expiraciones());
+        }
+
+        System.out.println("\n--- CACHÉ DE PRÓXIMAS CITAS ---");
+        if (!CacheProximasCitas.ACTIVA) {
+            System.out.println("Desactivada (-Dhospital.agenda.cache.activa=false)");
+        } else {
+            CacheProximasCitas.Estadisticas e = CacheProximasCitas.getInstancia().estadisticas();
+            System.out.printf("Médicos en caché: %d | aciertos %d | fallos %d (%.1f%% aciertos) | consultas a la base %d%n",
+                    e.medicos(), e.aciertos(), e.fallos(), e.tasaAciertos() * 100, e.consultas());
+            System.out.printf("Invalidaciones %d | citas quitadas %d | citas vencidas %d | cargas descartadas %d%n",
+                    e.invalidaciones(), e.parches(), e.citasVencidas(), e.cargasDescartadas());
+        }
+
+        System.out.println("\n--- AVISOS ENTRE INSTANCIAS ---");
+        if (!BusCambios.iniciado()) {
+            System.out.println("Desactivados (-Dhospital.bus.activo=true los activa)");
+            return;
+        }
+        BusCambios.Estadisticas b = BusCambios.estadisticas();
+        SincronizacionNodos.Estadisticas s = SincronizacionNodos.getInstancia().estadisticas();
+        System.out.printf("Nodo %s, canal %s, %s | reconexiones %d | errores %d%n", BusCambios.NODO, BusCambios.CANAL,
+                b.conectado() ? "escuchando" : "desconectado", b.reconexiones(), b.errores());
+        System.out.printf("Cambios publicados %d en %d avisos | recibidos %d en %d avisos%n",
+                b.publicados(), b.avisosEnviados(), b.cambiosRecibidos(), b.avisosRecibidos());
+        System.out.printf("Agendas descartadas %d | descartes completos %d%n",
+                s.invalidacionesMedico(), s.invalidacionesTotales());
+    }
+
+    private void imprimirDistribucion(String titulo, EstadisticasPool.Distribucion d) {
+        System.out.printf("%n%s: %d muestras, promedio %.2f ms, p50 <= %s, p95 <= %s, p99 <= %s%n",
+                titulo, d.muestras(), d.promedioMs(),
+                limiteMs(d.percentilMs(50)), limiteMs(d.percentilMs(95)), limiteMs(d.percentilMs(99)));
+        long anterior = 0;
+        for (int i = 0; i < d.conteos().length; i++) {
+            long limite = d.limitesMicros()[i];
+            if (d.conteos()[i] > 0) {
+                String rango = limite == Long.MAX_VALUE
+                        ? String.format("> %.1f ms", anterior / 1000.0)
+                        : String.format("<= %.1f ms", limite / 1000.0);
+                System.out.printf("  %-12s %d%n", rango, d.conteos()[i]);
+            }
+            anterior = limite;
+        }
+    }
+
+    private String limiteMs(double ms) {
+        return ms < 0 ? "(fuera de escala)" : String.format("%.1f ms", ms);
+    }
+
+    private void mostrarMenuOperacionesMasivas() {
+        System.out.println("\n--- OPERACIONES MASIVAS SOBRE CITAS ---");
+        System.out.println("1. Cancelar la agenda de un médico en un rango (ausencia)");
+        System.out.println("2. Cerrar citas programadas que ya pasaron");
+        System.out.println("3. Ejecutar ahora el cierre programado");
+        System.out.println("4. Estado del cierre programado");
+
+        int opcion = leerEntero("Seleccione una opción (1-4): ");
+
+        switch (opcion) {
+            case 1 -> cancelarAgendaMedico();
+            case 2 -> cerrarCitasPasadas();
+            case 3 -> ejecutarCierreProgramado();
+            case 4 -> mostrarEstadoCierre();
             default -> System.out.println("Opción inválida");
         }
     }
 
+    private void cancelarAgendaMedico() {
+        try {
+            listarMedicos();
+            long medicoId = leerEntero("ID del médico: ");
+
+            System.out.print("Desde (dd/MM/yyyy HH:mm): ");
+            LocalDateTime inicio = leerFechaHora();
+            System.out.print("Hasta, sin incluir (dd/MM/yyyy HH:mm): ");
+            LocalDateTime fin = leerFechaHora();
+
+            if (!confirmar("¿Cancelar todas las citas programadas del médico en ese rango? (s/n): ")) {
+                return;
+            }
+            int canceladas = medicalService.cancelarAgendaMedico(medicoId, inicio, fin);
+            System.out.println("Citas canceladas: " + canceladas);
+
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void cerrarCitasPasadas() {
+        try {
+            EstadoCita nuevoEstado = confirmar("¿Marcarlas como atendidas? (s = atendidas, n = canceladas): ")
+                    ? EstadoCita.ATENDIDA : EstadoCita.CANCELADA;
+            int cerradas = medicalService.cerrarCitasPasadas(nuevoEstado);
+            System.out.println("Citas cerradas como " + nuevoEstado.getDescripcion() + ": " + cerradas);
+
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void ejecutarCierreProgramado() {
+        PoliticaCierre politica = cierreCitas.getPolitica();
+        if (!politica.configurada()) {
+            politica = politica.conEstado(confirmar("¿Marcarlas como atendidas? (s = atendidas, n = canceladas): ")
+                    ? EstadoCita.ATENDIDA : EstadoCita.CANCELADA);
+        }
+        System.out.printf("Política: citas programadas de hace más de %d min -> %s, lotes de %d%n",
+                politica.margen().toMinutes(), politica.nuevoEstado().getDescripcion(), politica.tamanioLote());
+        if (confirmar("¿Solo simular (contar sin modificar)? (s/n): ")) {
+            politica = politica.comoSimulacion();
+        }
+
+        CierreProgramadoCitas.Ejecucion e = cierreCitas.ejecutar(politica);
+        if (e == null) {
+            System.out.println("Ya hay un cierre en curso");
+        } else if (e.error() != null) {
+            System.out.println("Error: " + e.error() + " (" + e.filas() + " citas cerradas antes del error)");
+        } else {
+            System.out.printf("%s %d citas en %d lotes (%d ms)%n", e.simulacion() ? "Se cerrarían" : "Se cerraron",
+                    e.filas(), e.lotes(), e.duracion().toMillis());
+        }
+    }
+
+    private void mostrarEstadoCierre() {
+        CierreProgramadoCitas.Estadisticas e = cierreCitas.estadisticas();
+        System.out.println("\n--- CIERRE PROGRAMADO DE CITAS ---");
+        System.out.printf("Ejecuciones: %d | Citas cerradas: %d | Lotes: %d | Errores: %d%n",
+                e.ejecuciones(), e.filasCerradas(), e.lotes(), e.errores());
+        if (e.ultima() != null) {
+            CierreProgramadoCitas.Ejecucion u = e.ultima();
+            System.out.printf("Última: %s%s, %d citas, %d lotes, %d ms%s%n", u.inicio().format(dateTimeFormatter),
+                    u.simulacion() ? " (simulación)" : "", u.filas(), u.lotes(), u.duracion().toMillis(),
+                    u.error() != null ? ", error: " + u.error() : "");
+        }
+    }
+
     private void mostrarMenuEliminacion() {
         System.out.println("\n--- MENÚ DE ELIMINACIÓN ---");
         System.out.println("1. Eliminar cita");
         System.out.println("2. Eliminar paciente");
+        System.out.println("3. Eliminar médico");
 
-        int opcion = leerEntero("Seleccione una opción (1-2): ");
+        int opcion = leerEntero("Seleccione una opción (1-3): ");
 
         switch (opcion) {
             case 1 -> eliminarCita();
             case 2 -> eliminarPaciente();
+            case 3 -> eliminarMedico();
             default -> System.out.println("Opción inválida");
         }
     }
 
     private void listarPacientes() {
         System.out.println("\n--- PACIENTES ---");
-        List<Paciente> pacientes = medicalService.listarPacientes();
+        List<PacienteResumen> pacientes = medicalService.listarResumenPacientes();
 
         if (pacientes.isEmpty()) {
             System.out.println("No hay pacientes registrados");
         } else {
-            for (Paciente p : pacientes) {
+            for (PacienteResumen p : pacientes) {
                 System.out.printf("ID: %d | %s | DPI: %s | Tel: %s\n",
-                        p.getId(), p.getNombre(), p.getDpi(), p.getTelefono());
+                        p.id(), p.nombre(), p.dpi(), p.telefono());
             }
         }
     }
 
+    private void buscarPacientes() {
+        try {
+            System.out.print("Nombre, DPI o teléfono (completo o en parte): ");
+            String texto = scanner.nextLine();
+
+            List<PacienteResumen> pacientes = medicalService.buscarPacientes(texto, 20);
+            System.out.println("\n--- RESULTADOS ---");
+            if (pacientes.isEmpty()) {
+                System.out.println("No se encontraron pacientes");
+            } else {
+                for (PacienteResumen p : pacientes) {
+                    System.out.printf("ID: %d | %s | DPI: %s | Tel: %s\n",
+                            p.id(), p.nombre(), p.dpi(), p.telefono());
+                }
+            }
+
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
     private void listarMedicos() {
         System.out.println("\n--- MÉDICOS ---");
-        List<Medico> medicos = medicalService.listarMedicos();
+        List<MedicoResumen> medicos = medicalService.listarResumenMedicos();
 
         if (medicos.isEmpty()) {
             System.out.println("No hay médicos registrados");
         } else {
-            for (Medico m : medicos) {
+            for (MedicoResumen m : medicos) {
                 System.out.printf("ID: %d | Dr. %s | %s | Colegiado: %s\n",
-                        m.getId(), m.getNombre(), m.getEspecialidad(), m.getColegiado());
+                        m.id(), m.nombre(), m.especialidad(), m.colegiado());
             }
         }
     }
 
     private void listarCitas() {
         System.out.println("\n--- CITAS ---");
-        // Aquí necesitarías un método en MedicalService para obtener todas las citas
-        // Por ahora usaremos el DAO directamente
         try {
-            List<Cita> citas = medicalService.listarTodasLasCitas();
+            Pagina<Cita, CursorCita> pagina = medicalService.listarTodasLasCitas(null, TAMANIO_PAGINA);
 
-            if (citas.isEmpty()) {
+            if (pagina.isEmpty()) {
                 System.out.println("No hay citas registradas");
-            } else {
-                System.out.println("ID | Fecha/Hora | Paciente | Médico | Estado");
-                System.out.println("-".repeat(70));
-                for (Cita c : citas) {
+                return;
+            }
+
+            System.out.println("ID | Fecha/Hora | Paciente | Médico | Estado");
+            System.out.println("-".repeat(70));
+            while (true) {
+                for (Cita c : pagina.elementos()) {
                     System.out.printf("%d | %s | %s | Dr. %s | %s\n",
                             c.getId(),
                             c.getFechaHora().format(dateTimeFormatter),
@@ -294,6 +672,10 @@ public class MedicalManagementApp {
                             c.getMedico().getNombre(),
                             c.getEstado().getDescripcion());
                 }
+                if (!pagina.hayMas() || !confirmar("¿Mostrar más citas? (s/n): ")) {
+                    break;
+                }
+                pagina = medicalService.listarTodasLasCitas(pagina.siguiente(), TAMANIO_PAGINA);
             }
         } catch (Exception e) {
             System.out.println("Error al listar citas: " + e.getMessage());
@@ -304,32 +686,38 @@ public class MedicalManagementApp {
         System.out.println("\n--- PACIENTES CON SUS CITAS ---");
 
         try {
-            List<Paciente> pacientes = medicalService.listarPacientesConCitas();
+            Pagina<Paciente, CursorPaciente> pagina = medicalService.listarPacientesConCitas(null, TAMANIO_PAGINA);
 
-            if (pacientes.isEmpty()) {
+            if (pagina.isEmpty()) {
                 System.out.println("No hay pacientes registrados");
                 return;
             }
 
-            for (Paciente p : pacientes) {
-                System.out.println("\n" + "=".repeat(60));
-                System.out.println("PACIENTE: " + p.getNombre());
-                System.out.println("DPI: " + p.getDpi());
-                System.out.println("Teléfono: " + p.getTelefono());
-
-                List<Cita> citas = medicalService.listarCitasPaciente(p.getId());
-                if (citas.isEmpty()) {
-                    System.out.println("Sin citas registradas");
-                } else {
-                    System.out.println("CITAS:");
-                    for (Cita c : citas) {
-                        System.out.printf("  • %s - Dr. %s (%s) - %s\n",
-                                c.getFechaHora().format(dateTimeFormatter),
-                                c.getMedico().getNombre(),
-                                c.getMedico().getEspecialidad(),
-                                c.getEstado().getDescripcion());
+            while (true) {
+                for (Paciente p : pagina.elementos()) {
+                    System.out.println("\n" + "=".repeat(60));
+                    System.out.println("PACIENTE: " + p.getNombre());
+                    System.out.println("DPI: " + p.getDpi());
+                    System.out.println("Teléfono: " + p.getTelefono());
+
+                    List<Cita> citas = p.getCitas();
+                    if (citas.isEmpty()) {
+                        System.out.println("Sin citas registradas");
+                    } else {
+                        System.out.println("CITAS:");
+                        for (Cita c : citas) {
+                            System.out.printf("  • %s - Dr. %s (%s) - %s\n",
+                                    c.getFechaHora().format(dateTimeFormatter),
+                                    c.getMedico().getNombre(),
+                                    c.getMedico().getEspecialidad(),
+                                    c.getEstado().getDescripcion());
+                        }
                     }
                 }
+                if (!pagina.hayMas() || !confirmar("\n¿Mostrar más pacientes? (s/n): ")) {
+                    break;
+                }
+                pagina = medicalService.listarPacientesConCitas(pagina.siguiente(), TAMANIO_PAGINA);
             }
         } catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
@@ -338,25 +726,27 @@ public class MedicalManagementApp {
 
     private void listarMedicosConProximasCitas() {
         System.out.println("\n--- MÉDICOS CON PRÓXIMAS CITAS ---");
+        System.out.println("Solo citas programadas: las atendidas y las canceladas no aparecen");
 
         try {
-            List<Medico> medicos = medicalService.listarMedicos();
+            List<AgendaMedico> agendas = medicalService.listarAgendaProximasCitas(CITAS_POR_MEDICO);
 
-            for (Medico m : medicos) {
-                List<Cita> proximasCitas = medicalService.listarProximasCitasMedico(m.getId());
+            if (agendas.isEmpty()) {
+                System.out.println("No hay citas programadas próximas");
+                return;
+            }
 
-                if (!proximasCitas.isEmpty()) {
-                    System.out.println("\n" + "=".repeat(60));
-                    System.out.println("MÉDICO: Dr. " + m.getNombre());
-                    System.out.println("Especialidad: " + m.getEspecialidad());
-                    System.out.println("PRÓXIMAS CITAS:");
-
-                    for (Cita c : proximasCitas) {
-                        System.out.printf("  • %s - %s - %s\n",
-                                c.getFechaHora().format(dateTimeFormatter),
-                                c.getPaciente().getNombre(),
-                                c.getMotivo());
-                    }
+            for (AgendaMedico agenda : agendas) {
+                System.out.println("\n" + "=".repeat(60));
+                System.out.println("MÉDICO: Dr. " + agenda.medicoNombre());
+                System.out.println("Especialidad: " + agenda.especialidad());
+                System.out.println("PRÓXIMAS CITAS PROGRAMADAS:");
+
+                for (ProximaCita c : agenda.citas()) {
+                    System.out.printf("  • %s - %s - %s\n",
+                            c.fechaHora().format(dateTimeFormatter),
+                            c.pacienteNombre(),
+                            c.motivo());
                 }
             }
         } catch (Exception e) {
@@ -381,15 +771,15 @@ public class MedicalManagementApp {
                 return;
             }
 
-            List<Cita> citas = medicalService.buscarCitasPorRangoFecha(fechaInicio, fechaFin);
-
-            if (citas.isEmpty()) {
-                System.out.println("No se encontraron citas en el rango especificado");
-            } else {
-                System.out.println("\nCITAS ENCONTRADAS (" + citas.size() + "):");
-                System.out.println("=".repeat(80));
-
-                for (Cita c : citas) {
+            long encontradas = 0;
+            try (Stream<Cita> citas = medicalService.recorrerCitasPorRangoFecha(fechaInicio, fechaFin)) {
+                Iterator<Cita> it = citas.iterator();
+                while (it.hasNext()) {
+                    Cita c = it.next();
+                    if (encontradas++ == 0) {
+                        System.out.println("\nCITAS ENCONTRADAS:");
+                        System.out.println("=".repeat(80));
+                    }
                     System.out.printf("ID: %d | %s | %s -> Dr. %s | %s\n",
                             c.getId(),
                             c.getFechaHora().format(dateTimeFormatter),
@@ -398,6 +788,12 @@ public class MedicalManagementApp {
                             c.getEstado().getDescripcion());
                 }
             }
+
+            if (encontradas == 0) {
+                System.out.println("No se encontraron citas en el rango especificado");
+            } else {
+                System.out.println("Total: " + encontradas + " citas");
+            }
         } catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
         }
@@ -410,7 +806,7 @@ public class MedicalManagementApp {
             listarPacientes();
             long pacienteId = leerEntero("ID del paciente: ");
 
-            Optional<HistorialMedico> historialOpt = medicalService.obtenerHistorialMedico(pacienteId);
+            Optional<HistorialMedico> historialOpt = medicalService.obtenerHistorialMedicoConTextos(pacienteId);
 
             if (historialOpt.isEmpty()) {
                 System.out.println("No se encontró historial médico para ese paciente");
@@ -435,6 +831,42 @@ public class MedicalManagementApp {
         }
     }
 
+    private void verVersionesHistorial() {
+        System.out.println("\n--- VERSIONES DEL HISTORIAL MÉDICO ---");
+
+        try {
+            listarPacientes();
+            long pacienteId = leerEntero("ID del paciente: ");
+
+            List<VersionHistorialResumen> versiones = medicalService.listarVersionesHistorial(pacienteId);
+            if (versiones.isEmpty()) {
+                System.out.println("El historial de ese paciente no tiene versiones registradas");
+                return;
+            }
+            for (VersionHistorialResumen v : versiones) {
+                System.out.printf("Versión %d | %s | %s | %d caracteres guardados%n", v.numero(),
+                        v.fecha().format(dateTimeFormatter), v.snapshot() ? "completa" : "cambios", v.caracteres());
+            }
+
+            int numero = leerEntero("Versión a ver (-1 para salir): ");
+            if (numero < 0) {
+                return;
+            }
+            Optional<HistorialEnVersion> version = medicalService.obtenerHistorialEnVersion(pacienteId, numero);
+            if (version.isEmpty()) {
+                System.out.println("Versión no encontrada");
+                return;
+            }
+            HistorialEnVersion h = version.get();
+            System.out.println("\nVersión " + h.numero() + " (" + h.fecha().format(dateTimeFormatter) + ")");
+            System.out.println("Alergias: " + (h.alergias() != null ? h.alergias() : "Ninguna"));
+            System.out.println("Antecedentes: " + (h.antecedentes() != null ? h.antecedentes() : "Ninguno"));
+            System.out.println("Observaciones: " + (h.observaciones() != null ? h.observaciones() : "Ninguna"));
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
     private void eliminarCita() {
         System.out.println("\n--- ELIMINAR CITA ---");
 
@@ -470,7 +902,29 @@ public class MedicalManagementApp {
 
             if (confirmacion.startsWith("s")) {
                 medicalService.eliminarPaciente(pacienteId);
-                System.out.println("Paciente eliminado exitosamente");
+                System.out.println("Paciente eliminado exitosamente" +
+                        (MedicalService.ELIMINACION_DIFERIDA ? " (sus citas se borran en segundo plano)" : ""));
+            } else {
+                System.out.println("Eliminación cancelada");
+            }
+
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void eliminarMedico() {
+        System.out.println("\n--- ELIMINAR MÉDICO ---");
+        System.out.println("IMPORTANTE: Se eliminarán también todas las citas del médico");
+
+        try {
+            listarMedicos();
+            long medicoId = leerEntero("ID del médico a eliminar: ");
+
+            if (confirmar("¿Está seguro de eliminar este médico y todas sus citas? (s/n): ")) {
+                medicalService.eliminarMedico(medicoId);
+                System.out.println("Médico eliminado exitosamente" +
+                        (MedicalService.ELIMINACION_DIFERIDA ? " (sus citas se borran en segundo plano)" : ""));
             } else {
                 System.out.println("Eliminación cancelada");
             }
@@ -497,8 +951,10 @@ public class MedicalManagementApp {
             Paciente p2 = new Paciente("María Elena García", "9876543210987",
                     LocalDate.of(1990, 8, 20), "87654321", "maria@email.com");
 
-            medicalService.registrarPaciente(p1);
-            medicalService.registrarPaciente(p2);
+            if (!medicalService.registrarPaciente(p1).creado() || !medicalService.registrarPaciente(p2).creado()) {
+                System.out.println("Los datos de prueba ya existen");
+                return;
+            }
 
             // Crear médicos de prueba
             Medico m1 = new Medico("Dr. Roberto Hernández", "12345",
@@ -541,6 +997,55 @@ public class MedicalManagementApp {
         }
     }
 
+    private void importarDatosMasivos() {
+        System.out.println("\n--- IMPORTAR DATOS DESDE ARCHIVO ---");
+        System.out.println("1. Pacientes (nombre, dpi, fechaNacimiento, telefono, email)");
+        System.out.println("2. Médicos (nombre, colegiado, especialidad, email)");
+        System.out.println("3. Citas (fechaHora, motivo, estado, dpiPaciente, colegiadoMedico)");
+
+        int opcion = leerEntero("Seleccione qué importar (1-3): ");
+        if (opcion < 1 || opcion > 3) {
+            System.out.println("Opción inválida");
+            return;
+        }
+        TipoImportacion tipo = TipoImportacion.values()[opcion - 1];
+
+        System.out.print("Ruta del archivo (.csv o .json): ");
+        Path archivo = Path.of(scanner.nextLine().trim());
+
+        boolean conCopy = tipo == TipoImportacion.CITAS
+                && confirmar("¿Usar carga rápida con COPY (omite citas en horarios ya ocupados)? (s/n): ");
+
+        try {
+            ImportacionListener listener = new ImportacionListener() {
+                @Override
+                public void chunkCompletado(ProgresoImportacion progreso) {
+                    System.out.printf("Chunk %d: %d leídas, %d importadas, %d rechazadas (%d s)\n",
+                            progreso.chunk(), progreso.leidas(), progreso.importadas(),
+                            progreso.rechazadas(), progreso.transcurrido().toSeconds());
+                }
+
+                @Override
+                public void filaRechazada(FilaRechazada fila) {
+                    System.out.println("  Rechazada -> " + fila);
+                }
+            };
+            ResultadoImportacion resultado = conCopy
+                    ? new CargadorCopyCitas().cargar(archivo, listener)
+                    : new ImportadorMasivo().importar(archivo, tipo, listener);
+
+            System.out.printf("Importación terminada: %d importadas, %d rechazadas de %d (%.0f filas/s)\n",
+                    resultado.importadas(), resultado.rechazadas(), resultado.leidas(), resultado.filasPorSegundo());
+        } catch (Exception e) {
+            System.out.println("Error al importar: " + e.getMessage());
+        }
+    }
+
+    private boolean confirmar(String mensaje) {
+        System.out.print(mensaje);
+        return scanner.nextLine().trim().toLowerCase().startsWith("s");
+    }
+
     private int leerEntero(String mensaje) {
         while (true) {
             try {
@@ -1,13 +1,21 @@
 package dao;
 
-import util.JPAUtil;
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.EntityTransaction;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import util.UnidadDeTrabajo;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+// Cada método usa el EntityManager de la UnidadDeTrabajo activa, o uno propio si no hay ninguna.
+// Los listados sin unidad activa van a la réplica de lectura si hay una configurada
 public abstract class BaseDAO<T, ID> {
 
+    // Igual a hibernate.jdbc.batch_size: cada flush envía un lote completo
+    public static final int TAMANIO_LOTE = 50;
+
     protected Class<T> entityClass;
 
     public BaseDAO(Class<T> entityClass) {
@@ -15,71 +23,70 @@ public abstract class BaseDAO<T, ID> {
     }
 
     public void save(T entity) {
-        EntityManager em = JPAUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
         try {
-            tx.begin();
-            em.persist(entity);
-            tx.commit();
-        } catch (Exception e) {
-            if (tx.isActive()) tx.rollback();
+            UnidadDeTrabajo.escribir(em -> em.persist(entity));
+        } catch (RuntimeException e) {
             throw new RuntimeException("Error al guardar entidad", e);
-        } finally {
-            em.close();
+        }
+    }
+
+    // Guarda todas las entidades en una transacción, en lotes JDBC de TAMANIO_LOTE
+    public void saveAll(Collection<? extends T> entities) {
+        // Dentro de una unidad de trabajo no se limpia el contexto: otras entidades de la unidad siguen en uso
+        boolean limpiarContexto = !UnidadDeTrabajo.activa();
+        try {
+            UnidadDeTrabajo.escribir(em -> {
+                int i = 0;
+                for (T entity : entities) {
+                    em.persist(entity);
+                    if (++i % TAMANIO_LOTE == 0) {
+                        em.flush();
+                        if (limpiarContexto) em.clear();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error al guardar entidades", e);
         }
     }
 
     public void update(T entity) {
-        EntityManager em = JPAUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
         try {
-            tx.begin();
-            em.merge(entity);
-            tx.commit();
-        } catch (Exception e) {
-            if (tx.isActive()) tx.rollback();
+            UnidadDeTrabajo.escribir(em -> em.merge(entity));
+        } catch (RuntimeException e) {
             throw new RuntimeException("Error al actualizar entidad", e);
-        } finally {
-            em.close();
         }
     }
 
     public void delete(ID id) {
-        EntityManager em = JPAUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
         try {
-            tx.begin();
-            T entity = em.find(entityClass, id);
-            if (entity != null) {
-                em.remove(entity);
-            }
-            tx.commit();
-        } catch (Exception e) {
-            if (tx.isActive()) tx.rollback();
+            UnidadDeTrabajo.escribir(em -> {
+                T entity = em.find(entityClass, id);
+                if (entity != null) {
+                    em.remove(entity);
+                }
+            });
+        } catch (RuntimeException e) {
             throw new RuntimeException("Error al eliminar entidad", e);
-        } finally {
-            em.close();
         }
     }
 
     public Optional<T> findById(ID id) {
-        EntityManager em = JPAUtil.getEntityManager();
-        try {
-            T entity = em.find(entityClass, id);
-            return Optional.ofNullable(entity);
-        } finally {
-            em.close();
-        }
+        return UnidadDeTrabajo.leer(em -> Optional.ofNullable(em.find(entityClass, id)));
+    }
+
+    // Id del generador de la entidad para inserts nativos; con pooled-lo casi nunca va a la base
+    @SuppressWarnings("unchecked")
+    protected ID generarId(EntityManager em, T entity) {
+        SharedSessionContractImplementor sesion = em.unwrap(SharedSessionContractImplementor.class);
+        BeforeExecutionGenerator generador = (BeforeExecutionGenerator) sesion
+                .getEntityPersister(entityClass.getName(), entity).getGenerator();
+        return (ID) generador.generate(sesion, entity, null, EventType.INSERT);
     }
 
     public List<T> findAll() {
-        EntityManager em = JPAUtil.getEntityManager();
-        try {
-            return em.createQuery("FROM " + entityClass.getSimpleName(), entityClass)
-                    .getResultList();
-        } finally {
-            em.close();
-        }
+        return UnidadDeTrabajo.leerDeReplica(em ->
+                em.createQuery("FROM " + entityClass.getSimpleName(), entityClass)
+                        .getResultList());
     }
 }
-
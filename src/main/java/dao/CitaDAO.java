@@ -1,135 +1,334 @@
 package dao;
 
-import jakarta.persistence.EntityManager;
+import dto.OcupacionCita;
+import dto.ProximaCita;
+import jakarta.persistence.TypedQuery;
 import model.Cita;
-import util.JPAUtil;
+import model.Especialidad;
+import model.EstadoCita;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+import util.BusCambios;
+import util.UnidadDeTrabajo;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public class CitaDAO {
+public class CitaDAO extends BaseDAO<Cita, Long> {
 
-    public void save(Cita cita) {
-        EntityManager em = JPAUtil.getEntityManager();
-        try {
-            em.getTransaction().begin();
-            em.persist(cita);
-            em.getTransaction().commit();
-        } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
+    // Filas que el driver trae por viaje al recorrer un cursor (configurable con -Dhospital.citas.fetchSize)
+    public static final int TAMANIO_FETCH = Integer.getInteger("hospital.citas.fetchSize", 500);
+
+    private static final String SELECT_CITAS =
+            "SELECT c FROM Cita c " +
+                    "JOIN FETCH c.paciente " +
+                    "JOIN FETCH c.medico ";
+
+    public CitaDAO() {
+        super(Cita.class);
+    }
+
+    @Override
+    public List<Cita> findAll() {
+        return UnidadDeTrabajo.leerDeReplica(em ->
+                em.createQuery(SELECT_CITAS + "ORDER BY c.fechaHora", Cita.class)
+                        .getResultList());
+    }
+
+    public Optional<Long> findMedicoId(Long citaId) {
+        return UnidadDeTrabajo.leer(em ->
+                em.createQuery("SELECT c.medico.id FROM Cita c WHERE c.id = :id", Long.class)
+                        .setParameter("id", citaId)
+                        .getResultStream()
+                        .findFirst());
+    }
+
+    public List<Cita> findByPacienteId(Long pacienteId) {
+        return UnidadDeTrabajo.leerDeReplica(em ->
+                em.createQuery(
+                                "SELECT c FROM Cita c " +
+                                        "JOIN FETCH c.medico " +
+                                        "WHERE c.paciente.id = :pacienteId " +
+                                        "ORDER BY c.fechaHora", Cita.class)
+                        .setParameter("pacienteId", pacienteId)
+                        .getResultList());
+    }
+
+    public List<Cita> findProximasCitasByMedico(Long medicoId) {
+        return UnidadDeTrabajo.leerDeReplica(em ->
+                em.createQuery(
+                                "SELECT c FROM Cita c " +
+                                        "JOIN FETCH c.paciente " +
+                                        "WHERE c.medico.id = :medicoId AND c.fechaHora > :now " +
+                                        "ORDER BY c.fechaHora", Cita.class)
+                        .setParameter("medicoId", medicoId)
+                        .setParameter("now", LocalDateTime.now())
+                        .getResultList());
+    }
+
+    // Las próximas N citas programadas de cada médico (o de los indicados) en una sola consulta; las
+    // atendidas y canceladas no aparecen en la agenda. El LATERAL recorre el índice uk_cita_medico_fecha
+    // (parcial, sin las canceladas: el filtro por estado lo hace utilizable) y corta en N filas por médico.
+    @SuppressWarnings("unchecked")
+    public List<ProximaCita> findProximasCitasPorMedico(Collection<Long> medicoIds, int limitePorMedico) {
+        return UnidadDeTrabajo.leer(em -> {
+            NativeQuery<ProximaCita> query = em.createNativeQuery(
+                            "SELECT m.id AS medico_id, m.nombre AS medico_nombre, m.especialidad, " +
+                                    "t.id AS cita_id, t.fecha_hora, p.nombre AS paciente_nombre, t.motivo " +
+                                    "FROM medico m " +
+                                    "CROSS JOIN LATERAL (" +
+                                    "  SELECT c.id, c.fecha_hora, c.motivo, c.paciente_id FROM cita c " +
+                                    "  WHERE c.medico_id = m.id AND c.fecha_hora > :ahora AND c.estado = 'PROGRAMADA' " +
+                                    "  ORDER BY c.fecha_hora LIMIT :limite) t " +
+                                    "JOIN paciente p ON p.id = t.paciente_id " +
+                                    "WHERE m.eliminado_en IS NULL " +
+                                    (medicoIds != null ? "AND m.id IN (:medicoIds) " : "") +
+                                    "ORDER BY m.nombre, m.id, t.fecha_hora")
+                    .unwrap(NativeQuery.class);
+            query.addScalar("medico_id", StandardBasicTypes.LONG)
+                    .addScalar("medico_nombre", StandardBasicTypes.STRING)
+                    .addScalar("especialidad", StandardBasicTypes.STRING)
+                    .addScalar("cita_id", StandardBasicTypes.LONG)
+                    .addScalar("fecha_hora", StandardBasicTypes.LOCAL_DATE_TIME)
+                    .addScalar("paciente_nombre", StandardBasicTypes.STRING)
+                    .addScalar("motivo", StandardBasicTypes.STRING)
+                    .setTupleTransformer((fila, alias) -> new ProximaCita(
+                            (Long) fila[0], (String) fila[1], Especialidad.valueOf((String) fila[2]),
+                            (Long) fila[3], (LocalDateTime) fila[4], (String) fila[5], (String) fila[6]))
+                    .setParameter("ahora", LocalDateTime.now())
+                    .setParameter("limite", limitePorMedico);
+            if (medicoIds != null) {
+                query.setParameterList("medicoIds", medicoIds);
             }
-            throw new RuntimeException("Error al guardar cita", e);
-        } finally {
-            em.close();
-        }
+            return query.getResultList();
+        });
     }
 
-    public void update(Cita cita) {
-        EntityManager em = JPAUtil.getEntityManager();
-        try {
-            em.getTransaction().begin();
-            em.merge(cita);
-            em.getTransaction().commit();
-        } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
+    // Horarios tomados desde una fecha (todos los médicos o uno), para cargar el índice de disponibilidad;
+    // las canceladas no ocupan el horario
+    public List<OcupacionCita> findOcupacionDesde(LocalDateTime desde, Long medicoId) {
+        return UnidadDeTrabajo.leer(em -> {
+            TypedQuery<OcupacionCita> query = em.createQuery(
+                            "SELECT new dto.OcupacionCita(c.id, c.medico.id, c.fechaHora, c.estado) " +
+                                    "FROM Cita c WHERE c.fechaHora >= :desde AND c.estado <> :cancelada" +
+                                    (medicoId != null ? " AND c.medico.id = :medicoId" : ""), OcupacionCita.class)
+                    .setParameter("desde", desde)
+                    .setParameter("cancelada", EstadoCita.CANCELADA);
+            if (medicoId != null) {
+                query.setParameter("medicoId", medicoId);
             }
-            throw new RuntimeException("Error al actualizar cita", e);
-        } finally {
-            em.close();
-        }
+            return query.getResultList();
+        });
     }
 
-    public void delete(Long id) {
-        EntityManager em = JPAUtil.getEntityManager();
+    // Actualizaciones masivas: un solo UPDATE, sin cargar entidades. Suben la versión para que una
+    // edición concurrente de alguna de esas citas falle por @Version en lugar de pisar el cambio.
+    // No tocan el contexto de persistencia: las citas ya cargadas en la unidad activa quedan viejas.
+    public int cancelarProgramadasDeMedico(Long medicoId, LocalDateTime inicio, LocalDateTime fin) {
         try {
-            em.getTransaction().begin();
-            Cita cita = em.find(Cita.class, id);
-            if (cita != null) {
-                em.remove(cita);
-            }
-            em.getTransaction().commit();
-        } catch (Exception e) {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
+            int canceladas = UnidadDeTrabajo.escribirYObtener(em ->
+                    em.createQuery("UPDATE Cita c SET c.estado = :cancelada, c.version = c.version + 1 " +
+                                    "WHERE c.medico.id = :medicoId AND c.estado = :programada " +
+                                    "AND c.fechaHora >= :inicio AND c.fechaHora < :fin")
+                            .setParameter("cancelada", EstadoCita.CANCELADA)
+                            .setParameter("programada", EstadoCita.PROGRAMADA)
+                            .setParameter("medicoId", medicoId)
+                            .setParameter("inicio", inicio)
+                            .setParameter("fin", fin)
+                            .executeUpdate());
+            if (canceladas > 0) {
+                BusCambios.alConfirmar(BusCambios.Cambio.cita(BusCambios.Operacion.MODIFICADO, null, medicoId));
             }
-            throw new RuntimeException("Error al eliminar cita", e);
-        } finally {
-            em.close();
+            return canceladas;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error al cancelar citas del médico", e);
         }
     }
 
-    public Optional<Cita> findById(Long id) {
-        EntityManager em = JPAUtil.getEntityManager();
+    public int cerrarProgramadasAntesDe(LocalDateTime limite, EstadoCita nuevoEstado) {
         try {
-            Cita cita = em.find(Cita.class, id);
-            return Optional.ofNullable(cita);
-        } finally {
-            em.close();
+            int cerradas = UnidadDeTrabajo.escribirYObtener(em ->
+                    em.createQuery("UPDATE Cita c SET c.estado = :nuevoEstado, c.version = c.version + 1 " +
+                                    "WHERE c.estado = :programada AND c.fechaHora < :limite")
+                            .setParameter("nuevoEstado", nuevoEstado)
+                            .setParameter("programada", EstadoCita.PROGRAMADA)
+                            .setParameter("limite", limite)
+                            .executeUpdate());
+            if (cerradas > 0) {
+                BusCambios.alConfirmar(BusCambios.Cambio.cita(BusCambios.Operacion.MODIFICADO, null, null));
+            }
+            return cerradas;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error al cerrar citas pasadas", e);
         }
     }
 
-    // MÉTODO AGREGADO: findAll()
-    public List<Cita> findAll() {
-        EntityManager em = JPAUtil.getEntityManager();
+    // Un lote del cierre de citas pasadas: a lo sumo tamanio filas por transacción para no sostener
+    // candados largos; SKIP LOCKED salta las citas que otra transacción está editando
+    public int cerrarLoteProgramadasAntesDe(LocalDateTime limite, EstadoCita nuevoEstado, int tamanio) {
         try {
-            return em.createQuery(
-                            "SELECT c FROM Cita c " +
-                                    "JOIN FETCH c.paciente " +
-                                    "JOIN FETCH c.medico " +
-                                    "ORDER BY c.fechaHora", Cita.class)
-                    .getResultList();
-        } finally {
-            em.close();
+            int cerradas = UnidadDeTrabajo.escribirYObtener(em ->
+                    em.createNativeQuery("UPDATE cita SET estado = :nuevoEstado, version = version + 1 " +
+                                    "WHERE id IN (SELECT id FROM cita WHERE estado = 'PROGRAMADA' AND fecha_hora < :limite " +
+                                    "ORDER BY fecha_hora, id LIMIT :tamanio FOR UPDATE SKIP LOCKED)")
+                            .unwrap(NativeQuery.class)
+                            .addSynchronizedEntityClass(Cita.class)
+                            .setParameter("nuevoEstado", nuevoEstado.name())
+                            .setParameter("limite", limite)
+                            .setParameter("tamanio", tamanio)
+                            .executeUpdate());
+            if (cerradas > 0) {
+                BusCambios.alConfirmar(BusCambios.Cambio.cita(BusCambios.Operacion.MODIFICADO, null, null));
+            }
+            return cerradas;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error al cerrar citas pasadas", e);
         }
     }
 
-    public List<Cita> findByPacienteId(Long pacienteId) {
-        EntityManager em = JPAUtil.getEntityManager();
+    // Borrado en bloque de las citas de un paciente o de un médico, sin cargar entidades. Devuelve las
+    // citas borradas para sacarlas del índice de disponibilidad. Con limite > 0 borra a lo sumo ese
+    // número de filas (un lote de la purga en segundo plano)
+    public List<OcupacionCita> eliminarDePaciente(Long pacienteId, int limite) {
+        return eliminarPor("paciente_id", pacienteId, limite);
+    }
+
+    public List<OcupacionCita> eliminarDeMedico(Long medicoId, int limite) {
+        return eliminarPor("medico_id", medicoId, limite);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<OcupacionCita> eliminarPor(String columna, Long id, int limite) {
         try {
-            return em.createQuery(
-                            "SELECT c FROM Cita c " +
-                                    "JOIN FETCH c.medico " +
-                                    "WHERE c.paciente.id = :pacienteId " +
-                                    "ORDER BY c.fechaHora", Cita.class)
-                    .setParameter("pacienteId", pacienteId)
-                    .getResultList();
-        } finally {
-            em.close();
+            List<OcupacionCita> eliminadas = UnidadDeTrabajo.escribirYObtener(em -> {
+                NativeQuery<OcupacionCita> query = em.createNativeQuery(
+                                "DELETE FROM cita WHERE " +
+                                        (limite > 0 ? "id IN (SELECT id FROM cita WHERE " + columna + " = :id LIMIT :limite) "
+                                                : columna + " = :id ") +
+                                        "RETURNING id, medico_id, fecha_hora, estado")
+                        .unwrap(NativeQuery.class);
+                query.addScalar("id", StandardBasicTypes.LONG)
+                        .addScalar("medico_id", StandardBasicTypes.LONG)
+                        .addScalar("fecha_hora", StandardBasicTypes.LOCAL_DATE_TIME)
+                        .addScalar("estado", StandardBasicTypes.STRING)
+                        .setTupleTransformer((fila, alias) -> new OcupacionCita(
+                                (Long) fila[0], (Long) fila[1], (LocalDateTime) fila[2], EstadoCita.valueOf((String) fila[3])))
+                        .setParameter("id", id);
+                if (limite > 0) {
+                    query.setParameter("limite", limite);
+                }
+                return query.getResultList();
+            });
+            BusCambios.alConfirmar(eliminadas.stream()
+                    .map(c -> BusCambios.Cambio.cita(BusCambios.Operacion.ELIMINADO, c.citaId(), c.medicoId()))
+                    .toList());
+            return eliminadas;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error al eliminar citas", e);
         }
     }
 
-    public List<Cita> findProximasCitasByMedico(Long medicoId) {
-        EntityManager em = JPAUtil.getEntityManager();
+    public long countProgramadasAntesDe(LocalDateTime limite) {
+        return UnidadDeTrabajo.leer(em ->
+                em.createQuery("SELECT count(c) FROM Cita c WHERE c.estado = :programada AND c.fechaHora < :limite", Long.class)
+                        .setParameter("programada", EstadoCita.PROGRAMADA)
+                        .setParameter("limite", limite)
+                        .getSingleResult());
+    }
+
+    public List<Cita> findByDateRange(LocalDateTime inicio, LocalDateTime fin) {
+        return UnidadDeTrabajo.leerDeReplica(em ->
+                em.createQuery(
+                                SELECT_CITAS +
+                                        "WHERE c.fechaHora BETWEEN :inicio AND :fin " +
+                                        "ORDER BY c.fechaHora", Cita.class)
+                        .setParameter("inicio", inicio)
+                        .setParameter("fin", fin)
+                        .getResultList());
+    }
+
+    // Paginación por llave sobre (fecha_hora, id): cada página cuesta lo mismo sin importar su posición
+    public Pagina<Cita, CursorCita> findPage(CursorCita desde, int tamanio) {
+        return findPageByDateRange(null, null, desde, tamanio);
+    }
+
+    public Pagina<Cita, CursorCita> findPageByDateRange(LocalDateTime inicio, LocalDateTime fin,
+                                                        CursorCita desde, int tamanio) {
+        return UnidadDeTrabajo.leerDeReplica(em -> {
+            TypedQuery<Cita> query = em.createQuery(
+                            SELECT_CITAS + condiciones(inicio != null, desde != null) +
+                                    "ORDER BY c.fechaHora, c.id", Cita.class)
+                    .setMaxResults(tamanio + 1);
+            if (inicio != null) {
+                query.setParameter("inicio", inicio).setParameter("fin", fin);
+            }
+            if (desde != null) {
+                query.setParameter("cursorFecha", desde.fechaHora()).setParameter("cursorId", desde.id());
+            }
+
+            List<Cita> citas = query.getResultList();
+            if (citas.size() <= tamanio) {
+                return new Pagina<>(citas, null);
+            }
+            citas = citas.subList(0, tamanio);
+            return new Pagina<>(citas, CursorCita.de(citas.get(tamanio - 1)));
+        });
+    }
+
+    // Recorre el rango con un cursor del servidor; el Stream debe cerrarse (try-with-resources)
+    public Stream<Cita> streamByDateRange(LocalDateTime inicio, LocalDateTime fin, int fetchSize) {
+        // Es un reporte: va a la réplica si hay una, con la misma política que leerDeReplica
         try {
-            return em.createQuery(
-                            "SELECT c FROM Cita c " +
-                                    "JOIN FETCH c.paciente " +
-                                    "WHERE c.medico.id = :medicoId AND c.fechaHora > :now " +
-                                    "ORDER BY c.fechaHora", Cita.class)
-                    .setParameter("medicoId", medicoId)
-                    .setParameter("now", LocalDateTime.now())
-                    .getResultList();
-        } finally {
-            em.close();
+            return UnidadDeTrabajo.leerDeReplicaConSesion(fabrica -> recorrer(fabrica, inicio, fin, fetchSize));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error al recorrer citas", e);
         }
     }
 
-    public List<Cita> findByDateRange(LocalDateTime inicio, LocalDateTime fin) {
-        EntityManager em = JPAUtil.getEntityManager();
+    private static Stream<Cita> recorrer(SessionFactory fabrica, LocalDateTime inicio, LocalDateTime fin, int fetchSize) {
+        // StatelessSession: sin contexto de persistencia, la memoria no crece con las filas leídas
+        StatelessSession session = fabrica.openStatelessSession();
         try {
-            return em.createQuery(
-                            "SELECT c FROM Cita c " +
-                                    "JOIN FETCH c.paciente " +
-                                    "JOIN FETCH c.medico " +
+            // PostgreSQL solo usa cursor (fetch size) dentro de una transacción
+            Transaction tx = session.beginTransaction();
+            return session.createQuery(
+                            SELECT_CITAS +
                                     "WHERE c.fechaHora BETWEEN :inicio AND :fin " +
-                                    "ORDER BY c.fechaHora", Cita.class)
+                                    "ORDER BY c.fechaHora, c.id", Cita.class)
                     .setParameter("inicio", inicio)
                     .setParameter("fin", fin)
-                    .getResultList();
-        } finally {
-            em.close();
+                    .setFetchSize(fetchSize)
+                    .stream()
+                    .onClose(() -> {
+                        try {
+                            if (tx.isActive()) tx.commit();
+                        } finally {
+                            session.close();
+                        }
+                    });
+        } catch (RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    private static String condiciones(boolean conRango, boolean conCursor) {
+        if (!conRango && !conCursor) {
+            return "";
+        }
+        StringBuilder where = new StringBuilder("WHERE ");
+        if (conRango) {
+            where.append("c.fechaHora BETWEEN :inicio AND :fin ");
+        }
+        if (conCursor) {
+            where.append(conRango ? "AND " : "")
+                    .append("(c.fechaHora, c.id) > (:cursorFecha, :cursorId) ");
         }
+        return where.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package dao;
+
+import model.Cita;
+import java.time.LocalDateTime;
+
+// Posición de la última cita leída, según el orden (fecha_hora, id)
+public record CursorCita(LocalDateTime fechaHora, Long id) {
+
+    public static CursorCita de(Cita cita) {
+        return new CursorCita(cita.getFechaHora(), cita.getId());
+    }
+}
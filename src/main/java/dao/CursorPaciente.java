@@ -0,0 +1,11 @@
+package dao;
+
+import model.Paciente;
+
+// Posición del último paciente leído, según el orden (nombre, id)
+public record CursorPaciente(String nombre, Long id) {
+
+    public static CursorPaciente de(Paciente paciente) {
+        return new CursorPaciente(paciente.getNombre(), paciente.getId());
+    }
+}
@@ -1,9 +1,23 @@
 package dao;
 
+import dto.MedicoResumen;
+import dto.ResultadoRegistro;
+import model.Especialidad;
 import model.Medico;
-import util.JPAUtil;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.query.NativeQuery;
+import util.BusCambios;
+import util.CacheSegundoNivel;
+import util.UnidadDeTrabajo;
 import jakarta.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class MedicoDAO extends BaseDAO<Medico, Long> {
@@ -12,17 +26,211 @@ public class MedicoDAO extends BaseDAO<Medico, Long> {
         super(Medico.class);
     }
 
+    // Consultas de médicos en el caché de consultas: Hibernate descarta los resultados cuando la tabla
+    // medico cambia por JPQL o por SQL nativo sincronizado; los INSERT por JDBC se invalidan a mano
+    // (CacheSegundoNivel.invalidarConsultasMedico)
+    @Override
+    public List<Medico> findAll() {
+        return UnidadDeTrabajo.leer(em ->
+                em.createQuery("FROM Medico m ORDER BY m.nombre, m.id", Medico.class)
+                        .setHint(HibernateHints.HINT_CACHEABLE, true)
+                        .setHint(HibernateHints.HINT_CACHE_REGION, CacheSegundoNivel.REGION_CONSULTAS_MEDICO)
+                        .getResultList());
+    }
+
     public Optional<Medico> findByColegiado(String colegiado) {
-        EntityManager em = JPAUtil.getEntityManager();
-        try {
+        return UnidadDeTrabajo.leer(em -> {
             List<Medico> result = em.createQuery(
                             "FROM Medico m WHERE m.colegiado = :colegiado", Medico.class)
                     .setParameter("colegiado", colegiado)
+                    .setHint(HibernateHints.HINT_CACHEABLE, true)
+                    .setHint(HibernateHints.HINT_CACHE_REGION, CacheSegundoNivel.REGION_CONSULTAS_MEDICO)
                     .getResultList();
             return result.isEmpty() ? Optional.empty() : Optional.of(result.get(0));
-        } finally {
-            em.close();
+        });
+    }
+
+    // Registro sin consulta previa: INSERT ... ON CONFLICT (colegiado) DO NOTHING (ver PacienteDAO)
+    public ResultadoRegistro insertarSiNoExiste(Medico medico) {
+        ResultadoRegistro resultado = UnidadDeTrabajo.escribirYObtener(em -> {
+            Long id = insertar(em, List.of(medico)).get(medico.getColegiado());
+            if (id != null) {
+                return ResultadoRegistro.creado(id);
+            }
+            Optional<Long> existente = em.createQuery("SELECT m.id FROM Medico m WHERE m.colegiado = :colegiado", Long.class)
+                    .setParameter("colegiado", medico.getColegiado())
+                    .getResultStream()
+                    .findFirst();
+            if (existente.isPresent()) {
+                return ResultadoRegistro.existente(existente.get());
+            }
+            // Si no aparece, el colegiado es de un médico marcado para eliminación que la purga aún no borra
+            List<?> marcado = em.createNativeQuery("SELECT id FROM medico WHERE colegiado = :colegiado", Long.class)
+                    .setParameter("colegiado", medico.getColegiado())
+                    .getResultList();
+            return ResultadoRegistro.enEliminacion(marcado.isEmpty() ? null : (Long) marcado.get(0));
+        });
+        if (resultado.creado()) {
+            BusCambios.alConfirmar(BusCambios.Cambio.medico(BusCambios.Operacion.CREADO, resultado.id()));
         }
+        return resultado;
+    }
+
+    // Colegiado -> id de los insertados con un solo INSERT ... SELECT FROM unnest(...)
+    public Map<String, Long> insertarSiNoExisten(List<Medico> medicos) {
+        if (medicos.isEmpty()) {
+            return new HashMap<>();
+        }
+        Map<String, Long> insertados = UnidadDeTrabajo.escribirYObtener(em -> insertar(em, medicos));
+        BusCambios.alConfirmar(insertados.values().stream()
+                .map(id -> BusCambios.Cambio.medico(BusCambios.Operacion.CREADO, id))
+                .toList());
+        return insertados;
+    }
+
+    private Map<String, Long> insertar(EntityManager em, List<Medico> medicos) {
+        int n = medicos.size();
+        Long[] ids = new Long[n];
+        String[] nombres = new String[n];
+        String[] colegiados = new String[n];
+        String[] especialidades = new String[n];
+        String[] emails = new String[n];
+        for (int i = 0; i < n; i++) {
+            Medico m = medicos.get(i);
+            ids[i] = generarId(em, m);
+            nombres[i] = m.getNombre();
+            colegiados[i] = m.getColegiado();
+            especialidades[i] = m.getEspecialidad() != null ? m.getEspecialidad().name() : null;
+            emails[i] = m.getEmail();
+        }
+
+        Map<String, Long> insertados = em.unwrap(Session.class).doReturningWork(conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO medico (id, nombre, colegiado, especialidad, email) " +
+                            "SELECT * FROM unnest(?::bigint[], ?::varchar[], ?::varchar[], ?::varchar[], ?::varchar[]) " +
+                            "ON CONFLICT (colegiado) DO NOTHING RETURNING colegiado, id")) {
+                ps.setArray(1, conn.createArrayOf("bigint", ids));
+                ps.setArray(2, conn.createArrayOf("varchar", nombres));
+                ps.setArray(3, conn.createArrayOf("varchar", colegiados));
+                ps.setArray(4, conn.createArrayOf("varchar", especialidades));
+                ps.setArray(5, conn.createArrayOf("varchar", emails));
+                Map<String, Long> resultado = new HashMap<>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        resultado.put(rs.getString(1), rs.getLong(2));
+                    }
+                }
+                return resultado;
+            }
+        });
+        // Con claves repetidas en el lote solo una fila se insertó: la que tiene el id devuelto
+        for (int i = 0; i < n; i++) {
+            if (ids[i].equals(insertados.get(colegiados[i]))) {
+                medicos.get(i).setId(ids[i]);
+            }
+        }
+        return insertados;
+    }
+
+    public List<MedicoResumen> findResumenes() {
+        return UnidadDeTrabajo.leer(em ->
+                em.createQuery("SELECT new dto.MedicoResumen(m.id, m.nombre, m.colegiado, m.especialidad) " +
+                                "FROM Medico m ORDER BY m.nombre, m.id", MedicoResumen.class)
+                        .setHint(HibernateHints.HINT_CACHEABLE, true)
+                        .setHint(HibernateHints.HINT_CACHE_REGION, CacheSegundoNivel.REGION_CONSULTAS_MEDICO)
+                        .getResultList());
+    }
+
+    public List<MedicoResumen> findResumenesPorEspecialidad(Especialidad especialidad) {
+        return UnidadDeTrabajo.leer(em ->
+                em.createQuery("SELECT new dto.MedicoResumen(m.id, m.nombre, m.colegiado, m.especialidad) " +
+                                "FROM Medico m WHERE m.especialidad = :especialidad ORDER BY m.nombre, m.id", MedicoResumen.class)
+                        .setParameter("especialidad", especialidad)
+                        .setHint(HibernateHints.HINT_CACHEABLE, true)
+                        .setHint(HibernateHints.HINT_CACHE_REGION, CacheSegundoNivel.REGION_CONSULTAS_MEDICO)
+                        .getResultList());
     }
-}
 
+    // Un solo DELETE nativo; las citas deben haberse borrado antes (fk_cita_medico). Ver PacienteDAO.
+    // Declarar la entidad afectada limita la invalidación del caché a sus regiones; sin ella Hibernate
+    // vacía todas
+    public boolean eliminarEnBloque(Long id) {
+        try {
+            boolean eliminado = UnidadDeTrabajo.escribirYObtener(em ->
+                    em.createNativeQuery("DELETE FROM medico WHERE id = :id")
+                            .unwrap(NativeQuery.class)
+                            .addSynchronizedEntityClass(Medico.class)
+                            .setParameter("id", id)
+                            .executeUpdate() > 0);
+            if (eliminado) {
+                BusCambios.alConfirmar(BusCambios.Cambio.medico(BusCambios.Operacion.ELIMINADO, id));
+            }
+            return eliminado;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error al eliminar médico", e);
+        }
+    }
+
+    public boolean marcarEliminado(Long id) {
+        try {
+            boolean eliminado = UnidadDeTrabajo.escribirYObtener(em ->
+                    em.createNativeQuery("UPDATE medico SET eliminado_en = :ahora WHERE id = :id AND eliminado_en IS NULL")
+                            .unwrap(NativeQuery.class)
+                            .addSynchronizedEntityClass(Medico.class)
+                            .setParameter("ahora", LocalDateTime.now())
+                            .setParameter("id", id)
+                            .executeUpdate() > 0);
+            if (eliminado) {
+                BusCambios.alConfirmar(BusCambios.Cambio.medico(BusCambios.Operacion.ELIMINADO, id));
+            }
+            return eliminado;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error al marcar médico como eliminado", e);
+        }
+    }
+
+    public List<Long> findIdsPorPurgar() {
+        List<?> ids = UnidadDeTrabajo.leer(em ->
+                em.createNativeQuery("SELECT id FROM medico WHERE eliminado_en IS NOT NULL ORDER BY eliminado_en", Long.class)
+                        .getResultList());
+        return ids.stream().map(Long.class::cast).toList();
+    }
+
+    // De los ids pedidos, los de médicos que existen y no están marcados para eliminar, con FOR SHARE sobre
+    // sus filas hasta el fin de la transacción: una marca concurrente espera a que la unidad que agenda
+    // confirme. Para usar dentro de esa unidad (getReference no pasa por @Where)
+    public List<Long> bloquearVigentes(Collection<Long> pedidos) {
+        List<?> ids = UnidadDeTrabajo.leer(em ->
+                em.createNativeQuery("SELECT id FROM medico WHERE id IN (:ids) AND eliminado_en IS NULL FOR SHARE", Long.class)
+                        .setParameter("ids", pedidos)
+                        .getResultList());
+        return ids.stream().map(Long.class::cast).toList();
+    }
+
+    // De los colegiados dados, los de médicos marcados para eliminación que la purga aún no borra
+    public List<String> findColegiadosEnEliminacion(Collection<String> colegiados) {
+        if (colegiados.isEmpty()) {
+            return List.of();
+        }
+        List<?> encontrados = UnidadDeTrabajo.leer(em ->
+                em.createNativeQuery("SELECT colegiado FROM medico WHERE colegiado IN (:colegiados) AND eliminado_en IS NOT NULL", String.class)
+                        .setParameter("colegiados", colegiados)
+                        .getResultList());
+        return encontrados.stream().map(String.class::cast).toList();
+    }
+
+    // Colegiado -> id para resolver referencias en lote (una consulta por lote)
+    public Map<String, Long> findIdsByColegiado(Collection<String> colegiados) {
+        Map<String, Long> ids = new HashMap<>();
+        if (colegiados.isEmpty()) {
+            return ids;
+        }
+        return UnidadDeTrabajo.leer(em -> {
+            em.createQuery("SELECT m.colegiado, m.id FROM Medico m WHERE m.colegiado IN :colegiados", Object[].class)
+                    .setParameter("colegiados", colegiados)
+                    .getResultList()
+                    .forEach(fila -> ids.put((String) fila[0], (Long) fila[1]));
+            return ids;
+        });
+    }
+}
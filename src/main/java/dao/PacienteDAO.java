@@ -1,10 +1,26 @@
 package dao;
 
+import dto.PacienteResumen;
+import dto.ResultadoRegistro;
+import model.HistorialMedico;
 import model.Paciente;
-import util.JPAUtil;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.query.NativeQuery;
+import util.BusCambios;
+import util.UnidadDeTrabajo;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class PacienteDAO extends BaseDAO<Paciente, Long> {
 
@@ -13,27 +29,268 @@ public class PacienteDAO extends BaseDAO<Paciente, Long> {
     }
 
     public Optional<Paciente> findByDpi(String dpi) {
-        EntityManager em = JPAUtil.getEntityManager();
-        try {
+        return UnidadDeTrabajo.leer(em -> {
             List<Paciente> result = em.createQuery(
                             "FROM Paciente p WHERE p.dpi = :dpi", Paciente.class)
                     .setParameter("dpi", dpi)
                     .getResultList();
             return result.isEmpty() ? Optional.empty() : Optional.of(result.get(0));
-        } finally {
-            em.close();
+        });
+    }
+
+    // Registro sin consulta previa: INSERT ... ON CONFLICT (dpi) DO NOTHING. Dos registros simultáneos
+    // del mismo DPI no chocan, uno inserta y el otro recibe el id existente. No valida la entidad.
+    public ResultadoRegistro insertarSiNoExiste(Paciente paciente) {
+        ResultadoRegistro resultado = UnidadDeTrabajo.escribirYObtener(em -> {
+            Long id = insertar(em, List.of(paciente)).get(paciente.getDpi());
+            if (id != null) {
+                return ResultadoRegistro.creado(id);
+            }
+            Optional<Long> existente = em.createQuery("SELECT p.id FROM Paciente p WHERE p.dpi = :dpi", Long.class)
+                    .setParameter("dpi", paciente.getDpi())
+                    .getResultStream()
+                    .findFirst();
+            if (existente.isPresent()) {
+                return ResultadoRegistro.existente(existente.get());
+            }
+            // Si no aparece, el DPI es de un paciente marcado para eliminación que la purga aún no borra
+            List<?> marcado = em.createNativeQuery("SELECT id FROM paciente WHERE dpi = :dpi", Long.class)
+                    .setParameter("dpi", paciente.getDpi())
+                    .getResultList();
+            return ResultadoRegistro.enEliminacion(marcado.isEmpty() ? null : (Long) marcado.get(0));
+        });
+        if (resultado.creado()) {
+            BusCambios.alConfirmar(BusCambios.Cambio.paciente(BusCambios.Operacion.CREADO, resultado.id()));
         }
+        return resultado;
     }
 
-    public List<Paciente> findAllWithCitas() {
-        EntityManager em = JPAUtil.getEntityManager();
+    // Versión por lotes: un solo INSERT ... SELECT FROM unnest(...) para todo el lote. Devuelve
+    // DPI -> id de los insertados; los que ya existían (o se repiten en el lote) no aparecen
+    public Map<String, Long> insertarSiNoExisten(List<Paciente> pacientes) {
+        if (pacientes.isEmpty()) {
+            return new HashMap<>();
+        }
+        Map<String, Long> insertados = UnidadDeTrabajo.escribirYObtener(em -> insertar(em, pacientes));
+        BusCambios.alConfirmar(insertados.values().stream()
+                .map(id -> BusCambios.Cambio.paciente(BusCambios.Operacion.CREADO, id))
+                .toList());
+        return insertados;
+    }
+
+    private Map<String, Long> insertar(EntityManager em, List<Paciente> pacientes) {
+        int n = pacientes.size();
+        Long[] ids = new Long[n];
+        String[] nombres = new String[n];
+        String[] dpis = new String[n];
+        String[] fechasNacimiento = new String[n];
+        String[] telefonos = new String[n];
+        String[] emails = new String[n];
+        for (int i = 0; i < n; i++) {
+            Paciente p = pacientes.get(i);
+            ids[i] = generarId(em, p);
+            nombres[i] = p.getNombre();
+            dpis[i] = p.getDpi();
+            fechasNacimiento[i] = p.getFechaNacimiento() != null ? p.getFechaNacimiento().toString() : null;
+            telefonos[i] = p.getTelefono();
+            emails[i] = p.getEmail();
+        }
+
+        Map<String, Long> insertados = em.unwrap(Session.class).doReturningWork(conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO paciente (id, nombre, dpi, fecha_nacimiento, telefono, email) " +
+                            "SELECT * FROM unnest(?::bigint[], ?::varchar[], ?::varchar[], ?::date[], ?::varchar[], ?::varchar[]) " +
+                            "ON CONFLICT (dpi) DO NOTHING RETURNING dpi, id")) {
+                ps.setArray(1, conn.createArrayOf("bigint", ids));
+                ps.setArray(2, conn.createArrayOf("varchar", nombres));
+                ps.setArray(3, conn.createArrayOf("varchar", dpis));
+                ps.setArray(4, conn.createArrayOf("varchar", fechasNacimiento));
+                ps.setArray(5, conn.createArrayOf("varchar", telefonos));
+                ps.setArray(6, conn.createArrayOf("varchar", emails));
+                Map<String, Long> resultado = new HashMap<>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        resultado.put(rs.getString(1), rs.getLong(2));
+                    }
+                }
+                return resultado;
+            }
+        });
+        // Con claves repetidas en el lote solo una fila se insertó: la que tiene el id devuelto
+        for (int i = 0; i < n; i++) {
+            if (ids[i].equals(insertados.get(dpis[i]))) {
+                pacientes.get(i).setId(ids[i]);
+            }
+        }
+        return insertados;
+    }
+
+    // Proyección para listados: sin entidades administradas ni el OneToOne a historialMedico
+    public List<PacienteResumen> findResumenes() {
+        return UnidadDeTrabajo.leerDeReplica(em ->
+                em.createQuery("SELECT new dto.PacienteResumen(p.id, p.nombre, p.dpi, p.telefono) " +
+                                "FROM Paciente p ORDER BY p.nombre, p.id", PacienteResumen.class)
+                        .getResultList());
+    }
+
+    // Recorre id, nombre, DPI y teléfono de todos los pacientes, en orden de id, sin armar la lista
+    // completa: dentro de una transacción el driver trae las filas de a 1000 (con autocommit las trae
+    // todas de una vez)
+    public void recorrerResumenes(Consumer<PacienteResumen> accion) {
+        UnidadDeTrabajo.escribir(em -> {
+            try (Stream<PacienteResumen> filas = em.createQuery(
+                            "SELECT new dto.PacienteResumen(p.id, p.nombre, p.dpi, p.telefono) FROM Paciente p ORDER BY p.id",
+                            PacienteResumen.class)
+                    .setHint(HibernateHints.HINT_FETCH_SIZE, 1000)
+                    .setHint(HibernateHints.HINT_READ_ONLY, true)
+                    .getResultStream()) {
+                filas.forEach(accion);
+            }
+        });
+    }
+
+    // Resúmenes de los ids pedidos (sin orden); los que ya no existen no aparecen
+    public List<PacienteResumen> findResumenesPorIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return UnidadDeTrabajo.leer(em ->
+                em.createQuery("SELECT new dto.PacienteResumen(p.id, p.nombre, p.dpi, p.telefono) " +
+                                "FROM Paciente p WHERE p.id IN :ids", PacienteResumen.class)
+                        .setParameter("ids", ids)
+                        .getResultList());
+    }
+
+    // Borra el historial (sus versiones caen por ON DELETE CASCADE) y la fila del paciente con dos
+    // DELETE, sin cargar entidades. Las citas deben haberse borrado antes (fk_cita_paciente).
+    // SQL nativo: @Where ocultaría a los marcados para eliminación diferida
+    public boolean eliminarEnBloque(Long id) {
         try {
-            return em.createQuery(
-                            "SELECT DISTINCT p FROM Paciente p LEFT JOIN FETCH p.citas",
-                            Paciente.class)
-                    .getResultList();
-        } finally {
-            em.close();
+            boolean eliminado = UnidadDeTrabajo.escribirYObtener(em -> {
+                em.createNativeQuery("DELETE FROM historial_medico WHERE id = :id")
+                        .unwrap(NativeQuery.class)
+                        .addSynchronizedEntityClass(HistorialMedico.class)
+                        .setParameter("id", id)
+                        .executeUpdate();
+                return em.createNativeQuery("DELETE FROM paciente WHERE id = :id")
+                        .unwrap(NativeQuery.class)
+                        .addSynchronizedEntityClass(Paciente.class)
+                        .setParameter("id", id)
+                        .executeUpdate() > 0;
+            });
+            if (eliminado) {
+                BusCambios.alConfirmar(BusCambios.Cambio.paciente(BusCambios.Operacion.ELIMINADO, id));
+            }
+            return eliminado;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error al eliminar paciente", e);
+        }
+    }
+
+    // Eliminación diferida: desde aquí el paciente no aparece en consultas; la purga lo borra después
+    public boolean marcarEliminado(Long id) {
+        try {
+            boolean eliminado = UnidadDeTrabajo.escribirYObtener(em ->
+                    em.createNativeQuery("UPDATE paciente SET eliminado_en = :ahora WHERE id = :id AND eliminado_en IS NULL")
+                            .unwrap(NativeQuery.class)
+                            .addSynchronizedEntityClass(Paciente.class)
+                            .setParameter("ahora", LocalDateTime.now())
+                            .setParameter("id", id)
+                            .executeUpdate() > 0);
+            if (eliminado) {
+                BusCambios.alConfirmar(BusCambios.Cambio.paciente(BusCambios.Operacion.ELIMINADO, id));
+            }
+            return eliminado;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error al marcar paciente como eliminado", e);
+        }
+    }
+
+    public List<Long> findIdsPorPurgar() {
+        List<?> ids = UnidadDeTrabajo.leer(em ->
+                em.createNativeQuery("SELECT id FROM paciente WHERE eliminado_en IS NOT NULL ORDER BY eliminado_en", Long.class)
+                        .getResultList());
+        return ids.stream().map(Long.class::cast).toList();
+    }
+
+    // De los ids pedidos, los de pacientes que existen y no están marcados para eliminar, con FOR SHARE sobre
+    // sus filas hasta el fin de la transacción: una marca concurrente espera a que la unidad que agenda
+    // confirme. Para usar dentro de esa unidad (getReference no pasa por @Where)
+    public List<Long> bloquearVigentes(Collection<Long> pedidos) {
+        List<?> ids = UnidadDeTrabajo.leer(em ->
+                em.createNativeQuery("SELECT id FROM paciente WHERE id IN (:ids) AND eliminado_en IS NULL FOR SHARE", Long.class)
+                        .setParameter("ids", pedidos)
+                        .getResultList());
+        return ids.stream().map(Long.class::cast).toList();
+    }
+
+    // De los DPI dados, los de pacientes marcados para eliminación que la purga aún no borra
+    public List<String> findDpisEnEliminacion(Collection<String> dpis) {
+        if (dpis.isEmpty()) {
+            return List.of();
+        }
+        List<?> encontrados = UnidadDeTrabajo.leer(em ->
+                em.createNativeQuery("SELECT dpi FROM paciente WHERE dpi IN (:dpis) AND eliminado_en IS NOT NULL", String.class)
+                        .setParameter("dpis", dpis)
+                        .getResultList());
+        return encontrados.stream().map(String.class::cast).toList();
+    }
+
+    // DPI -> id para resolver referencias en lote (una consulta por lote)
+    public Map<String, Long> findIdsByDpi(Collection<String> dpis) {
+        Map<String, Long> ids = new HashMap<>();
+        if (dpis.isEmpty()) {
+            return ids;
         }
+        return UnidadDeTrabajo.leer(em -> {
+            em.createQuery("SELECT p.dpi, p.id FROM Paciente p WHERE p.dpi IN :dpis", Object[].class)
+                    .setParameter("dpis", dpis)
+                    .getResultList()
+                    .forEach(fila -> ids.put((String) fila[0], (Long) fila[1]));
+            return ids;
+        });
+    }
+
+    public List<Paciente> findAllWithCitas() {
+        return UnidadDeTrabajo.leerDeReplica(em ->
+                em.createQuery(
+                                "SELECT DISTINCT p FROM Paciente p LEFT JOIN FETCH p.citas",
+                                Paciente.class)
+                        .getResultList());
+    }
+
+    // Reporte paginado de pacientes con sus citas y el médico de cada cita: dos consultas por página
+    public Pagina<Paciente, CursorPaciente> findPageWithCitas(CursorPaciente desde, int tamanio) {
+        return UnidadDeTrabajo.leerDeReplica(em -> {
+            TypedQuery<Long> queryIds = em.createQuery(
+                            "SELECT p.id FROM Paciente p " +
+                                    (desde != null ? "WHERE (p.nombre, p.id) > (:cursorNombre, :cursorId) " : "") +
+                                    "ORDER BY p.nombre, p.id", Long.class)
+                    .setMaxResults(tamanio + 1);
+            if (desde != null) {
+                queryIds.setParameter("cursorNombre", desde.nombre()).setParameter("cursorId", desde.id());
+            }
+
+            List<Long> ids = queryIds.getResultList();
+            boolean hayMas = ids.size() > tamanio;
+            if (hayMas) {
+                ids = ids.subList(0, tamanio);
+            }
+            if (ids.isEmpty()) {
+                return new Pagina<>(List.<Paciente>of(), null);
+            }
+
+            // Citas y médicos en el mismo join; el historial (LAZY) no lo usa el reporte y no se carga
+            List<Paciente> pacientes = em.createQuery(
+                            "SELECT p FROM Paciente p " +
+                                    "LEFT JOIN FETCH p.citas c " +
+                                    "LEFT JOIN FETCH c.medico " +
+                                    "WHERE p.id IN :ids " +
+                                    "ORDER BY p.nombre, p.id, c.fechaHora", Paciente.class)
+                    .setParameter("ids", ids)
+                    .getResultList();
+
+            return new Pagina<>(pacientes, hayMas ? CursorPaciente.de(pacientes.get(pacientes.size() - 1)) : null);
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,15 @@
+package dao;
+
+import java.util.List;
+
+// Página de resultados con el cursor para pedir la siguiente (null si no hay más)
+public record Pagina<T, C>(List<T> elementos, C siguiente) {
+
+    public boolean hayMas() {
+        return siguiente != null;
+    }
+
+    public boolean isEmpty() {
+        return elementos.isEmpty();
+    }
+}
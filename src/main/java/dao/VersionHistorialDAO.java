@@ -0,0 +1,37 @@
+package dao;
+
+import dto.VersionHistorialResumen;
+import model.VersionHistorial;
+import util.UnidadDeTrabajo;
+import java.util.List;
+
+public class VersionHistorialDAO extends BaseDAO<VersionHistorial, Long> {
+
+    public VersionHistorialDAO() {
+        super(VersionHistorial.class);
+    }
+
+    public List<VersionHistorialResumen> findResumenes(Long historialId) {
+        return UnidadDeTrabajo.leer(em ->
+                em.createQuery("SELECT new dto.VersionHistorialResumen(v.numero, v.fecha, v.snapshot, " +
+                                "coalesce(length(v.alergias), 0) + coalesce(length(v.antecedentes), 0) " +
+                                "+ coalesce(length(v.observaciones), 0)) " +
+                                "FROM VersionHistorial v WHERE v.historial.id = :historialId ORDER BY v.numero",
+                                VersionHistorialResumen.class)
+                        .setParameter("historialId", historialId)
+                        .getResultList());
+    }
+
+    // Lo necesario para reconstruir la versión: el último snapshot hasta ella y los deltas que le siguen
+    public List<VersionHistorial> findDesdeSnapshot(Long historialId, int numero) {
+        return UnidadDeTrabajo.leer(em ->
+                em.createQuery("FROM VersionHistorial v WHERE v.historial.id = :historialId " +
+                                "AND v.numero <= :numero AND v.numero >= (" +
+                                "  SELECT max(s.numero) FROM VersionHistorial s WHERE s.historial.id = :historialId " +
+                                "  AND s.snapshot = true AND s.numero <= :numero) " +
+                                "ORDER BY v.numero", VersionHistorial.class)
+                        .setParameter("historialId", historialId)
+                        .setParameter("numero", numero)
+                        .getResultList());
+    }
+}
@@ -0,0 +1,9 @@
+package dto;
+
+import model.Especialidad;
+import java.util.List;
+
+// Próximas citas de un médico, en orden de fecha
+public record AgendaMedico(Long medicoId, String medicoNombre, Especialidad especialidad,
+                           List<ProximaCita> citas) {
+}
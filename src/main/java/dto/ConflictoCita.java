@@ -0,0 +1,5 @@
+package dto;
+
+// Solicitud de un lote que no se agendó y por qué
+public record ConflictoCita(SolicitudCita solicitud, String razon) {
+}
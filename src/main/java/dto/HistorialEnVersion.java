@@ -0,0 +1,8 @@
+package dto;
+
+import java.time.LocalDateTime;
+
+// Textos de un historial tal como quedaron en una versión
+public record HistorialEnVersion(Long pacienteId, int numero, LocalDateTime fecha,
+                                 String alergias, String antecedentes, String observaciones) {
+}
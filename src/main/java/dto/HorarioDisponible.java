@@ -0,0 +1,9 @@
+package dto;
+
+import model.Especialidad;
+import java.time.LocalDateTime;
+
+// Un horario libre de un médico, resultado de la búsqueda por especialidad
+public record HorarioDisponible(Long medicoId, String medicoNombre, Especialidad especialidad,
+                                LocalDateTime inicio, LocalDateTime fin) {
+}
@@ -0,0 +1,7 @@
+package dto;
+
+import model.Especialidad;
+
+// Datos de un médico para listados y búsquedas (proyección de solo lectura)
+public record MedicoResumen(Long id, String nombre, String colegiado, Especialidad especialidad) {
+}
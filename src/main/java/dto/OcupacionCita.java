@@ -0,0 +1,8 @@
+package dto;
+
+import model.EstadoCita;
+import java.time.LocalDateTime;
+
+// Lo mínimo de una cita para saber si ocupa el horario de su médico
+public record OcupacionCita(Long citaId, Long medicoId, LocalDateTime fechaHora, EstadoCita estado) {
+}
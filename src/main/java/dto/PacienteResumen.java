@@ -0,0 +1,5 @@
+package dto;
+
+// Datos de un paciente para listados (proyección de solo lectura)
+public record PacienteResumen(Long id, String nombre, String dpi, String telefono) {
+}
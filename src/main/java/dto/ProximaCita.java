@@ -0,0 +1,9 @@
+package dto;
+
+import model.Especialidad;
+import java.time.LocalDateTime;
+
+// Fila de la agenda de próximas citas (proyección de solo lectura)
+public record ProximaCita(Long medicoId, String medicoNombre, Especialidad especialidad,
+                          Long citaId, LocalDateTime fechaHora, String pacienteNombre, String motivo) {
+}
@@ -0,0 +1,11 @@
+package dto;
+
+import java.util.List;
+
+// citaIds sigue el orden de las solicitudes agendadas; en TODO_O_NADA con conflictos queda vacío
+public record ResultadoLote(List<Long> citaIds, List<ConflictoCita> conflictos) {
+
+    public boolean completo() {
+        return conflictos.isEmpty();
+    }
+}
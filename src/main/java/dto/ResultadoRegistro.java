@@ -0,0 +1,33 @@
+package dto;
+
+// Resultado de un registro por clave natural (DPI, colegiado): el id del registro nuevo o, si la
+// clave ya existía, el del existente. Si la clave es de un registro marcado para eliminación que la
+// purga aún no borra no se registra nada: el id es el del marcado (null si la purga lo acaba de borrar)
+public record ResultadoRegistro(Long id, Estado estado) {
+
+    public enum Estado {
+        CREADO,
+        EXISTENTE,
+        EN_ELIMINACION
+    }
+
+    public static ResultadoRegistro creado(Long id) {
+        return new ResultadoRegistro(id, Estado.CREADO);
+    }
+
+    public static ResultadoRegistro existente(Long id) {
+        return new ResultadoRegistro(id, Estado.EXISTENTE);
+    }
+
+    public static ResultadoRegistro enEliminacion(Long id) {
+        return new ResultadoRegistro(id, Estado.EN_ELIMINACION);
+    }
+
+    public boolean creado() {
+        return estado == Estado.CREADO;
+    }
+
+    public boolean enEliminacion() {
+        return estado == Estado.EN_ELIMINACION;
+    }
+}
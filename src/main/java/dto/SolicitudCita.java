@@ -0,0 +1,7 @@
+package dto;
+
+import java.time.LocalDateTime;
+
+// Una cita a agendar dentro de un lote
+public record SolicitudCita(Long pacienteId, Long medicoId, LocalDateTime fechaHora, String motivo) {
+}
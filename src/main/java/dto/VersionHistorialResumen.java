@@ -0,0 +1,8 @@
+package dto;
+
+import java.time.LocalDateTime;
+
+// Una entrada del registro de versiones de un historial; caracteres = lo que ocupa guardada
+// (el delta o la foto completa), no el texto reconstruido
+public record VersionHistorialResumen(int numero, LocalDateTime fecha, boolean snapshot, long caracteres) {
+}
@@ -0,0 +1,208 @@
+package importacion;
+
+import jakarta.persistence.EntityManager;
+import model.EstadoCita;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import service.CacheProximasCitas;
+import service.IndiceDisponibilidad;
+import util.BusCambios;
+import util.JPAUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+// Carga rápida de citas con COPY ... FROM STDIN: las filas van a una tabla temporal y de ahí
+// se insertan en cita con un solo INSERT ... SELECT que resuelve paciente/médico por DPI/colegiado.
+// Las citas que chocan con uk_cita_medico_fecha (índice parcial, sin las canceladas) se omiten
+// (ON CONFLICT DO NOTHING) y se reportan como rechazadas.
+public class CargadorCopyCitas {
+
+    // Debe coincidir con allocationSize de cita_seq (pooled-lo): cada nextval reserva un bloque de ids
+    private static final int TAMANIO_BLOQUE_IDS = 50;
+    private static final int TAMANIO_BUFFER = 64 * 1024;
+
+    public ResultadoImportacion cargar(Path archivo, ImportacionListener listener) throws IOException {
+        long inicio = System.nanoTime();
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            long[] conteos = em.unwrap(Session.class).doReturningWork(conn -> cargar(conn, archivo, listener));
+            em.getTransaction().commit();
+            // Las citas entraron sin pasar por MedicalService
+            IndiceDisponibilidad.getInstancia().invalidarTodo();
+            CacheProximasCitas.getInstancia().invalidarTodo();
+            BusCambios.publicar(List.of(BusCambios.Cambio.cita(BusCambios.Operacion.CREADO, null, null)));
+            return new ResultadoImportacion(conteos[0], conteos[1], conteos[0] - conteos[1],
+                    Duration.ofNanos(System.nanoTime() - inicio));
+        } catch (UncheckedIOException e) {
+            if (em.getTransaction().isActive()) em.getTransaction().rollback();
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            if (em.getTransaction().isActive()) em.getTransaction().rollback();
+            throw new RuntimeException("Error en la carga COPY de citas", e);
+        } finally {
+            em.close();
+        }
+    }
+
+    // Devuelve {filas leídas, citas insertadas}
+    private long[] cargar(Connection conn, Path archivo, ImportacionListener listener) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TEMP TABLE cita_carga (" +
+                    "fila BIGINT, fecha_hora TIMESTAMP, estado VARCHAR(20), motivo TEXT, " +
+                    "dpi VARCHAR(13), colegiado VARCHAR(20)) ON COMMIT DROP");
+        }
+
+        long leidas = 0;
+        CopyIn copy = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                "COPY cita_carga (fila, fecha_hora, estado, motivo, dpi, colegiado) FROM STDIN WITH (FORMAT csv)");
+        try (LectorRegistros lector = LectorRegistros.abrir(archivo)) {
+            StringBuilder buffer = new StringBuilder(TAMANIO_BUFFER + 1024);
+            while (lector.hasNext()) {
+                Registro registro = lector.next();
+                leidas++;
+                try {
+                    agregarFila(buffer, registro);
+                } catch (RuntimeException e) {
+                    listener.filaRechazada(new FilaRechazada(registro.numero(), e.getMessage()));
+                }
+                if (buffer.length() >= TAMANIO_BUFFER) {
+                    enviar(copy, buffer);
+                }
+            }
+            enviar(copy, buffer);
+            copy.endCopy();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (copy.isActive()) copy.cancelCopy();
+        }
+
+        try (Statement st = conn.createStatement()) {
+            st.execute("ANALYZE cita_carga");
+        }
+        reportarSinReferencia(conn, listener);
+
+        long resueltas;
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT count(*) FROM cita_carga s " +
+                     "JOIN paciente p ON p.dpi = s.dpi AND p.eliminado_en IS NULL " +
+                     "JOIN medico m ON m.colegiado = s.colegiado AND m.eliminado_en IS NULL")) {
+            rs.next();
+            resueltas = rs.getLong(1);
+        }
+        if (resueltas == 0) {
+            return new long[]{leidas, 0};
+        }
+
+        // Cada nextval('cita_seq') entrega el inicio de un bloque de 50 ids libres, igual que
+        // hace Hibernate: la fila n usa el id inicio(bloque n / 50) + n % 50. Las filas que
+        // ON CONFLICT omitió son las que no aparecen en el RETURNING
+        try (PreparedStatement ps = conn.prepareStatement(
+                "WITH bloques AS (" +
+                        "  SELECT row_number() OVER () - 1 AS bloque, inicio " +
+                        "  FROM (SELECT nextval('cita_seq') AS inicio FROM generate_series(1, ?)) g" +
+                        "), filas AS (" +
+                        "  SELECT b.inicio + f.n % ? AS id, f.* " +
+                        "  FROM (SELECT row_number() OVER (ORDER BY s.fila) - 1 AS n, s.fila, s.fecha_hora, s.estado, " +
+                        "               s.motivo, s.colegiado, p.id AS paciente_id, m.id AS medico_id " +
+                        "        FROM cita_carga s " +
+                        "        JOIN paciente p ON p.dpi = s.dpi AND p.eliminado_en IS NULL " +
+                        "        JOIN medico m ON m.colegiado = s.colegiado AND m.eliminado_en IS NULL) f " +
+                        "  JOIN bloques b ON b.bloque = f.n / ?" +
+                        "), insertadas AS (" +
+                        "  INSERT INTO cita (id, version, fecha_hora, estado, motivo, paciente_id, medico_id) " +
+                        "  SELECT id, 0, fecha_hora, estado, motivo, paciente_id, medico_id FROM filas " +
+                        "  ON CONFLICT (medico_id, fecha_hora) WHERE estado <> 'CANCELADA' DO NOTHING " +
+                        "  RETURNING id" +
+                        ") " +
+                        "SELECT f.fila, f.colegiado, f.fecha_hora FROM filas f " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM insertadas i WHERE i.id = f.id) ORDER BY f.fila")) {
+            ps.setLong(1, (resueltas + TAMANIO_BLOQUE_IDS - 1) / TAMANIO_BLOQUE_IDS);
+            ps.setInt(2, TAMANIO_BLOQUE_IDS);
+            ps.setInt(3, TAMANIO_BLOQUE_IDS);
+            ps.setFetchSize(1000);
+            long omitidas = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    omitidas++;
+                    listener.filaRechazada(new FilaRechazada(rs.getLong(1), "El médico con colegiado " + rs.getString(2)
+                            + " ya tiene una cita el " + rs.getTimestamp(3).toLocalDateTime()));
+                }
+            }
+            return new long[]{leidas, resueltas - omitidas};
+        }
+    }
+
+    private static void agregarFila(StringBuilder buffer, Registro registro) {
+        LocalDateTime fechaHora;
+        try {
+            fechaHora = LocalDateTime.parse(registro.requerido("fechaHora"));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Fecha y hora inválida (use yyyy-MM-ddTHH:mm): " + registro.campo("fechaHora"));
+        }
+        String estado = registro.campo("estado");
+        try {
+            estado = estado == null ? EstadoCita.PROGRAMADA.name() : EstadoCita.valueOf(estado.toUpperCase()).name();
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Estado de cita inválido: " + estado);
+        }
+        String dpi = registro.requerido("dpiPaciente");
+        String colegiado = registro.requerido("colegiadoMedico");
+
+        buffer.append(registro.numero()).append(',')
+                .append(fechaHora).append(',')
+                .append(estado).append(',');
+        csv(buffer, registro.campo("motivo")).append(',');
+        csv(buffer, dpi).append(',');
+        csv(buffer, colegiado).append('\n');
+    }
+
+    // Texto entre comillas; un campo vacío sin comillas es NULL en COPY csv
+    private static StringBuilder csv(StringBuilder buffer, String valor) {
+        if (valor == null) {
+            return buffer;
+        }
+        return buffer.append('"').append(valor.replace("\"", "\"\"")).append('"');
+    }
+
+    private static void enviar(CopyIn copy, StringBuilder buffer) throws SQLException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    private static void reportarSinReferencia(Connection conn, ImportacionListener listener) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.setFetchSize(1000);
+            try (ResultSet rs = st.executeQuery(
+                    "SELECT s.fila, s.dpi, s.colegiado, p.id IS NULL, m.id IS NULL FROM cita_carga s " +
+                            "LEFT JOIN paciente p ON p.dpi = s.dpi AND p.eliminado_en IS NULL " +
+                            "LEFT JOIN medico m ON m.colegiado = s.colegiado AND m.eliminado_en IS NULL " +
+                            "WHERE p.id IS NULL OR m.id IS NULL ORDER BY s.fila")) {
+                while (rs.next()) {
+                    String motivo = rs.getBoolean(4)
+                            ? "No existe paciente con DPI " + rs.getString(2)
+                            : "No existe médico con colegiado " + rs.getString(3);
+                    listener.filaRechazada(new FilaRechazada(rs.getLong(1), motivo));
+                }
+            }
+        }
+    }
+}
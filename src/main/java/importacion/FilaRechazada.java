@@ -0,0 +1,9 @@
+package importacion;
+
+public record FilaRechazada(long numero, String motivo) {
+
+    @Override
+    public String toString() {
+        return "Fila " + numero + ": " + motivo;
+    }
+}
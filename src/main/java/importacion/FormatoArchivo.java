@@ -0,0 +1,15 @@
+package importacion;
+
+import java.nio.file.Path;
+
+public enum FormatoArchivo {
+    CSV,
+    JSON;
+
+    public static FormatoArchivo de(Path archivo) {
+        String nombre = archivo.getFileName().toString().toLowerCase();
+        if (nombre.endsWith(".csv")) return CSV;
+        if (nombre.endsWith(".json")) return JSON;
+        throw new IllegalArgumentException("Formato no soportado (use .csv o .json): " + nombre);
+    }
+}
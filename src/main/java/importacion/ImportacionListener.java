@@ -0,0 +1,11 @@
+package importacion;
+
+// Recibe el avance de una importación; las filas rechazadas no se acumulan en memoria
+public interface ImportacionListener {
+
+    default void chunkCompletado(ProgresoImportacion progreso) {
+    }
+
+    default void filaRechazada(FilaRechazada fila) {
+    }
+}
@@ -0,0 +1,325 @@
+package importacion;
+
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import dto.MedicoResumen;
+import dto.PacienteResumen;
+import jakarta.persistence.EntityManager;
+import model.*;
+import service.CacheProximasCitas;
+import service.IndiceDisponibilidad;
+import service.IndicePacientes;
+import util.CacheSegundoNivel;
+import util.JPAUtil;
+import util.Validacion;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+// Importa pacientes, médicos o citas desde CSV/JSON en chunks, cada uno en su propia transacción.
+// Solo un chunk vive en memoria a la vez, así que el consumo no depende del tamaño del archivo.
+public class ImportadorMasivo {
+
+    public static final int TAMANIO_CHUNK = 1000;
+
+    private final int tamanioChunk;
+    private final PacienteDAO pacienteDAO = new PacienteDAO();
+    private final MedicoDAO medicoDAO = new MedicoDAO();
+
+    public ImportadorMasivo() {
+        this(TAMANIO_CHUNK);
+    }
+
+    public ImportadorMasivo(int tamanioChunk) {
+        this.tamanioChunk = tamanioChunk;
+    }
+
+    // Fila ya convertida; la entidad se construye con el EntityManager que la va a persistir
+    private record Pendiente(Registro registro, Function<EntityManager, Object> entidad) {
+    }
+
+    private static class Avance {
+        int chunks;
+        long leidas;
+        long importadas;
+        long rechazadas;
+    }
+
+    public ResultadoImportacion importar(Path archivo, TipoImportacion tipo,
+                                         ImportacionListener listener) throws IOException {
+        long inicio = System.nanoTime();
+        Avance avance = new Avance();
+
+        try (LectorRegistros lector = LectorRegistros.abrir(archivo)) {
+            List<Registro> chunk = new ArrayList<>(tamanioChunk);
+            while (lector.hasNext()) {
+                chunk.add(lector.next());
+                if (chunk.size() == tamanioChunk) {
+                    procesarChunk(chunk, tipo, avance, listener, inicio);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                procesarChunk(chunk, tipo, avance, listener, inicio);
+            }
+        } finally {
+            if (tipo == TipoImportacion.CITAS && avance.importadas > 0) {
+                // Las citas entraron sin pasar por MedicalService
+                IndiceDisponibilidad.getInstancia().invalidarTodo();
+                CacheProximasCitas.getInstancia().invalidarTodo();
+            }
+        }
+
+        return new ResultadoImportacion(avance.leidas, avance.importadas, avance.rechazadas,
+                Duration.ofNanos(System.nanoTime() - inicio));
+    }
+
+    private void procesarChunk(List<Registro> chunk, TipoImportacion tipo, Avance avance,
+                               ImportacionListener listener, long inicio) {
+        avance.chunks++;
+        avance.leidas += chunk.size();
+
+        List<Pendiente> pendientes = switch (tipo) {
+            case PACIENTES -> convertir(chunk, this::aPaciente, avance, listener);
+            case MEDICOS -> convertir(chunk, this::aMedico, avance, listener);
+            case CITAS -> convertirCitas(chunk, avance, listener);
+        };
+
+        if (!pendientes.isEmpty()) {
+            try {
+                escribir(pendientes, tipo, avance, listener);
+            } catch (RuntimeException e) {
+                // El chunk falló completo (p. ej. una cita en un horario ocupado o un valor que no cabe
+                // en la columna): se reintenta fila por fila para aislar las filas con problema y guardar el resto
+                for (Pendiente pendiente : pendientes) {
+                    try {
+                        escribir(List.of(pendiente), tipo, avance, listener);
+                    } catch (RuntimeException errorFila) {
+                        rechazar(pendiente.registro(), causaRaiz(errorFila), avance, listener);
+                    }
+                }
+            }
+        }
+
+        listener.chunkCompletado(new ProgresoImportacion(avance.chunks, avance.leidas, avance.importadas,
+                avance.rechazadas, Duration.ofNanos(System.nanoTime() - inicio)));
+    }
+
+    private void escribir(List<Pendiente> pendientes, TipoImportacion tipo, Avance avance, ImportacionListener listener) {
+        if (tipo != TipoImportacion.CITAS) {
+            insertarSiNoExisten(pendientes, tipo, avance, listener);
+            return;
+        }
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            long importadas = 0;
+            List<Pendiente> invalidas = new ArrayList<>();
+            List<String> motivos = new ArrayList<>();
+            for (Pendiente pendiente : pendientes) {
+                Object entidad = pendiente.entidad().apply(em);
+                String errores = Validacion.errores(entidad);
+                if (errores != null) {
+                    invalidas.add(pendiente);
+                    motivos.add(errores);
+                    continue;
+                }
+                em.persist(entidad);
+                importadas++;
+            }
+            em.getTransaction().commit();
+
+            avance.importadas += importadas;
+            for (int i = 0; i < invalidas.size(); i++) {
+                rechazar(invalidas.get(i).registro(), motivos.get(i), avance, listener);
+            }
+        } catch (RuntimeException e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    // Pacientes y médicos: un INSERT ... ON CONFLICT DO NOTHING por chunk. Un DPI o colegiado que ya
+    // existe (o se repite en el archivo) rechaza solo su fila, sin abortar ni reintentar el chunk
+    private void insertarSiNoExisten(List<Pendiente> pendientes, TipoImportacion tipo, Avance avance,
+                                     ImportacionListener listener) {
+        List<Pendiente> validas = new ArrayList<>(pendientes.size());
+        List<Object> entidades = new ArrayList<>(pendientes.size());
+        List<Pendiente> invalidas = new ArrayList<>();
+        List<String> motivos = new ArrayList<>();
+        for (Pendiente pendiente : pendientes) {
+            Object entidad = pendiente.entidad().apply(null);
+            String errores = Validacion.errores(entidad);
+            if (errores != null) {
+                invalidas.add(pendiente);
+                motivos.add(errores);
+            } else {
+                validas.add(pendiente);
+                entidades.add(entidad);
+            }
+        }
+
+        if (tipo == TipoImportacion.PACIENTES) {
+            List<Paciente> pacientes = entidades.stream().map(Paciente.class::cast).toList();
+            pacienteDAO.insertarSiNoExisten(pacientes);
+            Set<String> enEliminacion = new HashSet<>(pacienteDAO.findDpisEnEliminacion(pacientes.stream()
+                    .filter(p -> p.getId() == null).map(Paciente::getDpi).toList()));
+            for (int i = 0; i < pacientes.size(); i++) {
+                Paciente paciente = pacientes.get(i);
+                if (paciente.getId() != null) {
+                    avance.importadas++;
+                    IndicePacientes.getInstancia().pacienteRegistrado(new PacienteResumen(
+                            paciente.getId(), paciente.getNombre(), paciente.getDpi(), paciente.getTelefono()));
+                } else if (enEliminacion.contains(paciente.getDpi())) {
+                    rechazar(validas.get(i).registro(), "El DPI " + paciente.getDpi() +
+                            " es de un paciente que se está eliminando, intente de nuevo en unos momentos", avance, listener);
+                } else {
+                    rechazar(validas.get(i).registro(), "Ya existe un paciente con DPI " + paciente.getDpi(),
+                            avance, listener);
+                }
+            }
+        } else {
+            List<Medico> medicos = entidades.stream().map(Medico.class::cast).toList();
+            medicoDAO.insertarSiNoExisten(medicos);
+            CacheSegundoNivel.invalidarConsultasMedico();
+            Set<String> enEliminacion = new HashSet<>(medicoDAO.findColegiadosEnEliminacion(medicos.stream()
+                    .filter(m -> m.getId() == null).map(Medico::getColegiado).toList()));
+            for (int i = 0; i < medicos.size(); i++) {
+                Medico medico = medicos.get(i);
+                if (medico.getId() != null) {
+                    avance.importadas++;
+                    // Sin esto el médico no aparece en buscarHorariosDisponibles hasta reiniciar el nodo
+                    IndiceDisponibilidad.getInstancia().medicoRegistrado(new MedicoResumen(
+                            medico.getId(), medico.getNombre(), medico.getColegiado(), medico.getEspecialidad()));
+                } else if (enEliminacion.contains(medico.getColegiado())) {
+                    rechazar(validas.get(i).registro(), "El colegiado " + medico.getColegiado() +
+                            " es de un médico que se está eliminando, intente de nuevo en unos momentos", avance, listener);
+                } else {
+                    rechazar(validas.get(i).registro(), "Ya existe un médico con colegiado " + medico.getColegiado(),
+                            avance, listener);
+                }
+            }
+        }
+        // Se informan después del INSERT: si el chunk falla se reintenta fila por fila y se contarían dos veces
+        for (int i = 0; i < invalidas.size(); i++) {
+            rechazar(invalidas.get(i).registro(), motivos.get(i), avance, listener);
+        }
+    }
+
+    private List<Pendiente> convertir(List<Registro> chunk, Function<Registro, Object> conversor,
+                                      Avance avance, ImportacionListener listener) {
+        List<Pendiente> pendientes = new ArrayList<>(chunk.size());
+        for (Registro registro : chunk) {
+            try {
+                conversor.apply(registro);
+                // Se convierte de nuevo en cada intento: una entidad de un intento fallido ya tiene id
+                pendientes.add(new Pendiente(registro, em -> conversor.apply(registro)));
+            } catch (RuntimeException e) {
+                rechazar(registro, e.getMessage(), avance, listener);
+            }
+        }
+        return pendientes;
+    }
+
+    private List<Pendiente> convertirCitas(List<Registro> chunk, Avance avance, ImportacionListener listener) {
+        Set<String> dpis = new HashSet<>();
+        Set<String> colegiados = new HashSet<>();
+        for (Registro registro : chunk) {
+            if (registro.campo("dpiPaciente") != null) dpis.add(registro.campo("dpiPaciente"));
+            if (registro.campo("colegiadoMedico") != null) colegiados.add(registro.campo("colegiadoMedico"));
+        }
+        Map<String, Long> pacientes = pacienteDAO.findIdsByDpi(dpis);
+        Map<String, Long> medicos = medicoDAO.findIdsByColegiado(colegiados);
+
+        List<Pendiente> pendientes = new ArrayList<>(chunk.size());
+        for (Registro registro : chunk) {
+            try {
+                Long pacienteId = pacientes.get(registro.requerido("dpiPaciente"));
+                Long medicoId = medicos.get(registro.requerido("colegiadoMedico"));
+                if (pacienteId == null) {
+                    throw new IllegalArgumentException("No existe paciente con DPI " + registro.campo("dpiPaciente"));
+                }
+                if (medicoId == null) {
+                    throw new IllegalArgumentException("No existe médico con colegiado " + registro.campo("colegiadoMedico"));
+                }
+                LocalDateTime fechaHora = LocalDateTime.parse(registro.requerido("fechaHora"));
+                EstadoCita estado = estadoCita(registro.campo("estado"));
+                String motivo = registro.campo("motivo");
+
+                pendientes.add(new Pendiente(registro, em -> {
+                    Cita cita = new Cita(fechaHora, motivo,
+                            em.getReference(Paciente.class, pacienteId), em.getReference(Medico.class, medicoId));
+                    cita.setEstado(estado);
+                    return cita;
+                }));
+            } catch (DateTimeParseException e) {
+                rechazar(registro, "Fecha y hora inválida (use yyyy-MM-ddTHH:mm): " + registro.campo("fechaHora"),
+                        avance, listener);
+            } catch (RuntimeException e) {
+                rechazar(registro, e.getMessage(), avance, listener);
+            }
+        }
+        return pendientes;
+    }
+
+    private Paciente aPaciente(Registro registro) {
+        LocalDate fechaNacimiento;
+        try {
+            fechaNacimiento = LocalDate.parse(registro.requerido("fechaNacimiento"));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Fecha de nacimiento inválida (use yyyy-MM-dd): "
+                    + registro.campo("fechaNacimiento"));
+        }
+        return new Paciente(registro.campo("nombre"), registro.campo("dpi"), fechaNacimiento,
+                registro.campo("telefono"), registro.campo("email"));
+    }
+
+    private Medico aMedico(Registro registro) {
+        Especialidad especialidad;
+        try {
+            especialidad = Especialidad.valueOf(registro.requerido("especialidad").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Especialidad inválida: " + registro.campo("especialidad"));
+        }
+        return new Medico(registro.campo("nombre"), registro.campo("colegiado"), especialidad,
+                registro.campo("email"));
+    }
+
+    private static EstadoCita estadoCita(String estado) {
+        if (estado == null) {
+            return EstadoCita.PROGRAMADA;
+        }
+        try {
+            return EstadoCita.valueOf(estado.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Estado de cita inválido: " + estado);
+        }
+    }
+
+    private static void rechazar(Registro registro, String motivo, Avance avance, ImportacionListener listener) {
+        avance.rechazadas++;
+        listener.filaRechazada(new FilaRechazada(registro.numero(), motivo));
+    }
+
+    private static String causaRaiz(Throwable e) {
+        Throwable causa = e;
+        while (causa.getCause() != null && causa.getCause() != causa) {
+            causa = causa.getCause();
+        }
+        return causa.getMessage();
+    }
+}
@@ -0,0 +1,132 @@
+package importacion;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// CSV separado por comas con encabezado; admite campos entre comillas ("" escapa una comilla), que
+// pueden llevar saltos de línea: el registro sigue en las líneas siguientes hasta cerrar las comillas
+public class LectorCsv implements LectorRegistros {
+
+    private final BufferedReader reader;
+    private final List<String> encabezado;
+    private long linea = 1;
+    private Registro siguiente;
+
+    public LectorCsv(Path archivo) throws IOException {
+        this.reader = Files.newBufferedReader(archivo, StandardCharsets.UTF_8);
+        String primera = reader.readLine();
+        if (primera == null) {
+            throw new IOException("El archivo está vacío: " + archivo);
+        }
+        if (primera.startsWith("\uFEFF")) {
+            primera = primera.substring(1);
+        }
+        this.encabezado = separar(primera);
+        avanzar();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return siguiente != null;
+    }
+
+    @Override
+    public Registro next() {
+        if (siguiente == null) {
+            throw new NoSuchElementException();
+        }
+        Registro actual = siguiente;
+        avanzar();
+        return actual;
+    }
+
+    private void avanzar() {
+        try {
+            String texto;
+            do {
+                texto = reader.readLine();
+                linea++;
+            } while (texto != null && texto.isBlank());
+
+            if (texto == null) {
+                siguiente = null;
+                return;
+            }
+            // El número de registro es el de su primera línea
+            long inicio = linea;
+            StringBuilder registro = new StringBuilder(texto);
+            // Cada comilla abre o cierra y "" suma dos: con un total impar el último campo sigue abierto
+            int comillas = comillas(texto);
+            while (comillas % 2 != 0) {
+                String resto = reader.readLine();
+                if (resto == null) {
+                    throw new IOException("Comillas sin cerrar en el registro de la línea " + inicio);
+                }
+                linea++;
+                registro.append('\n').append(resto);
+                comillas += comillas(resto);
+            }
+            texto = registro.toString();
+            List<String> valores = separar(texto);
+            Map<String, String> campos = new HashMap<>();
+            for (int i = 0; i < encabezado.size() && i < valores.size(); i++) {
+                campos.put(encabezado.get(i).trim(), valores.get(i));
+            }
+            siguiente = new Registro(inicio, campos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int comillas(String texto) {
+        int total = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) == '"') {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    static List<String> separar(String linea) {
+        List<String> valores = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (entreComillas) {
+                if (c == '"' && i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                    actual.append('"');
+                    i++;
+                } else if (c == '"') {
+                    entreComillas = false;
+                } else {
+                    actual.append(c);
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == ',') {
+                valores.add(actual.toString());
+                actual.setLength(0);
+            } else {
+                actual.append(c);
+            }
+        }
+        valores.add(actual.toString());
+        return valores;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,79 @@
+package importacion;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Arreglo JSON de objetos planos: [{"nombre": "...", ...}, ...], leído token a token
+public class LectorJson implements LectorRegistros {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final JsonParser parser;
+    private long posicion = 0;
+    private Registro siguiente;
+
+    public LectorJson(Path archivo) throws IOException {
+        this.parser = FACTORY.createParser(archivo.toFile());
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new IOException("Se esperaba un arreglo JSON en " + archivo);
+        }
+        avanzar();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return siguiente != null;
+    }
+
+    @Override
+    public Registro next() {
+        if (siguiente == null) {
+            throw new NoSuchElementException();
+        }
+        Registro actual = siguiente;
+        avanzar();
+        return actual;
+    }
+
+    private void avanzar() {
+        try {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.END_ARRAY || token == null) {
+                siguiente = null;
+                return;
+            }
+            posicion++;
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Se esperaba un objeto en la posición " + posicion);
+            }
+
+            Map<String, String> campos = new HashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String nombre = parser.getCurrentName();
+                JsonToken valor = parser.nextToken();
+                if (valor.isStructStart()) {
+                    parser.skipChildren();
+                } else if (valor != JsonToken.VALUE_NULL) {
+                    campos.put(nombre, parser.getText());
+                }
+            }
+            siguiente = new Registro(posicion, campos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
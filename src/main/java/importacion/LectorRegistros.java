@@ -0,0 +1,19 @@
+package importacion;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+// Lee un archivo fila por fila, sin cargarlo completo en memoria
+public interface LectorRegistros extends Iterator<Registro>, AutoCloseable {
+
+    @Override
+    void close() throws IOException;
+
+    static LectorRegistros abrir(Path archivo) throws IOException {
+        return switch (FormatoArchivo.de(archivo)) {
+            case CSV -> new LectorCsv(archivo);
+            case JSON -> new LectorJson(archivo);
+        };
+    }
+}
@@ -0,0 +1,7 @@
+package importacion;
+
+import java.time.Duration;
+
+// Estado acumulado al terminar cada chunk
+public record ProgresoImportacion(int chunk, long leidas, long importadas, long rechazadas, Duration transcurrido) {
+}
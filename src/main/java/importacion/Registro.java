@@ -0,0 +1,20 @@
+package importacion;
+
+import java.util.Map;
+
+// Una fila del archivo de origen: línea (CSV) o posición en el arreglo (JSON) y sus campos como texto
+public record Registro(long numero, Map<String, String> campos) {
+
+    public String campo(String nombre) {
+        String valor = campos.get(nombre);
+        return valor == null || valor.isBlank() ? null : valor.trim();
+    }
+
+    public String requerido(String nombre) {
+        String valor = campo(nombre);
+        if (valor == null) {
+            throw new IllegalArgumentException("Falta el campo " + nombre);
+        }
+        return valor;
+    }
+}
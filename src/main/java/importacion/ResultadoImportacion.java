@@ -0,0 +1,11 @@
+package importacion;
+
+import java.time.Duration;
+
+public record ResultadoImportacion(long leidas, long importadas, long rechazadas, Duration duracion) {
+
+    public double filasPorSegundo() {
+        double segundos = duracion.toNanos() / 1e9;
+        return segundos > 0 ? leidas / segundos : leidas;
+    }
+}
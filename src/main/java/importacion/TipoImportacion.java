@@ -0,0 +1,7 @@
+package importacion;
+
+public enum TipoImportacion {
+    PACIENTES,
+    MEDICOS,
+    CITAS
+}
@@ -4,23 +4,27 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import java.time.LocalDateTime;
 
+// uk_cita_medico_fecha (medico_id, fecha_hora) es un índice único parcial, sin las citas canceladas:
+// hbm2ddl no lo sabe declarar, lo crea JPAUtil (ver db/06_cita_unica_no_cancelada.sql)
 @Entity
 @Table(name = "cita",
         indexes = {
                 @Index(name = "idx_cita_medico", columnList = "medico_id"),
                 @Index(name = "idx_cita_paciente", columnList = "paciente_id"),
-                @Index(name = "idx_cita_fecha_hora", columnList = "fecha_hora")
-        },
-        uniqueConstraints = @UniqueConstraint(
-                name = "uk_cita_medico_fecha",
-                columnNames = {"medico_id", "fecha_hora"}
-        ))
+                @Index(name = "idx_cita_fecha_hora_id", columnList = "fecha_hora, id")
+        })
 public class Cita {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cita_seq")
+    @SequenceGenerator(name = "cita_seq", sequenceName = "cita_seq", allocationSize = 50)
     private Long id;
 
+    // Bloqueo optimista: un UPDATE sobre una versión vieja falla en lugar de pisar otro cambio
+    @Version
+    @Column(nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long version;
+
     @NotNull(message = "La fecha y hora son obligatorias")
     @Column(name = "fecha_hora", nullable = false)
     private LocalDateTime fechaHora;
@@ -62,6 +66,8 @@ public class Cita {
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
 
+    public long getVersion() { return version; }
+
     public LocalDateTime getFechaHora() { return fechaHora; }
     public void setFechaHora(LocalDateTime fechaHora) { this.fechaHora = fechaHora; }
 
@@ -1,20 +1,40 @@
 package model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.LazyGroup;
 
+// Versión vigente del historial (lectura en una fila); las anteriores quedan en VersionHistorial.
+// Con @DynamicUpdate una edición solo reescribe los textos que cambiaron.
 @Entity
 @Table(name = "historial_medico")
+@DynamicUpdate
 public class HistorialMedico {
 
     @Id
     private Long id;
 
+    // Número de la última VersionHistorial; 0 en historiales creados antes del versionado
+    @Column(name = "numero_version", nullable = false, columnDefinition = "INTEGER DEFAULT 0")
+    private int numeroVersion;
+
+    // Los textos clínicos pueden pesar cientos de KB: se cargan juntos y solo al leer uno de ellos
+    // (requiere la mejora de bytecode), y los largos se guardan comprimidos
+    @Basic(fetch = FetchType.LAZY)
+    @LazyGroup("textos")
+    @Convert(converter = TextoComprimidoConverter.class)
     @Column(columnDefinition = "TEXT")
     private String alergias;
 
+    @Basic(fetch = FetchType.LAZY)
+    @LazyGroup("textos")
+    @Convert(converter = TextoComprimidoConverter.class)
     @Column(columnDefinition = "TEXT")
     private String antecedentes;
 
+    @Basic(fetch = FetchType.LAZY)
+    @LazyGroup("textos")
+    @Convert(converter = TextoComprimidoConverter.class)
     @Column(columnDefinition = "TEXT")
     private String observaciones;
 
@@ -52,6 +72,9 @@ public class HistorialMedico {
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
 
+    public int getNumeroVersion() { return numeroVersion; }
+    public void setNumeroVersion(int numeroVersion) { this.numeroVersion = numeroVersion; }
+
     public String getAlergias() { return alergias; }
     public void setAlergias(String alergias) { this.alergias = alergias; }
 
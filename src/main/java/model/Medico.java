@@ -4,16 +4,26 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Where;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+// Cambia poco y se lee en cada cita: caché de segundo nivel (ver util.CacheSegundoNivel)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "medico")
+// Los marcados para eliminación diferida no se ven hasta que la purga los borra
+@Where(clause = "eliminado_en IS NULL")
 @Table(name = "medico",
         uniqueConstraints = @UniqueConstraint(name = "uk_medico_colegiado", columnNames = "colegiado"))
 public class Medico {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "medico_seq")
+    @SequenceGenerator(name = "medico_seq", sequenceName = "medico_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "El nombre es obligatorio")
@@ -21,7 +31,7 @@ public class Medico {
     private String nombre;
 
     @NotBlank(message = "El número de colegiado es obligatorio")
-    @Column(nullable = false, unique = true, length = 20)
+    @Column(nullable = false, length = 20)
     private String colegiado;
 
     @NotNull(message = "La especialidad es obligatoria")
@@ -33,6 +43,10 @@ public class Medico {
     @Column(length = 100)
     private String email;
 
+    // Eliminación diferida: la fila y sus citas se borran después, en segundo plano
+    @Column(name = "eliminado_en")
+    private LocalDateTime eliminadoEn;
+
     // OneToMany - Medico es el lado inverso
     @OneToMany(mappedBy = "medico", cascade = CascadeType.REMOVE)
     private List<Cita> citas = new ArrayList<>();
@@ -63,6 +77,9 @@ public class Medico {
     public String getEmail() { return email; }
     public void setEmail(String email) { this.email = email; }
 
+    public LocalDateTime getEliminadoEn() { return eliminadoEn; }
+    public void setEliminadoEn(LocalDateTime eliminadoEn) { this.eliminadoEn = eliminadoEn; }
+
     public List<Cita> getCitas() { return citas; }
     public void setCitas(List<Cita> citas) { this.citas = citas; }
 
@@ -5,17 +5,22 @@ import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Past;
 import jakarta.validation.constraints.Pattern;
+import org.hibernate.annotations.Where;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+// Los marcados para eliminación diferida no se ven hasta que la purga los borra
+@Where(clause = "eliminado_en IS NULL")
 @Table(name = "paciente",
         uniqueConstraints = @UniqueConstraint(name = "uk_paciente_dpi", columnNames = "dpi"))
 public class Paciente {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "paciente_seq")
+    @SequenceGenerator(name = "paciente_seq", sequenceName = "paciente_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "El nombre es obligatorio")
@@ -24,7 +29,7 @@ public class Paciente {
 
     @NotBlank(message = "El DPI es obligatorio")
     @Pattern(regexp = "\\d{13}", message = "El DPI debe tener 13 dígitos")
-    @Column(nullable = false, unique = true, length = 13)
+    @Column(nullable = false, length = 13)
     private String dpi;
 
     @Past(message = "La fecha de nacimiento debe estar en el pasado")
@@ -39,8 +44,13 @@ public class Paciente {
     @Column(length = 100)
     private String email;
 
-    // OneToOne - Lado NO propietario
-    @OneToOne(mappedBy = "paciente", cascade = CascadeType.ALL, orphanRemoval = true)
+    // Eliminación diferida: la fila y sus citas se borran después, en segundo plano
+    @Column(name = "eliminado_en")
+    private LocalDateTime eliminadoEn;
+
+    // OneToOne - Lado NO propietario. Sin proxy posible, LAZY solo se respeta con la mejora de
+    // bytecode (hibernate-enhance-maven-plugin); sin ella cada Paciente cargado consultaba su historial
+    @OneToOne(mappedBy = "paciente", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     private HistorialMedico historialMedico;
 
     // OneToMany - Lado NO propietario
@@ -80,6 +90,9 @@ public class Paciente {
     public HistorialMedico getHistorialMedico() { return historialMedico; }
     public void setHistorialMedico(HistorialMedico historialMedico) { this.historialMedico = historialMedico; }
 
+    public LocalDateTime getEliminadoEn() { return eliminadoEn; }
+    public void setEliminadoEn(LocalDateTime eliminadoEn) { this.eliminadoEn = eliminadoEn; }
+
     public List<Cita> getCitas() { return citas; }
     public void setCitas(List<Cita> citas) { this.citas = citas; }
 
@@ -0,0 +1,85 @@
+package model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDateTime;
+
+// Registro de solo inserción con cada edición de un HistorialMedico. Una versión es una foto
+// completa (snapshot) o un delta de util.DeltaTexto contra la versión anterior; en un delta, un
+// campo null significa "sin cambios". El HistorialMedico sigue guardando la versión vigente.
+@Entity
+@Table(name = "historial_version",
+        uniqueConstraints = @UniqueConstraint(name = "uk_historial_version_numero",
+                columnNames = {"historial_id", "numero"}))
+public class VersionHistorial {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "historial_version_seq")
+    @SequenceGenerator(name = "historial_version_seq", sequenceName = "historial_version_seq", allocationSize = 50)
+    private Long id;
+
+    // Las versiones se borran junto con el historial en la base, sin cargarlas
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "historial_id", nullable = false,
+            foreignKey = @ForeignKey(name = "fk_version_historial"))
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private HistorialMedico historial;
+
+    @Column(nullable = false)
+    private int numero;
+
+    @Column(nullable = false)
+    private LocalDateTime fecha;
+
+    @Column(nullable = false)
+    private boolean snapshot;
+
+    @Convert(converter = TextoComprimidoConverter.class)
+    @Column(columnDefinition = "TEXT")
+    private String alergias;
+
+    @Convert(converter = TextoComprimidoConverter.class)
+    @Column(columnDefinition = "TEXT")
+    private String antecedentes;
+
+    @Convert(converter = TextoComprimidoConverter.class)
+    @Column(columnDefinition = "TEXT")
+    private String observaciones;
+
+    public VersionHistorial() {
+    }
+
+    public VersionHistorial(HistorialMedico historial, int numero, LocalDateTime fecha, boolean snapshot,
+                            String alergias, String antecedentes, String observaciones) {
+        this.historial = historial;
+        this.numero = numero;
+        this.fecha = fecha;
+        this.snapshot = snapshot;
+        this.alergias = alergias;
+        this.antecedentes = antecedentes;
+        this.observaciones = observaciones;
+    }
+
+    public Long getId() { return id; }
+
+    public HistorialMedico getHistorial() { return historial; }
+
+    public int getNumero() { return numero; }
+
+    public LocalDateTime getFecha() { return fecha; }
+
+    public boolean isSnapshot() { return snapshot; }
+
+    public String getAlergias() { return alergias; }
+
+    public String getAntecedentes() { return antecedentes; }
+
+    public String getObservaciones() { return observaciones; }
+
+    @Override
+    public String toString() {
+        return String.format("VersionHistorial{numero=%d, fecha=%s, snapshot=%s}", numero, fecha, snapshot);
+    }
+}
@@ -0,0 +1,165 @@
+package service;
+
+import dao.CitaDAO;
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import dto.ConflictoCita;
+import dto.ResultadoLote;
+import dto.SolicitudCita;
+import jakarta.persistence.EntityManager;
+import model.Cita;
+import model.Medico;
+import model.Paciente;
+import util.RestriccionesBD;
+import util.UnidadDeTrabajo;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Agenda varias citas en una sola transacción: los choques se descartan en el IndiceDisponibilidad
+// (sin ir a la base), las citas nuevas se insertan con saveAll en lotes JDBC y los candados de todos
+// los médicos involucrados se toman una vez para el lote completo
+class AgendadorLotes {
+
+    // Intentos en MEJOR_ESFUERZO cuando otro proceso gana un horario del lote; cada uno recarga el índice
+    private static final int MAX_INTENTOS = 3;
+
+    private final CitaDAO citaDAO;
+    private final PacienteDAO pacienteDAO;
+    private final MedicoDAO medicoDAO;
+    private final IndiceDisponibilidad indice;
+    private final CoordinadorReservas coordinador;
+    private final CacheProximasCitas proximasCitas = CacheProximasCitas.getInstancia();
+
+    AgendadorLotes(CitaDAO citaDAO, PacienteDAO pacienteDAO, MedicoDAO medicoDAO, IndiceDisponibilidad indice,
+                   CoordinadorReservas coordinador) {
+        this.citaDAO = citaDAO;
+        this.pacienteDAO = pacienteDAO;
+        this.medicoDAO = medicoDAO;
+        this.indice = indice;
+        this.coordinador = coordinador;
+    }
+
+    ResultadoLote agendar(List<SolicitudCita> solicitudes, ModoLote modo) throws Exception {
+        for (int intento = 1; ; intento++) {
+            List<SolicitudCita> aceptadas = new ArrayList<>();
+            List<IndiceDisponibilidad.Reserva> reservas = new ArrayList<>();
+            List<ConflictoCita> conflictos = new ArrayList<>();
+            LocalDateTime ahora = LocalDateTime.now();
+            for (SolicitudCita s : solicitudes) {
+                if (s.fechaHora().isBefore(ahora)) {
+                    conflictos.add(new ConflictoCita(s, "No se puede agendar cita en el pasado"));
+                    continue;
+                }
+                try {
+                    reservas.add(indice.reservar(s.medicoId(), s.fechaHora()));
+                    aceptadas.add(s);
+                } catch (Exception e) {
+                    conflictos.add(new ConflictoCita(s, e.getMessage()));
+                }
+            }
+            if (aceptadas.isEmpty() || (modo == ModoLote.TODO_O_NADA && !conflictos.isEmpty())) {
+                reservas.forEach(indice::liberar);
+                return new ResultadoLote(List.of(), conflictos);
+            }
+
+            Set<Long> medicoIds = new LinkedHashSet<>();
+            aceptadas.forEach(s -> medicoIds.add(s.medicoId()));
+            UnidadDeTrabajo.despuesDeRevertir(() -> reservas.forEach(indice::liberar));
+            try {
+                ResultadoLote escrito = coordinador.ejecutar(medicoIds, em -> escribir(em, aceptadas, reservas, modo));
+                conflictos.addAll(escrito.conflictos());
+                return new ResultadoLote(escrito.citaIds(), conflictos);
+            } catch (Exception e) {
+                reservas.forEach(indice::liberar);
+                String restriccion = RestriccionesBD.violada(e);
+                if ("uk_cita_medico_fecha".equals(restriccion)) {
+                    // Otro proceso agendó alguno de los horarios: con el índice de esos médicos recargado,
+                    // un segundo intento reporta cada choque en lugar de fallar el lote completo
+                    medicoIds.forEach(indice::invalidar);
+                    medicoIds.forEach(proximasCitas::invalidar);
+                    if (intento == 1 || (modo == ModoLote.MEJOR_ESFUERZO && intento < MAX_INTENTOS)) {
+                        continue;
+                    }
+                    if (modo == ModoLote.MEJOR_ESFUERZO) {
+                        // Otros procesos siguen ganando los horarios: se reporta en lugar de fallar el lote
+                        aceptadas.forEach(s -> conflictos.add(new ConflictoCita(s, "El médico ya tiene una cita en ese horario")));
+                        return new ResultadoLote(List.of(), conflictos);
+                    }
+                    throw new Exception("El médico ya tiene una cita en ese horario");
+                }
+                if ("fk_cita_paciente".equals(restriccion)) {
+                    throw new Exception("Paciente no encontrado");
+                }
+                if ("fk_cita_medico".equals(restriccion)) {
+                    medicoIds.forEach(indice::invalidar);
+                    throw new Exception("Médico no encontrado");
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Devuelve sus propios conflictos: el coordinador puede repetir el trabajo completo ante un error transitorio
+    private ResultadoLote escribir(EntityManager em, List<SolicitudCita> aceptadas,
+                                   List<IndiceDisponibilidad.Reserva> reservadas, ModoLote modo) throws Exception {
+        // Como en agendarCita: pacientes y médicos marcados para eliminar no reciben citas
+        Set<Long> pacienteIds = new HashSet<>();
+        Set<Long> medicoIds = new HashSet<>();
+        aceptadas.forEach(s -> {
+            pacienteIds.add(s.pacienteId());
+            medicoIds.add(s.medicoId());
+        });
+        Set<Long> pacientesVigentes = new HashSet<>(pacienteDAO.bloquearVigentes(pacienteIds));
+        Set<Long> medicosVigentes = new HashSet<>(medicoDAO.bloquearVigentes(medicoIds));
+
+        List<SolicitudCita> solicitudes = new ArrayList<>(aceptadas.size());
+        List<IndiceDisponibilidad.Reserva> reservas = new ArrayList<>(aceptadas.size());
+        List<ConflictoCita> conflictos = new ArrayList<>();
+        List<IndiceDisponibilidad.Reserva> descartadas = new ArrayList<>();
+        for (int i = 0; i < aceptadas.size(); i++) {
+            SolicitudCita s = aceptadas.get(i);
+            String razon = !pacientesVigentes.contains(s.pacienteId()) ? "Paciente no encontrado"
+                    : !medicosVigentes.contains(s.medicoId()) ? "Médico no encontrado" : null;
+            if (razon == null) {
+                solicitudes.add(s);
+                reservas.add(reservadas.get(i));
+            } else if (modo == ModoLote.TODO_O_NADA) {
+                throw new Exception(razon);
+            } else {
+                conflictos.add(new ConflictoCita(s, razon));
+                descartadas.add(reservadas.get(i));
+            }
+        }
+        UnidadDeTrabajo.despuesDeConfirmar(() -> descartadas.forEach(indice::liberar));
+        if (solicitudes.isEmpty()) {
+            return new ResultadoLote(List.of(), conflictos);
+        }
+
+        Map<Long, Paciente> pacientes = new HashMap<>();
+        Map<Long, Medico> medicos = new HashMap<>();
+        List<Cita> citas = new ArrayList<>(solicitudes.size());
+        for (SolicitudCita s : solicitudes) {
+            citas.add(new Cita(s.fechaHora(), s.motivo(),
+                    pacientes.computeIfAbsent(s.pacienteId(), id -> em.getReference(Paciente.class, id)),
+                    medicos.computeIfAbsent(s.medicoId(), id -> em.getReference(Medico.class, id))));
+        }
+        citaDAO.saveAll(citas);
+        em.flush();
+
+        List<Long> ids = citas.stream().map(Cita::getId).toList();
+        UnidadDeTrabajo.despuesDeConfirmar(() -> {
+            for (int i = 0; i < ids.size(); i++) {
+                indice.confirmar(reservas.get(i), ids.get(i));
+                proximasCitas.invalidar(solicitudes.get(i).medicoId());
+            }
+        });
+        return new ResultadoLote(ids, conflictos);
+    }
+}
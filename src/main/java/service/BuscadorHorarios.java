@@ -0,0 +1,106 @@
+package service;
+
+import dto.HorarioDisponible;
+import dto.MedicoResumen;
+import model.Especialidad;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// Primeros horarios libres de una especialidad, sobre el IndiceDisponibilidad (sin consultas a la base).
+// Cada médico aporta sus horarios libres en orden y una cola de prioridad los mezcla por hora de inicio,
+// así solo se recorre de cada agenda lo necesario para llenar el resultado.
+public class BuscadorHorarios {
+
+    // Tiempo que bloquea una cita ya agendada (la cita no guarda su duración)
+    public static final Duration DURACION_CITA = Duration.ofMinutes(30);
+    public static final LocalTime INICIO_JORNADA = LocalTime.of(8, 0);
+    public static final LocalTime FIN_JORNADA = LocalTime.of(17, 0);
+    public static final Set<DayOfWeek> DIAS_LABORALES = EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY);
+
+    private static final Comparator<Candidato> POR_INICIO =
+            Comparator.comparing((Candidato c) -> c.inicio).thenComparing(c -> c.medico.id());
+
+    private final IndiceDisponibilidad indice;
+
+    public BuscadorHorarios(IndiceDisponibilidad indice) {
+        this.indice = indice;
+    }
+
+    private static final class Candidato {
+        final MedicoResumen medico;
+        LocalDateTime inicio;
+
+        Candidato(MedicoResumen medico, LocalDateTime inicio) {
+            this.medico = medico;
+            this.inicio = inicio;
+        }
+    }
+
+    // Horarios de la duración pedida, alineados a la jornada (08:00, 08:00 + duración, ...), que
+    // empiezan en [desde, hasta - duración]; ordenados por hora y luego por médico
+    public List<HorarioDisponible> buscar(Especialidad especialidad, LocalDateTime desde, LocalDateTime hasta,
+                                          Duration duracion, int limite) {
+        // En la cola, el inicio de cada médico es una cota inferior de su próximo horario libre: al sacar el
+        // menor y comprobarlo, o es libre (y ningún otro médico tiene uno antes) o avanza tras el choque.
+        // Así solo se revisan las agendas hasta la hora del último horario devuelto.
+        PriorityQueue<Candidato> cola = new PriorityQueue<>(POR_INICIO);
+        LocalDateTime primerInicio = alinear(desde, duracion, hasta);
+        if (primerInicio == null) {
+            return List.of();
+        }
+        for (MedicoResumen medico : indice.medicosDe(especialidad)) {
+            cola.add(new Candidato(medico, primerInicio));
+        }
+
+        List<HorarioDisponible> horarios = new ArrayList<>(limite);
+        while (horarios.size() < limite && !cola.isEmpty()) {
+            Candidato c = cola.poll();
+            LocalDateTime fin = c.inicio.plus(duracion);
+            // Choca con una cita que empieza antes de que termine el horario y termina después de que empieza
+            LocalDateTime choque = indice.primerOcupado(c.medico.id(),
+                    c.inicio.minus(DURACION_CITA).plusNanos(1_000), fin);
+            if (choque == null) {
+                horarios.add(new HorarioDisponible(c.medico.id(), c.medico.nombre(), c.medico.especialidad(),
+                        c.inicio, fin));
+                c.inicio = alinear(fin, duracion, hasta);
+            } else {
+                c.inicio = alinear(choque.plus(DURACION_CITA), duracion, hasta);
+            }
+            if (c.inicio != null) {
+                cola.add(c);
+            }
+        }
+        return horarios;
+    }
+
+    // Primer inicio de horario >= t dentro de la jornada laboral, o null si ya no cabe antes de hasta
+    private static LocalDateTime alinear(LocalDateTime t, Duration duracion, LocalDateTime hasta) {
+        for (LocalDate dia = t.toLocalDate(); !dia.atTime(INICIO_JORNADA).plus(duracion).isAfter(hasta);
+             dia = dia.plusDays(1)) {
+            if (!DIAS_LABORALES.contains(dia.getDayOfWeek())) {
+                continue;
+            }
+            LocalDateTime inicioDia = dia.atTime(INICIO_JORNADA);
+            LocalDateTime candidato = inicioDia;
+            if (t.isAfter(inicioDia)) {
+                long pasos = Math.ceilDiv(Duration.between(inicioDia, t).toNanos(), duracion.toNanos());
+                candidato = inicioDia.plus(duracion.multipliedBy(pasos));
+            }
+            LocalDateTime fin = candidato.plus(duracion);
+            if (!fin.isAfter(dia.atTime(FIN_JORNADA)) && !fin.isAfter(hasta)) {
+                return candidato;
+            }
+        }
+        return null;
+    }
+}
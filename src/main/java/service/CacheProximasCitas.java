@@ -0,0 +1,209 @@
+package service;
+
+import dao.CitaDAO;
+import dao.MedicoDAO;
+import dto.MedicoResumen;
+import dto.ProximaCita;
+import model.EstadoCita;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Próximas citas programadas por médico, en memoria: la agenda se lee de aquí y solo los médicos que
+// faltan van a la base (una consulta para todos ellos). Cada médico guarda hasta PROFUNDIDAD citas;
+// las que pasan a ser pasado se descartan al leer, sin volver a la base. Las escrituras del servicio
+// quitan la cita cambiada o eliminada, o descartan la lista del médico si la cita es nueva.
+// Una carga que se cruza con una escritura no se guarda: cada médico lleva un contador de escrituras
+// y la lista cargada solo entra si el contador no cambió durante la consulta.
+public class CacheProximasCitas {
+
+    public static final boolean ACTIVA = !"false".equalsIgnoreCase(System.getProperty("hospital.agenda.cache.activa"));
+    // Citas que se cargan por médico aunque la pantalla pida menos, para absorber las que van pasando
+    public static final int PROFUNDIDAD = Integer.getInteger("hospital.agenda.cache.profundidad", 20);
+
+    private static final CacheProximasCitas INSTANCIA = new CacheProximasCitas(new CitaDAO(), new MedicoDAO());
+
+    private final CitaDAO citaDAO;
+    private final MedicoDAO medicoDAO;
+    private final Map<Long, Entrada> entradas = new ConcurrentHashMap<>();
+    private final Map<Long, Long> escrituras = new ConcurrentHashMap<>();
+    // Sube con invalidarTodo: descarta las cargas en curso de cualquier médico
+    private final AtomicLong generacion = new AtomicLong();
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder consultas = new LongAdder();
+    private final LongAdder cargasDescartadas = new LongAdder();
+    private final LongAdder invalidaciones = new LongAdder();
+    private final LongAdder parches = new LongAdder();
+    private final LongAdder citasVencidas = new LongAdder();
+
+    CacheProximasCitas(CitaDAO citaDAO, MedicoDAO medicoDAO) {
+        this.citaDAO = citaDAO;
+        this.medicoDAO = medicoDAO;
+    }
+
+    public static CacheProximasCitas getInstancia() {
+        return INSTANCIA;
+    }
+
+    // completa: no hay más citas programadas que las de la lista
+    private record Entrada(List<ProximaCita> citas, boolean completa) {
+    }
+
+    public record Estadisticas(long aciertos, long fallos, long consultas, long cargasDescartadas,
+                               long invalidaciones, long parches, long citasVencidas, int medicos) {
+        public double tasaAciertos() {
+            long total = aciertos + fallos;
+            return total == 0 ? 0 : (double) aciertos / total;
+        }
+    }
+
+    // Las próximas limite citas de cada médico (todos si medicoIds es null), en el orden de
+    // CitaDAO.findProximasCitasPorMedico. El orden de los médicos sale de la lista de médicos (en el caché
+    // de consultas) para respetar la collation de la base; los eliminados no están en ella
+    public List<ProximaCita> proximas(Collection<Long> medicoIds, int limite) {
+        LocalDateTime ahora = LocalDateTime.now();
+        Set<Long> pedidos = medicoIds != null ? new HashSet<>(medicoIds) : null;
+        List<Long> ids = medicoDAO.findResumenes().stream()
+                .map(MedicoResumen::id)
+                .filter(id -> pedidos == null || pedidos.contains(id))
+                .toList();
+
+        Map<Long, List<ProximaCita>> encontradas = new HashMap<>();
+        List<Long> faltantes = new ArrayList<>();
+        for (Long id : ids) {
+            List<ProximaCita> citas = leer(id, ahora, limite);
+            if (citas != null) {
+                aciertos.increment();
+                encontradas.put(id, citas);
+            } else {
+                fallos.increment();
+                faltantes.add(id);
+            }
+        }
+        if (!faltantes.isEmpty()) {
+            encontradas.putAll(cargar(faltantes, medicoIds == null && faltantes.size() == ids.size(),
+                    Math.max(limite, PROFUNDIDAD), limite));
+        }
+
+        List<ProximaCita> resultado = new ArrayList<>();
+        ids.forEach(id -> resultado.addAll(encontradas.get(id)));
+        return resultado;
+    }
+
+    public Estadisticas estadisticas() {
+        return new Estadisticas(aciertos.sum(), fallos.sum(), consultas.sum(), cargasDescartadas.sum(),
+                invalidaciones.sum(), parches.sum(), citasVencidas.sum(), entradas.size());
+    }
+
+    // Cita nueva o reactivada: hacen falta los nombres del paciente, se vuelve a leer en el próximo uso
+    public void invalidar(Long medicoId) {
+        escrito(medicoId);
+        entradas.remove(medicoId);
+        invalidaciones.increment();
+    }
+
+    public void invalidarTodo() {
+        generacion.incrementAndGet();
+        entradas.clear();
+        invalidaciones.increment();
+    }
+
+    public void estadoCambiado(Long medicoId, Long citaId, EstadoCita estado) {
+        if (estado == EstadoCita.PROGRAMADA) {
+            invalidar(medicoId);
+        } else {
+            citaEliminada(medicoId, citaId);
+        }
+    }
+
+    // Quitar una cita deja un prefijo correcto: las que no se cargaron son todas posteriores
+    public void citaEliminada(Long medicoId, Long citaId) {
+        escrito(medicoId);
+        entradas.computeIfPresent(medicoId, (id, entrada) -> {
+            List<ProximaCita> restantes = new ArrayList<>(entrada.citas());
+            return restantes.removeIf(c -> c.citaId().equals(citaId))
+                    ? new Entrada(List.copyOf(restantes), entrada.completa()) : entrada;
+        });
+        parches.increment();
+    }
+
+    public void medicoEliminado(Long medicoId) {
+        escrito(medicoId);
+        entradas.remove(medicoId);
+    }
+
+    private void escrito(Long medicoId) {
+        escrituras.merge(medicoId, 1L, Long::sum);
+    }
+
+    // null si hay que ir a la base: no está, o las vigentes no alcanzan y pudo haber más
+    private List<ProximaCita> leer(Long medicoId, LocalDateTime ahora, int limite) {
+        Entrada entrada = entradas.get(medicoId);
+        if (entrada == null) {
+            return null;
+        }
+        List<ProximaCita> citas = entrada.citas();
+        int vencidas = 0;
+        while (vencidas < citas.size() && !citas.get(vencidas).fechaHora().isAfter(ahora)) {
+            vencidas++;
+        }
+        if (vencidas > 0) {
+            Entrada recortada = new Entrada(List.copyOf(citas.subList(vencidas, citas.size())), entrada.completa());
+            // Si otro hilo la cambió mientras tanto, se deja la suya y se recorta en la siguiente lectura
+            if (entradas.replace(medicoId, entrada, recortada)) {
+                citasVencidas.add(vencidas);
+            }
+            entrada = recortada;
+            citas = recortada.citas();
+        }
+        if (citas.size() < limite && !entrada.completa()) {
+            return null;
+        }
+        return citas.size() <= limite ? citas : citas.subList(0, limite);
+    }
+
+    // todos: faltan todos los médicos, se consulta sin la lista de ids
+    private Map<Long, List<ProximaCita>> cargar(List<Long> medicoIds, boolean todos, int profundidad, int limite) {
+        long generacionAntes = generacion.get();
+        Map<Long, Long> antes = new HashMap<>();
+        medicoIds.forEach(id -> antes.put(id, escrituras.getOrDefault(id, 0L)));
+
+        Map<Long, List<ProximaCita>> cargadas = new HashMap<>();
+        medicoIds.forEach(id -> cargadas.put(id, new ArrayList<>()));
+        consultas.increment();
+        for (ProximaCita c : citaDAO.findProximasCitasPorMedico(todos ? null : medicoIds, profundidad)) {
+            // Sin lista de ids pueden venir médicos registrados después de leer la lista de médicos
+            List<ProximaCita> citas = cargadas.get(c.medicoId());
+            if (citas != null) {
+                citas.add(c);
+            }
+        }
+
+        Map<Long, List<ProximaCita>> resultado = new HashMap<>();
+        cargadas.forEach((id, citas) -> {
+            Entrada nueva = new Entrada(List.copyOf(citas), citas.size() < profundidad);
+            // compute serializa contra los parches del mismo médico; una escritura posterior a la
+            // consulta ya cambió el contador y la carga se descarta (la siguiente lectura recarga)
+            entradas.compute(id, (k, actual) -> {
+                if (generacion.get() == generacionAntes && escrituras.getOrDefault(id, 0L).equals(antes.get(id))) {
+                    return nueva;
+                }
+                cargasDescartadas.increment();
+                return actual;
+            });
+            resultado.put(id, citas.size() <= limite ? nueva.citas() : nueva.citas().subList(0, limite));
+        });
+        return resultado;
+    }
+}
@@ -0,0 +1,153 @@
+package service;
+
+import dao.CitaDAO;
+import model.EstadoCita;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Tarea periódica que saca de PROGRAMADA las citas que ya pasaron, según una PoliticaCierre.
+// Trabaja en lotes de tamanioLote filas, cada uno en su propia transacción, para no sostener
+// candados largos sobre cita; en simulación solo cuenta lo que cerraría.
+public class CierreProgramadoCitas {
+
+    private static final Logger LOG = Logger.getLogger(CierreProgramadoCitas.class.getName());
+
+    public static final Duration INTERVALO = Duration.ofMinutes(Long.getLong("hospital.cierre.intervaloMinutos", 60));
+
+    private final CitaDAO citaDAO = new CitaDAO();
+    private final IndiceDisponibilidad indice = IndiceDisponibilidad.getInstancia();
+    private final PoliticaCierre politica;
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+
+    private final LongAdder ejecuciones = new LongAdder();
+    private final LongAdder filasCerradas = new LongAdder();
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder errores = new LongAdder();
+    private volatile Ejecucion ultima;
+
+    public CierreProgramadoCitas(PoliticaCierre politica) {
+        this.politica = politica;
+    }
+
+    public record Ejecucion(LocalDateTime inicio, boolean simulacion, long filas, int lotes,
+                            Duration duracion, String error) {
+    }
+
+    public record Estadisticas(long ejecuciones, long filasCerradas, long lotes, long errores, Ejecucion ultima) {
+    }
+
+    public PoliticaCierre getPolitica() {
+        return politica;
+    }
+
+    public synchronized void iniciar(Duration intervalo) {
+        if (!politica.configurada()) {
+            throw new IllegalStateException("Indique -Dhospital.cierre.estado (ATENDIDA o CANCELADA) para el cierre programado");
+        }
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "cierre-citas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        executor.scheduleWithFixedDelay(this::ejecutarProgramado,
+                intervalo.toMillis(), intervalo.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void detener() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    // Corre una vez ahora con la política dada; si ya hay una ejecución en curso no hace nada y devuelve null
+    public Ejecucion ejecutar(PoliticaCierre politica) {
+        if (!politica.configurada() && !politica.simulacion()) {
+            throw new IllegalArgumentException("La política de cierre no indica el estado final de las citas");
+        }
+        if (!enCurso.compareAndSet(false, true)) {
+            return null;
+        }
+        LocalDateTime inicio = LocalDateTime.now();
+        long t0 = System.nanoTime();
+        long filas = 0;
+        int lotesEjecucion = 0;
+        String error = null;
+        try {
+            LocalDateTime limite = inicio.minus(politica.margen());
+            if (politica.simulacion()) {
+                filas = citaDAO.countProgramadasAntesDe(limite);
+                lotesEjecucion = (int) ((filas + politica.tamanioLote() - 1) / politica.tamanioLote());
+            } else {
+                int cerradas;
+                do {
+                    cerradas = citaDAO.cerrarLoteProgramadasAntesDe(limite, politica.nuevoEstado(), politica.tamanioLote());
+                    filas += cerradas;
+                    lotesEjecucion++;
+                    if (cerradas == politica.tamanioLote() && !politica.pausaEntreLotes().isZero()) {
+                        Thread.sleep(politica.pausaEntreLotes().toMillis());
+                    }
+                } while (cerradas == politica.tamanioLote());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "Interrumpido";
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+            LOG.log(Level.WARNING, "Falló el cierre de citas pasadas", e);
+        } finally {
+            // Los lotes ya confirmados cuentan aunque uno posterior falle
+            if (!politica.simulacion() && filas > 0 && politica.nuevoEstado() == EstadoCita.CANCELADA) {
+                indice.invalidarTodo();
+            }
+            enCurso.set(false);
+        }
+
+        Ejecucion ejecucion = new Ejecucion(inicio, politica.simulacion(), filas, lotesEjecucion,
+                Duration.ofNanos(System.nanoTime() - t0), error);
+        ejecuciones.increment();
+        lotes.add(lotesEjecucion);
+        if (!politica.simulacion()) {
+            filasCerradas.add(filas);
+        }
+        if (error != null) {
+            errores.increment();
+        }
+        ultima = ejecucion;
+        LOG.info(() -> String.format("Cierre de citas%s: %d filas -> %s en %d lotes, %d ms",
+                ejecucion.simulacion() ? " (simulación)" : "", ejecucion.filas(), politica.nuevoEstado(),
+                ejecucion.lotes(), ejecucion.duracion().toMillis()));
+        return ejecucion;
+    }
+
+    public Estadisticas estadisticas() {
+        return new Estadisticas(ejecuciones.sum(), filasCerradas.sum(), lotes.sum(), errores.sum(), ultima);
+    }
+
+    private void ejecutarProgramado() {
+        // Una excepción que escape cancelaría las siguientes ejecuciones del executor
+        try {
+            ejecutar(politica);
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Error inesperado en el cierre programado de citas", e);
+        }
+    }
+}
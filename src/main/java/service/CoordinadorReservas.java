@@ -0,0 +1,131 @@
+package service;
+
+import jakarta.persistence.OptimisticLockException;
+import org.hibernate.StaleStateException;
+import util.UnidadDeTrabajo;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Serializa las escrituras sobre la agenda de un mismo médico dentro de este proceso con candados
+// por franja (medico_id -> una de N franjas) y reintenta, con un límite, las unidades de trabajo que
+// fallan por conflicto de versión (@Version en Cita: el cambio concurrente vino de otro nodo o de
+// una escritura que no pasa por aquí).
+public class CoordinadorReservas {
+
+    public static final int FRANJAS = Integer.getInteger("hospital.reservas.franjas", 64);
+    public static final int MAX_REINTENTOS = Integer.getInteger("hospital.reservas.reintentos", 3);
+    private static final long ESPERA_MAXIMA_MS = 5_000;
+
+    private static final CoordinadorReservas INSTANCIA = new CoordinadorReservas(FRANJAS);
+
+    private final ReentrantLock[] candados;
+    private final LongAdder operaciones = new LongAdder();
+    private final LongAdder reintentos = new LongAdder();
+    private final LongAdder agotadas = new LongAdder();
+    private final LongAdder esperaNanos = new LongAdder();
+
+    public CoordinadorReservas(int franjas) {
+        candados = new ReentrantLock[franjas];
+        for (int i = 0; i < franjas; i++) {
+            candados[i] = new ReentrantLock();
+        }
+    }
+
+    public static CoordinadorReservas getInstancia() {
+        return INSTANCIA;
+    }
+
+    public record Estadisticas(long operaciones, long reintentos, long agotadas, double esperaPromedioMs) {
+    }
+
+    // Ejecuta la unidad de trabajo con el candado del médico tomado hasta después del commit.
+    // Dentro de una unidad ya activa no se reintenta (la transacción de afuera decide) y el candado se
+    // suelta cuando esa unidad confirma o revierte, no al volver de aquí.
+    public <T> T ejecutar(Long medicoId, UnidadDeTrabajo.Trabajo<T> trabajo) throws Exception {
+        return ejecutar(List.of(medicoId), trabajo);
+    }
+
+    // Igual, con los candados de varios médicos; se toman en orden de franja para no bloquearse entre lotes
+    public <T> T ejecutar(Collection<Long> medicoIds, UnidadDeTrabajo.Trabajo<T> trabajo) throws Exception {
+        int[] franjas = medicoIds.stream().mapToInt(this::franja).distinct().sorted().toArray();
+        long inicio = System.nanoTime();
+        int tomados = 0;
+        boolean diferido = false;
+        try {
+            for (int franja : franjas) {
+                if (!candados[franja].tryLock(ESPERA_MAXIMA_MS, TimeUnit.MILLISECONDS)) {
+                    throw new Exception("La agenda del médico está ocupada, intente de nuevo");
+                }
+                tomados++;
+            }
+            esperaNanos.add(System.nanoTime() - inicio);
+            operaciones.increment();
+            if (UnidadDeTrabajo.activa()) {
+                // Soltarlo antes del commit de afuera dejaría a otro hilo agendar sin ver esta escritura.
+                // Las acciones corren en este mismo hilo, dueño de los candados
+                Runnable soltar = () -> soltar(franjas, franjas.length);
+                UnidadDeTrabajo.despuesDeConfirmar(soltar);
+                UnidadDeTrabajo.despuesDeRevertir(soltar);
+                diferido = true;
+                return UnidadDeTrabajo.ejecutar(trabajo);
+            }
+            return conReintentos(trabajo);
+        } finally {
+            if (!diferido) {
+                soltar(franjas, tomados);
+            }
+        }
+    }
+
+    private void soltar(int[] franjas, int tomados) {
+        for (int i = tomados - 1; i >= 0; i--) {
+            candados[franjas[i]].unlock();
+        }
+    }
+
+    private <T> T conReintentos(UnidadDeTrabajo.Trabajo<T> trabajo) throws Exception {
+        for (int intento = 1; ; intento++) {
+            try {
+                return UnidadDeTrabajo.ejecutar(trabajo);
+            } catch (Exception e) {
+                if (!esConflictoDeVersion(e)) {
+                    throw e;
+                }
+                if (intento > MAX_REINTENTOS) {
+                    agotadas.increment();
+                    throw new Exception("La cita fue modificada por otro usuario, intente de nuevo", e);
+                }
+                reintentos.increment();
+                Thread.sleep(ThreadLocalRandom.current().nextLong(1, 5L * intento + 1));
+            }
+        }
+    }
+
+    public Estadisticas estadisticas() {
+        long n = operaciones.sum();
+        return new Estadisticas(n, reintentos.sum(), agotadas.sum(),
+                n == 0 ? 0 : esperaNanos.sum() / 1e6 / n);
+    }
+
+    private int franja(Long medicoId) {
+        long h = medicoId * 0x9E3779B97F4A7C15L;
+        return (int) ((h ^ (h >>> 32)) & Integer.MAX_VALUE) % candados.length;
+    }
+
+    private static boolean esConflictoDeVersion(Throwable error) {
+        for (Throwable causa = error; causa != null; causa = causa.getCause()) {
+            if (causa instanceof OptimisticLockException || causa instanceof StaleStateException) {
+                return true;
+            }
+            if (causa.getCause() == causa) {
+                break;
+            }
+        }
+        return false;
+    }
+}
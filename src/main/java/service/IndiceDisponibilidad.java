@@ -0,0 +1,210 @@
+package service;
+
+import dao.CitaDAO;
+import dao.MedicoDAO;
+import dto.MedicoResumen;
+import dto.OcupacionCita;
+import model.Especialidad;
+import model.EstadoCita;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Horarios tomados por médico, en memoria, para rechazar un choque de agenda sin ir a la base.
+// Refleja uk_cita_medico_fecha, que solo cubre las citas no canceladas: una cancelada no ocupa el
+// horario y un nuevo agendamiento en él inserta otra fila.
+// La restricción de la base sigue siendo la última palabra (otro proceso pudo agendar).
+public class IndiceDisponibilidad {
+
+    // Un horario apartado por un agendamiento que aún no confirma guarda una marca negativa única
+    private static final AtomicLong MARCAS = new AtomicLong();
+
+    private static final IndiceDisponibilidad INSTANCIA = new IndiceDisponibilidad(new CitaDAO(), new MedicoDAO());
+
+    private final CitaDAO citaDAO;
+    private final MedicoDAO medicoDAO;
+    // calentar() e invalidarTodo() la reemplazan completa: nadie ve el mapa vacío a medio cargar
+    private volatile Map<Long, Agenda> agendas = new ConcurrentHashMap<>();
+    // Médicos por especialidad, para buscar horarios sin consultar la base; null hasta calentar()
+    private volatile Map<Especialidad, List<MedicoResumen>> directorio;
+
+    IndiceDisponibilidad(CitaDAO citaDAO, MedicoDAO medicoDAO) {
+        this.citaDAO = citaDAO;
+        this.medicoDAO = medicoDAO;
+    }
+
+    public static IndiceDisponibilidad getInstancia() {
+        return INSTANCIA;
+    }
+
+    // Horario -> id de cita. Las lecturas no bloquean; los cambios se serializan por médico
+    static final class Agenda {
+        final ConcurrentSkipListMap<LocalDateTime, Long> ocupados = new ConcurrentSkipListMap<>();
+        // Inicio del día siguiente a la carga o a la última poda, en milisegundos
+        private volatile long podarEn = manana();
+
+        // En el primer uso de cada día se descartan los horarios de días anteriores, como si se cargara de nuevo
+        void podar() {
+            if (System.currentTimeMillis() >= podarEn) {
+                podarEn = manana();
+                ocupados.headMap(desde()).clear();
+            }
+        }
+    }
+
+    // Resultado de apartar un horario
+    public record Reserva(Long medicoId, LocalDateTime fechaHora, long marca) {
+    }
+
+    // Carga de una vez los médicos y los horarios de hoy en adelante de todos ellos
+    public synchronized void calentar() {
+        Map<Especialidad, List<MedicoResumen>> medicos = new EnumMap<>(Especialidad.class);
+        Map<Long, Agenda> cargadas = new ConcurrentHashMap<>();
+        for (MedicoResumen m : medicoDAO.findResumenes()) {
+            medicos.computeIfAbsent(m.especialidad(), e -> new CopyOnWriteArrayList<>()).add(m);
+            cargadas.put(m.id(), new Agenda());
+        }
+        for (OcupacionCita c : citaDAO.findOcupacionDesde(desde(), null)) {
+            registrar(cargadas.computeIfAbsent(c.medicoId(), id -> new Agenda()), c);
+        }
+        agendas = cargadas;
+        directorio = medicos;
+    }
+
+    public List<MedicoResumen> medicosDe(Especialidad especialidad) {
+        Map<Especialidad, List<MedicoResumen>> actual = directorio;
+        if (actual == null) {
+            calentar();
+            actual = directorio;
+        }
+        return actual.getOrDefault(especialidad, List.of());
+    }
+
+    public void medicoRegistrado(MedicoResumen medico) {
+        Map<Especialidad, List<MedicoResumen>> actual = directorio;
+        if (actual != null) {
+            actual.computeIfAbsent(medico.especialidad(), e -> new CopyOnWriteArrayList<>()).add(medico);
+        }
+    }
+
+    public void medicoEliminado(Long medicoId) {
+        Map<Especialidad, List<MedicoResumen>> actual = directorio;
+        if (actual != null) {
+            actual.values().forEach(medicos -> medicos.removeIf(m -> m.id().equals(medicoId)));
+        }
+        agendas.remove(medicoId);
+    }
+
+    // Un médico registrado, modificado o eliminado en otro nodo: el directorio y su agenda se vuelven
+    // a leer en el próximo uso
+    public void medicoCambiado(Long medicoId) {
+        directorio = null;
+        agendas.remove(medicoId);
+    }
+
+    public boolean estaLibre(Long medicoId, LocalDateTime fechaHora) {
+        return !agenda(medicoId).ocupados.containsKey(clave(fechaHora));
+    }
+
+    // Horarios ocupados del médico en [inicio, fin), en orden; vista de solo lectura
+    public ConcurrentNavigableMap<LocalDateTime, Long> ocupados(Long medicoId, LocalDateTime inicio, LocalDateTime fin) {
+        return agenda(medicoId).ocupados.subMap(clave(inicio), true, clave(fin), false);
+    }
+
+    // Primer horario ocupado en [inicio, fin), o null si no hay
+    public LocalDateTime primerOcupado(Long medicoId, LocalDateTime inicio, LocalDateTime fin) {
+        LocalDateTime ocupado = agenda(medicoId).ocupados.ceilingKey(clave(inicio));
+        return ocupado != null && ocupado.isBefore(fin) ? ocupado : null;
+    }
+
+    // Aparta el horario o lanza la excepción de choque; debe seguirle confirmar(...) o liberar(...)
+    public Reserva reservar(Long medicoId, LocalDateTime fechaHora) throws Exception {
+        LocalDateTime clave = clave(fechaHora);
+        Agenda agenda = agenda(medicoId);
+        synchronized (agenda) {
+            long marca = MARCAS.decrementAndGet();
+            if (agenda.ocupados.putIfAbsent(clave, marca) != null) {
+                throw new Exception("El médico ya tiene una cita en ese horario");
+            }
+            return new Reserva(medicoId, clave, marca);
+        }
+    }
+
+    public void confirmar(Reserva reserva, Long citaId) {
+        agenda(reserva.medicoId()).ocupados.put(reserva.fechaHora(), citaId);
+    }
+
+    // Devuelve el horario a como estaba antes de reservar(...); llamarlo de más no tiene efecto
+    public void liberar(Reserva reserva) {
+        agenda(reserva.medicoId()).ocupados.remove(reserva.fechaHora(), reserva.marca());
+    }
+
+    public void estadoCambiado(Long medicoId, LocalDateTime fechaHora, Long citaId, EstadoCita estado) {
+        Agenda agenda = agenda(medicoId);
+        synchronized (agenda) {
+            agenda.ocupados.remove(clave(fechaHora), citaId);
+            registrar(agenda, new OcupacionCita(citaId, medicoId, fechaHora, estado));
+        }
+    }
+
+    public void citaEliminada(Long medicoId, LocalDateTime fechaHora, Long citaId) {
+        agenda(medicoId).ocupados.remove(clave(fechaHora), citaId);
+    }
+
+    // Descarta lo cargado de un médico (o de todos): se vuelve a leer de la base en el próximo uso.
+    // Para cuando las citas cambian por fuera del servicio (importación, otro proceso, choque inesperado)
+    public void invalidar(Long medicoId) {
+        agendas.remove(medicoId);
+    }
+
+    public void invalidarTodo() {
+        agendas = new ConcurrentHashMap<>();
+        directorio = null;
+    }
+
+    private Agenda agenda(Long medicoId) {
+        Map<Long, Agenda> actuales = agendas;
+        Agenda agenda = actuales.get(medicoId);
+        if (agenda != null) {
+            agenda.podar();
+            return agenda;
+        }
+        // La consulta va fuera del mapa para no bloquear a otros médicos; si otro hilo cargó
+        // primero, se usa la suya
+        Agenda cargada = new Agenda();
+        List<OcupacionCita> citas = citaDAO.findOcupacionDesde(desde(), medicoId);
+        citas.forEach(c -> registrar(cargada, c));
+        agenda = actuales.putIfAbsent(medicoId, cargada);
+        return agenda != null ? agenda : cargada;
+    }
+
+    private static void registrar(Agenda agenda, OcupacionCita c) {
+        if (c.estado() != EstadoCita.CANCELADA) {
+            agenda.ocupados.put(clave(c.fechaHora()), c.citaId());
+        }
+    }
+
+    // No se puede agendar en el pasado: basta con los horarios desde hoy
+    private static LocalDateTime desde() {
+        return LocalDate.now().atStartOfDay();
+    }
+
+    private static long manana() {
+        return LocalDate.now().plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // La columna timestamp guarda microsegundos
+    private static LocalDateTime clave(LocalDateTime fechaHora) {
+        return fechaHora.truncatedTo(ChronoUnit.MICROS);
+    }
+}
@@ -0,0 +1,465 @@
+package service;
+
+import dao.PacienteDAO;
+import dto.PacienteResumen;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Índice en memoria para buscar pacientes por nombre (prefijo, sin acentos y con errores de tipeo)
+// o por parte del DPI o del teléfono, sin recorrer la tabla. Los nombres se separan en palabras: cada
+// palabra distinta tiene la lista de pacientes que la usan y sus trigramas, así que una búsqueda
+// compara contra el vocabulario (decenas de miles de palabras) y no contra cada paciente.
+// Guarda solo ids y números; los datos a mostrar se leen de la base, que sigue siendo la referencia
+// (un paciente borrado por otro proceso simplemente no aparece).
+public class IndicePacientes {
+
+    // Similitud mínima (Dice sobre trigramas) para aceptar una palabra como error de tipeo
+    static final float UMBRAL_SIMILITUD = 0.5f;
+    private static final float PUNTAJE_EXACTA = 1.0f;
+    private static final float PUNTAJE_PREFIJO = 0.9f;
+    private static final long[] POTENCIAS = new long[14];
+
+    static {
+        POTENCIAS[0] = 1;
+        for (int i = 1; i < POTENCIAS.length; i++) {
+            POTENCIAS[i] = POTENCIAS[i - 1] * 10;
+        }
+    }
+
+    private static final IndicePacientes INSTANCIA = new IndicePacientes(new PacienteDAO());
+
+    private final PacienteDAO pacienteDAO;
+    private final ReentrantReadWriteLock candado = new ReentrantReadWriteLock();
+    // null hasta calentar()
+    private volatile Datos datos;
+    // Registros y eliminaciones que llegan mientras calentar() lee la base: se aplican a lo cargado
+    // antes de publicarlo. null si no hay una carga en curso
+    private List<Consumer<Datos>> pendientes;
+
+    IndicePacientes(PacienteDAO pacienteDAO) {
+        this.pacienteDAO = pacienteDAO;
+    }
+
+    public static IndicePacientes getInstancia() {
+        return INSTANCIA;
+    }
+
+    // Resultado con su puntaje, para ordenar los datos que se leen de la base
+    public record Coincidencia(Long pacienteId, float puntaje) {
+    }
+
+    // Arreglos por posición de paciente y vocabulario de palabras de nombre. Un paciente modificado o
+    // eliminado no se quita de los arreglos: su posición queda descartada y, si sigue, se agrega al final
+    private static final class Datos {
+        final Largos ids = new Largos();
+        final Largos dpis = new Largos();
+        final Enteros telefonos = new Enteros();
+        // Pares de dígitos consecutivos (00..99) que aparecen en DPI o teléfono: dos long por paciente
+        final Largos pares = new Largos();
+        // Palabras del paciente i: palabrasPlanas[inicioPalabras[i] .. inicioPalabras[i + 1])
+        final Enteros inicioPalabras = new Enteros();
+        final Enteros palabrasPlanas = new Enteros();
+
+        final TreeMap<String, Integer> vocabulario = new TreeMap<>();
+        final List<Enteros> pacientesPorPalabra = new ArrayList<>();
+        final Enteros trigramasPorPalabra = new Enteros();
+        final Map<String, Enteros> palabrasPorTrigrama = new HashMap<>();
+
+        final BitSet descartadas = new BitSet();
+        // Las primeras "ordenadas" posiciones vienen de la carga, en orden de id; las agregadas después
+        // se buscan en el mapa
+        int ordenadas;
+        final Map<Long, Integer> agregadas = new HashMap<>();
+
+        Datos() {
+            inicioPalabras.agregar(0);
+        }
+
+        void agregar(PacienteResumen p) {
+            descartar(p.id());
+            int posicion = ids.tamanio;
+            ids.agregar(p.id());
+            long dpi = digitos(p.dpi(), 13);
+            int telefono = (int) digitos(p.telefono(), 8);
+            dpis.agregar(dpi);
+            telefonos.agregar(telefono);
+            long[] mascara = new long[2];
+            marcarPares(mascara, dpi, 13);
+            marcarPares(mascara, telefono, 8);
+            pares.agregar(mascara[0]);
+            pares.agregar(mascara[1]);
+            for (String palabra : palabras(p.nombre())) {
+                int palabraId = palabraId(palabra);
+                palabrasPlanas.agregar(palabraId);
+                pacientesPorPalabra.get(palabraId).agregar(posicion);
+            }
+            inicioPalabras.agregar(palabrasPlanas.tamanio);
+            if (ordenadas == posicion && (posicion == 0 || ids.datos[posicion - 1] < p.id())) {
+                ordenadas++;
+            } else {
+                agregadas.put(p.id(), posicion);
+            }
+        }
+
+        void descartar(Long id) {
+            Integer posicion = agregadas.remove(id);
+            if (posicion == null) {
+                int i = Arrays.binarySearch(ids.datos, 0, ordenadas, id);
+                posicion = i >= 0 ? i : null;
+            }
+            if (posicion != null) {
+                descartadas.set(posicion);
+            }
+        }
+
+        private int palabraId(String palabra) {
+            Integer id = vocabulario.get(palabra);
+            if (id != null) {
+                return id;
+            }
+            int nuevo = pacientesPorPalabra.size();
+            vocabulario.put(palabra, nuevo);
+            pacientesPorPalabra.add(new Enteros());
+            List<String> trigramas = trigramas(palabra);
+            trigramasPorPalabra.agregar(trigramas.size());
+            for (String t : trigramas) {
+                palabrasPorTrigrama.computeIfAbsent(t, k -> new Enteros()).agregar(nuevo);
+            }
+            return nuevo;
+        }
+    }
+
+    // Carga de una vez id, nombre, DPI y teléfono de todos los pacientes, sin bloquear las búsquedas
+    // sobre lo cargado antes. Si invalidarTodo() llega durante la carga, lo leído se descarta y se
+    // vuelve a cargar en el próximo uso
+    public synchronized void calentar() {
+        List<Consumer<Datos>> cambios = new ArrayList<>();
+        candado.writeLock().lock();
+        try {
+            pendientes = cambios;
+        } finally {
+            candado.writeLock().unlock();
+        }
+        Datos cargados = new Datos();
+        boolean completa = false;
+        try {
+            pacienteDAO.recorrerResumenes(cargados::agregar);
+            completa = true;
+        } finally {
+            candado.writeLock().lock();
+            try {
+                if (pendientes == cambios) {
+                    pendientes = null;
+                    if (completa) {
+                        cambios.forEach(c -> c.accept(cargados));
+                        datos = cargados;
+                    }
+                }
+            } finally {
+                candado.writeLock().unlock();
+            }
+        }
+    }
+
+    // Varias búsquedas simultáneas sin índice esperan una sola carga
+    private synchronized void cargarSiFalta() {
+        if (datos == null) {
+            calentar();
+        }
+    }
+
+    public void invalidarTodo() {
+        candado.writeLock().lock();
+        try {
+            datos = null;
+            pendientes = null;
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    // Registrado o modificado: reemplaza lo que el índice tenía del paciente
+    public void pacienteRegistrado(PacienteResumen paciente) {
+        aplicar(d -> d.agregar(paciente));
+    }
+
+    public void pacienteEliminado(Long pacienteId) {
+        aplicar(d -> d.descartar(pacienteId));
+    }
+
+    private void aplicar(Consumer<Datos> cambio) {
+        candado.writeLock().lock();
+        try {
+            if (datos != null) {
+                cambio.accept(datos);
+            }
+            if (pendientes != null) {
+                pendientes.add(cambio);
+            }
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    // Los mejores "limite" pacientes para el texto, de mayor a menor puntaje. Si el texto es numérico
+    // busca en DPI y teléfono (primero los que empiezan así); si no, por palabras del nombre
+    public List<Coincidencia> buscar(String texto, int limite) {
+        candado.readLock().lock();
+        try {
+            while (datos == null) {
+                candado.readLock().unlock();
+                try {
+                    cargarSiFalta();
+                } finally {
+                    candado.readLock().lock();
+                }
+            }
+            String digitos = texto.replaceAll("[\\s-]", "");
+            if (!digitos.isEmpty() && digitos.chars().allMatch(Character::isDigit)) {
+                return porDigitos(datos, digitos, limite);
+            }
+            return porNombre(datos, palabras(texto), limite);
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+
+    private List<Coincidencia> porDigitos(Datos d, String digitos, int limite) {
+        if (digitos.length() > 13) {
+            return List.of();
+        }
+        int largo = digitos.length();
+        long valor = Long.parseLong(digitos);
+        long[] requeridos = new long[2];
+        marcarPares(requeridos, valor, largo);
+        long[] pares = d.pares.datos;
+        Mejores mejores = new Mejores(limite);
+        for (int i = 0; i < d.ids.tamanio; i++) {
+            // Descarta sin dividir a los que no tienen todos los pares de dígitos del texto
+            if ((pares[2 * i] & requeridos[0]) != requeridos[0] || (pares[2 * i + 1] & requeridos[1]) != requeridos[1]) {
+                continue;
+            }
+            // Empieza igual > contiene; DPI antes que teléfono
+            float puntaje = Math.max(
+                    contiene(d.dpis.datos[i], 13, valor, largo, 4f, 2f),
+                    contiene(d.telefonos.datos[i], 8, valor, largo, 3f, 1f));
+            if (puntaje > 0) {
+                mejores.ofrecer(d, i, puntaje);
+            }
+        }
+        return mejores.resultado();
+    }
+
+    // Busca el número de "largo" dígitos dentro de un campo de "ancho" dígitos (con ceros a la izquierda)
+    private static float contiene(long campo, int ancho, long valor, int largo, float siEmpieza, float siContiene) {
+        if (campo < 0 || largo > ancho) {
+            return 0;
+        }
+        long modulo = POTENCIAS[largo];
+        if ((campo / POTENCIAS[ancho - largo]) % modulo == valor) {
+            return siEmpieza;
+        }
+        for (int corrimiento = ancho - largo - 1; corrimiento >= 0; corrimiento--) {
+            if ((campo / POTENCIAS[corrimiento]) % modulo == valor) {
+                return siContiene;
+            }
+        }
+        return 0;
+    }
+
+    private List<Coincidencia> porNombre(Datos d, List<String> terminos, int limite) {
+        if (terminos.isEmpty()) {
+            return List.of();
+        }
+        // Por cada término, las palabras del vocabulario que le corresponden y su puntaje
+        List<Map<Integer, Float>> candidatas = new ArrayList<>(terminos.size());
+        for (String termino : terminos) {
+            Map<Integer, Float> palabras = candidatas(d, termino);
+            if (palabras.isEmpty()) {
+                return List.of();
+            }
+            candidatas.add(palabras);
+        }
+
+        // Se recorren los pacientes del término más selectivo; los demás se comprueban sobre sus palabras
+        int guia = 0;
+        long menor = Long.MAX_VALUE;
+        for (int t = 0; t < candidatas.size(); t++) {
+            long pacientes = candidatas.get(t).keySet().stream().mapToLong(p -> d.pacientesPorPalabra.get(p).tamanio).sum();
+            if (pacientes < menor) {
+                menor = pacientes;
+                guia = t;
+            }
+        }
+
+        Mejores mejores = new Mejores(limite);
+        BitSet vistos = new BitSet(d.ids.tamanio);
+        for (int palabra : candidatas.get(guia).keySet()) {
+            Enteros pacientes = d.pacientesPorPalabra.get(palabra);
+            for (int k = 0; k < pacientes.tamanio; k++) {
+                int posicion = pacientes.datos[k];
+                if (vistos.get(posicion)) {
+                    continue;
+                }
+                vistos.set(posicion);
+                float puntaje = 0;
+                for (Map<Integer, Float> delTermino : candidatas) {
+                    float mejor = 0;
+                    for (int j = d.inicioPalabras.datos[posicion]; j < d.inicioPalabras.datos[posicion + 1]; j++) {
+                        mejor = Math.max(mejor, delTermino.getOrDefault(d.palabrasPlanas.datos[j], 0f));
+                    }
+                    if (mejor == 0) {
+                        puntaje = 0;
+                        break;
+                    }
+                    puntaje += mejor;
+                }
+                if (puntaje > 0) {
+                    mejores.ofrecer(d, posicion, puntaje);
+                }
+            }
+        }
+        return mejores.resultado();
+    }
+
+    // Palabra exacta, palabras que empiezan con el término y palabras parecidas por trigramas
+    private static Map<Integer, Float> candidatas(Datos d, String termino) {
+        Map<Integer, Float> palabras = new HashMap<>();
+        NavigableMap<String, Integer> conPrefijo = d.vocabulario.subMap(termino, true, termino + Character.MAX_VALUE, false);
+        for (Map.Entry<String, Integer> e : conPrefijo.entrySet()) {
+            palabras.put(e.getValue(), e.getKey().equals(termino) ? PUNTAJE_EXACTA : PUNTAJE_PREFIJO);
+        }
+        if (termino.length() < 3) {
+            return palabras;
+        }
+
+        List<String> trigramas = trigramas(termino);
+        Map<Integer, Integer> compartidos = new HashMap<>();
+        for (String t : trigramas) {
+            Enteros conTrigrama = d.palabrasPorTrigrama.get(t);
+            if (conTrigrama != null) {
+                for (int k = 0; k < conTrigrama.tamanio; k++) {
+                    compartidos.merge(conTrigrama.datos[k], 1, Integer::sum);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Integer> e : compartidos.entrySet()) {
+            float dice = 2f * e.getValue() / (trigramas.size() + d.trigramasPorPalabra.datos[e.getKey()]);
+            if (dice >= UMBRAL_SIMILITUD) {
+                palabras.merge(e.getKey(), dice * PUNTAJE_PREFIJO, Math::max);
+            }
+        }
+        return palabras;
+    }
+
+    // Minúsculas, sin acentos y separado en palabras de letras
+    static List<String> palabras(String texto) {
+        if (texto == null) {
+            return List.of();
+        }
+        String normalizado = Normalizer.normalize(texto.toLowerCase(), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replaceAll("[^\\p{L}]+", " ")
+                .trim();
+        return normalizado.isEmpty() ? List.of() : Arrays.asList(normalizado.split(" "));
+    }
+
+    // Trigramas distintos de la palabra con relleno (" pe", "ped", ... , "ro "), como pg_trgm
+    static List<String> trigramas(String palabra) {
+        String conRelleno = "  " + palabra + " ";
+        List<String> trigramas = new ArrayList<>(conRelleno.length() - 2);
+        for (int i = 0; i + 3 <= conRelleno.length(); i++) {
+            String t = conRelleno.substring(i, i + 3);
+            if (!trigramas.contains(t)) {
+                trigramas.add(t);
+            }
+        }
+        return trigramas;
+    }
+
+    private static void marcarPares(long[] mascara, long campo, int ancho) {
+        if (campo < 0) {
+            return;
+        }
+        for (int i = 0; i + 1 < ancho; i++) {
+            int par = (int) (campo / POTENCIAS[i] % 100);
+            mascara[par >> 6] |= 1L << (par & 63);
+        }
+    }
+
+    // -1 si el campo no es numérico de a lo sumo "ancho" dígitos
+    private static long digitos(String campo, int ancho) {
+        if (campo == null || campo.isEmpty() || campo.length() > ancho || !campo.chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        return Long.parseLong(campo);
+    }
+
+    // Montículo de los mejores resultados; a igual puntaje gana el id menor
+    private final class Mejores {
+        private final int limite;
+        private final PriorityQueue<Coincidencia> cola = new PriorityQueue<>(
+                Comparator.comparingDouble(Coincidencia::puntaje).thenComparing(Coincidencia::pacienteId, Comparator.reverseOrder()));
+
+        Mejores(int limite) {
+            this.limite = limite;
+        }
+
+        void ofrecer(Datos d, int posicion, float puntaje) {
+            Coincidencia peor = cola.peek();
+            long id = d.ids.datos[posicion];
+            if (cola.size() == limite && (puntaje < peor.puntaje() || (puntaje == peor.puntaje() && id > peor.pacienteId()))) {
+                return;
+            }
+            if (d.descartadas.get(posicion)) {
+                return;
+            }
+            cola.add(new Coincidencia(id, puntaje));
+            if (cola.size() > limite) {
+                cola.poll();
+            }
+        }
+
+        List<Coincidencia> resultado() {
+            List<Coincidencia> resultado = new ArrayList<>(cola);
+            resultado.sort(cola.comparator().reversed());
+            return resultado;
+        }
+    }
+
+    private static final class Enteros {
+        int[] datos = new int[4];
+        int tamanio;
+
+        void agregar(int valor) {
+            if (tamanio == datos.length) {
+                datos = Arrays.copyOf(datos, tamanio * 2);
+            }
+            datos[tamanio++] = valor;
+        }
+    }
+
+    private static final class Largos {
+        long[] datos = new long[1024];
+        int tamanio;
+
+        void agregar(long valor) {
+            if (tamanio == datos.length) {
+                datos = Arrays.copyOf(datos, tamanio * 2);
+            }
+            datos[tamanio++] = valor;
+        }
+    }
+}
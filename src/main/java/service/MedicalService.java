@@ -1,135 +1,508 @@
 package service;
 
 import dao.CitaDAO;
+import dao.CursorCita;
+import dao.CursorPaciente;
 import dao.MedicoDAO;
 import dao.PacienteDAO;
+import dao.Pagina;
+import dao.VersionHistorialDAO;
+import dto.AgendaMedico;
+import dto.HistorialEnVersion;
+import dto.HorarioDisponible;
+import dto.MedicoResumen;
+import dto.OcupacionCita;
+import dto.PacienteResumen;
+import dto.ProximaCita;
+import dto.ResultadoLote;
+import dto.ResultadoRegistro;
+import dto.SolicitudCita;
+import dto.VersionHistorialResumen;
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.EntityTransaction;
 import model.*;
+import util.CacheSegundoNivel;
+import util.DeltaTexto;
 import util.JPAUtil;
+import util.RestriccionesBD;
+import util.UnidadDeTrabajo;
+import util.Validacion;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class MedicalService {
 
+    // Con -Dhospital.eliminacion.diferida=true eliminar un paciente o médico solo lo marca y vuelve de
+    // inmediato; sus citas y la fila se borran en segundo plano (PurgaEliminados)
+    public static final boolean ELIMINACION_DIFERIDA = Boolean.getBoolean("hospital.eliminacion.diferida");
+
     private final PacienteDAO pacienteDAO = new PacienteDAO();
     private final MedicoDAO medicoDAO = new MedicoDAO();
     private final CitaDAO citaDAO = new CitaDAO();
+    private final VersionHistorialDAO versionHistorialDAO = new VersionHistorialDAO();
+    private final IndiceDisponibilidad indice = IndiceDisponibilidad.getInstancia();
+    private final IndicePacientes indicePacientes = IndicePacientes.getInstancia();
+    private final PurgaEliminados purga = PurgaEliminados.getInstancia();
+    private final CacheProximasCitas proximasCitas = CacheProximasCitas.getInstancia();
+    private final BuscadorHorarios buscadorHorarios = new BuscadorHorarios(indice);
+    private final CoordinadorReservas coordinador;
+    private final AgendadorLotes agendadorLotes;
+
+    public MedicalService() {
+        this(CoordinadorReservas.getInstancia());
+    }
+
+    // Un coordinador propio simula otro nodo (candados independientes sobre la misma base)
+    public MedicalService(CoordinadorReservas coordinador) {
+        this.coordinador = coordinador;
+        this.agendadorLotes = new AgendadorLotes(citaDAO, pacienteDAO, medicoDAO, indice, coordinador);
+    }
 
     // Métodos para Paciente
-    public void registrarPaciente(Paciente paciente) throws Exception {
-        if (pacienteDAO.findByDpi(paciente.getDpi()).isPresent()) {
-            throw new Exception("Ya existe un paciente con DPI: " + paciente.getDpi());
+    // Un solo INSERT ... ON CONFLICT: un DPI ya registrado se informa en el resultado, no con una excepción
+    public ResultadoRegistro registrarPaciente(Paciente paciente) throws Exception {
+        String errores = Validacion.errores(paciente);
+        if (errores != null) {
+            throw new Exception("Datos inválidos: " + errores);
+        }
+        ResultadoRegistro resultado = pacienteDAO.insertarSiNoExiste(paciente);
+        if (resultado.creado()) {
+            UnidadDeTrabajo.despuesDeConfirmar(() -> indicePacientes.pacienteRegistrado(new PacienteResumen(
+                    resultado.id(), paciente.getNombre(), paciente.getDpi(), paciente.getTelefono())));
         }
-        pacienteDAO.save(paciente);
+        return resultado;
     }
 
     public List<Paciente> listarPacientes() {
         return pacienteDAO.findAll();
     }
 
+    // Para pantallas de listado y selección: solo id, nombre, DPI y teléfono
+    public List<PacienteResumen> listarResumenPacientes() {
+        return pacienteDAO.findResumenes();
+    }
+
+    // Búsqueda por nombre (prefijo, sin acentos y con errores de tipeo) o por parte del DPI o teléfono,
+    // de la más parecida a la menos parecida
+    public List<PacienteResumen> buscarPacientes(String texto, int limite) throws Exception {
+        String consulta = texto == null ? "" : texto.trim();
+        if (consulta.length() < 2) {
+            throw new Exception("Escriba al menos 2 caracteres para buscar");
+        }
+        if (limite < 1) {
+            throw new Exception("El límite debe ser mayor que cero");
+        }
+        List<IndicePacientes.Coincidencia> coincidencias = indicePacientes.buscar(consulta, limite);
+        Map<Long, PacienteResumen> porId = pacienteDAO.findResumenesPorIds(
+                        coincidencias.stream().map(IndicePacientes.Coincidencia::pacienteId).toList())
+                .stream()
+                .collect(Collectors.toMap(PacienteResumen::id, p -> p));
+        return coincidencias.stream()
+                .map(c -> porId.get(c.pacienteId()))
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // Carga el índice de búsqueda de pacientes (si no, se carga en la primera búsqueda)
+    public void prepararBusquedaPacientes() {
+        indicePacientes.calentar();
+    }
+
     public Optional<Paciente> buscarPacientePorId(Long id) {
         return pacienteDAO.findById(id);
     }
 
-    public void eliminarPaciente(Long id) {
-        pacienteDAO.delete(id);
+    // Eliminación en bloque, en el orden de las llaves foráneas y en una transacción: las citas
+    // (fk_cita_paciente), el historial (fk_historial_paciente; sus versiones caen por ON DELETE CASCADE)
+    // y el paciente, un DELETE por tabla sin cargar entidades. En modo diferido solo se marca al paciente
+    // y la purga borra el resto en segundo plano
+    public void eliminarPaciente(Long id) throws Exception {
+        if (ELIMINACION_DIFERIDA) {
+            if (pacienteDAO.marcarEliminado(id)) {
+                indicePacientes.pacienteEliminado(id);
+                purga.solicitar();
+            }
+            return;
+        }
+        try {
+            UnidadDeTrabajo.ejecutar(em -> {
+                List<OcupacionCita> citas = citaDAO.eliminarDePaciente(id, 0);
+                pacienteDAO.eliminarEnBloque(id);
+                UnidadDeTrabajo.despuesDeConfirmar(() -> {
+                    citas.forEach(c -> {
+                        indice.citaEliminada(c.medicoId(), c.fechaHora(), c.citaId());
+                        proximasCitas.citaEliminada(c.medicoId(), c.citaId());
+                    });
+                    indicePacientes.pacienteEliminado(id);
+                });
+                return null;
+            });
+        } catch (Exception e) {
+            if ("fk_cita_paciente".equals(RestriccionesBD.violada(e))) {
+                throw new Exception("Se agendó una cita para el paciente mientras se eliminaba, intente de nuevo");
+            }
+            throw e;
+        }
     }
 
     // Métodos para Médico
-    public void registrarMedico(Medico medico) throws Exception {
-        if (medicoDAO.findByColegiado(medico.getColegiado()).isPresent()) {
-            throw new Exception("Ya existe un médico con colegiado: " + medico.getColegiado());
+    // El INSERT va por JDBC y Hibernate no se entera: las consultas de médicos en caché se descartan a mano
+    public ResultadoRegistro registrarMedico(Medico medico) throws Exception {
+        String errores = Validacion.errores(medico);
+        if (errores != null) {
+            throw new Exception("Datos inválidos: " + errores);
         }
-        medicoDAO.save(medico);
+        ResultadoRegistro resultado = medicoDAO.insertarSiNoExiste(medico);
+        if (resultado.creado()) {
+            UnidadDeTrabajo.despuesDeConfirmar(() -> {
+                CacheSegundoNivel.invalidarConsultasMedico();
+                indice.medicoRegistrado(new MedicoResumen(
+                        resultado.id(), medico.getNombre(), medico.getColegiado(), medico.getEspecialidad()));
+            });
+        }
+        return resultado;
     }
 
     public List<Medico> listarMedicos() {
         return medicoDAO.findAll();
     }
 
+    public List<MedicoResumen> listarResumenMedicos() {
+        return medicoDAO.findResumenes();
+    }
+
+    public List<MedicoResumen> listarMedicosPorEspecialidad(Especialidad especialidad) {
+        return medicoDAO.findResumenesPorEspecialidad(especialidad);
+    }
+
     public Optional<Medico> buscarMedicoPorId(Long id) {
         return medicoDAO.findById(id);
     }
 
+    // Igual que eliminarPaciente: citas (fk_cita_medico) y médico en una transacción, con el candado de
+    // su agenda tomado para que no entren citas nuevas en medio
+    public void eliminarMedico(Long id) throws Exception {
+        if (ELIMINACION_DIFERIDA) {
+            if (medicoDAO.marcarEliminado(id)) {
+                indice.medicoEliminado(id);
+                proximasCitas.medicoEliminado(id);
+                purga.solicitar();
+            }
+            return;
+        }
+        try {
+            coordinador.ejecutar(id, em -> {
+                citaDAO.eliminarDeMedico(id, 0);
+                medicoDAO.eliminarEnBloque(id);
+                UnidadDeTrabajo.despuesDeConfirmar(() -> {
+                    indice.medicoEliminado(id);
+                    proximasCitas.medicoEliminado(id);
+                });
+                return null;
+            });
+        } catch (Exception e) {
+            if ("fk_cita_medico".equals(RestriccionesBD.violada(e))) {
+                throw new Exception("Se agendó una cita con el médico mientras se eliminaba, intente de nuevo");
+            }
+            throw e;
+        }
+    }
+
+    // Retoma las eliminaciones diferidas que quedaron sin purgar (p. ej. al iniciar la aplicación)
+    public void reanudarEliminacionesPendientes() {
+        purga.solicitar();
+    }
+
     // Métodos para Historial Médico
+
+    // Cada cuántas versiones se guarda una foto completa en lugar de un delta: acota los deltas a
+    // aplicar para reconstruir una versión vieja
+    public static final int SNAPSHOT_HISTORIAL_CADA = Integer.getInteger("hospital.historial.snapshotCada", 20);
+
+    // Actualiza la versión vigente y agrega una VersionHistorial; si nada cambió no crea versión
     public void crearOEditarHistorialMedico(Long pacienteId, String alergias,
                                             String antecedentes, String observaciones) throws Exception {
-        EntityManager em = JPAUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
         try {
-            tx.begin();
+            UnidadDeTrabajo.ejecutar(em -> {
+                Paciente paciente = pacienteDAO.findById(pacienteId)
+                        .orElseThrow(() -> new Exception("Paciente no encontrado"));
+                LocalDateTime ahora = LocalDateTime.now();
 
-            Paciente paciente = em.find(Paciente.class, pacienteId);
-            if (paciente == null) {
-                throw new Exception("Paciente no encontrado");
-            }
+                HistorialMedico historial = paciente.getHistorialMedico();
+                if (historial == null) {
+                    historial = new HistorialMedico(alergias, antecedentes, observaciones, paciente);
+                    historial.setNumeroVersion(1);
+                    paciente.setHistorialMedico(historial);
+                    em.persist(historial);
+                    versionHistorialDAO.save(new VersionHistorial(historial, 1, ahora, true,
+                            alergias, antecedentes, observaciones));
+                    return null;
+                }
 
-            HistorialMedico historial = paciente.getHistorialMedico();
-            if (historial == null) {
-                historial = new HistorialMedico(paciente);
-                paciente.setHistorialMedico(historial);
-            }
+                // Sin cambios no se escribe nada, tampoco la versión 0
+                String deltaAlergias = DeltaTexto.calcular(historial.getAlergias(), alergias);
+                String deltaAntecedentes = DeltaTexto.calcular(historial.getAntecedentes(), antecedentes);
+                String deltaObservaciones = DeltaTexto.calcular(historial.getObservaciones(), observaciones);
+                if (deltaAlergias == null && deltaAntecedentes == null && deltaObservaciones == null) {
+                    return null;
+                }
+
+                // Historial anterior al versionado: su contenido actual queda como versión 0 y el
+                // cambio como versión 1
+                if (historial.getNumeroVersion() == 0) {
+                    versionHistorialDAO.save(new VersionHistorial(historial, 0, ahora, true,
+                            historial.getAlergias(), historial.getAntecedentes(), historial.getObservaciones()));
+                }
 
-            historial.setAlergias(alergias);
-            historial.setAntecedentes(antecedentes);
-            historial.setObservaciones(observaciones);
+                int numero = historial.getNumeroVersion() + 1;
+                VersionHistorial version = numero % SNAPSHOT_HISTORIAL_CADA == 0
+                        ? new VersionHistorial(historial, numero, ahora, true, alergias, antecedentes, observaciones)
+                        : new VersionHistorial(historial, numero, ahora, false,
+                        deltaAlergias, deltaAntecedentes, deltaObservaciones);
+                versionHistorialDAO.save(version);
 
-            em.merge(paciente);
-            tx.commit();
+                historial.setNumeroVersion(numero);
+                if (deltaAlergias != null) historial.setAlergias(alergias);
+                if (deltaAntecedentes != null) historial.setAntecedentes(antecedentes);
+                if (deltaObservaciones != null) historial.setObservaciones(observaciones);
+                return null;
+            });
         } catch (Exception e) {
-            if (tx.isActive()) tx.rollback();
+            if ("uk_historial_version_numero".equals(RestriccionesBD.violada(e))) {
+                throw new Exception("El historial fue modificado por otro usuario al mismo tiempo, intente de nuevo");
+            }
             throw e;
-        } finally {
-            em.close();
         }
     }
 
+    public List<VersionHistorialResumen> listarVersionesHistorial(Long pacienteId) {
+        return versionHistorialDAO.findResumenes(pacienteId);
+    }
+
+    // Reconstruye una versión anterior desde el último snapshot; la vigente se lee con obtenerHistorialMedicoConTextos
+    public Optional<HistorialEnVersion> obtenerHistorialEnVersion(Long pacienteId, int numero) {
+        List<VersionHistorial> versiones = versionHistorialDAO.findDesdeSnapshot(pacienteId, numero);
+        if (versiones.isEmpty() || versiones.get(versiones.size() - 1).getNumero() != numero) {
+            return Optional.empty();
+        }
+        VersionHistorial snapshot = versiones.get(0);
+        String alergias = snapshot.getAlergias();
+        String antecedentes = snapshot.getAntecedentes();
+        String observaciones = snapshot.getObservaciones();
+        for (VersionHistorial delta : versiones.subList(1, versiones.size())) {
+            alergias = DeltaTexto.aplicar(alergias, delta.getAlergias());
+            antecedentes = DeltaTexto.aplicar(antecedentes, delta.getAntecedentes());
+            observaciones = DeltaTexto.aplicar(observaciones, delta.getObservaciones());
+        }
+        return Optional.of(new HistorialEnVersion(pacienteId, numero, versiones.get(versiones.size() - 1).getFecha(),
+                alergias, antecedentes, observaciones));
+    }
+
+    // Historial con su paciente, sin los textos (grupo LAZY "textos"): leerlos después de esto lanza
+    // LazyInitializationException. Para mostrarlo completo, obtenerHistorialMedicoConTextos
     public Optional<HistorialMedico> obtenerHistorialMedico(Long pacienteId) {
+        return cargarHistorial(pacienteId, false);
+    }
+
+    // Igual, con alergias, antecedentes y observaciones cargados antes de cerrar el EntityManager
+    public Optional<HistorialMedico> obtenerHistorialMedicoConTextos(Long pacienteId) {
+        return cargarHistorial(pacienteId, true);
+    }
+
+    private Optional<HistorialMedico> cargarHistorial(Long pacienteId, boolean conTextos) {
         EntityManager em = JPAUtil.getEntityManager();
         try {
-            Paciente paciente = em.find(Paciente.class, pacienteId);
-            return paciente != null ? Optional.ofNullable(paciente.getHistorialMedico()) : Optional.empty();
+            Optional<HistorialMedico> historial = em.createQuery(
+                            "SELECT h FROM HistorialMedico h JOIN FETCH h.paciente WHERE h.id = :id", HistorialMedico.class)
+                    .setParameter("id", pacienteId)
+                    .getResultStream()
+                    .findFirst();
+            if (conTextos) {
+                // Leer uno carga el grupo completo
+                historial.ifPresent(HistorialMedico::getAlergias);
+            }
+            return historial;
         } finally {
             em.close();
         }
     }
 
     // Métodos para Cita
+    // El choque de horario se descarta primero en el índice en memoria; después, una sola unidad de
+    // trabajo: paciente y médico entran como referencias (solo se necesita su FK) y su existencia la
+    // comprueban fk_cita_paciente / fk_cita_medico al insertar
     public void agendarCita(Long pacienteId, Long medicoId, LocalDateTime fechaHora, String motivo) throws Exception {
-        Optional<Paciente> paciente = pacienteDAO.findById(pacienteId);
-        Optional<Medico> medico = medicoDAO.findById(medicoId);
+        if (fechaHora.isBefore(LocalDateTime.now())) {
+            throw new Exception("No se puede agendar cita en el pasado");
+        }
 
-        if (paciente.isEmpty()) {
-            throw new Exception("Paciente no encontrado");
+        IndiceDisponibilidad.Reserva reserva = indice.reservar(medicoId, fechaHora);
+        // Si esto corre dentro de otra unidad de trabajo y esa se revierte, el horario vuelve a quedar libre
+        UnidadDeTrabajo.despuesDeRevertir(() -> indice.liberar(reserva));
+        try {
+            coordinador.ejecutar(medicoId, em -> {
+                // Un paciente o médico marcado para eliminar (diferido) no recibe citas
+                if (pacienteDAO.bloquearVigentes(List.of(pacienteId)).isEmpty()) {
+                    throw new Exception("Paciente no encontrado");
+                }
+                if (medicoDAO.bloquearVigentes(List.of(medicoId)).isEmpty()) {
+                    throw new Exception("Médico no encontrado");
+                }
+                Cita cita = new Cita(fechaHora, motivo, em.getReference(Paciente.class, pacienteId),
+                        em.getReference(Medico.class, medicoId));
+                citaDAO.save(cita);
+                em.flush();
+                Long citaId = cita.getId();
+                UnidadDeTrabajo.despuesDeConfirmar(() -> {
+                    indice.confirmar(reserva, citaId);
+                    proximasCitas.invalidar(medicoId);
+                });
+                return cita;
+            });
+        } catch (Exception e) {
+            indice.liberar(reserva);
+            String restriccion = RestriccionesBD.violada(e);
+            if ("fk_cita_paciente".equals(restriccion)) {
+                throw new Exception("Paciente no encontrado");
+            }
+            if ("fk_cita_medico".equals(restriccion)) {
+                indice.invalidar(medicoId);
+                throw new Exception("Médico no encontrado");
+            }
+            if ("uk_cita_medico_fecha".equals(restriccion)) {
+                // La cita la agendó otro proceso: el índice de este médico está desactualizado
+                indice.invalidar(medicoId);
+                proximasCitas.invalidar(medicoId);
+                throw new Exception("El médico ya tiene una cita en ese horario");
+            }
+            throw e;
         }
-        if (medico.isEmpty()) {
-            throw new Exception("Médico no encontrado");
+    }
+
+    // Ausencia del médico: cancela sus citas programadas en [inicio, fin) con un solo UPDATE.
+    // Toma el candado del médico para no cruzarse con agendamientos en curso
+    public int cancelarAgendaMedico(Long medicoId, LocalDateTime inicio, LocalDateTime fin) throws Exception {
+        if (!fin.isAfter(inicio)) {
+            throw new Exception("El rango debe terminar después de su inicio");
         }
+        return coordinador.ejecutar(medicoId, em -> {
+            int canceladas = citaDAO.cancelarProgramadasDeMedico(medicoId, inicio, fin);
+            if (canceladas > 0) {
+                UnidadDeTrabajo.despuesDeConfirmar(() -> {
+                    indice.invalidar(medicoId);
+                    proximasCitas.invalidar(medicoId);
+                });
+            }
+            return canceladas;
+        });
+    }
 
-        if (fechaHora.isBefore(LocalDateTime.now())) {
-            throw new Exception("No se puede agendar cita en el pasado");
+    // Cierre de día: pasa a nuevoEstado (ATENDIDA o CANCELADA) las citas programadas que ya pasaron
+    public int cerrarCitasPasadas(EstadoCita nuevoEstado) throws Exception {
+        if (nuevoEstado == EstadoCita.PROGRAMADA) {
+            throw new Exception("Las citas pasadas deben cerrarse como atendidas o canceladas");
         }
+        return UnidadDeTrabajo.ejecutar(em -> {
+            int cerradas = citaDAO.cerrarProgramadasAntesDe(LocalDateTime.now(), nuevoEstado);
+            // ATENDIDA sigue ocupando el horario; CANCELADA lo libera
+            if (cerradas > 0 && nuevoEstado == EstadoCita.CANCELADA) {
+                UnidadDeTrabajo.despuesDeConfirmar(indice::invalidarTodo);
+            }
+            return cerradas;
+        });
+    }
+
+    // Varias citas en una transacción; los choques se reportan en el resultado
+    public ResultadoLote agendarCitas(List<SolicitudCita> solicitudes, ModoLote modo) throws Exception {
+        return agendadorLotes.agendar(solicitudes, modo);
+    }
+
+    // Serie de seguimiento (p. ej. semanal) del mismo paciente con el mismo médico
+    public ResultadoLote agendarSerie(Long pacienteId, Long medicoId, Recurrencia recurrencia,
+                                      String motivo, ModoLote modo) throws Exception {
+        List<SolicitudCita> solicitudes = recurrencia.fechas().stream()
+                .map(fecha -> new SolicitudCita(pacienteId, medicoId, fecha, motivo))
+                .toList();
+        return agendadorLotes.agendar(solicitudes, modo);
+    }
 
-        Cita cita = new Cita(fechaHora, motivo, paciente.get(), medico.get());
-        citaDAO.save(cita);
+    // Carga el índice de disponibilidad de todos los médicos de una vez (si no, se carga por médico al usarlo)
+    public void prepararIndiceDisponibilidad() {
+        indice.calentar();
     }
 
-    public void cambiarEstadoCita(Long citaId, EstadoCita nuevoEstado) throws Exception {
-        Optional<Cita> citaOpt = citaDAO.findById(citaId);
-        if (citaOpt.isEmpty()) {
-            throw new Exception("Cita no encontrada");
+    // Primeros horarios libres de cualquier médico de la especialidad, ordenados por hora
+    public List<HorarioDisponible> buscarHorariosDisponibles(Especialidad especialidad, LocalDateTime desde,
+                                                             LocalDateTime hasta, Duration duracion,
+                                                             int limite) throws Exception {
+        if (duracion.isZero() || duracion.isNegative()
+                || duracion.compareTo(Duration.between(BuscadorHorarios.INICIO_JORNADA, BuscadorHorarios.FIN_JORNADA)) > 0) {
+            throw new Exception("La duración debe estar entre 1 minuto y la jornada completa");
+        }
+        LocalDateTime ahora = LocalDateTime.now();
+        if (desde.isBefore(ahora)) {
+            desde = ahora;
         }
+        if (!hasta.isAfter(desde)) {
+            throw new Exception("El rango de búsqueda debe terminar después de su inicio");
+        }
+        return buscadorHorarios.buscar(especialidad, desde, hasta, duracion, limite);
+    }
 
-        Cita cita = citaOpt.get();
-        cita.setEstado(nuevoEstado);
-        citaDAO.update(cita);
+    // Devuelve el estado anterior. El candado del médico evita que dos cambios de este proceso se pisen;
+    // @Version detecta los que vienen de otro nodo y el coordinador reintenta con la fila fresca
+    public EstadoCita cambiarEstadoCita(Long citaId, EstadoCita nuevoEstado) throws Exception {
+        Long medicoId = citaDAO.findMedicoId(citaId)
+                .orElseThrow(() -> new Exception("Cita no encontrada"));
+        try {
+            return coordinador.ejecutar(medicoId, em -> {
+                Cita cita = citaDAO.findById(citaId)
+                        .orElseThrow(() -> new Exception("Cita no encontrada"));
+                EstadoCita anterior = cita.getEstado();
+                cita.setEstado(nuevoEstado);
+                LocalDateTime fechaHora = cita.getFechaHora();
+                UnidadDeTrabajo.despuesDeConfirmar(() -> {
+                    indice.estadoCambiado(medicoId, fechaHora, citaId, nuevoEstado);
+                    proximasCitas.estadoCambiado(medicoId, citaId, nuevoEstado);
+                });
+                return anterior;
+            });
+        } catch (Exception e) {
+            // Reactivar una cancelada choca si su horario ya se volvió a agendar
+            if ("uk_cita_medico_fecha".equals(RestriccionesBD.violada(e))) {
+                indice.invalidar(medicoId);
+                throw new Exception("El médico ya tiene una cita en ese horario");
+            }
+            throw e;
+        }
     }
 
-    public void eliminarCita(Long citaId) {
-        citaDAO.delete(citaId);
+    public void eliminarCita(Long citaId) throws Exception {
+        Optional<Long> medicoId = citaDAO.findMedicoId(citaId);
+        if (medicoId.isEmpty()) {
+            return;
+        }
+        coordinador.ejecutar(medicoId.get(), em -> {
+            Cita cita = em.find(Cita.class, citaId);
+            if (cita != null) {
+                LocalDateTime fechaHora = cita.getFechaHora();
+                em.remove(cita);
+                UnidadDeTrabajo.despuesDeConfirmar(() -> {
+                    indice.citaEliminada(medicoId.get(), fechaHora, citaId);
+                    proximasCitas.citaEliminada(medicoId.get(), citaId);
+                });
+            }
+            return null;
+        });
     }
 
     public List<Cita> listarCitasPaciente(Long pacienteId) {
@@ -140,16 +513,57 @@ public class MedicalService {
         return citaDAO.findProximasCitasByMedico(medicoId);
     }
 
+    // Agenda de todos los médicos con citas próximas, limitada a N citas por médico
+    public List<AgendaMedico> listarAgendaProximasCitas(int limitePorMedico) {
+        return listarAgendaProximasCitas(null, limitePorMedico);
+    }
+
+    // Sale de CacheProximasCitas; con -Dhospital.agenda.cache.activa=false, directo de la base
+    public List<AgendaMedico> listarAgendaProximasCitas(Collection<Long> medicoIds, int limitePorMedico) {
+        if (medicoIds != null && medicoIds.isEmpty()) {
+            return List.of();
+        }
+
+        List<ProximaCita> proximas = CacheProximasCitas.ACTIVA
+                ? proximasCitas.proximas(medicoIds, limitePorMedico)
+                : citaDAO.findProximasCitasPorMedico(medicoIds, limitePorMedico);
+        Map<Long, AgendaMedico> agendas = new LinkedHashMap<>();
+        for (ProximaCita c : proximas) {
+            agendas.computeIfAbsent(c.medicoId(), id -> new AgendaMedico(
+                            id, c.medicoNombre(), c.especialidad(), new ArrayList<>()))
+                    .citas().add(c);
+        }
+        return new ArrayList<>(agendas.values());
+    }
+
     public List<Cita> buscarCitasPorRangoFecha(LocalDateTime inicio, LocalDateTime fin) {
         return citaDAO.findByDateRange(inicio, fin);
     }
 
+    public Pagina<Cita, CursorCita> buscarCitasPorRangoFecha(LocalDateTime inicio, LocalDateTime fin,
+                                                             CursorCita desde, int tamanio) {
+        return citaDAO.findPageByDateRange(inicio, fin, desde, tamanio);
+    }
+
+    // Recorrido completo del rango sin cargarlo en memoria; cerrar el Stream al terminar
+    public Stream<Cita> recorrerCitasPorRangoFecha(LocalDateTime inicio, LocalDateTime fin) {
+        return citaDAO.streamByDateRange(inicio, fin, CitaDAO.TAMANIO_FETCH);
+    }
+
     public List<Paciente> listarPacientesConCitas() {
         return pacienteDAO.findAllWithCitas();
     }
 
+    public Pagina<Paciente, CursorPaciente> listarPacientesConCitas(CursorPaciente desde, int tamanio) {
+        return pacienteDAO.findPageWithCitas(desde, tamanio);
+    }
+
     // MÉTODO AGREGADO: Listar todas las citas
     public List<Cita> listarTodasLasCitas() {
         return citaDAO.findAll();
     }
+
+    public Pagina<Cita, CursorCita> listarTodasLasCitas(CursorCita desde, int tamanio) {
+        return citaDAO.findPage(desde, tamanio);
+    }
 }
\ No newline at end of file
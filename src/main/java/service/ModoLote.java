@@ -0,0 +1,8 @@
+package service;
+
+public enum ModoLote {
+    // Si alguna solicitud choca no se agenda ninguna
+    TODO_O_NADA,
+    // Se agendan las que no chocan y se reportan las demás
+    MEJOR_ESFUERZO
+}
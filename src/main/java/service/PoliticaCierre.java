@@ -0,0 +1,45 @@
+package service;
+
+import model.EstadoCita;
+
+import java.time.Duration;
+
+// Qué hace el cierre programado con las citas PROGRAMADA que ya pasaron.
+// Valores por defecto ajustables con -Dhospital.cierre.<propiedad>. El estado no tiene valor por
+// defecto: sin -Dhospital.cierre.estado la política no está configurada y el cierre no corre solo
+// (marcar como atendidas las citas a las que nadie vino no lo debe decidir un valor por omisión)
+public record PoliticaCierre(EstadoCita nuevoEstado, Duration margen, int tamanioLote,
+                             Duration pausaEntreLotes, boolean simulacion) {
+
+    public PoliticaCierre {
+        if (nuevoEstado == EstadoCita.PROGRAMADA) {
+            throw new IllegalArgumentException("Las citas pasadas deben cerrarse como atendidas o canceladas");
+        }
+        if (tamanioLote < 1) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser positivo");
+        }
+    }
+
+    public static PoliticaCierre desdePropiedades() {
+        String estado = System.getProperty("hospital.cierre.estado");
+        return new PoliticaCierre(
+                estado == null || estado.isBlank() ? null : EstadoCita.valueOf(estado.trim().toUpperCase()),
+                Duration.ofMinutes(Long.getLong("hospital.cierre.margenMinutos", 120)),
+                Integer.getInteger("hospital.cierre.lote", 1000),
+                Duration.ofMillis(Long.getLong("hospital.cierre.pausaMs", 50)),
+                Boolean.getBoolean("hospital.cierre.simulacion"));
+    }
+
+    // nuevoEstado es null si no se indicó hospital.cierre.estado
+    public boolean configurada() {
+        return nuevoEstado != null;
+    }
+
+    public PoliticaCierre comoSimulacion() {
+        return new PoliticaCierre(nuevoEstado, margen, tamanioLote, pausaEntreLotes, true);
+    }
+
+    public PoliticaCierre conEstado(EstadoCita estado) {
+        return new PoliticaCierre(estado, margen, tamanioLote, pausaEntreLotes, simulacion);
+    }
+}
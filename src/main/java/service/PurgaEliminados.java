@@ -0,0 +1,157 @@
+package service;
+
+import dao.CitaDAO;
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import dto.OcupacionCita;
+import util.RestriccionesBD;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Segunda mitad de la eliminación diferida: borra en segundo plano las citas de los pacientes y
+// médicos marcados (eliminado_en), en lotes de TAMANIO_LOTE filas por transacción para no sostener
+// candados largos, y al final la fila marcada. Lo que quede a medias (la aplicación se cerró, una
+// cita nueva llegó en medio) se retoma en la siguiente pasada.
+public class PurgaEliminados {
+
+    private static final Logger LOG = Logger.getLogger(PurgaEliminados.class.getName());
+
+    public static final int TAMANIO_LOTE = Integer.getInteger("hospital.purga.lote", 1000);
+    // Espera antes de reintentar un registro que recibió citas durante su purga
+    public static final long REINTENTO_MS = Long.getLong("hospital.purga.reintentoMs", 5000);
+
+    private static final PurgaEliminados INSTANCIA = new PurgaEliminados();
+
+    private final PacienteDAO pacienteDAO = new PacienteDAO();
+    private final MedicoDAO medicoDAO = new MedicoDAO();
+    private final CitaDAO citaDAO = new CitaDAO();
+    private final IndiceDisponibilidad indice = IndiceDisponibilidad.getInstancia();
+    private final CacheProximasCitas proximasCitas = CacheProximasCitas.getInstancia();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread hilo = new Thread(r, "purga-eliminados");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    // Una pasada pendiente basta para cualquier número de solicitudes que lleguen mientras tanto
+    private final AtomicBoolean pendiente = new AtomicBoolean();
+    private final AtomicBoolean reintentoProgramado = new AtomicBoolean();
+
+    private final LongAdder pacientesPurgados = new LongAdder();
+    private final LongAdder medicosPurgados = new LongAdder();
+    private final LongAdder citasPurgadas = new LongAdder();
+    private final LongAdder errores = new LongAdder();
+
+    private PurgaEliminados() {
+    }
+
+    public static PurgaEliminados getInstancia() {
+        return INSTANCIA;
+    }
+
+    public record Estadisticas(long pacientesPurgados, long medicosPurgados, long citasPurgadas, long errores) {
+    }
+
+    // Programa una pasada y vuelve de inmediato
+    public void solicitar() {
+        if (pendiente.compareAndSet(false, true)) {
+            executor.execute(this::pasada);
+        }
+    }
+
+    // Una pasada dentro de REINTENTO_MS; varias llamadas mientras tanto programan una sola
+    private void reintentar() {
+        if (reintentoProgramado.compareAndSet(false, true)) {
+            executor.schedule(() -> {
+                reintentoProgramado.set(false);
+                solicitar();
+            }, REINTENTO_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Corre una pasada (después de lo que ya esté programado) y espera a que termine
+    public void purgarAhora() throws Exception {
+        executor.submit(this::pasada).get();
+    }
+
+    public Estadisticas estadisticas() {
+        return new Estadisticas(pacientesPurgados.sum(), medicosPurgados.sum(), citasPurgadas.sum(), errores.sum());
+    }
+
+    private void pasada() {
+        pendiente.set(false);
+        // Una excepción que escape mataría el hilo sin dejar rastro en el log
+        try {
+            purgarMarcados();
+        } catch (RuntimeException e) {
+            errores.increment();
+            LOG.log(Level.SEVERE, "Error inesperado en la purga de eliminados", e);
+        }
+    }
+
+    private void purgarMarcados() {
+        long inicio = System.nanoTime();
+        long citasAntes = citasPurgadas.sum();
+        int purgados = 0;
+        for (Long pacienteId : pacienteDAO.findIdsPorPurgar()) {
+            if (purgar("paciente", pacienteId, limite -> citaDAO.eliminarDePaciente(pacienteId, limite),
+                    () -> pacienteDAO.eliminarEnBloque(pacienteId))) {
+                pacientesPurgados.increment();
+                purgados++;
+            }
+        }
+        for (Long medicoId : medicoDAO.findIdsPorPurgar()) {
+            if (purgar("médico", medicoId, limite -> citaDAO.eliminarDeMedico(medicoId, limite),
+                    () -> medicoDAO.eliminarEnBloque(medicoId))) {
+                medicosPurgados.increment();
+                purgados++;
+            }
+        }
+        if (purgados > 0) {
+            long citas = citasPurgadas.sum() - citasAntes;
+            int total = purgados;
+            LOG.info(() -> String.format("Purga de eliminados: %d registros, %d citas, %d ms", total, citas,
+                    Duration.ofNanos(System.nanoTime() - inicio).toMillis()));
+        }
+    }
+
+    private boolean purgar(String tipo, Long id, IntFunction<List<OcupacionCita>> loteCitas, FilaMarcada fila) {
+        try {
+            List<OcupacionCita> borradas;
+            do {
+                // Cada lote es su propia transacción
+                borradas = loteCitas.apply(TAMANIO_LOTE);
+                borradas.forEach(c -> {
+                    indice.citaEliminada(c.medicoId(), c.fechaHora(), c.citaId());
+                    proximasCitas.citaEliminada(c.medicoId(), c.citaId());
+                });
+                citasPurgadas.add(borradas.size());
+            } while (borradas.size() == TAMANIO_LOTE);
+            return fila.eliminar();
+        } catch (RuntimeException e) {
+            // Una cita agendada durante la purga: queda para la siguiente pasada
+            errores.increment();
+            String restriccion = RestriccionesBD.violada(e);
+            if (restriccion != null && restriccion.startsWith("fk_cita_")) {
+                LOG.info(() -> "Purga de " + tipo + " " + id + " pospuesta: recibió citas nuevas");
+                reintentar();
+            } else {
+                LOG.log(Level.WARNING, "Falló la purga de " + tipo + " " + id, e);
+            }
+            return false;
+        }
+    }
+
+    @FunctionalInterface
+    private interface FilaMarcada {
+        boolean eliminar();
+    }
+}
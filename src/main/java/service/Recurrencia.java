@@ -0,0 +1,47 @@
+package service;
+
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
+
+// Regla de una serie de citas: desde inicio, cada periodo, hasta completar repeticiones o pasar de hasta
+// (lo que ocurra primero; al menos uno de los dos es obligatorio)
+public record Recurrencia(LocalDateTime inicio, Period periodo, Integer repeticiones, LocalDateTime hasta) {
+
+    public static final int MAX_REPETICIONES = 366;
+
+    public Recurrencia {
+        if (inicio == null || periodo == null || periodo.isZero() || periodo.isNegative()) {
+            throw new IllegalArgumentException("La recurrencia necesita fecha de inicio y un periodo positivo");
+        }
+        if (repeticiones == null && hasta == null) {
+            throw new IllegalArgumentException("Indique el número de repeticiones o la fecha final");
+        }
+        if (repeticiones != null && (repeticiones < 1 || repeticiones > MAX_REPETICIONES)) {
+            throw new IllegalArgumentException("Las repeticiones deben estar entre 1 y " + MAX_REPETICIONES);
+        }
+    }
+
+    public static Recurrencia semanal(LocalDateTime inicio, int repeticiones) {
+        return new Recurrencia(inicio, Period.ofWeeks(1), repeticiones, null);
+    }
+
+    public static Recurrencia mensual(LocalDateTime inicio, int repeticiones) {
+        return new Recurrencia(inicio, Period.ofMonths(1), repeticiones, null);
+    }
+
+    // Cada fecha se calcula desde el inicio (no desde la anterior): el 31 de cada mes no se corre al 28
+    public List<LocalDateTime> fechas() {
+        List<LocalDateTime> fechas = new ArrayList<>();
+        int limite = repeticiones != null ? repeticiones : MAX_REPETICIONES;
+        for (int i = 0; i < limite; i++) {
+            LocalDateTime fecha = inicio.plus(periodo.multipliedBy(i));
+            if (hasta != null && fecha.isAfter(hasta)) {
+                break;
+            }
+            fechas.add(fecha);
+        }
+        return fechas;
+    }
+}
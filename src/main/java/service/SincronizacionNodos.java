@@ -0,0 +1,110 @@
+package service;
+
+import dao.PacienteDAO;
+import model.Medico;
+import util.BusCambios;
+import util.CacheSegundoNivel;
+import util.JPAUtil;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+// Aplica los cambios que otros nodos avisan por el BusCambios a lo que este nodo tiene en memoria:
+// caché de segundo nivel, índice de disponibilidad, próximas citas e índice de pacientes. Se descarta
+// solo lo de las filas afectadas (por médico en el caso de las citas); lo descartado se vuelve a leer
+// de la base en el próximo uso. Un cambio sin id (cargas masivas, cierres de citas pasadas, una
+// reconexión del bus) descarta todo lo de esa entidad.
+public class SincronizacionNodos {
+
+    private static final SincronizacionNodos INSTANCIA = new SincronizacionNodos(new PacienteDAO());
+
+    private final PacienteDAO pacienteDAO;
+    private final IndiceDisponibilidad indice = IndiceDisponibilidad.getInstancia();
+    private final CacheProximasCitas proximasCitas = CacheProximasCitas.getInstancia();
+    private final IndicePacientes indicePacientes = IndicePacientes.getInstancia();
+
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder invalidacionesMedico = new LongAdder();
+    private final LongAdder invalidacionesTotales = new LongAdder();
+
+    SincronizacionNodos(PacienteDAO pacienteDAO) {
+        this.pacienteDAO = pacienteDAO;
+    }
+
+    public static SincronizacionNodos getInstancia() {
+        return INSTANCIA;
+    }
+
+    public record Estadisticas(long lotes, long invalidacionesMedico, long invalidacionesTotales) {
+    }
+
+    // No hace nada si el bus no está activo (-Dhospital.bus.activo=true)
+    public void iniciar() {
+        BusCambios.iniciar(this::aplicar);
+    }
+
+    public Estadisticas estadisticas() {
+        return new Estadisticas(lotes.sum(), invalidacionesMedico.sum(), invalidacionesTotales.sum());
+    }
+
+    void aplicar(List<BusCambios.Cambio> cambios) {
+        lotes.increment();
+        // Un lote suele traer varias citas del mismo médico: cada agenda se descarta una vez
+        Set<Long> agendas = new HashSet<>();
+        Set<Long> pacientes = new HashSet<>();
+        boolean consultasMedico = false;
+        for (BusCambios.Cambio cambio : cambios) {
+            switch (cambio.entidad()) {
+                case TODAS -> {
+                    invalidarTodo();
+                    return;
+                }
+                case MEDICO -> {
+                    JPAUtil.getSessionFactory().getCache().evictEntityData(Medico.class, cambio.id());
+                    consultasMedico = true;
+                    indice.medicoCambiado(cambio.id());
+                    agendas.add(cambio.id());
+                }
+                case PACIENTE -> {
+                    if (cambio.operacion() == BusCambios.Operacion.ELIMINADO) {
+                        indicePacientes.pacienteEliminado(cambio.id());
+                        pacientes.remove(cambio.id());
+                    } else {
+                        pacientes.add(cambio.id());
+                    }
+                }
+                case CITA -> {
+                    if (cambio.medicoId() == null) {
+                        indice.invalidarTodo();
+                        proximasCitas.invalidarTodo();
+                        invalidacionesTotales.increment();
+                    } else {
+                        agendas.add(cambio.medicoId());
+                    }
+                }
+            }
+        }
+        if (consultasMedico) {
+            CacheSegundoNivel.invalidarConsultasMedico();
+        }
+        for (Long medicoId : agendas) {
+            indice.invalidar(medicoId);
+            proximasCitas.invalidar(medicoId);
+            invalidacionesMedico.increment();
+        }
+        // Registrados o modificados: el índice necesita nombre, DPI y teléfono, se leen en una consulta
+        if (!pacientes.isEmpty()) {
+            pacienteDAO.findResumenesPorIds(pacientes).forEach(indicePacientes::pacienteRegistrado);
+        }
+    }
+
+    private void invalidarTodo() {
+        JPAUtil.getSessionFactory().getCache().evictAllRegions();
+        indice.invalidarTodo();
+        proximasCitas.invalidarTodo();
+        indicePacientes.invalidarTodo();
+        invalidacionesTotales.increment();
+    }
+}
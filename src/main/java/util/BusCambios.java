@@ -0,0 +1,298 @@
+package util;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Avisos de cambios entre nodos con LISTEN/NOTIFY de PostgreSQL, para que cada instancia descarte lo
+// que tiene en memoria de las filas que otra escribió. Lo escrito se publica después de confirmar; un
+// hilo lo envía en lotes (varios cambios por NOTIFY) por una conexión propia y otro escucha el canal
+// por otra, fuera del pool. Cada aviso lleva el nodo que lo envió y el propio se ignora: ese nodo ya
+// actualizó sus estructuras. Si la escucha se corta, al reconectar se entrega un cambio TODAS porque
+// los avisos de mientras tanto se perdieron.
+// Se activa con -Dhospital.bus.activo=true (una sola instancia no lo necesita).
+public final class BusCambios {
+
+    private static final Logger LOG = Logger.getLogger(BusCambios.class.getName());
+
+    public static final boolean ACTIVO = Boolean.getBoolean("hospital.bus.activo");
+    public static final String CANAL = System.getProperty("hospital.bus.canal", "hospital_cambios");
+    public static final String NODO = UUID.randomUUID().toString().substring(0, 8);
+
+    // NOTIFY acepta hasta 8000 bytes por aviso
+    private static final int MAX_AVISO = 7900;
+    private static final int ESPERA_AVISOS_MS = 500;
+    private static final int PAUSA_RECONEXION_MS = 2000;
+
+    public enum Entidad { MEDICO, PACIENTE, CITA, TODAS }
+
+    public enum Operacion { CREADO, MODIFICADO, ELIMINADO }
+
+    // medicoId solo en las citas: las estructuras en memoria de citas van por médico
+    public record Cambio(Entidad entidad, Operacion operacion, Long id, Long medicoId) {
+
+        public static Cambio medico(Operacion operacion, Long id) {
+            return new Cambio(Entidad.MEDICO, operacion, id, null);
+        }
+
+        public static Cambio paciente(Operacion operacion, Long id) {
+            return new Cambio(Entidad.PACIENTE, operacion, id, null);
+        }
+
+        public static Cambio cita(Operacion operacion, Long id, Long medicoId) {
+            return new Cambio(Entidad.CITA, operacion, id, medicoId);
+        }
+
+        public static Cambio todas() {
+            return new Cambio(Entidad.TODAS, Operacion.MODIFICADO, null, null);
+        }
+
+        String codificar() {
+            return entidad.name().charAt(0) + "" + operacion.name().charAt(0) + ":" + (id != null ? id : "")
+                    + (medicoId != null ? ":" + medicoId : "");
+        }
+
+        static Cambio decodificar(String texto) {
+            String[] partes = texto.split(":");
+            Entidad entidad = switch (partes[0].charAt(0)) {
+                case 'M' -> Entidad.MEDICO;
+                case 'P' -> Entidad.PACIENTE;
+                case 'C' -> Entidad.CITA;
+                default -> Entidad.TODAS;
+            };
+            Operacion operacion = switch (partes[0].charAt(1)) {
+                case 'C' -> Operacion.CREADO;
+                case 'E' -> Operacion.ELIMINADO;
+                default -> Operacion.MODIFICADO;
+            };
+            Long id = partes.length > 1 && !partes[1].isEmpty() ? Long.valueOf(partes[1]) : null;
+            Long medicoId = partes.length > 2 ? Long.valueOf(partes[2]) : null;
+            return new Cambio(entidad, operacion, id, medicoId);
+        }
+    }
+
+    public record Estadisticas(boolean conectado, long publicados, long avisosEnviados, long avisosRecibidos,
+                               long cambiosRecibidos, long reconexiones, long errores) {
+    }
+
+    private static final BlockingQueue<Cambio> pendientes = new LinkedBlockingQueue<>();
+    private static final LongAdder publicados = new LongAdder();
+    private static final LongAdder avisosEnviados = new LongAdder();
+    private static final LongAdder avisosRecibidos = new LongAdder();
+    private static final LongAdder cambiosRecibidos = new LongAdder();
+    private static final LongAdder reconexiones = new LongAdder();
+    private static final LongAdder errores = new LongAdder();
+
+    private static volatile boolean iniciado;
+    private static volatile boolean conectado;
+    private static volatile Consumer<List<Cambio>> receptor;
+    private static Thread envio;
+    private static Thread escucha;
+
+    private BusCambios() {
+    }
+
+    // Empieza a enviar y a escuchar; receptor recibe, en el hilo de escucha, los cambios de otros nodos
+    public static synchronized void iniciar(Consumer<List<Cambio>> receptorCambios) {
+        if (!ACTIVO || iniciado) {
+            return;
+        }
+        receptor = receptorCambios;
+        iniciado = true;
+        envio = hilo("bus-cambios-envio", BusCambios::enviar);
+        escucha = hilo("bus-cambios-escucha", BusCambios::escuchar);
+        LOG.info(() -> "Bus de cambios iniciado: nodo " + NODO + ", canal " + CANAL);
+    }
+
+    public static synchronized void detener() {
+        if (!iniciado) {
+            return;
+        }
+        iniciado = false;
+        envio.interrupt();
+        escucha.interrupt();
+    }
+
+    public static boolean iniciado() {
+        return iniciado;
+    }
+
+    // Dentro de una unidad de trabajo sale solo si se confirma; fuera de ella, de inmediato. Por eso los
+    // DAO lo llaman al volver de escribirYObtener y no dentro: sin unidad, ahí ya se confirmó
+    public static void alConfirmar(Cambio... cambios) {
+        if (iniciado) {
+            UnidadDeTrabajo.despuesDeConfirmar(() -> publicar(List.of(cambios)));
+        }
+    }
+
+    public static void alConfirmar(List<Cambio> cambios) {
+        if (iniciado && !cambios.isEmpty()) {
+            UnidadDeTrabajo.despuesDeConfirmar(() -> publicar(cambios));
+        }
+    }
+
+    // Para cambios ya confirmados
+    public static void publicar(List<Cambio> cambios) {
+        if (iniciado) {
+            pendientes.addAll(cambios);
+            publicados.add(cambios.size());
+        }
+    }
+
+    public static Estadisticas estadisticas() {
+        return new Estadisticas(conectado, publicados.sum(), avisosEnviados.sum(), avisosRecibidos.sum(),
+                cambiosRecibidos.sum(), reconexiones.sum(), errores.sum());
+    }
+
+    private static Thread hilo(String nombre, Runnable tarea) {
+        Thread hilo = new Thread(tarea, nombre);
+        hilo.setDaemon(true);
+        hilo.start();
+        return hilo;
+    }
+
+    // Junta lo pendiente en avisos de hasta MAX_AVISO bytes: "nodo cambio cambio ..."
+    private static void enviar() {
+        Connection conexion = null;
+        List<Cambio> lote = new ArrayList<>();
+        while (iniciado) {
+            try {
+                lote.add(pendientes.take());
+                pendientes.drainTo(lote);
+                if (conexion == null) {
+                    conexion = JPAUtil.abrirConexionDedicada();
+                }
+                try (PreparedStatement ps = conexion.prepareStatement("SELECT pg_notify(?, ?)")) {
+                    StringBuilder aviso = new StringBuilder(NODO);
+                    for (Cambio cambio : lote) {
+                        String codigo = cambio.codificar();
+                        if (aviso.length() + codigo.length() + 1 > MAX_AVISO) {
+                            notificar(ps, aviso);
+                            aviso = new StringBuilder(NODO);
+                        }
+                        aviso.append(' ').append(codigo);
+                    }
+                    notificar(ps, aviso);
+                }
+                lote.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (SQLException e) {
+                // Se reintenta el lote con una conexión nueva
+                errores.increment();
+                LOG.log(Level.WARNING, "No se pudieron enviar " + lote.size() + " cambios al bus", e);
+                cerrar(conexion);
+                conexion = null;
+                if (!pausa()) {
+                    break;
+                }
+            }
+        }
+        cerrar(conexion);
+    }
+
+    private static void notificar(PreparedStatement ps, CharSequence aviso) throws SQLException {
+        ps.setString(1, CANAL);
+        ps.setString(2, aviso.toString());
+        ps.execute();
+        avisosEnviados.increment();
+    }
+
+    private static void escuchar() {
+        boolean primera = true;
+        while (iniciado) {
+            Connection conexion = null;
+            try {
+                conexion = JPAUtil.abrirConexionDedicada();
+                try (Statement st = conexion.createStatement()) {
+                    // Entre comillas: pg_notify usa el nombre tal cual, sin pasarlo a minúsculas
+                    st.execute("LISTEN \"" + CANAL.replace("\"", "\"\"") + "\"");
+                }
+                conectado = true;
+                if (!primera) {
+                    reconexiones.increment();
+                    entregar(List.of(Cambio.todas()));
+                }
+                primera = false;
+                PGConnection pg = conexion.unwrap(PGConnection.class);
+                while (iniciado) {
+                    PGNotification[] avisos = pg.getNotifications(ESPERA_AVISOS_MS);
+                    if (avisos != null) {
+                        recibir(avisos);
+                    }
+                }
+            } catch (SQLException e) {
+                errores.increment();
+                LOG.log(Level.WARNING, "Se cortó la escucha del bus de cambios, reconectando", e);
+            } finally {
+                conectado = false;
+                cerrar(conexion);
+            }
+            if (iniciado && !pausa()) {
+                break;
+            }
+        }
+    }
+
+    private static void recibir(PGNotification[] avisos) {
+        List<Cambio> cambios = new ArrayList<>();
+        for (PGNotification aviso : avisos) {
+            String[] partes = aviso.getParameter().split(" ");
+            if (partes[0].equals(NODO)) {
+                continue;
+            }
+            avisosRecibidos.increment();
+            for (int i = 1; i < partes.length; i++) {
+                cambios.add(Cambio.decodificar(partes[i]));
+            }
+        }
+        if (!cambios.isEmpty()) {
+            cambiosRecibidos.add(cambios.size());
+            entregar(cambios);
+        }
+    }
+
+    private static void entregar(List<Cambio> cambios) {
+        // Un error del receptor no debe cortar la escucha
+        try {
+            receptor.accept(cambios);
+        } catch (RuntimeException e) {
+            errores.increment();
+            LOG.log(Level.SEVERE, "Error al aplicar cambios de otro nodo", e);
+        }
+    }
+
+    private static boolean pausa() {
+        try {
+            Thread.sleep(PAUSA_RECONEXION_MS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void cerrar(Connection conexion) {
+        if (conexion != null) {
+            try {
+                conexion.close();
+            } catch (SQLException e) {
+                LOG.log(Level.FINE, "Error al cerrar la conexión del bus", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package util;
+
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheEventListenerConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.event.EventType;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Caché de segundo nivel de Hibernate en el proceso (JCache sobre Ehcache, sin servidor externo).
+// Cada región está acotada por número de entradas y expira por TTL; los límites se cambian con
+// -Dhospital.cache.medico.* y -Dhospital.cache.consultas.*, y -Dhospital.cache.activa=false la apaga.
+// Aciertos, fallos y guardados salen de las estadísticas de Hibernate; desalojos y expiraciones, de
+// los eventos de Ehcache.
+public final class CacheSegundoNivel {
+
+    public static final boolean ACTIVA = !"false".equalsIgnoreCase(System.getProperty("hospital.cache.activa"));
+
+    public static final String REGION_MEDICO = "medico";
+    public static final String REGION_CONSULTAS_MEDICO = "consultas-medico";
+    // Regiones que Hibernate usa para el caché de consultas
+    private static final String REGION_CONSULTAS = "default-query-results-region";
+    private static final String REGION_MARCAS = "default-update-timestamps-region";
+
+    public static final int MEDICO_MAX_ENTRADAS = Integer.getInteger("hospital.cache.medico.maxEntradas", 1000);
+    public static final Duration MEDICO_TTL = Duration.ofSeconds(Integer.getInteger("hospital.cache.medico.ttlSegundos", 600));
+    public static final int CONSULTAS_MAX_ENTRADAS = Integer.getInteger("hospital.cache.consultas.maxEntradas", 200);
+    public static final Duration CONSULTAS_TTL = Duration.ofSeconds(Integer.getInteger("hospital.cache.consultas.ttlSegundos", 300));
+
+    private static CacheManager manager;
+    private static final Map<String, LongAdder> DESALOJOS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> EXPIRACIONES = new ConcurrentHashMap<>();
+
+    private CacheSegundoNivel() {
+    }
+
+    public record EstadisticasRegion(String region, long aciertos, long fallos, long guardados, long entradas,
+                                     long desalojos, long expiraciones, int maxEntradas, Duration ttl) {
+        public double tasaAciertos() {
+            long total = aciertos + fallos;
+            return total == 0 ? 0 : (double) aciertos / total;
+        }
+    }
+
+    // Propiedades para el EntityManagerFactory; vacío si la caché está apagada
+    static Map<String, Object> propiedades() {
+        Map<String, Object> propiedades = new HashMap<>();
+        if (!ACTIVA) {
+            return propiedades;
+        }
+        propiedades.put("hibernate.cache.use_second_level_cache", true);
+        propiedades.put("hibernate.cache.use_query_cache", true);
+        propiedades.put("hibernate.cache.region.factory_class", "jcache");
+        manager = crearCacheManager();
+        propiedades.put("hibernate.javax.cache.cache_manager", manager);
+        return propiedades;
+    }
+
+    private static CacheManager crearCacheManager() {
+        CacheManager manager = Caching.getCachingProvider("org.ehcache.jsr107.EhcacheCachingProvider").getCacheManager();
+        crearRegion(manager, REGION_MEDICO, MEDICO_MAX_ENTRADAS, MEDICO_TTL);
+        crearRegion(manager, REGION_CONSULTAS_MEDICO, CONSULTAS_MAX_ENTRADAS, CONSULTAS_TTL);
+        crearRegion(manager, REGION_CONSULTAS, CONSULTAS_MAX_ENTRADAS, CONSULTAS_TTL);
+        // Las marcas por tabla validan los resultados guardados: una por tabla, sin expirar
+        crearRegion(manager, REGION_MARCAS, 10_000, null);
+        return manager;
+    }
+
+    private static void crearRegion(CacheManager manager, String nombre, int maxEntradas, Duration ttl) {
+        LongAdder desalojos = DESALOJOS.computeIfAbsent(nombre, n -> new LongAdder());
+        LongAdder expiraciones = EXPIRACIONES.computeIfAbsent(nombre, n -> new LongAdder());
+        CacheConfiguration<Object, Object> configuracion = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(maxEntradas))
+                .withExpiry(ttl == null ? ExpiryPolicyBuilder.noExpiration() : ExpiryPolicyBuilder.timeToLiveExpiration(ttl))
+                .withService(CacheEventListenerConfigurationBuilder
+                        .newEventListenerConfiguration(evento -> {
+                            if (evento.getType() == EventType.EVICTED) desalojos.increment();
+                            else expiraciones.increment();
+                        }, EventType.EVICTED, EventType.EXPIRED)
+                        .unordered().synchronous())
+                .build();
+        manager.createCache(nombre, Eh107Configuration.fromEhcacheCacheConfiguration(configuracion));
+    }
+
+    // Descarta la lista de médicos y las búsquedas guardadas; para escrituras que no pasan por Hibernate
+    public static void invalidarConsultasMedico() {
+        if (ACTIVA) {
+            JPAUtil.getSessionFactory().getCache().evictQueryRegion(REGION_CONSULTAS_MEDICO);
+        }
+    }
+
+    public static List<EstadisticasRegion> estadisticas() {
+        if (!ACTIVA) {
+            return List.of();
+        }
+        Statistics estadisticas = JPAUtil.getSessionFactory().getStatistics();
+        return List.of(
+                region(REGION_MEDICO, estadisticas.getDomainDataRegionStatistics(REGION_MEDICO), MEDICO_MAX_ENTRADAS, MEDICO_TTL),
+                region(REGION_CONSULTAS_MEDICO, estadisticas.getQueryRegionStatistics(REGION_CONSULTAS_MEDICO),
+                        CONSULTAS_MAX_ENTRADAS, CONSULTAS_TTL));
+    }
+
+    private static EstadisticasRegion region(String nombre, CacheRegionStatistics s, int maxEntradas, Duration ttl) {
+        long desalojos = DESALOJOS.get(nombre).sum();
+        long expiraciones = EXPIRACIONES.get(nombre).sum();
+        if (s == null) {
+            return new EstadisticasRegion(nombre, 0, 0, 0, entradas(nombre), desalojos, expiraciones, maxEntradas, ttl);
+        }
+        return new EstadisticasRegion(nombre, s.getHitCount(), s.getMissCount(), s.getPutCount(),
+                entradas(nombre), desalojos, expiraciones, maxEntradas, ttl);
+    }
+
+    // Hibernate no sabe contar las entradas de una región JCache: se recorren (son a lo sumo maxEntradas)
+    private static long entradas(String nombre) {
+        Cache<Object, Object> cache = manager.getCache(nombre);
+        long entradas = 0;
+        if (cache != null) {
+            for (Cache.Entry<Object, Object> ignorada : cache) {
+                entradas++;
+            }
+        }
+        return entradas;
+    }
+}
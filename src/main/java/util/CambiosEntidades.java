@@ -0,0 +1,80 @@
+package util;
+
+import model.Cita;
+import model.Medico;
+import model.Paciente;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.List;
+
+// Publica en el BusCambios las escrituras de Medico, Paciente y Cita que pasan por Hibernate (persist,
+// merge, remove y cambios de entidades administradas), después de confirmar. Las escrituras por SQL
+// nativo o JDBC las publica su DAO.
+final class CambiosEntidades implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+
+    static void registrar(SessionFactory sessionFactory) {
+        CambiosEntidades listener = new CambiosEntidades();
+        EventListenerRegistry registro = sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registro.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        registro.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registro.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        Class<?> clase = persister.getMappedClass();
+        return clase == Medico.class || clase == Paciente.class || clase == Cita.class;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        publicar(event.getEntity(), event.getId(), BusCambios.Operacion.CREADO);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        publicar(event.getEntity(), event.getId(), BusCambios.Operacion.MODIFICADO);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        publicar(event.getEntity(), event.getId(), BusCambios.Operacion.ELIMINADO);
+    }
+
+    // Solo se llaman si la transacción falló: no hay nada que avisar
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    private static void publicar(Object entidad, Object id, BusCambios.Operacion operacion) {
+        BusCambios.Cambio cambio;
+        if (entidad instanceof Cita cita) {
+            cambio = BusCambios.Cambio.cita(operacion, (Long) id, cita.getMedico().getId());
+        } else if (entidad instanceof Medico) {
+            cambio = BusCambios.Cambio.medico(operacion, (Long) id);
+        } else {
+            cambio = BusCambios.Cambio.paciente(operacion, (Long) id);
+        }
+        BusCambios.publicar(List.of(cambio));
+    }
+}
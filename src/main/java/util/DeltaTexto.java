@@ -0,0 +1,52 @@
+package util;
+
+// Delta compacto entre dos versiones de un texto: se conservan el prefijo y el sufijo comunes y se
+// guarda solo el tramo intermedio nuevo, "prefijo,sufijo:tramo". Cubre bien las ediciones típicas
+// de un historial (agregar al final, corregir una frase) sin guardar el texto completo.
+//  null -> sin cambios;  "-" -> el texto pasa a null
+public final class DeltaTexto {
+
+    private static final String A_NULO = "-";
+
+    private DeltaTexto() {
+    }
+
+    public static String calcular(String anterior, String nuevo) {
+        if (nuevo == null) {
+            return anterior == null ? null : A_NULO;
+        }
+        if (nuevo.equals(anterior)) {
+            return null;
+        }
+        String base = anterior == null ? "" : anterior;
+        int maximo = Math.min(base.length(), nuevo.length());
+        int prefijo = 0;
+        while (prefijo < maximo && base.charAt(prefijo) == nuevo.charAt(prefijo)) {
+            prefijo++;
+        }
+        int sufijo = 0;
+        while (sufijo < maximo - prefijo
+                && base.charAt(base.length() - 1 - sufijo) == nuevo.charAt(nuevo.length() - 1 - sufijo)) {
+            sufijo++;
+        }
+        return prefijo + "," + sufijo + ":" + nuevo.substring(prefijo, nuevo.length() - sufijo);
+    }
+
+    public static String aplicar(String base, String delta) {
+        if (delta == null) {
+            return base;
+        }
+        if (delta.equals(A_NULO)) {
+            return null;
+        }
+        int coma = delta.indexOf(',');
+        int dosPuntos = delta.indexOf(':', coma);
+        int prefijo = Integer.parseInt(delta.substring(0, coma));
+        int sufijo = Integer.parseInt(delta.substring(coma + 1, dosPuntos));
+        String texto = base == null ? "" : base;
+        if (prefijo + sufijo > texto.length()) {
+            throw new IllegalStateException("Delta de texto no aplicable a la versión base");
+        }
+        return texto.substring(0, prefijo) + delta.substring(dosPuntos + 1) + texto.substring(texto.length() - sufijo);
+    }
+}
@@ -0,0 +1,41 @@
+package util;
+
+// Foto del pool de conexiones: ocupación actual más las distribuciones acumuladas desde el arranque
+// (o desde el último reinicio de métricas)
+public record EstadisticasPool(int activas, int inactivas, int esperando, int total, int maximo,
+                               long timeouts, Distribucion adquisicion, Distribucion uso) {
+
+    // limitesMicros[i] es el límite superior de la cubeta i; la última es abierta
+    public record Distribucion(long[] limitesMicros, long[] conteos, long totalMicros) {
+
+        public long muestras() {
+            long n = 0;
+            for (long c : conteos) {
+                n += c;
+            }
+            return n;
+        }
+
+        public double promedioMs() {
+            long n = muestras();
+            return n == 0 ? 0 : totalMicros / 1000.0 / n;
+        }
+
+        // Límite superior de la cubeta donde cae el percentil (cota, no valor exacto); -1 si es la abierta
+        public double percentilMs(double percentil) {
+            long n = muestras();
+            if (n == 0) {
+                return 0;
+            }
+            long objetivo = (long) Math.ceil(n * percentil / 100.0);
+            long acumulado = 0;
+            for (int i = 0; i < conteos.length; i++) {
+                acumulado += conteos[i];
+                if (acumulado >= objetivo) {
+                    return limitesMicros[i] == Long.MAX_VALUE ? -1 : limitesMicros[i] / 1000.0;
+                }
+            }
+            return -1;
+        }
+    }
+}
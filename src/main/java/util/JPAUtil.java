@@ -1,29 +1,206 @@
 package util;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
+import org.hibernate.SessionFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
 
 public class JPAUtil {
     private static final String PERSISTENCE_UNIT = "JPAJoinsLabPU";
+    // Entorno: -Dhospital.entorno=prod o variable HOSPITAL_ENTORNO; elige db/entorno-<nombre>.properties
+    private static final String ENTORNO = entorno();
+    private static final String PREFIJO_SOBRESCRITURA = "hospital.db.";
+    // Réplica de solo lectura: db/entorno-<nombre>-replica.properties y/o -Dhospital.replica.db.<propiedad>,
+    // sobre la configuración del primario (basta -Dhospital.replica.db.jdbcUrl=...)
+    private static final String PREFIJO_REPLICA = "hospital.replica.db.";
+
     private static EntityManagerFactory emf;
+    private static HikariDataSource dataSource;
+    private static final MetricasPool metricasPool = new MetricasPool();
+    // null sin réplica configurada: las lecturas de reportes van al primario
+    private static EntityManagerFactory emfReplica;
+    private static HikariDataSource dataSourceReplica;
+    private static final MetricasPool metricasPoolReplica = new MetricasPool();
 
     static {
         try {
-            emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT);
+            dataSource = crearDataSource();
+            Map<String, Object> propiedades = CacheSegundoNivel.propiedades();
+            propiedades.put("jakarta.persistence.nonJtaDataSource", dataSource);
+            emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, propiedades);
+            // Las estadísticas de regiones solo se llevan con las estadísticas activas; activarlas aquí y
+            // no con generate_statistics evita el resumen de métricas en el log al cerrar cada sesión
+            if (CacheSegundoNivel.ACTIVA) {
+                getSessionFactory().getStatistics().setStatisticsEnabled(true);
+            }
+            if (BusCambios.ACTIVO) {
+                CambiosEntidades.registrar(getSessionFactory());
+            }
+            crearIndicesParciales();
         } catch (Exception e) {
             System.err.println("Error al crear EntityManagerFactory: " + e.getMessage());
+            if (dataSource != null) dataSource.close();
             throw new ExceptionInInitializerError(e);
         }
+        crearReplica();
     }
 
     public static EntityManager getEntityManager() {
         return emf.createEntityManager();
     }
 
+    public static SessionFactory getSessionFactory() {
+        return emf.unwrap(SessionFactory.class);
+    }
+
+    public static boolean hayReplica() {
+        return emfReplica != null;
+    }
+
+    // De la réplica si hay, si no del primario
+    public static EntityManager getEntityManagerReplica() {
+        return (emfReplica != null ? emfReplica : emf).createEntityManager();
+    }
+
+    public static SessionFactory getSessionFactoryReplica() {
+        return (emfReplica != null ? emfReplica : emf).unwrap(SessionFactory.class);
+    }
+
+    public static String getEntorno() {
+        return ENTORNO;
+    }
+
+    public static EstadisticasPool getEstadisticasPool() {
+        return metricasPool.instantanea();
+    }
+
+    public static Optional<EstadisticasPool> getEstadisticasPoolReplica() {
+        return emfReplica != null ? Optional.of(metricasPoolReplica.instantanea()) : Optional.empty();
+    }
+
+    public static void reiniciarMetricasPool() {
+        metricasPool.reiniciar();
+        metricasPoolReplica.reiniciar();
+    }
+
+    // Conexión fuera del pool, para quien la necesita abierta todo el tiempo (LISTEN del BusCambios)
+    public static Connection abrirConexionDedicada() throws SQLException {
+        return DriverManager.getConnection(dataSource.getJdbcUrl(), dataSource.getUsername(), dataSource.getPassword());
+    }
+
     public static void closeEntityManagerFactory() {
+        BusCambios.detener();
+        if (emfReplica != null && emfReplica.isOpen()) {
+            emfReplica.close();
+        }
+        if (dataSourceReplica != null && !dataSourceReplica.isClosed()) {
+            dataSourceReplica.close();
+        }
         if (emf != null && emf.isOpen()) {
             emf.close();
         }
+        if (dataSource != null && !dataSource.isClosed()) {
+            dataSource.close();
+        }
+    }
+
+    // Índices con WHERE, que hbm2ddl no sabe declarar: con hbm2ddl=update se crean aquí si faltan. En una
+    // base existente el cambio de uno que ya estaba lo hace su migración (db/06_cita_unica_no_cancelada.sql)
+    private static void crearIndicesParciales() throws SQLException {
+        if (!"update".equals(emf.getProperties().get("hibernate.hbm2ddl.auto"))) {
+            return;
+        }
+        try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE UNIQUE INDEX IF NOT EXISTS uk_cita_medico_fecha ON cita (medico_id, fecha_hora) " +
+                    "WHERE estado <> 'CANCELADA'");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_paciente_por_purgar ON paciente (eliminado_en) " +
+                    "WHERE eliminado_en IS NOT NULL");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_medico_por_purgar ON medico (eliminado_en) " +
+                    "WHERE eliminado_en IS NOT NULL");
+        }
+    }
+
+    private static HikariDataSource crearDataSource() throws IOException {
+        HikariConfig config = new HikariConfig(cargarPropiedades());
+        config.setMetricsTrackerFactory(metricasPool);
+        return new HikariDataSource(config);
+    }
+
+    // La misma unidad de persistencia sobre el pool de la réplica, sin DDL ni caché de segundo nivel
+    // (la caché es del primario, que es donde se invalida). Si la réplica no responde al arrancar se
+    // sigue sin ella
+    private static void crearReplica() {
+        try {
+            Properties propiedades = cargarPropiedades();
+            boolean configurada = cargar(propiedades, "db/entorno-" + ENTORNO + "-replica.properties");
+            configurada |= sobrescribir(propiedades, PREFIJO_REPLICA);
+            if (!configurada) {
+                return;
+            }
+            HikariConfig config = new HikariConfig(propiedades);
+            config.setPoolName(config.getPoolName() + "-replica");
+            config.setReadOnly(true);
+            config.setMetricsTrackerFactory(metricasPoolReplica);
+            dataSourceReplica = new HikariDataSource(config);
+            emfReplica = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, Map.of(
+                    "jakarta.persistence.nonJtaDataSource", dataSourceReplica,
+                    "hibernate.hbm2ddl.auto", "none",
+                    "hibernate.cache.use_second_level_cache", "false",
+                    "hibernate.cache.use_query_cache", "false"));
+        } catch (Exception e) {
+            System.err.println("Réplica no disponible, las lecturas van al primario: " + e.getMessage());
+            if (dataSourceReplica != null) dataSourceReplica.close();
+            dataSourceReplica = null;
+            emfReplica = null;
+        }
+    }
+
+    private static Properties cargarPropiedades() throws IOException {
+        Properties propiedades = new Properties();
+        String recurso = "db/entorno-" + ENTORNO + ".properties";
+        if (!cargar(propiedades, recurso)) {
+            throw new IOException("No existe la configuración del entorno: " + recurso);
+        }
+        sobrescribir(propiedades, PREFIJO_SOBRESCRITURA);
+        return propiedades;
+    }
+
+    private static boolean cargar(Properties propiedades, String recurso) throws IOException {
+        try (InputStream in = JPAUtil.class.getClassLoader().getResourceAsStream(recurso)) {
+            if (in == null) {
+                return false;
+            }
+            propiedades.load(in);
+            return true;
+        }
+    }
+
+    private static boolean sobrescribir(Properties propiedades, String prefijo) {
+        List<String> nombres = System.getProperties().stringPropertyNames().stream()
+                .filter(nombre -> nombre.startsWith(prefijo))
+                .toList();
+        nombres.forEach(nombre -> propiedades.setProperty(nombre.substring(prefijo.length()), System.getProperty(nombre)));
+        return !nombres.isEmpty();
+    }
+
+    private static String entorno() {
+        String entorno = System.getProperty("hospital.entorno");
+        if (entorno == null || entorno.isBlank()) {
+            entorno = System.getenv("HOSPITAL_ENTORNO");
+        }
+        return entorno == null || entorno.isBlank() ? "dev" : entorno.trim().toLowerCase();
     }
 }
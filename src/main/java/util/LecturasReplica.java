@@ -0,0 +1,137 @@
+package util;
+
+import jakarta.persistence.EntityManager;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+// Leer lo propio en la réplica: dentro de conEscriturasPropias(...), cada confirmación del hilo anota
+// la posición del WAL del primario (pg_current_wal_insert_lsn: con synchronous_commit=off la de
+// escritura puede quedar antes de la confirmación) y una lectura dirigida a la réplica espera a
+// que esta la haya aplicado, hasta ESPERA_MAXIMA_MS; si no alcanza, esa lectura va al primario.
+// Fuera de ese bloque las lecturas de la réplica pueden ir un poco atrás del primario.
+public final class LecturasReplica {
+
+    public static final int ESPERA_MAXIMA_MS = Integer.getInteger("hospital.replica.esperaMaximaMs", 200);
+    // Tras un fallo de conexión a la réplica, las lecturas van directo al primario durante este tiempo
+    // en lugar de esperar cada una el connectionTimeout del pool; después se vuelve a probar
+    public static final int PAUSA_TRAS_FALLO_MS = Integer.getInteger("hospital.replica.pausaTrasFalloMs", 10_000);
+    private static final int PAUSA_MS = 2;
+
+    // lsn: última confirmación del hilo dentro del bloque, null si aún no escribió. Sin lsn tras una
+    // escritura (no se pudo leer) el resto del bloque lee del primario
+    private static final class Estado {
+        int profundidad;
+        String lsn;
+        boolean soloPrimario;
+    }
+
+    private static final ThreadLocal<Estado> ACTUAL = new ThreadLocal<>();
+
+    private static final LongAdder lecturasReplica = new LongAdder();
+    private static final LongAdder esperas = new LongAdder();
+    private static final LongAdder desviadas = new LongAdder();
+    private static final LongAdder fallosReplica = new LongAdder();
+    private static final LongAdder omitidas = new LongAdder();
+    // System.nanoTime() hasta el que no se intenta la réplica
+    private static volatile long pausadaHasta = System.nanoTime();
+
+    // desviadas: la réplica no alcanzó las escrituras propias a tiempo; fallosReplica: sin conexión a
+    // ella; omitidas: no se intentó, estaba en pausa por un fallo. En todos los casos la lectura fue al primario
+    public record Estadisticas(long lecturasReplica, long esperas, long desviadas, long fallosReplica, long omitidas) {
+    }
+
+    private LecturasReplica() {
+    }
+
+    // Las lecturas de réplica del trabajo ven las escrituras que el mismo hilo confirmó dentro de él
+    public static <T> T conEscriturasPropias(Callable<T> trabajo) throws Exception {
+        Estado estado = ACTUAL.get();
+        if (estado == null) {
+            estado = new Estado();
+            ACTUAL.set(estado);
+        }
+        estado.profundidad++;
+        try {
+            return trabajo.call();
+        } finally {
+            if (--estado.profundidad == 0) {
+                ACTUAL.remove();
+            }
+        }
+    }
+
+    public static Estadisticas estadisticas() {
+        return new Estadisticas(lecturasReplica.sum(), esperas.sum(), desviadas.sum(), fallosReplica.sum(), omitidas.sum());
+    }
+
+    // Después de confirmar en el primario, con el EntityManager aún abierto
+    static void confirmada(EntityManager em) {
+        Estado estado = ACTUAL.get();
+        if (estado != null && JPAUtil.hayReplica()) {
+            // La escritura ya se confirmó: un error aquí no debe llegar a quien escribió
+            try {
+                estado.lsn = (String) em.createNativeQuery("SELECT cast(pg_current_wal_insert_lsn() AS text)").getSingleResult();
+            } catch (RuntimeException e) {
+                estado.soloPrimario = true;
+            }
+        }
+    }
+
+    // true si la lectura puede ir a esta réplica: no hay escrituras propias pendientes o ya se aplicaron
+    static boolean alDia(EntityManager replica) {
+        Estado estado = ACTUAL.get();
+        if (estado == null || estado.lsn == null && !estado.soloPrimario) {
+            return true;
+        }
+        if (estado.soloPrimario) {
+            desviadas.increment();
+            return false;
+        }
+        long limite = System.nanoTime() + ESPERA_MAXIMA_MS * 1_000_000L;
+        boolean espero = false;
+        while (true) {
+            // En el primario pg_last_wal_replay_lsn() es null: una "réplica" que apunta al primario está al día
+            boolean aplicada = (Boolean) replica.createNativeQuery(
+                            "SELECT coalesce(pg_last_wal_replay_lsn() >= cast(:lsn AS pg_lsn), true)")
+                    .setParameter("lsn", estado.lsn)
+                    .getSingleResult();
+            if (aplicada) {
+                if (espero) {
+                    esperas.increment();
+                }
+                return true;
+            }
+            if (System.nanoTime() > limite) {
+                desviadas.increment();
+                return false;
+            }
+            espero = true;
+            try {
+                Thread.sleep(PAUSA_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                desviadas.increment();
+                return false;
+            }
+        }
+    }
+
+    static void leidaEnReplica() {
+        lecturasReplica.increment();
+    }
+
+    // false durante la pausa que sigue a un fallo de conexión
+    static boolean disponible() {
+        if (System.nanoTime() - pausadaHasta < 0) {
+            omitidas.increment();
+            return false;
+        }
+        return true;
+    }
+
+    static void replicaFallo() {
+        fallosReplica.increment();
+        pausadaHasta = System.nanoTime() + PAUSA_TRAS_FALLO_MS * 1_000_000L;
+    }
+}
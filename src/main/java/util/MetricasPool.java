@@ -0,0 +1,91 @@
+package util;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Métricas que HikariCP reporta en cada préstamo de conexión: histograma de la espera para
+// obtenerla, histograma del tiempo que se mantiene prestada y timeouts de adquisición
+public class MetricasPool implements MetricsTrackerFactory {
+
+    private final Histograma adquisicion = new Histograma();
+    private final Histograma uso = new Histograma();
+    private final LongAdder timeouts = new LongAdder();
+    private volatile PoolStats poolStats;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                adquisicion.registrar(TimeUnit.NANOSECONDS.toMicros(elapsedAcquiredNanos));
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                uso.registrar(TimeUnit.MILLISECONDS.toMicros(elapsedBorrowedMillis));
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    public EstadisticasPool instantanea() {
+        PoolStats stats = poolStats;
+        if (stats == null) {
+            return new EstadisticasPool(0, 0, 0, 0, 0, timeouts.sum(),
+                    adquisicion.instantanea(), uso.instantanea());
+        }
+        return new EstadisticasPool(stats.getActiveConnections(), stats.getIdleConnections(),
+                stats.getPendingThreads(), stats.getTotalConnections(), stats.getMaxConnections(),
+                timeouts.sum(), adquisicion.instantanea(), uso.instantanea());
+    }
+
+    public void reiniciar() {
+        adquisicion.reiniciar();
+        uso.reiniciar();
+        timeouts.reset();
+    }
+
+    // Cubetas fijas en microsegundos: registrar no reserva memoria ni bloquea
+    static final class Histograma {
+        static final long[] LIMITES_MICROS = {
+                100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+                100_000, 250_000, 500_000, 1_000_000, 5_000_000, Long.MAX_VALUE};
+
+        private final AtomicLongArray conteos = new AtomicLongArray(LIMITES_MICROS.length);
+        private final LongAdder totalMicros = new LongAdder();
+
+        void registrar(long micros) {
+            int i = 0;
+            while (micros > LIMITES_MICROS[i]) {
+                i++;
+            }
+            conteos.incrementAndGet(i);
+            totalMicros.add(micros);
+        }
+
+        EstadisticasPool.Distribucion instantanea() {
+            long[] copia = new long[conteos.length()];
+            for (int i = 0; i < copia.length; i++) {
+                copia[i] = conteos.get(i);
+            }
+            return new EstadisticasPool.Distribucion(LIMITES_MICROS, copia, totalMicros.sum());
+        }
+
+        void reiniciar() {
+            for (int i = 0; i < conteos.length(); i++) {
+                conteos.set(i, 0);
+            }
+            totalMicros.reset();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package util;
+
+import org.hibernate.exception.ConstraintViolationException;
+
+public final class RestriccionesBD {
+
+    private RestriccionesBD() {
+    }
+
+    // Nombre de la restricción de la base (fk_*, uk_*) que provocó el error, o null si no fue una violación
+    public static String violada(Throwable error) {
+        for (Throwable causa = error; causa != null; causa = causa.getCause()) {
+            if (causa instanceof ConstraintViolationException cve && cve.getConstraintName() != null) {
+                return cve.getConstraintName().toLowerCase();
+            }
+            if (causa.getCause() == causa) {
+                break;
+            }
+        }
+        return null;
+    }
+}
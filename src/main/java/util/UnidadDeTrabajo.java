@@ -0,0 +1,208 @@
+package util;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.JDBCConnectionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Unidad de trabajo: un EntityManager y una transacción compartidos por todas las llamadas
+// a DAOs que ocurren dentro de ejecutar(...) en el mismo hilo. Fuera de una unidad, cada
+// método de DAO abre y cierra su propio EntityManager como antes.
+public final class UnidadDeTrabajo {
+
+    private static final Logger LOG = Logger.getLogger(UnidadDeTrabajo.class.getName());
+
+    private static final ThreadLocal<Unidad> ACTUAL = new ThreadLocal<>();
+
+    private record Unidad(EntityManager em, List<Runnable> alConfirmar, List<Runnable> alRevertir) {
+    }
+
+    @FunctionalInterface
+    public interface Trabajo<T> {
+        T ejecutar(EntityManager em) throws Exception;
+    }
+
+    private UnidadDeTrabajo() {
+    }
+
+    // Ejecuta el trabajo en una transacción; si ya hay una unidad activa, se une a ella
+    public static <T> T ejecutar(Trabajo<T> trabajo) throws Exception {
+        Unidad actual = ACTUAL.get();
+        if (actual != null) {
+            return trabajo.ejecutar(actual.em());
+        }
+
+        EntityManager em = JPAUtil.getEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        Unidad unidad = new Unidad(em, new ArrayList<>(), new ArrayList<>());
+        ACTUAL.set(unidad);
+        T resultado;
+        try {
+            try {
+                tx.begin();
+                resultado = trabajo.ejecutar(em);
+                tx.commit();
+                LecturasReplica.confirmada(em);
+            } catch (Throwable e) {
+                // Un fallo al revertir no debe ocultar el error original
+                try {
+                    if (tx.isActive()) tx.rollback();
+                } catch (RuntimeException r) {
+                    e.addSuppressed(r);
+                }
+                throw e;
+            } finally {
+                ACTUAL.remove();
+                try {
+                    em.close();
+                } catch (RuntimeException e) {
+                    LOG.log(Level.WARNING, "No se pudo cerrar el EntityManager de la unidad de trabajo", e);
+                }
+            }
+        } catch (Throwable e) {
+            // La unidad ya no está en el hilo: las acciones pueden usar DAOs con su propia transacción
+            for (Runnable accion : unidad.alRevertir()) {
+                try {
+                    accion.run();
+                } catch (RuntimeException r) {
+                    e.addSuppressed(r);
+                }
+            }
+            throw e;
+        }
+        // La transacción ya se confirmó: una acción que falla se registra y no llega a quien llamó, que
+        // la tomaría por una escritura fallida. Todas corren aunque una falle (alguna suelta candados)
+        for (Runnable accion : unidad.alConfirmar()) {
+            try {
+                accion.run();
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "Falló una acción posterior a la confirmación", e);
+            }
+        }
+        return resultado;
+    }
+
+    public static boolean activa() {
+        return ACTUAL.get() != null;
+    }
+
+    // Acción que solo debe ocurrir si la unidad activa se confirma (p. ej. actualizar estructuras en
+    // memoria); sin unidad activa se ejecuta de inmediato
+    public static void despuesDeConfirmar(Runnable accion) {
+        Unidad actual = ACTUAL.get();
+        if (actual != null) {
+            actual.alConfirmar().add(accion);
+        } else {
+            accion.run();
+        }
+    }
+
+    // Acción para deshacer efectos fuera de la base si la unidad activa se revierte
+    public static void despuesDeRevertir(Runnable accion) {
+        Unidad actual = ACTUAL.get();
+        if (actual != null) {
+            actual.alRevertir().add(accion);
+        }
+    }
+
+    // Para DAOs: consulta con el EntityManager de la unidad activa o con uno propio de corta vida
+    public static <R> R leer(Function<EntityManager, R> consulta) {
+        Unidad actual = ACTUAL.get();
+        if (actual != null) {
+            return consulta.apply(actual.em());
+        }
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            return consulta.apply(em);
+        } finally {
+            em.close();
+        }
+    }
+
+    // Para DAOs, consultas de reportes y listados: van a la réplica si hay una, salvo dentro de una unidad
+    // (que lee lo que ella misma escribió) o si la réplica no alcanza las escrituras propias del hilo
+    // (ver LecturasReplica). Sin conexión a la réplica la consulta se repite en el primario, y las
+    // siguientes van al primario durante LecturasReplica.PAUSA_TRAS_FALLO_MS
+    public static <R> R leerDeReplica(Function<EntityManager, R> consulta) {
+        if (ACTUAL.get() != null || !JPAUtil.hayReplica() || !LecturasReplica.disponible()) {
+            return leer(consulta);
+        }
+        EntityManager em = JPAUtil.getEntityManagerReplica();
+        try {
+            if (LecturasReplica.alDia(em)) {
+                R resultado = consulta.apply(em);
+                LecturasReplica.leidaEnReplica();
+                return resultado;
+            }
+        } catch (JDBCConnectionException e) {
+            LecturasReplica.replicaFallo();
+        } finally {
+            em.close();
+        }
+        return leer(consulta);
+    }
+
+    // Como leerDeReplica, para lecturas con su propia sesión (StatelessSession, cursores): la consulta
+    // recibe la fábrica de la réplica o la del primario. Un fallo de la réplica a mitad de un Stream ya
+    // devuelto no se puede repetir en el primario
+    public static <R> R leerDeReplicaConSesion(Function<SessionFactory, R> consulta) {
+        if (ACTUAL.get() != null || !JPAUtil.hayReplica() || !LecturasReplica.disponible()) {
+            return consulta.apply(JPAUtil.getSessionFactory());
+        }
+        boolean alDia = false;
+        EntityManager em = JPAUtil.getEntityManagerReplica();
+        try {
+            alDia = LecturasReplica.alDia(em);
+        } catch (JDBCConnectionException e) {
+            LecturasReplica.replicaFallo();
+        } finally {
+            em.close();
+        }
+        if (alDia) {
+            try {
+                R resultado = consulta.apply(JPAUtil.getSessionFactoryReplica());
+                LecturasReplica.leidaEnReplica();
+                return resultado;
+            } catch (JDBCConnectionException e) {
+                LecturasReplica.replicaFallo();
+            }
+        }
+        return consulta.apply(JPAUtil.getSessionFactory());
+    }
+
+    // Para DAOs: escritura dentro de la unidad activa o en una transacción propia
+    public static <R> R escribirYObtener(Function<EntityManager, R> operacion) {
+        Unidad actual = ACTUAL.get();
+        if (actual != null) {
+            return operacion.apply(actual.em());
+        }
+        EntityManager em = JPAUtil.getEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            R resultado = operacion.apply(em);
+            tx.commit();
+            LecturasReplica.confirmada(em);
+            return resultado;
+        } catch (RuntimeException e) {
+            if (tx.isActive()) tx.rollback();
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    public static void escribir(Consumer<EntityManager> operacion) {
+        escribirYObtener(em -> {
+            operacion.accept(em);
+            return null;
+        });
+    }
+}
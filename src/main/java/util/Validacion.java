@@ -0,0 +1,31 @@
+package util;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Bean Validation explícita para los caminos que no pasan por persist (inserts nativos)
+public final class Validacion {
+
+    private static final ValidatorFactory VALIDATOR_FACTORY = Validation.buildDefaultValidatorFactory();
+    private static final Validator VALIDATOR = VALIDATOR_FACTORY.getValidator();
+
+    private Validacion() {
+    }
+
+    // "propiedad: mensaje; ..." ordenado, o null si la entidad es válida
+    public static String errores(Object entidad) {
+        Set<ConstraintViolation<Object>> violaciones = VALIDATOR.validate(entidad);
+        if (violaciones.isEmpty()) {
+            return null;
+        }
+        return violaciones.stream()
+                .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+}
@@ -0,0 +1,30 @@
+-- Migración: ids IDENTITY/BIGSERIAL (creados por hbm2ddl) -> secuencias con bloques de 50 (pooled-lo)
+--
+-- Ejecutar una vez, con la aplicación detenida, sobre una base creada por versiones anteriores:
+--   psql -h localhost -p 5433 -U postgres -d jpql -f src/main/resources/db/01_identity_a_secuencias.sql
+-- Es idempotente. En bases nuevas no hace falta: hbm2ddl crea las secuencias.
+--
+-- Con pooled-lo Hibernate toma nextval() como el primer id del bloque, por eso cada
+-- secuencia se deja apuntando a MAX(id) + 1.
+
+BEGIN;
+
+ALTER TABLE paciente ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE paciente ALTER COLUMN id DROP DEFAULT;
+CREATE SEQUENCE IF NOT EXISTS paciente_seq START WITH 1 INCREMENT BY 50;
+ALTER SEQUENCE paciente_seq INCREMENT BY 50;
+SELECT setval('paciente_seq', COALESCE((SELECT MAX(id) FROM paciente), 0) + 1, false);
+
+ALTER TABLE medico ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE medico ALTER COLUMN id DROP DEFAULT;
+CREATE SEQUENCE IF NOT EXISTS medico_seq START WITH 1 INCREMENT BY 50;
+ALTER SEQUENCE medico_seq INCREMENT BY 50;
+SELECT setval('medico_seq', COALESCE((SELECT MAX(id) FROM medico), 0) + 1, false);
+
+ALTER TABLE cita ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE cita ALTER COLUMN id DROP DEFAULT;
+CREATE SEQUENCE IF NOT EXISTS cita_seq START WITH 1 INCREMENT BY 50;
+ALTER SEQUENCE cita_seq INCREMENT BY 50;
+SELECT setval('cita_seq', COALESCE((SELECT MAX(id) FROM cita), 0) + 1, false);
+
+COMMIT;
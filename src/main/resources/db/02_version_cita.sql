@@ -0,0 +1,12 @@
+-- Migración: columna de versión (bloqueo optimista, @Version en Cita)
+--
+-- Ejecutar una vez sobre una base existente cuando hbm2ddl no está activo:
+--   psql -h localhost -p 5433 -U postgres -d jpql -f src/main/resources/db/02_version_cita.sql
+-- Es idempotente. Las filas existentes empiezan en versión 0; el DEFAULT cubre los INSERT
+-- que no pasan por Hibernate.
+
+BEGIN;
+
+ALTER TABLE cita ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+COMMIT;
@@ -0,0 +1,28 @@
+-- Migración: registro de versiones del historial médico (VersionHistorial)
+--
+-- Ejecutar una vez sobre una base existente cuando hbm2ddl no está activo:
+--   psql -h localhost -p 5433 -U postgres -d jpql -f src/main/resources/db/03_historial_versiones.sql
+-- Es idempotente. Los historiales existentes quedan en versión 0: su contenido se guarda como
+-- snapshot 0 la primera vez que se editan.
+
+BEGIN;
+
+ALTER TABLE historial_medico ADD COLUMN IF NOT EXISTS numero_version INTEGER NOT NULL DEFAULT 0;
+
+CREATE SEQUENCE IF NOT EXISTS historial_version_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS historial_version (
+    id            BIGINT PRIMARY KEY,
+    historial_id  BIGINT NOT NULL,
+    numero        INTEGER NOT NULL,
+    fecha         TIMESTAMP(6) NOT NULL,
+    snapshot      BOOLEAN NOT NULL,
+    alergias      TEXT,
+    antecedentes  TEXT,
+    observaciones TEXT,
+    CONSTRAINT uk_historial_version_numero UNIQUE (historial_id, numero),
+    CONSTRAINT fk_version_historial FOREIGN KEY (historial_id)
+        REFERENCES historial_medico (id) ON DELETE CASCADE
+);
+
+COMMIT;
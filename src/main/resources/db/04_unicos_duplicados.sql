@@ -0,0 +1,38 @@
+-- Migración: quita las restricciones únicas repetidas sobre paciente.dpi y medico.colegiado
+--
+-- Las columnas tenían unique = true además de @UniqueConstraint, y hbm2ddl creó dos índices únicos
+-- por columna (uk_paciente_dpi y uk_medico_colegiado se conservan). Cada registro mantenía ambos.
+-- El nombre de la repetida lo genera hbm2ddl (uk_ + hash) y varía entre bases: se busca en
+-- pg_constraint cualquier otra única sobre esa sola columna. Si falta la que se conserva no se
+-- quita nada.
+--   psql -h localhost -p 5433 -U postgres -d jpql -f src/main/resources/db/04_unicos_duplicados.sql
+-- Es idempotente.
+
+BEGIN;
+
+DO $$
+DECLARE
+    objetivo RECORD;
+    restriccion RECORD;
+BEGIN
+    FOR objetivo IN
+        SELECT * FROM (VALUES ('paciente', 'dpi', 'uk_paciente_dpi'),
+                              ('medico', 'colegiado', 'uk_medico_colegiado')) AS t (tabla, columna, conservar)
+    LOOP
+        CONTINUE WHEN NOT EXISTS (SELECT 1 FROM pg_constraint
+                                  WHERE conrelid = objetivo.tabla::regclass AND conname = objetivo.conservar);
+        FOR restriccion IN
+            SELECT c.conname FROM pg_constraint c
+            JOIN pg_attribute a ON a.attrelid = c.conrelid AND a.attname = objetivo.columna
+            WHERE c.conrelid = objetivo.tabla::regclass
+              AND c.contype = 'u'
+              AND c.conkey = ARRAY[a.attnum]
+              AND c.conname <> objetivo.conservar
+        LOOP
+            EXECUTE format('ALTER TABLE %I DROP CONSTRAINT %I', objetivo.tabla, restriccion.conname);
+            RAISE NOTICE 'Eliminada %.%', objetivo.tabla, restriccion.conname;
+        END LOOP;
+    END LOOP;
+END $$;
+
+COMMIT;
@@ -0,0 +1,17 @@
+-- Migración: columna eliminado_en para la eliminación diferida de pacientes y médicos
+--
+-- Un paciente o médico marcado deja de verse en las consultas (@Where) y PurgaEliminados borra
+-- después sus citas y la fila. hbm2ddl=update también agrega las columnas; los índices parciales
+-- (solo filas marcadas, casi siempre vacíos) son para que la purga las encuentre sin recorrer la tabla.
+--   psql -h localhost -p 5433 -U postgres -d jpql -f src/main/resources/db/05_eliminacion_diferida.sql
+-- Es idempotente.
+
+BEGIN;
+
+ALTER TABLE paciente ADD COLUMN IF NOT EXISTS eliminado_en TIMESTAMP;
+ALTER TABLE medico ADD COLUMN IF NOT EXISTS eliminado_en TIMESTAMP;
+
+CREATE INDEX IF NOT EXISTS idx_paciente_por_purgar ON paciente (eliminado_en) WHERE eliminado_en IS NOT NULL;
+CREATE INDEX IF NOT EXISTS idx_medico_por_purgar ON medico (eliminado_en) WHERE eliminado_en IS NOT NULL;
+
+COMMIT;
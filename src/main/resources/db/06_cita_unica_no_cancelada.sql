@@ -0,0 +1,16 @@
+-- Migración: uk_cita_medico_fecha pasa a cubrir solo las citas no canceladas
+--
+-- Antes una cita cancelada seguía ocupando (medico_id, fecha_hora) y volver a agendar ese horario
+-- reutilizaba su fila, pisando paciente y motivo. Con el índice parcial la cancelada se conserva y
+-- el nuevo agendamiento inserta otra fila. El nombre se mantiene: la aplicación reconoce el choque
+-- por él. En bases nuevas JPAUtil crea el índice al arrancar.
+--   psql -h localhost -p 5433 -U postgres -d jpql -f src/main/resources/db/06_cita_unica_no_cancelada.sql
+-- Es idempotente.
+
+BEGIN;
+
+ALTER TABLE cita DROP CONSTRAINT IF EXISTS uk_cita_medico_fecha;
+CREATE UNIQUE INDEX IF NOT EXISTS uk_cita_medico_fecha ON cita (medico_id, fecha_hora)
+    WHERE estado <> 'CANCELADA';
+
+COMMIT;
@@ -0,0 +1,324 @@
+package benchmark;
+
+import dao.MedicoDAO;
+import dto.AgendaMedico;
+import dto.PacienteResumen;
+import dto.ProximaCita;
+import jakarta.persistence.EntityManager;
+import model.Especialidad;
+import model.EstadoCita;
+import model.Medico;
+import model.Paciente;
+import prueba.DatosPrueba;
+import service.MedicalService;
+import service.SincronizacionNodos;
+import util.BusCambios;
+import util.JPAUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+// Dos instancias sobre la misma base: esta escribe y un segundo proceso (el seguidor, con las cachés
+// calientes) espera a ver cada cambio en sus lecturas en memoria. Mide cuánto tarda un cambio
+// confirmado aquí en verse allá, para agendar y cancelar citas, renombrar y eliminar un médico y
+// registrar un paciente. Antes comprueba que un cambio que no pasa por el bus (UPDATE directo) siga
+// sin verse en el seguidor: si se viera, el seguidor no estaría leyendo de sus cachés.
+// Uso: mvn test-compile y java -cp target/classes:target/test-classes:<dependencias>
+//      benchmark.BusCambiosBenchmark 20 (repeticiones de agendar y cancelar); no con exec:java, el seguidor necesita el classpath del proceso. Activa el
+//      bus en los dos procesos, escribe en la base del entorno activo, borra sus filas al terminar y
+//      sale con código 1 si algo falla.
+public class BusCambiosBenchmark {
+
+    private static final String MARCA = "benchmark-bus";
+    // Líneas del protocolo con el seguidor; el resto de su salida (SQL, avisos) se ignora
+    private static final String PREFIJO = "BUS ";
+    private static final long ESPERA_MAXIMA_MS = 10_000;
+    private static final long ESPERA_OBSOLETO_MS = 1_500;
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        // Antes de cargar BusCambios: ACTIVO se lee una sola vez
+        System.setProperty("hospital.bus.activo", "true");
+        if (args.length > 0 && args[0].equals("seguidor")) {
+            seguidor(Long.valueOf(args[1]), Long.valueOf(args[2]));
+            return;
+        }
+        int repeticiones = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        MedicalService service = new MedicalService();
+        MedicoDAO medicoDAO = new MedicoDAO();
+        boolean correcto = true;
+        Process proceso = null;
+
+        try {
+            DatosPrueba.limpiar(MARCA);
+            SincronizacionNodos.getInstancia().iniciar();
+            long semilla = System.nanoTime() % 1_000_000L;
+            Long medicoId = service.registrarMedico(new Medico(MARCA + " Agenda", "BUS-" + semilla,
+                    Especialidad.MEDICINA_GENERAL, null)).id();
+            Long eliminableId = service.registrarMedico(new Medico(MARCA + " Eliminable", "BUS-" + semilla + "-E",
+                    Especialidad.PEDIATRIA, null)).id();
+            Long pacienteId = service.registrarPaciente(new Paciente(MARCA + " Paciente",
+                    String.format("%013d", 7_000_000_000_000L + semilla), LocalDate.of(1990, 1, 1), null, null)).id();
+
+            proceso = iniciarSeguidor(medicoId, eliminableId);
+            Seguidor seguidor = new Seguidor(proceso);
+            if (!seguidor.respuesta().equals("LISTO")) {
+                throw new IllegalStateException("El seguidor no arrancó");
+            }
+
+            // Control: sin aviso el seguidor debe seguir viendo el nombre viejo
+            renombrarSinAviso(medicoId, MARCA + " Sin aviso");
+            String control = seguidor.pedir("NOMBRE_VIEJO " + medicoId + " " + MARCA + " Agenda");
+            correcto &= comprobar("el seguidor lee de sus cachés (un cambio sin aviso no se ve)", control.equals("OK"));
+
+            Map<String, List<Double>> latencias = new LinkedHashMap<>();
+            LocalDateTime base = LocalDateTime.now().plusDays(2).withHour(8).withMinute(0).withSecond(0).withNano(0);
+            for (int i = 0; i < repeticiones; i++) {
+                LocalDateTime fechaHora = base.plusMinutes(30L * i);
+                seguidor.esperar("CITA " + medicoId + " " + fechaHora);
+                service.agendarCita(pacienteId, medicoId, fechaHora, MARCA);
+                correcto &= seguidor.medir("agendarCita", latencias);
+
+                Long citaId = service.listarProximasCitasMedico(medicoId).stream()
+                        .filter(c -> c.getFechaHora().equals(fechaHora))
+                        .findFirst().orElseThrow().getId();
+                seguidor.esperar("SIN_CITA " + medicoId + " " + fechaHora);
+                service.cambiarEstadoCita(citaId, EstadoCita.CANCELADA);
+                correcto &= seguidor.medir("cambiarEstadoCita", latencias);
+            }
+
+            String nombre = MARCA + " Renombrado";
+            seguidor.esperar("NOMBRE " + medicoId + " " + nombre);
+            Medico medico = service.buscarMedicoPorId(medicoId).orElseThrow();
+            medico.setNombre(nombre);
+            medicoDAO.update(medico);
+            correcto &= seguidor.medir("renombrar médico", latencias);
+
+            String palabra = palabra(semilla);
+            seguidor.esperar("PACIENTE " + palabra);
+            service.registrarPaciente(new Paciente(MARCA + " " + palabra,
+                    String.format("%013d", 7_100_000_000_000L + semilla), LocalDate.of(1991, 1, 1), null, null));
+            correcto &= seguidor.medir("registrarPaciente", latencias);
+
+            seguidor.esperar("SIN_MEDICO " + eliminableId);
+            service.eliminarMedico(eliminableId);
+            correcto &= seguidor.medir("eliminarMedico", latencias);
+
+            System.out.printf("%-20s %8s %10s %10s %10s%n", "cambio", "veces", "p50 ms", "p95 ms", "máx. ms");
+            latencias.forEach((caso, ms) -> {
+                Collections.sort(ms);
+                System.out.printf("%-20s %8d %10.1f %10.1f %10.1f%n", caso, ms.size(),
+                        percentil(ms, 50), percentil(ms, 95), ms.get(ms.size() - 1));
+            });
+            BusCambios.Estadisticas b = BusCambios.estadisticas();
+            System.out.printf("Cambios publicados %d en %d avisos | errores %d%n", b.publicados(), b.avisosEnviados(), b.errores());
+            seguidor.terminar();
+        } finally {
+            if (proceso != null) {
+                proceso.destroy();
+            }
+            DatosPrueba.limpiar(MARCA);
+            JPAUtil.closeEntityManagerFactory();
+        }
+
+        DatosPrueba.terminar(correcto);
+    }
+
+    // El seguidor se lanza con la misma JVM, classpath y propiedades hospital.* de este proceso
+    private static Process iniciarSeguidor(Long medicoId, Long eliminableId) throws IOException {
+        List<String> comando = new ArrayList<>();
+        comando.add(ProcessHandle.current().info().command().orElse("java"));
+        System.getProperties().stringPropertyNames().stream()
+                .filter(p -> p.startsWith("hospital."))
+                .forEach(p -> comando.add("-D" + p + "=" + System.getProperty(p)));
+        comando.add("-Dfile.encoding=UTF-8");
+        comando.add("-Dsun.stdout.encoding=UTF-8");
+        comando.add("-cp");
+        comando.add(System.getProperty("java.class.path"));
+        comando.add(BusCambiosBenchmark.class.getName());
+        comando.add("seguidor");
+        comando.add(medicoId.toString());
+        comando.add(eliminableId.toString());
+        return new ProcessBuilder(comando)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    // Del lado de este proceso: la latencia va de la confirmación aquí a la respuesta del seguidor
+    private static final class Seguidor {
+        private final BufferedReader salida;
+        private final PrintWriter entrada;
+        private final Process proceso;
+
+        Seguidor(Process proceso) {
+            this.proceso = proceso;
+            salida = new BufferedReader(new InputStreamReader(proceso.getInputStream(), StandardCharsets.UTF_8));
+            entrada = new PrintWriter(proceso.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        String respuesta() throws IOException {
+            String linea;
+            while ((linea = salida.readLine()) != null) {
+                if (linea.startsWith(PREFIJO)) {
+                    return linea.substring(PREFIJO.length());
+                }
+            }
+            throw new IOException("El seguidor terminó");
+        }
+
+        void terminar() throws InterruptedException {
+            entrada.println("FIN");
+            proceso.waitFor(ESPERA_MAXIMA_MS, TimeUnit.MILLISECONDS);
+        }
+
+        String pedir(String comando) throws IOException {
+            entrada.println(comando);
+            return respuesta();
+        }
+
+        // El seguidor empieza a vigilar antes de la escritura; la latencia cuenta desde que vuelve
+        void esperar(String comando) throws IOException {
+            if (!pedir(comando).equals("ESPERANDO")) {
+                throw new IllegalStateException("El seguidor no aceptó " + comando);
+            }
+        }
+
+        boolean medir(String caso, Map<String, List<Double>> latencias) throws IOException {
+            long confirmado = System.nanoTime();
+            String respuesta = respuesta();
+            double ms = (System.nanoTime() - confirmado) / 1e6;
+            if (!respuesta.equals("VISTO")) {
+                System.out.println("FALLÓ " + caso + ": " + respuesta);
+                return false;
+            }
+            latencias.computeIfAbsent(caso, c -> new ArrayList<>()).add(ms);
+            return true;
+        }
+    }
+
+    // El otro proceso: calienta sus cachés y atiende un comando por línea de la entrada estándar
+    private static void seguidor(Long medicoId, Long eliminableId) throws Exception {
+        MedicalService service = new MedicalService();
+        SincronizacionNodos.getInstancia().iniciar();
+        service.prepararIndiceDisponibilidad();
+        service.prepararBusquedaPacientes();
+        service.listarAgendaProximasCitas(List.of(medicoId), 100);
+        service.buscarMedicoPorId(medicoId);
+        service.buscarMedicoPorId(eliminableId);
+        esperarHasta(() -> BusCambios.estadisticas().conectado(), ESPERA_MAXIMA_MS);
+
+        PrintWriter salida = new PrintWriter(System.out, true, StandardCharsets.UTF_8);
+        BufferedReader entrada = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        salida.println(PREFIJO + "LISTO");
+        String linea;
+        try {
+            while ((linea = entrada.readLine()) != null && !linea.equals("FIN")) {
+                String[] partes = linea.split(" ", 3);
+                BooleanSupplier visto = switch (partes[0]) {
+                    case "CITA" -> () -> citaEn(service, Long.valueOf(partes[1]), LocalDateTime.parse(partes[2]));
+                    case "SIN_CITA" -> () -> !citaEn(service, Long.valueOf(partes[1]), LocalDateTime.parse(partes[2]));
+                    case "NOMBRE" -> () -> nombre(service, Long.valueOf(partes[1])).equals(Optional.of(partes[2]));
+                    case "NOMBRE_VIEJO" -> null;
+                    case "PACIENTE" -> () -> pacienteEncontrado(service, partes[1]);
+                    case "SIN_MEDICO" -> () -> service.buscarMedicoPorId(Long.valueOf(partes[1])).isEmpty();
+                    default -> throw new IllegalArgumentException(linea);
+                };
+                if (visto == null) {
+                    // Cambio sin aviso: pasado un rato debe seguir el valor viejo
+                    boolean cambio = esperarHasta(() -> !nombre(service, Long.valueOf(partes[1]))
+                            .equals(Optional.of(partes[2])), ESPERA_OBSOLETO_MS);
+                    salida.println(PREFIJO + (cambio ? "SE VIO SIN AVISO" : "OK"));
+                    continue;
+                }
+                salida.println(PREFIJO + "ESPERANDO");
+                salida.println(PREFIJO + (esperarHasta(visto, ESPERA_MAXIMA_MS) ? "VISTO" : "NO SE VIO EN " + ESPERA_MAXIMA_MS + " ms"));
+            }
+        } catch (RuntimeException e) {
+            salida.println(PREFIJO + "ERROR " + e);
+        } finally {
+            JPAUtil.closeEntityManagerFactory();
+        }
+    }
+
+    private static boolean citaEn(MedicalService service, Long medicoId, LocalDateTime fechaHora) {
+        return service.listarAgendaProximasCitas(List.of(medicoId), 100).stream()
+                .map(AgendaMedico::citas)
+                .flatMap(List::stream)
+                .map(ProximaCita::fechaHora)
+                .anyMatch(fechaHora::equals);
+    }
+
+    private static Optional<String> nombre(MedicalService service, Long medicoId) {
+        return service.buscarMedicoPorId(medicoId).map(Medico::getNombre);
+    }
+
+    private static boolean pacienteEncontrado(MedicalService service, String palabra) {
+        try {
+            return service.buscarPacientes(palabra, 5).stream()
+                    .map(PacienteResumen::nombre)
+                    .anyMatch(n -> n.endsWith(palabra));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean esperarHasta(BooleanSupplier condicion, long maximoMs) throws InterruptedException {
+        long limite = System.currentTimeMillis() + maximoMs;
+        while (System.currentTimeMillis() < limite) {
+            if (condicion.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(1);
+        }
+        return condicion.getAsBoolean();
+    }
+
+    // Solo letras, para que la búsqueda no la tome como DPI o teléfono
+    private static String palabra(long semilla) {
+        StringBuilder palabra = new StringBuilder("Nodo");
+        for (long n = semilla; n > 0; n /= 26) {
+            palabra.append((char) ('a' + n % 26));
+        }
+        return palabra.toString();
+    }
+
+    private static double percentil(List<Double> ordenados, int percentil) {
+        return ordenados.get(Math.min(ordenados.size() - 1, (int) Math.ceil(percentil / 100.0 * ordenados.size()) - 1));
+    }
+
+    private static boolean comprobar(String caso, boolean condicion) {
+        if (!condicion) {
+            System.out.println("FALLÓ " + caso);
+        }
+        return condicion;
+    }
+
+    // UPDATE nativo sin declarar la entidad ni avisar: este proceso no lo publica en el bus
+    private static void renombrarSinAviso(Long medicoId, String nombre) {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createNativeQuery("UPDATE medico SET nombre = :nombre WHERE id = :id")
+                    .setParameter("nombre", nombre)
+                    .setParameter("id", medicoId)
+                    .executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) em.getTransaction().rollback();
+            em.close();
+        }
+    }
+}
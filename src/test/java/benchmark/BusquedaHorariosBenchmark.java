@@ -0,0 +1,96 @@
+package benchmark;
+
+import dao.CitaDAO;
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import dto.HorarioDisponible;
+import jakarta.persistence.EntityManager;
+import model.Cita;
+import model.Especialidad;
+import model.Medico;
+import model.Paciente;
+import prueba.DatosPrueba;
+import service.BuscadorHorarios;
+import service.MedicalService;
+import util.JPAUtil;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Latencia de MedicalService.buscarHorariosDisponibles con cientos de médicos de una especialidad
+// y agendas casi llenas (el primer hueco libre queda lejos del inicio de la búsqueda).
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.BusquedaHorariosBenchmark -Dexec.args="300 1000"
+//      (médicos, búsquedas). Escribe en la base del entorno activo y borra sus filas al terminar.
+public class BusquedaHorariosBenchmark {
+
+    private static final String MARCA = "benchmark-horarios";
+    private static final int DIAS_LLENOS = 5;
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        int nMedicos = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int busquedas = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        MedicalService service = new MedicalService();
+
+        try {
+            DatosPrueba.limpiar(MARCA);
+            long semilla = System.nanoTime() % 1_000_000_000L;
+            List<Medico> medicos = new ArrayList<>();
+            for (int i = 0; i < nMedicos; i++) {
+                medicos.add(new Medico(MARCA, "H" + semilla + "-" + i, Especialidad.NEUROLOGIA, null));
+            }
+            new MedicoDAO().saveAll(medicos);
+            Paciente paciente = new Paciente(MARCA, String.format("%013d", 7_000_000_000_000L + semilla),
+                    LocalDate.of(1980, 1, 1), null, null);
+            new PacienteDAO().save(paciente);
+
+            // Semana laboral llena salvo un hueco al azar por médico
+            LocalDate lunes = LocalDate.now().plusWeeks(2).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            Random random = new Random(42);
+            List<Cita> citas = new ArrayList<>();
+            for (Medico medico : medicos) {
+                int hueco = random.nextInt(DIAS_LLENOS * 18);
+                int n = 0;
+                for (int d = 0; d < DIAS_LLENOS; d++) {
+                    for (LocalDateTime t = lunes.plusDays(d).atTime(BuscadorHorarios.INICIO_JORNADA);
+                         t.isBefore(lunes.plusDays(d).atTime(BuscadorHorarios.FIN_JORNADA));
+                         t = t.plus(BuscadorHorarios.DURACION_CITA)) {
+                        if (n++ != hueco) {
+                            citas.add(new Cita(t, MARCA, paciente, medico));
+                        }
+                    }
+                }
+            }
+            new CitaDAO().saveAll(citas);
+            System.out.printf("%d médicos, %d citas agendadas%n", nMedicos, citas.size());
+
+            service.prepararIndiceDisponibilidad();
+            LocalDateTime desde = lunes.atStartOfDay();
+            LocalDateTime hasta = lunes.plusWeeks(1).atStartOfDay();
+            List<HorarioDisponible> primeros = List.of();
+            for (int i = 0; i < 200; i++) {
+                primeros = service.buscarHorariosDisponibles(Especialidad.NEUROLOGIA, desde, hasta, Duration.ofMinutes(30), 10);
+            }
+            long[] tiempos = new long[busquedas];
+            for (int i = 0; i < busquedas; i++) {
+                long inicio = System.nanoTime();
+                service.buscarHorariosDisponibles(Especialidad.NEUROLOGIA, desde, hasta, Duration.ofMinutes(30), 10);
+                tiempos[i] = System.nanoTime() - inicio;
+            }
+            Arrays.sort(tiempos);
+            System.out.printf("Búsqueda de 10 horarios: p50 %.3f ms, p99 %.3f ms, máx %.3f ms%n",
+                    tiempos[busquedas / 2] / 1e6, tiempos[busquedas * 99 / 100] / 1e6, tiempos[busquedas - 1] / 1e6);
+            primeros.forEach(h -> System.out.println("  " + h.inicio() + " médico " + h.medicoId()));
+        } finally {
+            DatosPrueba.limpiar(MARCA);
+            JPAUtil.closeEntityManagerFactory();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package benchmark;
+
+import dto.PacienteResumen;
+import dto.ResultadoRegistro;
+import jakarta.persistence.EntityManager;
+import model.Paciente;
+import prueba.DatosPrueba;
+import service.IndicePacientes;
+import service.MedicalService;
+import util.JPAUtil;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+// Búsqueda de pacientes sobre una tabla grande: carga del índice (tiempo y memoria) y p50/p95 de
+// búsquedas exactas, por prefijo, sin acentos, con errores de tipeo y por parte del DPI o teléfono.
+// Comprueba además que los primeros resultados sean los esperados y que registrar y eliminar un
+// paciente se refleje en la búsqueda sin recargar el índice.
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.BusquedaPacientesBenchmark -Dexec.args="1000000 200"
+//      (pacientes, repeticiones por consulta). Escribe en la base del entorno activo, borra sus filas
+//      al terminar y sale con código 1 si alguna comprobación falla.
+public class BusquedaPacientesBenchmark {
+
+    private static final String MARCA = "busqueda@benchmark.test";
+    private static final int LIMITE = 20;
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repeticiones = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        MedicalService service = new MedicalService();
+        IndicePacientes indice = IndicePacientes.getInstancia();
+        boolean correcto = true;
+
+        try {
+            limpiar();
+            long inicio = System.nanoTime();
+            generar(n);
+            System.out.printf("Generados %d pacientes en %.1f s%n", n, (System.nanoTime() - inicio) / 1e9);
+
+            MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+            System.gc();
+            long antes = memoria.getHeapMemoryUsage().getUsed();
+            inicio = System.nanoTime();
+            service.prepararBusquedaPacientes();
+            double segundosCarga = (System.nanoTime() - inicio) / 1e9;
+            System.gc();
+            long despues = memoria.getHeapMemoryUsage().getUsed();
+            System.out.printf("Carga del índice: %.2f s, ~%d MB de heap%n", segundosCarga, (despues - antes) >> 20);
+
+            PacienteResumen muestra = service.buscarPacientes("hector gutierrez", 1).get(0);
+            String dpiParcial = muestra.dpi().substring(2, 10);
+            String[][] consultas = {
+                    {"exacta", "María Pérez"},
+                    {"prefijo", "mar"},
+                    {"prefijo varias palabras", "jo gonz ram"},
+                    {"sin acentos", "oscar alvarez"},
+                    {"con error", "gonzales"},
+                    {"con errores", "hectr gutierez"},
+                    {"DPI parcial", dpiParcial},
+                    {"teléfono", muestra.telefono()},
+                    {"sin resultados", "xyzw qqq"},
+            };
+            System.out.printf("%-26s %-20s %9s %9s %9s %9s%n", "consulta", "texto", "índ. p50", "índ. p95", "total p50", "total p95");
+            for (String[] consulta : consultas) {
+                double[] soloIndice = medir(repeticiones, () -> indice.buscar(consulta[1], LIMITE));
+                double[] total = medir(repeticiones, () -> service.buscarPacientes(consulta[1], LIMITE));
+                System.out.printf("%-26s %-20s %6.2f ms %6.2f ms %6.2f ms %6.2f ms%n", consulta[0], consulta[1],
+                        percentil(soloIndice, 50), percentil(soloIndice, 95), percentil(total, 50), percentil(total, 95));
+            }
+
+            correcto &= comprobar("exacta", service.buscarPacientes("María Pérez", LIMITE), "María", "Pérez");
+            correcto &= comprobar("sin acentos", service.buscarPacientes("oscar alvarez", LIMITE), "Óscar", "Álvarez");
+            correcto &= comprobar("con error", service.buscarPacientes("gonzales", LIMITE), "González");
+            correcto &= comprobar("con errores", service.buscarPacientes("hectr gutierez", LIMITE), "Héctor", "Gutiérrez");
+            correcto &= comprobarId("DPI parcial", service.buscarPacientes(dpiParcial, LIMITE), muestra.id());
+            correcto &= comprobarId("teléfono", service.buscarPacientes(muestra.telefono(), LIMITE), muestra.id());
+
+            // Registro y eliminación se ven en la búsqueda sin recargar el índice
+            Paciente nuevo = new Paciente("Zoé Quiñónez Üriarte", "9999999999999", LocalDate.of(1990, 5, 1), "12345678", MARCA);
+            ResultadoRegistro registro = service.registrarPaciente(nuevo);
+            correcto &= comprobarId("registrado", service.buscarPacientes("quinonez uriarte", LIMITE), registro.id());
+            service.eliminarPaciente(registro.id());
+            if (!service.buscarPacientes("quinonez uriarte", LIMITE).isEmpty()) {
+                System.out.println("FALLÓ eliminado: el paciente eliminado sigue apareciendo");
+                correcto = false;
+            }
+        } finally {
+            limpiar();
+            indice.invalidarTodo();
+            JPAUtil.closeEntityManagerFactory();
+        }
+
+        DatosPrueba.terminar(correcto);
+    }
+
+    private interface Consulta {
+        Object ejecutar() throws Exception;
+    }
+
+    // Milisegundos de cada repetición, después de un calentamiento
+    private static double[] medir(int repeticiones, Consulta consulta) throws Exception {
+        for (int i = 0; i < Math.max(10, repeticiones / 10); i++) {
+            consulta.ejecutar();
+        }
+        double[] tiempos = new double[repeticiones];
+        for (int i = 0; i < repeticiones; i++) {
+            long inicio = System.nanoTime();
+            consulta.ejecutar();
+            tiempos[i] = (System.nanoTime() - inicio) / 1e6;
+        }
+        Arrays.sort(tiempos);
+        return tiempos;
+    }
+
+    private static double percentil(double[] ordenados, int p) {
+        return ordenados[Math.min(ordenados.length - 1, ordenados.length * p / 100)];
+    }
+
+    // El primer resultado debe contener todas las palabras esperadas
+    private static boolean comprobar(String caso, List<PacienteResumen> resultados, String... palabras) {
+        if (!resultados.isEmpty() && Arrays.stream(palabras).allMatch(resultados.get(0).nombre()::contains)) {
+            return true;
+        }
+        System.out.println("FALLÓ " + caso + ": se esperaba " + String.join(" ", palabras) + " primero y se obtuvo "
+                + (resultados.isEmpty() ? "nada" : resultados.get(0).nombre()));
+        return false;
+    }
+
+    private static boolean comprobarId(String caso, List<PacienteResumen> resultados, Long id) {
+        if (resultados.stream().anyMatch(p -> p.id().equals(id))) {
+            return true;
+        }
+        System.out.println("FALLÓ " + caso + ": el paciente " + id + " no está entre los resultados");
+        return false;
+    }
+
+    // Nombres combinados de listas con acentos; DPI y teléfono pseudoaleatorios pero reproducibles
+    private static void generar(int n) {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createNativeQuery("WITH n AS (SELECT " +
+                            "ARRAY['María','José','Juan','Ana','Luis','Carmen','Jorge','Sofía','Andrés','Lucía','Óscar','Raúl'," +
+                            "'Inés','Héctor','Ángel','Beatriz','Carlos','Daniela','Esteban','Fernanda','Gabriel','Helena','Iván'," +
+                            "'Julia','Kevin','Laura','Mario','Natalia','Pablo','Rocío'] AS nom, " +
+                            "ARRAY['Pérez','García','López','Martínez','González','Rodríguez','Hernández','Sánchez','Ramírez'," +
+                            "'Torres','Flores','Rivera','Gómez','Díaz','Cruz','Morales','Reyes','Gutiérrez','Ortiz','Chávez','Ramos'," +
+                            "'Ruiz','Álvarez','Castillo','Jiménez','Vásquez','Moreno','Herrera','Medina','Aguilar','Castro','Vargas'," +
+                            "'Mendoza','Guzmán','Muñoz','Rojas','Navarro','Domínguez','Cabrera','Peña'] AS ape) " +
+                            "INSERT INTO paciente (id, nombre, dpi, fecha_nacimiento, telefono, email) " +
+                            "SELECT 2000000000 + g, " +
+                            "nom[1 + (hashint4(g) & 2147483647) % 30] || ' ' || ape[1 + (hashint4(g * 7) & 2147483647) % 40] " +
+                            "|| ' ' || ape[1 + (hashint4(g * 13) & 2147483647) % 40], " +
+                            "lpad(CAST((hashint8(g) & 9223372036854775807) % 10000000000000 AS TEXT), 13, '0'), " +
+                            "DATE '1950-01-01' + (g % 25000), " +
+                            "lpad(CAST((hashint4(g * 3) & 2147483647) % 100000000 AS TEXT), 8, '0'), ?1 " +
+                            "FROM n, generate_series(1, ?2) g ON CONFLICT DO NOTHING")
+                    .setParameter(1, MARCA)
+                    .setParameter(2, n)
+                    .executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) em.getTransaction().rollback();
+            em.close();
+        }
+    }
+
+    private static void limpiar() {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createQuery("DELETE FROM Paciente p WHERE p.email = :marca").setParameter("marca", MARCA).executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) em.getTransaction().rollback();
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package benchmark;
+
+import dao.MedicoDAO;
+import dto.MedicoResumen;
+import dto.ResultadoRegistro;
+import jakarta.persistence.EntityManager;
+import model.Especialidad;
+import model.Medico;
+import org.hibernate.stat.Statistics;
+import prueba.DatosPrueba;
+import service.MedicalService;
+import util.CacheSegundoNivel;
+import util.JPAUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Lecturas de médicos con la caché de segundo nivel fría (regiones vaciadas antes de cada operación,
+// como sin caché) y caliente: tiempo y sentencias JDBC por operación. Comprueba que las lecturas
+// calientes no vayan a la base, que registrar, eliminar y marcar un médico se vean de inmediato y
+// que la región se mantenga dentro de su tamaño máximo desalojando entradas.
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.CacheMedicosBenchmark -Dexec.args="500 2000"
+//      (médicos, operaciones por caso). Si no se indica, la región de médicos se limita a 200 entradas
+//      para forzar desalojos. Escribe en la base del entorno activo, borra sus filas al terminar y sale
+//      con código 1 si algo falla.
+public class CacheMedicosBenchmark {
+
+    private static final String MARCA = "benchmark-cache";
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int operaciones = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        if (System.getProperty("hospital.cache.medico.maxEntradas") == null) {
+            System.setProperty("hospital.cache.medico.maxEntradas", "200");
+        }
+        if (!CacheSegundoNivel.ACTIVA) {
+            System.out.println("La caché está desactivada (-Dhospital.cache.activa=false)");
+            System.exit(1);
+        }
+        MedicalService service = new MedicalService();
+        MedicoDAO medicoDAO = new MedicoDAO();
+        Statistics estadisticas = JPAUtil.getSessionFactory().getStatistics();
+        boolean correcto = true;
+
+        try {
+            DatosPrueba.limpiar(MARCA);
+            List<Medico> medicos = new ArrayList<>(n);
+            Especialidad[] especialidades = Especialidad.values();
+            for (int i = 0; i < n; i++) {
+                medicos.add(new Medico(MARCA, "CB-" + i, especialidades[i % especialidades.length], null));
+            }
+            medicoDAO.insertarSiNoExisten(medicos);
+            CacheSegundoNivel.invalidarConsultasMedico();
+            // Los que caben en la región, para que las lecturas calientes no dependan de desalojos
+            List<Medico> frecuentes = medicos.subList(0, Math.min(n, CacheSegundoNivel.MEDICO_MAX_ENTRADAS / 2));
+
+            Random aleatorio = new Random(42);
+            String medico = CacheSegundoNivel.REGION_MEDICO;
+            String consultas = CacheSegundoNivel.REGION_CONSULTAS_MEDICO;
+            Operacion[] casos = {
+                    new Operacion("buscarMedicoPorId", medico, () -> service.buscarMedicoPorId(
+                            frecuentes.get(aleatorio.nextInt(frecuentes.size())).getId())),
+                    new Operacion("findByColegiado", consultas, () -> medicoDAO.findByColegiado(
+                            frecuentes.get(aleatorio.nextInt(frecuentes.size())).getColegiado())),
+                    new Operacion("listarResumenMedicos", consultas, service::listarResumenMedicos),
+                    new Operacion("listarMedicos", consultas, service::listarMedicos),
+                    new Operacion("listarMedicosPorEspecialidad", consultas, () -> service.listarMedicosPorEspecialidad(
+                            especialidades[aleatorio.nextInt(especialidades.length)])),
+            };
+            System.out.printf("%-30s %12s %9s %12s %9s %10s%n", "operación", "fría ms/op", "sent./op", "caliente", "sent./op", "aciertos");
+            for (Operacion caso : casos) {
+                int repeticiones = caso.nombre.startsWith("listar") ? Math.max(20, operaciones / 20) : operaciones;
+                double[] fria = medir(estadisticas, repeticiones, caso, true);
+                double[] caliente = medir(estadisticas, repeticiones, caso, false);
+                double aciertos = CacheSegundoNivel.estadisticas().stream()
+                        .filter(e -> e.region().equals(caso.region()))
+                        .findFirst().orElseThrow().tasaAciertos();
+                System.out.printf("%-30s %9.3f ms %9.2f %9.3f ms %9.2f %9.1f%%%n",
+                        caso.nombre, fria[0], fria[1], caliente[0], caliente[1], aciertos * 100);
+                if (caliente[1] > 0) {
+                    System.out.println("FALLÓ " + caso.nombre + ": las lecturas con la caché caliente fueron a la base");
+                    correcto = false;
+                }
+            }
+
+            // Invalidación: el INSERT por JDBC de registrarMedico no pasa por Hibernate
+            service.listarResumenMedicos();
+            service.listarMedicosPorEspecialidad(Especialidad.CARDIOLOGIA);
+            ResultadoRegistro nuevo = service.registrarMedico(new Medico(MARCA, "CB-nuevo", Especialidad.CARDIOLOGIA, null));
+            correcto &= comprobar("registrado en la lista", contiene(service.listarResumenMedicos(), nuevo.id()));
+            correcto &= comprobar("registrado por especialidad",
+                    contiene(service.listarMedicosPorEspecialidad(Especialidad.CARDIOLOGIA), nuevo.id()));
+            correcto &= comprobar("registrado por colegiado", medicoDAO.findByColegiado("CB-nuevo").isPresent());
+
+            Long marcado = medicos.get(0).getId();
+            service.buscarMedicoPorId(marcado);
+            medicoDAO.marcarEliminado(marcado);
+            correcto &= comprobar("marcado oculto por id", service.buscarMedicoPorId(marcado).isEmpty());
+            correcto &= comprobar("marcado oculto en la lista", !contiene(service.listarResumenMedicos(), marcado));
+
+            service.buscarMedicoPorId(nuevo.id());
+            service.eliminarMedico(nuevo.id());
+            correcto &= comprobar("eliminado por id", service.buscarMedicoPorId(nuevo.id()).isEmpty());
+            correcto &= comprobar("eliminado en la lista", !contiene(service.listarResumenMedicos(), nuevo.id()));
+
+            // Desalojo: leer más médicos de los que caben en la región
+            for (Medico m : medicos) {
+                service.buscarMedicoPorId(m.getId());
+            }
+            for (CacheSegundoNivel.EstadisticasRegion r : CacheSegundoNivel.estadisticas()) {
+                System.out.printf("%-17s %5d entradas (máx. %d) | desalojos %d | expiraciones %d%n",
+                        r.region(), r.entradas(), r.maxEntradas(), r.desalojos(), r.expiraciones());
+                correcto &= comprobar("región " + r.region() + " acotada", r.entradas() <= r.maxEntradas());
+                if (r.region().equals(medico)) {
+                    correcto &= comprobar("desalojos contados", n <= r.maxEntradas() || r.desalojos() > 0);
+                }
+            }
+        } finally {
+            DatosPrueba.limpiar(MARCA);
+            JPAUtil.closeEntityManagerFactory();
+        }
+
+        DatosPrueba.terminar(correcto);
+    }
+
+    private interface Lectura {
+        Object ejecutar() throws Exception;
+    }
+
+    private record Operacion(String nombre, String region, Lectura lectura) {
+    }
+
+    // {ms por operación, sentencias por operación}; fría vacía las regiones antes de cada operación. El
+    // calentamiento repite la medición completa para que la caliente encuentre todas las claves
+    private static double[] medir(Statistics estadisticas, int repeticiones, Operacion operacion, boolean fria) throws Exception {
+        for (int i = 0; i < repeticiones; i++) {
+            operacion.lectura().ejecutar();
+        }
+        estadisticas.clear();
+        long tiempo = 0;
+        for (int i = 0; i < repeticiones; i++) {
+            if (fria) {
+                JPAUtil.getSessionFactory().getCache().evictAllRegions();
+            }
+            long inicio = System.nanoTime();
+            operacion.lectura().ejecutar();
+            tiempo += System.nanoTime() - inicio;
+        }
+        return new double[]{tiempo / 1e6 / repeticiones, (double) estadisticas.getPrepareStatementCount() / repeticiones};
+    }
+
+    private static boolean contiene(List<MedicoResumen> medicos, Long id) {
+        return medicos.stream().anyMatch(m -> m.id().equals(id));
+    }
+
+    private static boolean comprobar(String caso, boolean condicion) {
+        if (!condicion) {
+            System.out.println("FALLÓ " + caso);
+        }
+        return condicion;
+    }
+}
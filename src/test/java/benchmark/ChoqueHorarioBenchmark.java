@@ -0,0 +1,86 @@
+package benchmark;
+
+import dao.CitaDAO;
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import jakarta.persistence.EntityManager;
+import model.Cita;
+import model.Especialidad;
+import model.EstadoCita;
+import model.Medico;
+import model.Paciente;
+import prueba.DatosPrueba;
+import service.MedicalService;
+import util.JPAUtil;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Costo de rechazar un agendamiento en un horario ya tomado: con el índice de disponibilidad
+// (MedicalService.agendarCita) contra dejar que falle el INSERT por uk_cita_medico_fecha (CitaDAO.save).
+// También comprueba que cancelar una cita libera su horario.
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.ChoqueHorarioBenchmark -Dexec.args="500"
+// Escribe en la base del entorno activo y borra sus filas al terminar.
+public class ChoqueHorarioBenchmark {
+
+    private static final String MARCA = "benchmark-choque";
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        MedicalService service = new MedicalService();
+        CitaDAO citaDAO = new CitaDAO();
+
+        try {
+            DatosPrueba.limpiar(MARCA);
+            Medico medico = new Medico(MARCA, "X" + System.nanoTime() % 1_000_000_000L,
+                    Especialidad.MEDICINA_GENERAL, null);
+            new MedicoDAO().save(medico);
+            Paciente paciente = new Paciente(MARCA, String.format("%013d", 8_000_000_000_000L + System.nanoTime() % 1_000_000_000L),
+                    LocalDate.of(1980, 1, 1), null, null);
+            new PacienteDAO().save(paciente);
+
+            LocalDateTime base = LocalDateTime.now().plusYears(50).withSecond(0).withNano(0);
+            for (int i = 0; i < n; i++) {
+                service.agendarCita(paciente.getId(), medico.getId(), base.plusMinutes(30L * i), MARCA);
+            }
+
+            int rechazadas = 0;
+            long inicio = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                try {
+                    service.agendarCita(paciente.getId(), medico.getId(), base.plusMinutes(30L * i), MARCA);
+                } catch (Exception e) {
+                    rechazadas++;
+                }
+            }
+            imprimir("Índice de disponibilidad", rechazadas, n, System.nanoTime() - inicio);
+
+            rechazadas = 0;
+            inicio = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                try {
+                    citaDAO.save(new Cita(base.plusMinutes(30L * i), MARCA, paciente, medico));
+                } catch (RuntimeException e) {
+                    rechazadas++;
+                }
+            }
+            imprimir("INSERT + uk_cita_medico_fecha + rollback", rechazadas, n, System.nanoTime() - inicio);
+
+            List<Cita> citas = service.listarProximasCitasMedico(medico.getId());
+            service.cambiarEstadoCita(citas.get(0).getId(), EstadoCita.CANCELADA);
+            service.agendarCita(paciente.getId(), medico.getId(), citas.get(0).getFechaHora(), MARCA + " (reagendada)");
+            System.out.println("Horario cancelado reagendado: " +
+                    service.listarProximasCitasMedico(medico.getId()).get(0).getMotivo());
+        } finally {
+            DatosPrueba.limpiar(MARCA);
+            JPAUtil.closeEntityManagerFactory();
+        }
+    }
+
+    private static void imprimir(String nombre, int rechazadas, int intentos, long nanos) {
+        System.out.printf("%-42s %d/%d rechazadas, %.1f µs por intento%n",
+                nombre, rechazadas, intentos, nanos / 1000.0 / intentos);
+    }
+}
@@ -0,0 +1,158 @@
+package benchmark;
+
+import dao.CitaDAO;
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import jakarta.persistence.EntityManager;
+import model.Cita;
+import model.Especialidad;
+import model.Medico;
+import model.Paciente;
+import org.hibernate.stat.Statistics;
+import prueba.DatosPrueba;
+import service.MedicalService;
+import service.PurgaEliminados;
+import util.JPAUtil;
+import util.UnidadDeTrabajo;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Eliminación de un paciente (y de un médico) con miles de citas: em.remove con CascadeType.REMOVE
+// (como antes: carga cada cita y la borra por separado) contra los DELETE en bloque en orden de llaves
+// foráneas, y el modo diferido (marca + purga en segundo plano). Mide tiempo, sentencias JDBC y
+// entidades cargadas, y comprueba que no quede nada: citas, historial, versiones ni la fila.
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.EliminacionMasivaBenchmark -Dexec.args="5000"
+//      (citas por paciente). Escribe en la base del entorno activo, borra sus filas al terminar y
+//      sale con código 1 si algo falla.
+public class EliminacionMasivaBenchmark {
+
+    private static final String MARCA = "benchmark-eliminacion";
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        int citas = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        MedicalService service = new MedicalService();
+        PacienteDAO pacienteDAO = new PacienteDAO();
+        MedicoDAO medicoDAO = new MedicoDAO();
+        Statistics estadisticas = JPAUtil.getSessionFactory().getStatistics();
+        estadisticas.setStatisticsEnabled(true);
+        boolean correcto = true;
+
+        try {
+            DatosPrueba.limpiar(MARCA);
+            long semilla = System.nanoTime() % 1_000_000L;
+
+            // Calentamiento
+            Paciente calentamiento = crear(service, semilla, 0, 100);
+            service.eliminarPaciente(calentamiento.getId());
+
+            Paciente antes = crear(service, semilla, 1, citas);
+            medir(estadisticas, "em.remove en cascada (antes)", () -> UnidadDeTrabajo.ejecutar(em -> {
+                em.remove(em.find(Paciente.class, antes.getId()));
+                return null;
+            }));
+            correcto &= comprobarBorrado("em.remove", antes.getId());
+
+            Paciente enBloque = crear(service, semilla, 2, citas);
+            medir(estadisticas, "eliminarPaciente (DELETE en bloque)", () -> {
+                service.eliminarPaciente(enBloque.getId());
+                return null;
+            });
+            correcto &= comprobarBorrado("en bloque", enBloque.getId());
+
+            // Modo diferido: lo que hace eliminarPaciente con -Dhospital.eliminacion.diferida=true
+            Paciente diferido = crear(service, semilla, 3, citas);
+            PurgaEliminados purga = PurgaEliminados.getInstancia();
+            medir(estadisticas, "diferida: marca (respuesta al usuario)", () -> {
+                pacienteDAO.marcarEliminado(diferido.getId());
+                purga.solicitar();
+                return null;
+            });
+            if (service.buscarPacientePorId(diferido.getId()).isPresent()
+                    || service.listarResumenPacientes().stream().anyMatch(p -> p.id().equals(diferido.getId()))) {
+                System.out.println("FALLÓ diferida: el paciente marcado sigue visible");
+                correcto = false;
+            }
+            medir(estadisticas, "diferida: purga en segundo plano", () -> {
+                purga.purgarAhora();
+                return null;
+            });
+            correcto &= comprobarBorrado("diferida", diferido.getId());
+
+            // Médico: sus citas y la fila en bloque
+            Paciente otro = crear(service, semilla, 4, citas);
+            Long medicoId = UnidadDeTrabajo.leer(em -> em.createQuery(
+                            "SELECT c.medico.id FROM Cita c WHERE c.paciente.id = :id", Long.class)
+                    .setParameter("id", otro.getId())
+                    .setMaxResults(1)
+                    .getSingleResult());
+            medir(estadisticas, "eliminarMedico (DELETE en bloque)", () -> {
+                service.eliminarMedico(medicoId);
+                return null;
+            });
+            if (medicoDAO.findById(medicoId).isPresent() || contar("SELECT count(*) FROM cita WHERE medico_id = ?1", medicoId) > 0) {
+                System.out.println("FALLÓ eliminarMedico: quedaron el médico o sus citas");
+                correcto = false;
+            }
+            service.eliminarPaciente(otro.getId());
+
+            PurgaEliminados.Estadisticas e = purga.estadisticas();
+            System.out.printf("Purga: %d pacientes, %d citas, %d errores%n", e.pacientesPurgados(), e.citasPurgadas(), e.errores());
+        } finally {
+            DatosPrueba.limpiar(MARCA);
+            JPAUtil.closeEntityManagerFactory();
+        }
+
+        DatosPrueba.terminar(correcto);
+    }
+
+    private interface Eliminacion {
+        Object ejecutar() throws Exception;
+    }
+
+    private static void medir(Statistics estadisticas, String nombre, Eliminacion eliminacion) throws Exception {
+        estadisticas.clear();
+        long inicio = System.nanoTime();
+        eliminacion.ejecutar();
+        System.out.printf("%-42s %8.1f ms %4d sentencias %6d entidades cargadas%n", nombre,
+                (System.nanoTime() - inicio) / 1e6, estadisticas.getPrepareStatementCount(), estadisticas.getEntityLoadCount());
+    }
+
+    // Paciente con historial de dos versiones y "citas" citas con un médico propio
+    private static Paciente crear(MedicalService service, long semilla, int n, int citas) throws Exception {
+        Paciente paciente = new Paciente(MARCA, String.format("%013d", 7_000_000_000_000L + semilla * 10 + n),
+                LocalDate.of(1980, 1, 1), null, null);
+        Medico medico = new Medico(MARCA, "E" + semilla + "-" + n, Especialidad.CARDIOLOGIA, null);
+        service.registrarPaciente(paciente);
+        service.registrarMedico(medico);
+        service.crearOEditarHistorialMedico(paciente.getId(), "alergias", "antecedentes", "observaciones");
+        service.crearOEditarHistorialMedico(paciente.getId(), "alergias 2", "antecedentes", "observaciones");
+
+        List<Cita> nuevas = new ArrayList<>(citas);
+        LocalDateTime inicio = LocalDateTime.now().plusDays(1).withHour(8).withMinute(0).withSecond(0).withNano(0);
+        for (int i = 0; i < citas; i++) {
+            nuevas.add(new Cita(inicio.plusMinutes(30L * i), MARCA, paciente, medico));
+        }
+        new CitaDAO().saveAll(nuevas);
+        return paciente;
+    }
+
+    private static boolean comprobarBorrado(String caso, Long pacienteId) {
+        long quedan = contar("SELECT count(*) FROM cita WHERE paciente_id = ?1", pacienteId)
+                + contar("SELECT count(*) FROM historial_version WHERE historial_id = ?1", pacienteId)
+                + contar("SELECT count(*) FROM historial_medico WHERE id = ?1", pacienteId)
+                + contar("SELECT count(*) FROM paciente WHERE id = ?1", pacienteId);
+        if (quedan == 0) {
+            return true;
+        }
+        System.out.println("FALLÓ " + caso + ": quedaron " + quedan + " filas del paciente " + pacienteId);
+        return false;
+    }
+
+    private static long contar(String sql, Long id) {
+        return UnidadDeTrabajo.leer(em -> ((Number) em.createNativeQuery(sql).setParameter(1, id).getSingleResult()).longValue());
+    }
+}
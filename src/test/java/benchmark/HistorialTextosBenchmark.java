@@ -0,0 +1,129 @@
+package benchmark;
+
+import dao.PacienteDAO;
+import jakarta.persistence.EntityManager;
+import model.HistorialMedico;
+import model.Paciente;
+import model.TextoComprimidoConverter;
+import prueba.DatosPrueba;
+import service.MedicalService;
+import util.JPAUtil;
+import util.UnidadDeTrabajo;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Tamaño en la base y latencia de los historiales con observaciones de 5 KB a 500 KB:
+//  - bytes que viajan por la red (octet_length) y que ocupa la columna (pg_column_size, tras TOAST)
+//  - obtenerHistorialMedicoConTextos (historial completo), crearOEditarHistorialMedico y una carga del
+//    historial sin leer sus textos (LAZY)
+// Para comparar con compresión: -Dhospital.historial.comprimirDesde=4096
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.HistorialTextosBenchmark -Dexec.args="50"
+//      (pacientes por tamaño). Escribe en la base del entorno activo y borra sus filas al terminar.
+public class HistorialTextosBenchmark {
+
+    private static final String MARCA = "benchmark-historial";
+    private static final int[] TAMANIOS_KB = {5, 50, 200, 500};
+    private static final String[] PALABRAS = ("paciente refiere dolor abdominal cefalea intensa desde hace tres días " +
+            "sin fiebre presión arterial frecuencia cardiaca normal se indica control en dos semanas " +
+            "hemograma glucosa creatinina dentro de rangos tratamiento con paracetamol 500 mg cada 8 horas " +
+            "antecedente de hipertensión diabetes tipo 2 alergia a penicilina evolución favorable " +
+            "se solicita radiografía de tórax ecografía abdominal interconsulta con cardiología").split(" ");
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        MedicalService service = new MedicalService();
+        PacienteDAO pacienteDAO = new PacienteDAO();
+        Random random = new Random(42);
+
+        System.out.printf("Compresión desde %d caracteres%n", TextoComprimidoConverter.COMPRIMIR_DESDE);
+        System.out.printf("%-8s %12s %12s %12s | %12s %12s %12s%n", "obs.", "texto B", "red B", "disco B",
+                "obtener ms", "editar ms", "sin textos ms");
+        try {
+            DatosPrueba.limpiar(MARCA);
+            long base = 5_000_000_000_000L + (System.nanoTime() % 100_000L) * 10_000L;
+            for (int t = 0; t < TAMANIOS_KB.length; t++) {
+                List<Paciente> pacientes = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    pacientes.add(new Paciente(MARCA, String.format("%013d", base + t * 1000L + i),
+                            LocalDate.of(1980, 1, 1), null, null));
+                }
+                pacienteDAO.saveAll(pacientes);
+                List<Long> ids = pacientes.stream().map(Paciente::getId).toList();
+                int kb = TAMANIOS_KB[t];
+                for (Long id : ids) {
+                    service.crearOEditarHistorialMedico(id, texto(random, 200), texto(random, 5 * 1024),
+                            texto(random, kb * 1024));
+                }
+
+                // Calentamiento
+                for (Long id : ids) {
+                    service.obtenerHistorialMedicoConTextos(id).orElseThrow();
+                    cargarSinTextos(id);
+                }
+                String observaciones = texto(random, kb * 1024);
+                long[] obtener = medir(ids, id -> service.obtenerHistorialMedicoConTextos(id).orElseThrow());
+                long[] editar = medir(ids, id -> service.crearOEditarHistorialMedico(id, "Ninguna", "Sin cambios", observaciones));
+                long[] sinTextos = medir(ids, HistorialTextosBenchmark::cargarSinTextos);
+
+                long[] tamanios = tamanios(ids);
+                System.out.printf("%5d KB %12d %12d %12d | %12.2f %12.2f %12.2f%n", kb,
+                        observaciones.getBytes(StandardCharsets.UTF_8).length, tamanios[0], tamanios[1],
+                        mediana(obtener), mediana(editar), mediana(sinTextos));
+            }
+        } finally {
+            DatosPrueba.limpiar(MARCA);
+            JPAUtil.closeEntityManagerFactory();
+        }
+    }
+
+    private interface Operacion {
+        void ejecutar(Long id) throws Exception;
+    }
+
+    private static long[] medir(List<Long> ids, Operacion operacion) throws Exception {
+        long[] tiempos = new long[ids.size()];
+        for (int i = 0; i < ids.size(); i++) {
+            long inicio = System.nanoTime();
+            operacion.ejecutar(ids.get(i));
+            tiempos[i] = System.nanoTime() - inicio;
+        }
+        return tiempos;
+    }
+
+    private static double mediana(long[] tiempos) {
+        Arrays.sort(tiempos);
+        return tiempos[tiempos.length / 2] / 1e6;
+    }
+
+    // Lo que hacen las pantallas que solo necesitan saber si el paciente tiene historial
+    private static void cargarSinTextos(Long id) {
+        UnidadDeTrabajo.leer(em -> em.find(HistorialMedico.class, id).getId());
+    }
+
+    // {bytes promedio de observaciones por la red, bytes promedio en disco}
+    private static long[] tamanios(List<Long> ids) {
+        Object[] fila = UnidadDeTrabajo.leer(em -> (Object[]) em.createNativeQuery(
+                        "SELECT CAST(avg(octet_length(observaciones)) AS BIGINT), CAST(avg(pg_column_size(observaciones)) AS BIGINT) " +
+                                "FROM historial_medico WHERE id IN (:ids)")
+                .setParameter("ids", ids)
+                .getSingleResult());
+        return new long[]{((Number) fila[0]).longValue(), ((Number) fila[1]).longValue()};
+    }
+
+    private static String texto(Random random, int caracteres) {
+        StringBuilder sb = new StringBuilder(caracteres + 32);
+        while (sb.length() < caracteres) {
+            if (random.nextInt(12) == 0) {
+                sb.append(LocalDate.of(2020, 1, 1).plusDays(random.nextInt(1500))).append(": ");
+            }
+            sb.append(PALABRAS[random.nextInt(PALABRAS.length)]).append(random.nextInt(15) == 0 ? ".\n" : " ");
+        }
+        return sb.substring(0, caracteres);
+    }
+}
@@ -0,0 +1,111 @@
+package benchmark;
+
+import dao.PacienteDAO;
+import dto.HistorialEnVersion;
+import dto.VersionHistorialResumen;
+import jakarta.persistence.EntityManager;
+import model.HistorialMedico;
+import model.Paciente;
+import prueba.DatosPrueba;
+import service.MedicalService;
+import util.JPAUtil;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+// Ediciones pequeñas y frecuentes sobre un historial con observaciones grandes: tiempo por guardado,
+// caracteres que ocupa el registro de versiones frente a guardar cada versión completa, y tiempo de
+// reconstrucción de versiones viejas. Comprueba que cada versión reconstruida sea igual a lo guardado.
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.HistorialVersionesBenchmark -Dexec.args="200 300"
+//      (ediciones, KB de observaciones). Escribe en la base del entorno activo, borra sus filas al
+//      terminar y sale con código 1 si alguna versión no coincide.
+public class HistorialVersionesBenchmark {
+
+    private static final String MARCA = "benchmark-versiones";
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        int ediciones = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int kb = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        MedicalService service = new MedicalService();
+        Random random = new Random(7);
+        boolean correcto = true;
+
+        try {
+            DatosPrueba.limpiar(MARCA);
+            Paciente paciente = new Paciente(MARCA, String.format("%013d", 4_000_000_000_000L + System.nanoTime() % 1_000_000L),
+                    LocalDate.of(1980, 1, 1), null, null);
+            new PacienteDAO().save(paciente);
+            Long id = paciente.getId();
+
+            StringBuilder observaciones = new StringBuilder();
+            while (observaciones.length() < kb * 1024) {
+                observaciones.append("Control ").append(random.nextInt(1000)).append(": evolución estable, sin cambios en el tratamiento.\n");
+            }
+            String alergias = "Penicilina";
+            String antecedentes = "Hipertensión";
+            List<String[]> guardadas = new ArrayList<>();
+            service.crearOEditarHistorialMedico(id, alergias, antecedentes, observaciones.toString());
+            guardadas.add(new String[]{alergias, antecedentes, observaciones.toString()});
+
+            long[] tiempos = new long[ediciones];
+            for (int i = 0; i < ediciones; i++) {
+                // Agregar una nota al final, corregir un tramo en medio o cambiar las alergias
+                switch (random.nextInt(3)) {
+                    case 0 -> observaciones.append("Nota ").append(i).append(": paciente refiere mejoría.\n");
+                    case 1 -> {
+                        int posicion = random.nextInt(observaciones.length() - 20);
+                        observaciones.replace(posicion, posicion + 8, "corregido");
+                    }
+                    default -> alergias = "Penicilina, látex " + i;
+                }
+                long inicio = System.nanoTime();
+                service.crearOEditarHistorialMedico(id, alergias, antecedentes, observaciones.toString());
+                tiempos[i] = System.nanoTime() - inicio;
+                guardadas.add(new String[]{alergias, antecedentes, observaciones.toString()});
+            }
+
+            List<VersionHistorialResumen> versiones = service.listarVersionesHistorial(id);
+            long registro = versiones.stream().mapToLong(VersionHistorialResumen::caracteres).sum();
+            long completas = guardadas.stream().mapToLong(v -> v[0].length() + v[1].length() + v[2].length()).sum();
+            Arrays.sort(tiempos);
+            System.out.printf("%d versiones (%d completas) de ~%d KB%n", versiones.size(),
+                    versiones.stream().filter(VersionHistorialResumen::snapshot).count(), kb);
+            System.out.printf("Guardado: p50 %.2f ms | p95 %.2f ms%n", tiempos[ediciones / 2] / 1e6,
+                    tiempos[(int) (ediciones * 0.95)] / 1e6);
+            System.out.printf("Registro de versiones: %,d caracteres; guardando cada versión completa: %,d (%.1f%%)%n",
+                    registro, completas, 100.0 * registro / completas);
+
+            long[] reconstruccion = new long[guardadas.size()];
+            for (int n = 1; n <= guardadas.size(); n++) {
+                long inicio = System.nanoTime();
+                HistorialEnVersion h = service.obtenerHistorialEnVersion(id, n).orElse(null);
+                reconstruccion[n - 1] = System.nanoTime() - inicio;
+                String[] esperado = guardadas.get(n - 1);
+                if (h == null || !Objects.equals(h.alergias(), esperado[0]) || !Objects.equals(h.antecedentes(), esperado[1])
+                        || !Objects.equals(h.observaciones(), esperado[2])) {
+                    System.out.println("FALLÓ la versión " + n + " no coincide con lo guardado");
+                    correcto = false;
+                }
+            }
+            Arrays.sort(reconstruccion);
+            System.out.printf("Reconstrucción de una versión: p50 %.2f ms | máx %.2f ms%n",
+                    reconstruccion[reconstruccion.length / 2] / 1e6, reconstruccion[reconstruccion.length - 1] / 1e6);
+
+            HistorialMedico vigente = service.obtenerHistorialMedicoConTextos(id).orElseThrow();
+            if (!vigente.getObservaciones().contentEquals(observaciones) || vigente.getNumeroVersion() != guardadas.size()) {
+                System.out.println("FALLÓ la versión vigente no coincide con la última guardada");
+                correcto = false;
+            }
+        } finally {
+            DatosPrueba.limpiar(MARCA);
+            JPAUtil.closeEntityManagerFactory();
+        }
+
+        DatosPrueba.terminar(correcto);
+    }
+}
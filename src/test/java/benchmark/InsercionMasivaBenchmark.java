@@ -0,0 +1,120 @@
+package benchmark;
+
+import dao.CitaDAO;
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import importacion.CargadorCopyCitas;
+import importacion.ImportacionListener;
+import jakarta.persistence.EntityManager;
+import model.Cita;
+import model.Especialidad;
+import model.Medico;
+import model.Paciente;
+import prueba.DatosPrueba;
+import util.JPAUtil;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Mide filas/segundo de BaseDAO.save y CitaDAO.save en ciclo contra saveAll (lotes JDBC)
+// y contra la carga COPY de citas.
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.InsercionMasivaBenchmark -Dexec.args="2000"
+// Escribe en la base configurada en persistence.xml y borra sus filas al terminar.
+public class InsercionMasivaBenchmark {
+
+    private static final String MARCA = "benchmark-insercion";
+
+    public static void main(String[] args) {
+        DatosPrueba.exigirEntornoDePruebas();
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        PacienteDAO pacienteDAO = new PacienteDAO();
+        MedicoDAO medicoDAO = new MedicoDAO();
+        CitaDAO citaDAO = new CitaDAO();
+
+        try {
+            DatosPrueba.limpiar(MARCA);
+            Medico medico = new Medico(MARCA, "B" + System.nanoTime() % 1_000_000_000L,
+                    Especialidad.MEDICINA_GENERAL, null);
+            medicoDAO.save(medico);
+            Paciente titular = pacientes(1, 0).get(0);
+            pacienteDAO.save(titular);
+
+            // Calentamiento de la JVM y del pool de conexiones
+            pacientes(200, 1).forEach(pacienteDAO::save);
+            pacienteDAO.saveAll(pacientes(200, 2));
+
+            List<Paciente> enCiclo = pacientes(n, 3);
+            medir("PacienteDAO.save (una transacción por fila)", n, () -> enCiclo.forEach(pacienteDAO::save));
+            List<Paciente> enLote = pacientes(n, 4);
+            medir("PacienteDAO.saveAll (lotes de " + PacienteDAO.TAMANIO_LOTE + ")", n, () -> pacienteDAO.saveAll(enLote));
+
+            List<Cita> citasEnCiclo = citas(n, 0, titular, medico);
+            medir("CitaDAO.save (una transacción por fila)", n, () -> citasEnCiclo.forEach(citaDAO::save));
+            List<Cita> citasEnLote = citas(n, n, titular, medico);
+            medir("CitaDAO.saveAll (lotes de " + PacienteDAO.TAMANIO_LOTE + ")", n, () -> citaDAO.saveAll(citasEnLote));
+
+            Path csv = archivoCitas(citas(n, 2 * n, titular, medico));
+            try {
+                medir("CargadorCopyCitas (COPY + INSERT ... SELECT)", n, () -> {
+                    try {
+                        new CargadorCopyCitas().cargar(csv, new ImportacionListener() { });
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } finally {
+                Files.deleteIfExists(csv);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            DatosPrueba.limpiar(MARCA);
+            JPAUtil.closeEntityManagerFactory();
+        }
+    }
+
+    private static void medir(String nombre, int filas, Runnable carga) {
+        long inicio = System.nanoTime();
+        carga.run();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        System.out.printf("%-45s %7d filas en %7.2f s -> %9.0f filas/s%n", nombre, filas, segundos, filas / segundos);
+    }
+
+    private static List<Paciente> pacientes(int n, int serie) {
+        long base = (System.nanoTime() % 100_000L) * 100_000_000L + serie * 10_000_000L;
+        List<Paciente> pacientes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            pacientes.add(new Paciente(MARCA, String.format("%013d", base + i),
+                    LocalDate.of(1980, 1, 1), null, null));
+        }
+        return pacientes;
+    }
+
+    private static List<Cita> citas(int n, int desplazamiento, Paciente paciente, Medico medico) {
+        LocalDateTime inicio = LocalDateTime.now().plusYears(50).withSecond(0).withNano(0);
+        List<Cita> citas = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            citas.add(new Cita(inicio.plusMinutes(desplazamiento + i), MARCA, paciente, medico));
+        }
+        return citas;
+    }
+
+    private static Path archivoCitas(List<Cita> citas) throws IOException {
+        Path csv = Files.createTempFile("citas-benchmark", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            writer.write("fechaHora,motivo,estado,dpiPaciente,colegiadoMedico\n");
+            for (Cita c : citas) {
+                writer.write(c.getFechaHora() + "," + MARCA + ",PROGRAMADA," +
+                        c.getPaciente().getDpi() + "," + c.getMedico().getColegiado() + "\n");
+            }
+        }
+        return csv;
+    }
+}
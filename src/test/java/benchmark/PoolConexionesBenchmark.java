@@ -0,0 +1,87 @@
+package benchmark;
+
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import jakarta.persistence.EntityManager;
+import model.Especialidad;
+import model.Medico;
+import model.Paciente;
+import prueba.DatosPrueba;
+import service.MedicalService;
+import util.EstadisticasPool;
+import util.JPAUtil;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Agenda citas desde varios hilos a la vez y muestra cómo se comporta el pool: ocupación,
+// hilos esperando, distribución de la espera por una conexión y timeouts.
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.PoolConexionesBenchmark -Dexec.args="32 200"
+//      (hilos, citas por hilo); el tamaño del pool se prueba con -Dhospital.db.maximumPoolSize=N
+// Escribe en la base del entorno activo y borra sus filas al terminar.
+public class PoolConexionesBenchmark {
+
+    private static final String MARCA = "benchmark-pool";
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        int hilos = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int citasPorHilo = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        MedicalService service = new MedicalService();
+
+        try {
+            DatosPrueba.limpiar(MARCA);
+            List<Medico> medicos = new ArrayList<>();
+            long semilla = System.nanoTime() % 1_000_000_000L;
+            for (int i = 0; i < hilos; i++) {
+                medicos.add(new Medico(MARCA, "P" + semilla + "-" + i, Especialidad.MEDICINA_GENERAL, null));
+            }
+            new MedicoDAO().saveAll(medicos);
+            Paciente paciente = new Paciente(MARCA, String.format("%013d", 9_000_000_000_000L + semilla),
+                    LocalDate.of(1980, 1, 1), null, null);
+            new PacienteDAO().save(paciente);
+
+            JPAUtil.reiniciarMetricasPool();
+            LocalDateTime base = LocalDateTime.now().plusYears(50).withSecond(0).withNano(0);
+            AtomicInteger errores = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(hilos);
+            long inicio = System.nanoTime();
+            List<Future<?>> tareas = new ArrayList<>();
+            for (Medico medico : medicos) {
+                tareas.add(executor.submit(() -> {
+                    for (int i = 0; i < citasPorHilo; i++) {
+                        try {
+                            service.agendarCita(paciente.getId(), medico.getId(), base.plusMinutes(30L * i), MARCA);
+                        } catch (Exception e) {
+                            errores.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            executor.shutdown();
+
+            int total = hilos * citasPorHilo;
+            EstadisticasPool e = JPAUtil.getEstadisticasPool();
+            System.out.printf("%d hilos, pool máximo %d: %d citas en %.2f s -> %.0f citas/s, %d errores%n",
+                    hilos, e.maximo(), total, segundos, total / segundos, errores.get());
+            System.out.printf("Espera por conexión: promedio %.2f ms, p50 <= %.2f ms, p95 <= %.2f ms, p99 <= %.2f ms, %d timeouts%n",
+                    e.adquisicion().promedioMs(), e.adquisicion().percentilMs(50),
+                    e.adquisicion().percentilMs(95), e.adquisicion().percentilMs(99), e.timeouts());
+            System.out.printf("Conexión prestada: promedio %.2f ms, p99 <= %.2f ms%n",
+                    e.uso().promedioMs(), e.uso().percentilMs(99));
+        } finally {
+            DatosPrueba.limpiar(MARCA);
+            JPAUtil.closeEntityManagerFactory();
+        }
+    }
+}
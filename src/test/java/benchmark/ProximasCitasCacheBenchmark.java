@@ -0,0 +1,104 @@
+package benchmark;
+
+import dao.CitaDAO;
+import model.Cita;
+import model.Especialidad;
+import model.Medico;
+import model.Paciente;
+import org.hibernate.stat.Statistics;
+import prueba.DatosPrueba;
+import service.CacheProximasCitas;
+import service.IndiceDisponibilidad;
+import service.MedicalService;
+import util.JPAUtil;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Agenda de próximas citas con y sin CacheProximasCitas: tiempo y sentencias por lectura. La
+// coherencia de la caché con escrituras concurrentes la comprueba service.CacheProximasCitasTest.
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.ProximasCitasCacheBenchmark -Dexec.args="20 30 500"
+//      (médicos, citas por médico, lecturas por caso). Escribe en la base del entorno activo y borra
+//      sus filas al terminar.
+public class ProximasCitasCacheBenchmark {
+
+    private static final String MARCA = "benchmark-agenda";
+    private static final int LIMITE = 5;
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        int medicos = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int citasPorMedico = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int repeticiones = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        if (!CacheProximasCitas.ACTIVA) {
+            System.out.println("La caché está desactivada (-Dhospital.agenda.cache.activa=false)");
+            System.exit(1);
+        }
+        MedicalService service = new MedicalService();
+        CitaDAO citaDAO = new CitaDAO();
+        CacheProximasCitas cache = CacheProximasCitas.getInstancia();
+        Statistics estadisticas = JPAUtil.getSessionFactory().getStatistics();
+
+        try {
+            DatosPrueba.limpiar(MARCA);
+            long semilla = System.nanoTime() % 1_000_000L;
+            List<Long> medicoIds = new ArrayList<>();
+            List<Paciente> pacientes = new ArrayList<>();
+            for (int i = 0; i < medicos; i++) {
+                medicoIds.add(service.registrarMedico(new Medico(String.format("%s %03d", MARCA, i),
+                        "AG-" + semilla + "-" + i, Especialidad.MEDICINA_GENERAL, null)).id());
+            }
+            for (int i = 0; i < 50; i++) {
+                Long id = service.registrarPaciente(new Paciente(MARCA + " " + i,
+                        String.format("%013d", 8_000_000_000_000L + semilla * 100 + i), LocalDate.of(1985, 1, 1), null, null)).id();
+                pacientes.add(service.buscarPacientePorId(id).orElseThrow());
+            }
+            List<Cita> citas = new ArrayList<>();
+            LocalDateTime base = LocalDateTime.now().plusDays(1).withHour(8).withMinute(0).withSecond(0).withNano(0);
+            for (Long medicoId : medicoIds) {
+                Medico medico = service.buscarMedicoPorId(medicoId).orElseThrow();
+                for (int j = 0; j < citasPorMedico; j++) {
+                    citas.add(new Cita(base.plusMinutes(30L * j), MARCA, pacientes.get(j % pacientes.size()), medico));
+                }
+            }
+            citaDAO.saveAll(citas);
+            // Entraron sin pasar por el servicio
+            IndiceDisponibilidad.getInstancia().invalidarTodo();
+            cache.invalidarTodo();
+
+            double[] sinCache = medir(estadisticas, repeticiones, () -> citaDAO.findProximasCitasPorMedico(medicoIds, LIMITE));
+            double[] conCache = medir(estadisticas, repeticiones, () -> service.listarAgendaProximasCitas(medicoIds, LIMITE));
+            System.out.printf("%-34s %8.3f ms %6.2f sentencias%n", "agenda directa de la base", sinCache[0], sinCache[1]);
+            System.out.printf("%-34s %8.3f ms %6.2f sentencias%n", "agenda con CacheProximasCitas", conCache[0], conCache[1]);
+
+            CacheProximasCitas.Estadisticas e = cache.estadisticas();
+            System.out.printf("Caché: %d médicos | aciertos %d | fallos %d (%.1f%% aciertos) | consultas %d%n",
+                    e.medicos(), e.aciertos(), e.fallos(), e.tasaAciertos() * 100, e.consultas());
+        } finally {
+            DatosPrueba.limpiar(MARCA);
+            IndiceDisponibilidad.getInstancia().invalidarTodo();
+            cache.invalidarTodo();
+            JPAUtil.closeEntityManagerFactory();
+        }
+    }
+
+    private interface Lectura {
+        Object ejecutar();
+    }
+
+    // {ms por lectura, sentencias por lectura}, después de un calentamiento
+    private static double[] medir(Statistics estadisticas, int repeticiones, Lectura lectura) {
+        for (int i = 0; i < Math.max(10, repeticiones / 10); i++) {
+            lectura.ejecutar();
+        }
+        estadisticas.clear();
+        long inicio = System.nanoTime();
+        for (int i = 0; i < repeticiones; i++) {
+            lectura.ejecutar();
+        }
+        return new double[]{(System.nanoTime() - inicio) / 1e6 / repeticiones,
+                (double) estadisticas.getPrepareStatementCount() / repeticiones};
+    }
+}
@@ -0,0 +1,59 @@
+package benchmark;
+
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import prueba.DatosPrueba;
+import util.JPAUtil;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Latencia y memoria asignada de los listados: entidades completas (BaseDAO.findAll) contra
+// proyecciones a DTO (findResumenes) sobre los pacientes y médicos que ya existen en la base.
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.ProyeccionListadosBenchmark -Dexec.args="20"
+//      (repeticiones). Solo lee; conviene hibernate.show_sql=false para no medir la consola.
+public class ProyeccionListadosBenchmark {
+
+    private static final com.sun.management.ThreadMXBean HILOS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        DatosPrueba.exigirEntornoDePruebas();
+        int repeticiones = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        PacienteDAO pacienteDAO = new PacienteDAO();
+        MedicoDAO medicoDAO = new MedicoDAO();
+
+        try {
+            medir("PacienteDAO.findAll (entidades)", repeticiones, pacienteDAO::findAll);
+            medir("PacienteDAO.findResumenes (DTO)", repeticiones, pacienteDAO::findResumenes);
+            medir("MedicoDAO.findAll (entidades)", repeticiones, medicoDAO::findAll);
+            medir("MedicoDAO.findResumenes (DTO)", repeticiones, medicoDAO::findResumenes);
+        } finally {
+            JPAUtil.closeEntityManagerFactory();
+        }
+    }
+
+    private static void medir(String nombre, int repeticiones, Supplier<List<?>> listado) {
+        // Calentamiento: JIT, caché de planes de consulta y conexiones del pool
+        int filas = 0;
+        for (int i = 0; i < 3; i++) {
+            filas = listado.get().size();
+        }
+
+        long[] tiempos = new long[repeticiones];
+        long bytes = 0;
+        for (int i = 0; i < repeticiones; i++) {
+            long asignadosAntes = HILOS.getCurrentThreadAllocatedBytes();
+            long inicio = System.nanoTime();
+            listado.get();
+            tiempos[i] = System.nanoTime() - inicio;
+            bytes += HILOS.getCurrentThreadAllocatedBytes() - asignadosAntes;
+        }
+        Arrays.sort(tiempos);
+        System.out.printf("%-36s %6d filas | p50 %8.2f ms | p95 %8.2f ms | %8.1f KB/llamada | %6.0f B/fila%n",
+                nombre, filas, tiempos[repeticiones / 2] / 1e6, tiempos[(int) (repeticiones * 0.95)] / 1e6,
+                bytes / (double) repeticiones / 1024, filas == 0 ? 0 : bytes / (double) repeticiones / filas);
+    }
+}
@@ -0,0 +1,135 @@
+package benchmark;
+
+import dao.PacienteDAO;
+import dto.ResultadoRegistro;
+import jakarta.persistence.EntityManager;
+import model.Paciente;
+import prueba.DatosPrueba;
+import service.MedicalService;
+import util.JPAUtil;
+import util.UnidadDeTrabajo;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Registro de pacientes: consulta por DPI + persist (como antes) contra INSERT ... ON CONFLICT,
+// uno por uno y por lotes con unnest. Después varios hilos registran los mismos DPI a la vez: cada
+// DPI debe quedar creado una sola vez y el resto recibir "ya existe", sin excepciones.
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.RegistroPacientesBenchmark -Dexec.args="2000 8"
+//      (pacientes, hilos). Escribe en la base del entorno activo, borra sus filas al terminar y
+//      sale con código 1 si la prueba concurrente falla.
+public class RegistroPacientesBenchmark {
+
+    private static final String MARCA = "benchmark-registro";
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int hilos = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        MedicalService service = new MedicalService();
+        PacienteDAO pacienteDAO = new PacienteDAO();
+        boolean correcto = true;
+
+        try {
+            DatosPrueba.limpiar(MARCA);
+            long base = 3_000_000_000_000L + (System.nanoTime() % 10_000L) * 100_000_000L;
+
+            // Calentamiento
+            for (Paciente p : pacientes(200, base + 90_000_000L)) {
+                service.registrarPaciente(p);
+                consultarYGuardar(pacienteDAO, p);
+            }
+
+            List<Paciente> previos = pacientes(n, base);
+            medir("findByDpi + save (antes)", n, () -> {
+                for (Paciente p : previos) {
+                    consultarYGuardar(pacienteDAO, p);
+                }
+            });
+            List<Paciente> nuevos = pacientes(n, base + 10_000_000L);
+            medir("registrarPaciente (ON CONFLICT)", n, () -> {
+                for (Paciente p : nuevos) {
+                    service.registrarPaciente(p);
+                }
+            });
+            // Mitad ya registrados, mitad nuevos, en lotes como la importación
+            List<Paciente> mezcla = new ArrayList<>(pacientes(n / 2, base + 10_000_000L));
+            mezcla.addAll(pacientes(n - n / 2, base + 20_000_000L));
+            medir("insertarSiNoExisten (unnest, lotes de 1000)", n, () -> {
+                for (int i = 0; i < mezcla.size(); i += 1000) {
+                    pacienteDAO.insertarSiNoExisten(mezcla.subList(i, Math.min(i + 1000, mezcla.size())));
+                }
+            });
+
+            // Todos los hilos registran los mismos DPI
+            int compartidos = Math.min(n, 500);
+            AtomicInteger creados = new AtomicInteger();
+            AtomicInteger existentes = new AtomicInteger();
+            AtomicInteger errores = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(hilos);
+            List<Future<?>> tareas = new ArrayList<>();
+            long inicio = System.nanoTime();
+            for (int h = 0; h < hilos; h++) {
+                tareas.add(pool.submit(() -> {
+                    for (Paciente p : pacientes(compartidos, base + 30_000_000L)) {
+                        try {
+                            ResultadoRegistro r = service.registrarPaciente(p);
+                            (r.creado() ? creados : existentes).incrementAndGet();
+                        } catch (Exception e) {
+                            errores.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+            pool.shutdown();
+            System.out.printf("Concurrente: %d hilos x %d DPI en %.2f s -> %d creados, %d ya existían, %d errores%n",
+                    hilos, compartidos, (System.nanoTime() - inicio) / 1e9, creados.get(), existentes.get(), errores.get());
+            if (creados.get() != compartidos || existentes.get() != compartidos * (hilos - 1) || errores.get() != 0) {
+                System.out.println("FALLÓ cada DPI debe crearse exactamente una vez y sin errores");
+                correcto = false;
+            }
+        } finally {
+            DatosPrueba.limpiar(MARCA);
+            JPAUtil.closeEntityManagerFactory();
+        }
+
+        DatosPrueba.terminar(correcto);
+    }
+
+    private interface Carga {
+        void ejecutar() throws Exception;
+    }
+
+    // El registro anterior: consulta del DPI y persist en la misma transacción
+    private static void consultarYGuardar(PacienteDAO pacienteDAO, Paciente paciente) throws Exception {
+        UnidadDeTrabajo.ejecutar(em -> {
+            if (pacienteDAO.findByDpi(paciente.getDpi()).isEmpty()) {
+                pacienteDAO.save(paciente);
+            }
+            return null;
+        });
+    }
+
+    private static void medir(String nombre, int filas, Carga carga) throws Exception {
+        long inicio = System.nanoTime();
+        carga.ejecutar();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        System.out.printf("%-45s %7d filas en %6.2f s -> %8.0f filas/s%n", nombre, filas, segundos, filas / segundos);
+    }
+
+    private static List<Paciente> pacientes(int n, long base) {
+        List<Paciente> pacientes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            pacientes.add(new Paciente(MARCA, String.format("%013d", base + i), LocalDate.of(1980, 1, 1), null, null));
+        }
+        return pacientes;
+    }
+}
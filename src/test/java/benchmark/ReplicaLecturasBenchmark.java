@@ -0,0 +1,252 @@
+package benchmark;
+
+import dao.CitaDAO;
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import jakarta.persistence.EntityManager;
+import model.Cita;
+import model.Especialidad;
+import model.Medico;
+import model.Paciente;
+import prueba.DatosPrueba;
+import service.MedicalService;
+import util.EstadisticasPool;
+import util.JPAUtil;
+import util.LecturasReplica;
+import util.UnidadDeTrabajo;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Agendamientos mientras otros hilos corren el reporte de citas por rango de fechas, con el reporte en
+// el primario (dentro de una unidad de trabajo) y en la réplica: latencia de agendar, espera por una
+// conexión del primario y reportes por segundo. Después comprueba las lecturas con la réplica
+// detenida (pg_wal_replay_pause): sin escrituras propias el listado no trae la cita recién agendada,
+// con LecturasReplica.conEscriturasPropias sí (del primario), y al reanudar vuelve a leer de la réplica.
+// Uso: java -Dhospital.replica.db.jdbcUrl=jdbc:postgresql://localhost:5434/jpql -cp target/classes:target/test-classes:<dependencias> \
+//      benchmark.ReplicaLecturasBenchmark 20000 10 4 4 (citas del reporte, segundos por caso,
+//      hilos de reporte, hilos que agendan). Escribe en la base del entorno activo, borra sus filas
+//      al terminar y sale con código 1 si algo falla.
+public class ReplicaLecturasBenchmark {
+
+    private static final String MARCA = "benchmark-replica";
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        int citas = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int segundos = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int reporteros = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int agendadores = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        if (!JPAUtil.hayReplica()) {
+            System.out.println("No hay réplica configurada (-Dhospital.replica.db.jdbcUrl=...)");
+            System.exit(1);
+        }
+        MedicalService service = new MedicalService();
+        CitaDAO citaDAO = new CitaDAO();
+        boolean correcto = true;
+
+        try {
+            DatosPrueba.limpiar(MARCA);
+            boolean enReplica = UnidadDeTrabajo.leerDeReplica(em ->
+                    (Boolean) em.createNativeQuery("SELECT pg_is_in_recovery()").getSingleResult());
+            correcto &= comprobar("los reportes van a un servidor en recuperación (la réplica)", enReplica);
+
+            long semilla = System.nanoTime() % 1_000_000_000L;
+            List<Medico> medicos = new ArrayList<>();
+            for (int i = 0; i < agendadores + 1; i++) {
+                medicos.add(new Medico(MARCA, "R" + semilla + "-" + i, Especialidad.MEDICINA_GENERAL, null));
+            }
+            new MedicoDAO().saveAll(medicos);
+            Paciente paciente = new Paciente(MARCA, String.format("%013d", 6_000_000_000_000L + semilla % 1_000_000L),
+                    LocalDate.of(1980, 1, 1), null, null);
+            new PacienteDAO().save(paciente);
+
+            // Las citas del reporte, todas del primer médico; los demás son de los hilos que agendan
+            LocalDateTime inicioReporte = LocalDateTime.now().plusYears(40).withSecond(0).withNano(0);
+            List<Cita> cargadas = new ArrayList<>(citas);
+            for (int i = 0; i < citas; i++) {
+                cargadas.add(new Cita(inicioReporte.plusMinutes(30L * i), MARCA, paciente, medicos.get(0)));
+            }
+            citaDAO.saveAll(cargadas);
+            LocalDateTime finReporte = inicioReporte.plusMinutes(30L * citas);
+            // Que la réplica tenga la carga antes de medir
+            long limite = System.currentTimeMillis() + 30_000;
+            while (citaDAO.findByDateRange(inicioReporte, finReporte).size() < citas) {
+                if (System.currentTimeMillis() > limite) {
+                    throw new IllegalStateException("La réplica no recibió la carga en 30 s");
+                }
+                Thread.sleep(100);
+            }
+
+            LocalDateTime inicioAgenda = inicioReporte.plusYears(5);
+            AtomicInteger siguiente = new AtomicInteger();
+            System.out.printf("%-10s %9s %10s %10s %10s %14s %12s%n",
+                    "reporte", "citas/s", "p50 ms", "p95 ms", "p99 ms", "espera p99 ms", "reportes/s");
+            for (boolean replica : new boolean[]{false, true}) {
+                Caso caso = new Caso(service, citaDAO, paciente, medicos, inicioAgenda, siguiente,
+                        inicioReporte, finReporte, replica);
+                correcto &= caso.correr(segundos, reporteros, agendadores);
+            }
+
+            Paciente otro = new Paciente(MARCA, String.format("%013d", 6_100_000_000_000L + semilla % 1_000_000L),
+                    LocalDate.of(1981, 1, 1), null, null);
+            new PacienteDAO().save(otro);
+            correcto &= comprobarEscriturasPropias(service, otro.getId(), medicos.get(1).getId(),
+                    inicioAgenda.minusDays(1));
+        } finally {
+            reanudarReplica();
+            DatosPrueba.limpiar(MARCA);
+            JPAUtil.closeEntityManagerFactory();
+        }
+
+        DatosPrueba.terminar(correcto);
+    }
+
+    private record Caso(MedicalService service, CitaDAO citaDAO, Paciente paciente, List<Medico> medicos,
+                        LocalDateTime inicioAgenda, AtomicInteger siguiente,
+                        LocalDateTime inicioReporte, LocalDateTime finReporte, boolean replica) {
+
+        boolean correr(int segundos, int reporteros, int agendadores) throws Exception {
+            AtomicBoolean seguir = new AtomicBoolean(true);
+            LongAdder reportes = new LongAdder();
+            LongAdder errores = new LongAdder();
+            List<Long> latencias = Collections.synchronizedList(new ArrayList<>());
+            ExecutorService executor = Executors.newFixedThreadPool(reporteros + agendadores);
+            List<Future<?>> tareas = new ArrayList<>();
+            JPAUtil.reiniciarMetricasPool();
+            for (int i = 0; i < reporteros; i++) {
+                tareas.add(executor.submit(() -> {
+                    while (seguir.get()) {
+                        try {
+                            // Dentro de una unidad de trabajo el reporte se lee del primario
+                            int filas = replica
+                                    ? citaDAO.findByDateRange(inicioReporte, finReporte).size()
+                                    : UnidadDeTrabajo.ejecutar(em -> citaDAO.findByDateRange(inicioReporte, finReporte)).size();
+                            if (filas > 0) {
+                                reportes.increment();
+                            }
+                        } catch (Exception e) {
+                            errores.increment();
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < agendadores; i++) {
+                Long medicoId = medicos.get(i + 1).getId();
+                tareas.add(executor.submit(() -> {
+                    while (seguir.get()) {
+                        long inicio = System.nanoTime();
+                        try {
+                            service.agendarCita(paciente.getId(), medicoId,
+                                    inicioAgenda.plusMinutes(30L * siguiente.incrementAndGet()), MARCA);
+                            latencias.add(System.nanoTime() - inicio);
+                        } catch (Exception e) {
+                            errores.increment();
+                        }
+                    }
+                }));
+            }
+            Thread.sleep(segundos * 1000L);
+            seguir.set(false);
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+            executor.shutdown();
+
+            List<Long> ordenadas = new ArrayList<>(latencias);
+            Collections.sort(ordenadas);
+            EstadisticasPool primario = JPAUtil.getEstadisticasPool();
+            System.out.printf("%-10s %9.0f %10.2f %10.2f %10.2f %14.2f %12.1f%n",
+                    replica ? "réplica" : "primario", ordenadas.size() / (double) segundos,
+                    percentil(ordenadas, 50), percentil(ordenadas, 95), percentil(ordenadas, 99),
+                    primario.adquisicion().percentilMs(99), reportes.sum() / (double) segundos);
+            return comprobar("sin errores con el reporte en " + (replica ? "la réplica" : "el primario"),
+                    errores.sum() == 0 && !ordenadas.isEmpty() && reportes.sum() > 0);
+        }
+    }
+
+    // Con la réplica detenida la cita recién agendada solo se ve pidiendo las escrituras propias
+    private static boolean comprobarEscriturasPropias(MedicalService service, Long pacienteId, Long medicoId,
+                                                      LocalDateTime fechaHora) throws Exception {
+        boolean correcto = true;
+        pausarReplica();
+        service.agendarCita(pacienteId, medicoId, fechaHora, MARCA);
+        correcto &= comprobar("con la réplica detenida, el listado de la réplica no trae la cita nueva",
+                !contiene(service.listarCitasPaciente(pacienteId), fechaHora));
+
+        LecturasReplica.Estadisticas antes = LecturasReplica.estadisticas();
+        LocalDateTime otra = fechaHora.minusHours(1);
+        long inicio = System.nanoTime();
+        boolean vista = LecturasReplica.conEscriturasPropias(() -> {
+            service.agendarCita(pacienteId, medicoId, otra, MARCA);
+            return contiene(service.listarCitasPaciente(pacienteId), otra);
+        });
+        double ms = (System.nanoTime() - inicio) / 1e6;
+        correcto &= comprobar("con escrituras propias se ve la cita (del primario)", vista);
+        correcto &= comprobar("la lectura se desvió al primario",
+                LecturasReplica.estadisticas().desviadas() == antes.desviadas() + 1);
+        System.out.printf("Réplica detenida: agendar y listar con escrituras propias %.1f ms (espera máx. %d ms)%n",
+                ms, LecturasReplica.ESPERA_MAXIMA_MS);
+
+        reanudarReplica();
+        antes = LecturasReplica.estadisticas();
+        LocalDateTime tercera = fechaHora.minusHours(2);
+        inicio = System.nanoTime();
+        vista = LecturasReplica.conEscriturasPropias(() -> {
+            service.agendarCita(pacienteId, medicoId, tercera, MARCA);
+            return contiene(service.listarCitasPaciente(pacienteId), tercera);
+        });
+        ms = (System.nanoTime() - inicio) / 1e6;
+        LecturasReplica.Estadisticas despues = LecturasReplica.estadisticas();
+        correcto &= comprobar("réplica reanudada: se ve la cita", vista);
+        correcto &= comprobar("réplica reanudada: la lectura fue a la réplica",
+                despues.lecturasReplica() == antes.lecturasReplica() + 1 && despues.desviadas() == antes.desviadas());
+        System.out.printf("Réplica al día: agendar y listar con escrituras propias %.1f ms%n", ms);
+        return correcto;
+    }
+
+    private static boolean contiene(List<Cita> citas, LocalDateTime fechaHora) {
+        return citas.stream().anyMatch(c -> c.getFechaHora().equals(fechaHora));
+    }
+
+    private static void pausarReplica() {
+        ejecutarEnReplica("SELECT pg_wal_replay_pause()");
+    }
+
+    private static void reanudarReplica() {
+        ejecutarEnReplica("SELECT pg_wal_replay_resume()");
+    }
+
+    private static void ejecutarEnReplica(String sql) {
+        EntityManager em = JPAUtil.getEntityManagerReplica();
+        try {
+            em.createNativeQuery(sql).getSingleResult();
+        } finally {
+            em.close();
+        }
+    }
+
+    private static double percentil(List<Long> ordenadas, int percentil) {
+        if (ordenadas.isEmpty()) {
+            return 0;
+        }
+        int i = Math.min(ordenadas.size() - 1, (int) Math.ceil(percentil / 100.0 * ordenadas.size()) - 1);
+        return ordenadas.get(i) / 1e6;
+    }
+
+    private static boolean comprobar(String caso, boolean condicion) {
+        if (!condicion) {
+            System.out.println("FALLÓ " + caso);
+        }
+        return condicion;
+    }
+}
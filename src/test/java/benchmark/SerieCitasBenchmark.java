@@ -0,0 +1,82 @@
+package benchmark;
+
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import dto.ResultadoLote;
+import jakarta.persistence.EntityManager;
+import model.Especialidad;
+import model.Medico;
+import model.Paciente;
+import org.hibernate.stat.Statistics;
+import prueba.DatosPrueba;
+import service.MedicalService;
+import service.ModoLote;
+import service.Recurrencia;
+import util.JPAUtil;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+
+// Una serie semanal de N citas: N llamadas a agendarCita contra una sola llamada a agendarSerie.
+// Cuenta sentencias JDBC y transacciones con las estadísticas de Hibernate, y muestra los dos
+// modos cuando la serie choca con citas existentes.
+// Uso: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=benchmark.SerieCitasBenchmark -Dexec.args="52"
+// Escribe en la base del entorno activo y borra sus filas al terminar.
+public class SerieCitasBenchmark {
+
+    private static final String MARCA = "benchmark-serie";
+
+    public static void main(String[] args) throws Exception {
+        DatosPrueba.exigirEntornoDePruebas();
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 52;
+        MedicalService service = new MedicalService();
+        Statistics estadisticas = JPAUtil.getSessionFactory().getStatistics();
+        estadisticas.setStatisticsEnabled(true);
+
+        try {
+            DatosPrueba.limpiar(MARCA);
+            long semilla = System.nanoTime() % 1_000_000_000L;
+            Medico medico = new Medico(MARCA, "R" + semilla, Especialidad.CARDIOLOGIA, null);
+            new MedicoDAO().save(medico);
+            Paciente paciente = new Paciente(MARCA, String.format("%013d", 5_000_000_000_000L + semilla),
+                    LocalDate.of(1960, 1, 1), null, null);
+            new PacienteDAO().save(paciente);
+            LocalDateTime base = LocalDateTime.now().plusYears(50).withHour(9).withMinute(0).withSecond(0).withNano(0);
+
+            // Calentamiento
+            service.agendarSerie(paciente.getId(), medico.getId(), Recurrencia.semanal(base.minusYears(1), n), MARCA, ModoLote.MEJOR_ESFUERZO);
+
+            estadisticas.clear();
+            long inicio = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                service.agendarCita(paciente.getId(), medico.getId(), base.plusWeeks(i), MARCA);
+            }
+            imprimir("agendarCita x " + n, System.nanoTime() - inicio, estadisticas);
+
+            estadisticas.clear();
+            inicio = System.nanoTime();
+            ResultadoLote serie = service.agendarSerie(paciente.getId(), medico.getId(),
+                    Recurrencia.semanal(base.plusHours(1), n), MARCA, ModoLote.MEJOR_ESFUERZO);
+            imprimir("agendarSerie (" + serie.citaIds().size() + " citas)", System.nanoTime() - inicio, estadisticas);
+
+            // La serie semanal de las 09:00 ya existe: una quincenal a la misma hora choca en la mitad de sus fechas
+            Recurrencia quincenal = new Recurrencia(base.minusWeeks(2), Period.ofWeeks(2), n, null);
+            ResultadoLote todoONada = service.agendarSerie(paciente.getId(), medico.getId(), quincenal, MARCA, ModoLote.TODO_O_NADA);
+            ResultadoLote mejorEsfuerzo = service.agendarSerie(paciente.getId(), medico.getId(), quincenal, MARCA, ModoLote.MEJOR_ESFUERZO);
+            System.out.printf("Serie con choques, TODO_O_NADA: %d agendadas, %d conflictos%n",
+                    todoONada.citaIds().size(), todoONada.conflictos().size());
+            System.out.printf("Serie con choques, MEJOR_ESFUERZO: %d agendadas, %d conflictos (primero: %s)%n",
+                    mejorEsfuerzo.citaIds().size(), mejorEsfuerzo.conflictos().size(),
+                    mejorEsfuerzo.conflictos().isEmpty() ? "-" : mejorEsfuerzo.conflictos().get(0).solicitud().fechaHora());
+        } finally {
+            DatosPrueba.limpiar(MARCA);
+            JPAUtil.closeEntityManagerFactory();
+        }
+    }
+
+    private static void imprimir(String nombre, long nanos, Statistics e) {
+        System.out.printf("%-28s %8.1f ms, %4d sentencias preparadas, %3d transacciones, %3d sesiones%n",
+                nombre, nanos / 1e6, e.getPrepareStatementCount(), e.getTransactionCount(), e.getSessionOpenCount());
+    }
+}
@@ -0,0 +1,116 @@
+package dao;
+
+import model.HistorialMedico;
+import model.Paciente;
+import org.hibernate.Hibernate;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import prueba.DatosPrueba;
+import service.MedicalService;
+import util.JPAUtil;
+import util.UnidadDeTrabajo;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Regresión del N+1 de Paciente.historialMedico: cuenta las sentencias JDBC que preparan las cargas
+// de pacientes (Hibernate Statistics) y comprueba que el historial sigue cargándose bajo demanda.
+// Escribe en la base del entorno activo (no corre con hospital.entorno=prod) y borra sus filas al terminar.
+class SentenciasCargaPacientesTest {
+
+    private static final String MARCA = "prueba-historial";
+    private static final int PACIENTES = 200;
+
+    private static final PacienteDAO pacienteDAO = new PacienteDAO();
+    private static final List<Paciente> pacientes = new ArrayList<>();
+    private static Statistics estadisticas;
+
+    @BeforeAll
+    static void preparar() throws Exception {
+        assumeTrue(DatosPrueba.entornoDePruebas(), "hospital.entorno=prod");
+        estadisticas = JPAUtil.getSessionFactory().getStatistics();
+        estadisticas.setStatisticsEnabled(true);
+        DatosPrueba.limpiar(MARCA);
+        long base = 6_500_000_000_000L + (System.nanoTime() % 100_000L) * 10_000L;
+        for (int i = 0; i < PACIENTES; i++) {
+            pacientes.add(new Paciente(MARCA, String.format("%013d", base + i), LocalDate.of(1980, 1, 1), null, null));
+        }
+        UnidadDeTrabajo.ejecutar(em -> {
+            pacienteDAO.saveAll(pacientes);
+            for (Paciente p : pacientes) {
+                em.persist(new HistorialMedico("alergias", "antecedentes", "observaciones", p));
+            }
+            return null;
+        });
+    }
+
+    @AfterAll
+    static void limpiar() {
+        if (estadisticas != null) {
+            DatosPrueba.limpiar(MARCA);
+        }
+    }
+
+    @BeforeEach
+    void reiniciarConteo() {
+        estadisticas.clear();
+    }
+
+    @Test
+    void findAllUsaUnaSentencia() {
+        List<Paciente> todos = pacienteDAO.findAll();
+        assertEquals(1, estadisticas.getPrepareStatementCount());
+        assertEquals(0, historialesCargados(todos));
+    }
+
+    @Test
+    void findAllWithCitasUsaUnaSentencia() {
+        List<Paciente> todos = pacienteDAO.findAllWithCitas();
+        assertEquals(1, estadisticas.getPrepareStatementCount());
+        assertEquals(0, historialesCargados(todos));
+    }
+
+    // Ids de la página y pacientes con sus citas
+    @Test
+    void findPageWithCitasUsaDosSentencias() {
+        List<Paciente> pagina = pacienteDAO.findPageWithCitas(null, 50).elementos();
+        assertEquals(2, estadisticas.getPrepareStatementCount());
+        assertTrue(!pagina.isEmpty());
+        assertEquals(0, historialesCargados(pagina));
+    }
+
+    @Test
+    void findByDpiUsaUnaSentenciaPorLlamada() {
+        pacientes.forEach(p -> pacienteDAO.findByDpi(p.getDpi()).orElseThrow());
+        assertEquals(PACIENTES, estadisticas.getPrepareStatementCount());
+    }
+
+    // Historial con su paciente en una sentencia; los textos (grupo LAZY) no se leen
+    @Test
+    void obtenerHistorialMedicoNoCargaLosTextos() throws Exception {
+        HistorialMedico h = new MedicalService().obtenerHistorialMedico(pacientes.get(0).getId()).orElseThrow();
+        assertEquals(1, estadisticas.getPrepareStatementCount());
+        assertFalse(Hibernate.isPropertyInitialized(h, "alergias"));
+    }
+
+    // Bajo demanda: historial con su paciente + select de los textos
+    @Test
+    void obtenerHistorialMedicoConTextosUsaDosSentencias() throws Exception {
+        HistorialMedico h = new MedicalService().obtenerHistorialMedicoConTextos(pacientes.get(0).getId()).orElseThrow();
+        assertEquals(2, estadisticas.getPrepareStatementCount());
+        assertEquals("alergias", h.getAlergias());
+    }
+
+    private static long historialesCargados(List<Paciente> pacientes) {
+        return pacientes.stream().filter(p -> Hibernate.isPropertyInitialized(p, "historialMedico")).count();
+    }
+}
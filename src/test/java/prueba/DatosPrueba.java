@@ -0,0 +1,60 @@
+package prueba;
+
+import jakarta.persistence.EntityManager;
+import util.JPAUtil;
+
+// Lo común de los benchmarks y las pruebas que escriben en la base del entorno activo: no correr en
+// producción, borrar lo que crearon (filas marcadas con un prefijo en el nombre o el motivo) y, en
+// los benchmarks, salir con código 1 si alguna comprobación falló.
+public final class DatosPrueba {
+
+    private DatosPrueba() {
+    }
+
+    // Misma regla que JPAUtil, sin tocarlo: cargarlo ya conecta a la base y aplica hbm2ddl
+    public static boolean entornoDePruebas() {
+        String entorno = System.getProperty("hospital.entorno");
+        if (entorno == null || entorno.isBlank()) {
+            entorno = System.getenv("HOSPITAL_ENTORNO");
+        }
+        return entorno == null || entorno.isBlank() || !entorno.trim().equalsIgnoreCase("prod");
+    }
+
+    public static void exigirEntornoDePruebas() {
+        if (!entornoDePruebas()) {
+            throw new IllegalStateException("Escribe y borra filas de prueba: no se ejecuta con hospital.entorno=prod");
+        }
+    }
+
+    // Citas cuyo motivo empieza con la marca, pacientes y médicos cuyo nombre empieza con ella y todo lo
+    // que cuelga de ellos (citas, historial y sus versiones). Es SQL nativo, no pasa por el servicio:
+    // vacía también la caché de segundo nivel
+    public static void limpiar(String marca) {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            String prefijo = marca + "%";
+            em.createNativeQuery("DELETE FROM cita WHERE motivo LIKE :prefijo " +
+                            "OR paciente_id IN (SELECT id FROM paciente WHERE nombre LIKE :prefijo) " +
+                            "OR medico_id IN (SELECT id FROM medico WHERE nombre LIKE :prefijo)")
+                    .setParameter("prefijo", prefijo).executeUpdate();
+            em.createNativeQuery("DELETE FROM historial_medico WHERE id IN (SELECT id FROM paciente WHERE nombre LIKE :prefijo)")
+                    .setParameter("prefijo", prefijo).executeUpdate();
+            em.createNativeQuery("DELETE FROM paciente WHERE nombre LIKE :prefijo").setParameter("prefijo", prefijo).executeUpdate();
+            em.createNativeQuery("DELETE FROM medico WHERE nombre LIKE :prefijo").setParameter("prefijo", prefijo).executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) em.getTransaction().rollback();
+            em.close();
+        }
+        JPAUtil.getSessionFactory().getCache().evictAllRegions();
+    }
+
+    // Para el final del main de un benchmark
+    public static void terminar(boolean correcto) {
+        System.out.println(correcto ? "OK" : "FALLÓ");
+        if (!correcto) {
+            System.exit(1);
+        }
+    }
+}
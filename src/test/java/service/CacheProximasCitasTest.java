@@ -0,0 +1,197 @@
+package service;
+
+import dao.CitaDAO;
+import dto.AgendaMedico;
+import dto.ProximaCita;
+import jakarta.persistence.EntityManager;
+import model.Cita;
+import model.Especialidad;
+import model.EstadoCita;
+import model.Medico;
+import model.Paciente;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import prueba.DatosPrueba;
+import util.JPAUtil;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Hilos que agendan, cambian de estado y eliminan citas mientras otros leen la agenda: al terminar
+// cada ronda la agenda en caché debe ser idéntica a la de la base. Escribe en la base del entorno
+// activo (no corre con hospital.entorno=prod) y borra sus filas al terminar.
+class CacheProximasCitasTest {
+
+    private static final String MARCA = "prueba-agenda";
+    private static final int LIMITE = 5;
+    private static final int ESCRITORES = 6;
+    private static final int LECTORES = 4;
+    private static final int RONDAS = 2;
+    private static final int SEGUNDOS = 3;
+
+    private static MedicalService service;
+    private static CitaDAO citaDAO;
+    private static final List<Long> medicoIds = new ArrayList<>();
+    private static final List<Long> pacienteIds = new ArrayList<>();
+    private static LocalDateTime base;
+    private static long semilla;
+
+    @BeforeAll
+    static void preparar() throws Exception {
+        assumeTrue(DatosPrueba.entornoDePruebas(), "hospital.entorno=prod");
+        assumeTrue(CacheProximasCitas.ACTIVA, "caché desactivada");
+        service = new MedicalService();
+        citaDAO = new CitaDAO();
+        DatosPrueba.limpiar(MARCA);
+        semilla = System.nanoTime() % 1_000_000L;
+        for (int i = 0; i < 8; i++) {
+            medicoIds.add(service.registrarMedico(new Medico(String.format("%s %03d", MARCA, i),
+                    "PA-" + semilla + "-" + i, Especialidad.MEDICINA_GENERAL, null)).id());
+        }
+        List<Paciente> pacientes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Long id = service.registrarPaciente(new Paciente(MARCA + " " + i,
+                    String.format("%013d", 7_500_000_000_000L + semilla * 100 + i), LocalDate.of(1985, 1, 1), null, null)).id();
+            pacienteIds.add(id);
+            pacientes.add(service.buscarPacientePorId(id).orElseThrow());
+        }
+        List<Cita> citas = new ArrayList<>();
+        base = LocalDateTime.now().plusDays(1).withHour(8).withMinute(0).withSecond(0).withNano(0);
+        for (Long medicoId : medicoIds) {
+            Medico medico = service.buscarMedicoPorId(medicoId).orElseThrow();
+            for (int j = 0; j < 30; j++) {
+                citas.add(new Cita(base.plusMinutes(30L * j), MARCA, pacientes.get(j % pacientes.size()), medico));
+            }
+        }
+        citaDAO.saveAll(citas);
+        // Entraron sin pasar por el servicio
+        IndiceDisponibilidad.getInstancia().invalidarTodo();
+        CacheProximasCitas.getInstancia().invalidarTodo();
+    }
+
+    @AfterAll
+    static void limpiar() {
+        if (service != null) {
+            DatosPrueba.limpiar(MARCA);
+            IndiceDisponibilidad.getInstancia().invalidarTodo();
+            CacheProximasCitas.getInstancia().invalidarTodo();
+        }
+    }
+
+    @Test
+    void agendaIgualALaBaseConEscriturasConcurrentes() throws Exception {
+        List<Long> citaIds = new CopyOnWriteArrayList<>(idsDeCitas());
+        for (int ronda = 1; ronda <= RONDAS; ronda++) {
+            Map<String, Integer> errores = ronda(citaIds);
+            assertTrue(errores.isEmpty(), "ronda " + ronda + ", errores inesperados: " + errores);
+            // Mismo resultado que la consulta directa, con varios límites (dentro y fuera de la profundidad)
+            for (int limite : new int[]{LIMITE, CacheProximasCitas.PROFUNDIDAD, CacheProximasCitas.PROFUNDIDAD + 5}) {
+                List<ProximaCita> obtenidas = service.listarAgendaProximasCitas(medicoIds, limite).stream()
+                        .map(AgendaMedico::citas)
+                        .flatMap(List::stream)
+                        .toList();
+                assertEquals(citaDAO.findProximasCitasPorMedico(medicoIds, limite), obtenidas,
+                        "ronda " + ronda + ", límite " + limite);
+            }
+            // Las agendadas en la ronda también se pueden cambiar o eliminar en la siguiente
+            citaIds.clear();
+            citaIds.addAll(idsDeCitas());
+        }
+    }
+
+    // Una cita que pasa a ser pasado se descarta al leer, sin consultar la base
+    @Test
+    void citaVencidaSeDescartaSinConsultarLaBase() throws Exception {
+        CacheProximasCitas cache = CacheProximasCitas.getInstancia();
+        Long medicoSolo = service.registrarMedico(new Medico(MARCA + " solo", "PA-" + semilla + "-solo",
+                Especialidad.MEDICINA_GENERAL, null)).id();
+        service.agendarCita(pacienteIds.get(0), medicoSolo, LocalDateTime.now().plusSeconds(2), MARCA);
+        assertEquals(1, service.listarAgendaProximasCitas(List.of(medicoSolo), LIMITE).size());
+        long consultasAntes = cache.estadisticas().consultas();
+        Thread.sleep(3000);
+        assertEquals(0, service.listarAgendaProximasCitas(List.of(medicoSolo), LIMITE).size());
+        assertEquals(consultasAntes, cache.estadisticas().consultas());
+    }
+
+    // Mensajes de error no esperados y cuántas veces salieron; los choques de horario y las citas ya
+    // eliminadas por otro hilo son parte de la prueba
+    private static Map<String, Integer> ronda(List<Long> citaIds) throws Exception {
+        Map<String, Integer> errores = new ConcurrentHashMap<>();
+        AtomicBoolean detener = new AtomicBoolean();
+        ExecutorService hilos = Executors.newFixedThreadPool(ESCRITORES + LECTORES);
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int i = 0; i < ESCRITORES; i++) {
+            tareas.add(hilos.submit(() -> {
+                ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                while (!detener.get()) {
+                    try {
+                        int operacion = aleatorio.nextInt(10);
+                        if (operacion < 4 || citaIds.isEmpty()) {
+                            // Los horarios tempranos cambian las primeras LIMITE citas de la agenda
+                            Long medicoId = medicoIds.get(aleatorio.nextInt(medicoIds.size()));
+                            LocalDateTime fechaHora = base.plusMinutes(30L * aleatorio.nextInt(60)).plusMinutes(aleatorio.nextBoolean() ? 0 : 15);
+                            service.agendarCita(pacienteIds.get(aleatorio.nextInt(pacienteIds.size())), medicoId, fechaHora, MARCA);
+                        } else if (operacion < 8) {
+                            Long citaId = citaIds.get(aleatorio.nextInt(citaIds.size()));
+                            EstadoCita[] estados = EstadoCita.values();
+                            service.cambiarEstadoCita(citaId, estados[aleatorio.nextInt(estados.length)]);
+                        } else {
+                            service.eliminarCita(citaIds.remove(aleatorio.nextInt(citaIds.size())));
+                        }
+                    } catch (IndexOutOfBoundsException e) {
+                        // Otro hilo vació la lista entre la comprobación y el acceso
+                    } catch (Exception e) {
+                        String mensaje = String.valueOf(e.getMessage());
+                        if (!mensaje.contains("ya tiene una cita") && !mensaje.contains("Cita no encontrada")) {
+                            errores.merge(mensaje, 1, Integer::sum);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int i = 0; i < LECTORES; i++) {
+            tareas.add(hilos.submit(() -> {
+                while (!detener.get()) {
+                    service.listarAgendaProximasCitas(medicoIds, LIMITE);
+                }
+                return null;
+            }));
+        }
+        Thread.sleep(SEGUNDOS * 1000L);
+        detener.set(true);
+        for (Future<?> tarea : tareas) {
+            tarea.get();
+        }
+        hilos.shutdown();
+        hilos.awaitTermination(10, TimeUnit.SECONDS);
+        return errores;
+    }
+
+    private static List<Long> idsDeCitas() {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            return em.createQuery("SELECT c.id FROM Cita c WHERE c.motivo = :marca", Long.class)
+                    .setParameter("marca", MARCA)
+                    .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package service;
+
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import dto.ResultadoLote;
+import dto.ResultadoRegistro;
+import dto.SolicitudCita;
+import model.Especialidad;
+import model.Medico;
+import model.Paciente;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import prueba.DatosPrueba;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Un paciente o médico marcado para eliminar (eliminación diferida, aún sin purgar) no recibe citas.
+// Escribe en la base del entorno activo (no corre con hospital.entorno=prod) y borra sus filas al terminar.
+class EliminacionDiferidaTest {
+
+    private static final String MARCA = "prueba-diferida";
+
+    private static MedicalService service;
+    private static final PacienteDAO pacienteDAO = new PacienteDAO();
+    private static final MedicoDAO medicoDAO = new MedicoDAO();
+    private static long semilla;
+
+    @BeforeAll
+    static void preparar() {
+        assumeTrue(DatosPrueba.entornoDePruebas(), "hospital.entorno=prod");
+        service = new MedicalService();
+        DatosPrueba.limpiar(MARCA);
+        semilla = System.nanoTime() % 1_000_000_000L;
+    }
+
+    @AfterAll
+    static void limpiar() {
+        if (service != null) {
+            DatosPrueba.limpiar(MARCA);
+            IndiceDisponibilidad.getInstancia().invalidarTodo();
+        }
+    }
+
+    private static Long paciente(int i) {
+        Paciente p = new Paciente(MARCA, String.format("%013d", 4_500_000_000_000L + semilla * 10 + i), LocalDate.of(1970, 1, 1), null, null);
+        pacienteDAO.save(p);
+        return p.getId();
+    }
+
+    private static Long medico(int i) {
+        Medico m = new Medico(MARCA, "ED-" + semilla + "-" + i, Especialidad.PEDIATRIA, null);
+        medicoDAO.save(m);
+        return m.getId();
+    }
+
+    @Test
+    void noSeAgendaParaUnPacienteMarcado() throws Exception {
+        Long pacienteId = paciente(1);
+        Long medicoId = medico(1);
+        LocalDateTime fecha = LocalDateTime.now().plusDays(3).withHour(9).withMinute(0).withSecond(0).withNano(0);
+        pacienteDAO.marcarEliminado(pacienteId);
+
+        assertEquals("Paciente no encontrado", assertThrows(Exception.class,
+                () -> service.agendarCita(pacienteId, medicoId, fecha, MARCA)).getMessage());
+        // En MEJOR_ESFUERZO la solicitud se reporta y el resto del lote se agenda
+        Long otroPaciente = paciente(2);
+        ResultadoLote lote = service.agendarCitas(List.of(
+                new SolicitudCita(pacienteId, medicoId, fecha, MARCA),
+                new SolicitudCita(otroPaciente, medicoId, fecha.plusHours(1), MARCA)), ModoLote.MEJOR_ESFUERZO);
+        assertEquals(1, lote.citaIds().size());
+        assertEquals(1, lote.conflictos().size());
+        assertEquals(pacienteId, lote.conflictos().get(0).solicitud().pacienteId());
+        assertEquals("Paciente no encontrado", lote.conflictos().get(0).razon());
+        // El horario no quedó apartado
+        service.agendarCita(otroPaciente, medicoId, fecha, MARCA);
+    }
+
+    @Test
+    void noSeAgendaConUnMedicoMarcado() throws Exception {
+        Long pacienteId = paciente(3);
+        Long medicoId = medico(2);
+        LocalDateTime fecha = LocalDateTime.now().plusDays(3).withHour(10).withMinute(0).withSecond(0).withNano(0);
+        medicoDAO.marcarEliminado(medicoId);
+
+        assertEquals("Médico no encontrado", assertThrows(Exception.class,
+                () -> service.agendarCita(pacienteId, medicoId, fecha, MARCA)).getMessage());
+        assertEquals("Médico no encontrado", assertThrows(Exception.class,
+                () -> service.agendarSerie(pacienteId, medicoId, Recurrencia.semanal(fecha, 2), MARCA,
+                        ModoLote.TODO_O_NADA)).getMessage());
+    }
+
+    @Test
+    void registrarUnaClaveEnEliminacionLoInforma() throws Exception {
+        Long pacienteId = paciente(4);
+        String dpi = pacienteDAO.findById(pacienteId).orElseThrow().getDpi();
+        pacienteDAO.marcarEliminado(pacienteId);
+
+        ResultadoRegistro resultado = service.registrarPaciente(new Paciente(MARCA, dpi, LocalDate.of(1970, 1, 1), null, null));
+        assertTrue(resultado.enEliminacion());
+        assertEquals(pacienteId, resultado.id());
+    }
+}
@@ -0,0 +1,74 @@
+package service;
+
+import dao.PacienteDAO;
+import dto.VersionHistorialResumen;
+import model.HistorialMedico;
+import model.Paciente;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import prueba.DatosPrueba;
+import util.UnidadDeTrabajo;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Versionado del historial médico. Escribe en la base del entorno activo (no corre con
+// hospital.entorno=prod) y borra sus filas al terminar.
+class HistorialVersionesTest {
+
+    private static final String MARCA = "prueba-versiones";
+
+    private static MedicalService service;
+
+    @BeforeAll
+    static void preparar() {
+        assumeTrue(DatosPrueba.entornoDePruebas(), "hospital.entorno=prod");
+        service = new MedicalService();
+        DatosPrueba.limpiar(MARCA);
+    }
+
+    @AfterAll
+    static void limpiar() {
+        if (service != null) {
+            DatosPrueba.limpiar(MARCA);
+        }
+    }
+
+    // Un historial creado antes del versionado (numero_version 0) guardado sin cambios no escribe
+    // versiones; la primera edición real deja la 0 con el contenido anterior y la 1, y las siguientes
+    // siguen numerando sin chocar con uk_historial_version_numero
+    @Test
+    void historialAnteriorAlVersionadoSinCambiosYLuegoEditado() throws Exception {
+        Paciente paciente = new Paciente(MARCA, String.format("%013d", 5_000_000_000_000L + System.nanoTime() % 1_000_000_000L),
+                LocalDate.of(1975, 1, 1), null, null);
+        new PacienteDAO().save(paciente);
+        UnidadDeTrabajo.ejecutar(em -> {
+            em.persist(new HistorialMedico("polen", "ninguno", "sin observaciones", em.find(Paciente.class, paciente.getId())));
+            return null;
+        });
+        Long id = paciente.getId();
+
+        service.crearOEditarHistorialMedico(id, "polen", "ninguno", "sin observaciones");
+        assertEquals(List.of(), numeros(id));
+        assertEquals(0, service.obtenerHistorialMedico(id).orElseThrow().getNumeroVersion());
+
+        service.crearOEditarHistorialMedico(id, "polen, penicilina", "ninguno", "sin observaciones");
+        service.crearOEditarHistorialMedico(id, "polen, penicilina", "ninguno", "sin observaciones");
+        service.crearOEditarHistorialMedico(id, "polen, penicilina", "asma", "sin observaciones");
+        assertEquals(List.of(0, 1, 2), numeros(id));
+        assertEquals(2, service.obtenerHistorialMedico(id).orElseThrow().getNumeroVersion());
+        assertEquals("polen", service.obtenerHistorialEnVersion(id, 0).orElseThrow().alergias());
+        assertEquals("asma", service.obtenerHistorialEnVersion(id, 2).orElseThrow().antecedentes());
+    }
+
+    private static List<Integer> numeros(Long pacienteId) {
+        return service.listarVersionesHistorial(pacienteId).stream()
+                .map(VersionHistorialResumen::numero)
+                .sorted()
+                .toList();
+    }
+}
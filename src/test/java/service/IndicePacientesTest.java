@@ -0,0 +1,101 @@
+package service;
+
+import dao.PacienteDAO;
+import dto.PacienteResumen;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Sin base: la carga sale de una lista fija
+class IndicePacientesTest {
+
+    // Lo que recorrerResumenes entrega; "durante" corre a mitad de la carga
+    private static final class PacientesFijos extends PacienteDAO {
+        final List<PacienteResumen> pacientes;
+        final AtomicInteger cargas = new AtomicInteger();
+        Runnable durante = () -> {
+        };
+
+        PacientesFijos(PacienteResumen... pacientes) {
+            this.pacientes = List.of(pacientes);
+        }
+
+        @Override
+        public void recorrerResumenes(Consumer<PacienteResumen> accion) {
+            cargas.incrementAndGet();
+            for (int i = 0; i < pacientes.size(); i++) {
+                if (i == pacientes.size() / 2) {
+                    durante.run();
+                }
+                accion.accept(pacientes.get(i));
+            }
+        }
+    }
+
+    private static PacienteResumen paciente(long id, String nombre) {
+        return new PacienteResumen(id, nombre, String.format("%013d", id), null);
+    }
+
+    private static List<Long> ids(IndicePacientes indice, String texto) {
+        return indice.buscar(texto, 10).stream().map(IndicePacientes.Coincidencia::pacienteId).toList();
+    }
+
+    @Test
+    void registrarDeNuevoReemplazaAlPaciente() {
+        IndicePacientes indice = new IndicePacientes(new PacientesFijos(
+                paciente(1, "Ana López"), paciente(2, "Luis Pérez"), paciente(3, "Ana Gómez")));
+        indice.calentar();
+
+        // Modificado (por ejemplo avisado por otro nodo), dos veces y con el nombre cambiado
+        indice.pacienteRegistrado(paciente(1, "Ana López"));
+        indice.pacienteRegistrado(paciente(1, "Ana María López"));
+        assertEquals(List.of(1L, 3L), ids(indice, "ana"));
+        assertEquals(List.of(1L), ids(indice, "maria"));
+
+        indice.pacienteRegistrado(paciente(1, "Beatriz López"));
+        assertEquals(List.of(3L), ids(indice, "ana"));
+        assertEquals(List.of(1L), ids(indice, "0000000000001"));
+
+        indice.pacienteEliminado(1L);
+        indice.pacienteRegistrado(paciente(4, "Ana Ruiz"));
+        assertEquals(List.of(3L, 4L), ids(indice, "ana"));
+        assertEquals(List.of(), ids(indice, "beatriz"));
+    }
+
+    @Test
+    void cambiosDuranteLaCargaNoSePierden() {
+        PacientesFijos dao = new PacientesFijos(
+                paciente(1, "Ana López"), paciente(2, "Luis Pérez"), paciente(3, "Ana Gómez"), paciente(5, "Rosa Díaz"));
+        IndicePacientes indice = new IndicePacientes(dao);
+        indice.calentar();
+        // Desde otro hilo, como un registro confirmado mientras se vuelve a cargar
+        dao.durante = () -> CompletableFuture.runAsync(() -> {
+            indice.pacienteRegistrado(paciente(9, "Ana Castro"));
+            indice.pacienteEliminado(1L);
+            indice.pacienteRegistrado(paciente(5, "Rosa Díaz Ortiz"));
+        }).join();
+        indice.calentar();
+
+        assertEquals(List.of(3L, 9L), ids(indice, "ana"));
+        assertEquals(List.of(5L), ids(indice, "rosa"));
+        assertEquals(List.of(5L), ids(indice, "ortiz"));
+    }
+
+    @Test
+    void invalidarDuranteLaCargaDescartaLoLeido() {
+        PacientesFijos dao = new PacientesFijos(paciente(1, "Ana López"), paciente(2, "Luis Pérez"));
+        IndicePacientes indice = new IndicePacientes(dao);
+        dao.durante = () -> CompletableFuture.runAsync(indice::invalidarTodo).join();
+        indice.calentar();
+        dao.durante = () -> {
+        };
+
+        assertEquals(List.of(1L), ids(indice, "ana"));
+        assertEquals(2, dao.cargas.get());
+    }
+}
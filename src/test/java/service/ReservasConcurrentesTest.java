@@ -0,0 +1,192 @@
+package service;
+
+import dao.MedicoDAO;
+import dao.PacienteDAO;
+import jakarta.persistence.EntityManager;
+import model.EstadoCita;
+import model.Especialidad;
+import model.Medico;
+import model.Paciente;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import prueba.DatosPrueba;
+import util.JPAUtil;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Agendamiento concurrente. La mitad de los hilos usa el coordinador del proceso ("nodo A") y la otra
+// mitad uno propio ("nodo B"), así hay escrituras realmente simultáneas sobre las mismas filas y entra
+// en juego @Version. Escribe en la base del entorno activo (no corre con hospital.entorno=prod) y borra
+// sus filas al terminar.
+class ReservasConcurrentesTest {
+
+    private static final String MARCA = "prueba-reservas";
+    private static final int HILOS = 8;
+    private static final int MEDICOS = 4;
+    private static final int HORARIOS = 25;
+    private static final int CAMBIOS = 1000;
+
+    private static final CoordinadorReservas nodoB = new CoordinadorReservas(CoordinadorReservas.FRANJAS);
+    private static final List<Medico> medicos = new ArrayList<>();
+    private static MedicalService servicioA;
+    private static MedicalService servicioB;
+    private static Paciente paciente;
+
+    @BeforeAll
+    static void preparar() {
+        assumeTrue(DatosPrueba.entornoDePruebas(), "hospital.entorno=prod");
+        servicioA = new MedicalService();
+        servicioB = new MedicalService(nodoB);
+        DatosPrueba.limpiar(MARCA);
+        long semilla = System.nanoTime() % 1_000_000_000L;
+        for (int i = 0; i < MEDICOS; i++) {
+            medicos.add(new Medico(MARCA, "R" + semilla + "-" + i, Especialidad.PEDIATRIA, null));
+        }
+        new MedicoDAO().saveAll(medicos);
+        paciente = new Paciente(MARCA, String.format("%013d", 5_500_000_000_000L + semilla), LocalDate.of(1980, 1, 1), null, null);
+        new PacienteDAO().save(paciente);
+    }
+
+    @AfterAll
+    static void limpiar() {
+        if (servicioA != null) {
+            DatosPrueba.limpiar(MARCA);
+            IndiceDisponibilidad.getInstancia().invalidarTodo();
+        }
+    }
+
+    // Todos los hilos intentan agendar todos los horarios: cada horario queda agendado una sola vez.
+    // Después todos cambian el estado de las mismas citas al azar: la suma de versiones es igual al
+    // número de cambios efectivos (un cambio perdido la dejaría por debajo). Al final el índice de
+    // disponibilidad coincide con la base
+    @Test
+    void cadaHorarioUnaVezYNingunCambioPerdido() throws Exception {
+        LocalDateTime base = LocalDateTime.now().plusYears(50).withSecond(0).withNano(0);
+        List<Object[]> todos = new ArrayList<>();
+        for (Medico m : medicos) {
+            for (int i = 0; i < HORARIOS; i++) {
+                todos.add(new Object[]{m.getId(), base.plusMinutes(30L * i)});
+            }
+        }
+
+        AtomicInteger agendadas = new AtomicInteger();
+        Map<String, Integer> inesperados = new ConcurrentHashMap<>();
+        correr(h -> {
+            MedicalService servicio = h % 2 == 0 ? servicioA : servicioB;
+            List<Object[]> orden = new ArrayList<>(todos);
+            Collections.shuffle(orden, new Random(h));
+            for (Object[] horario : orden) {
+                try {
+                    servicio.agendarCita(paciente.getId(), (Long) horario[0], (LocalDateTime) horario[1], MARCA);
+                    agendadas.incrementAndGet();
+                } catch (Exception e) {
+                    if (!"El médico ya tiene una cita en ese horario".equals(e.getMessage())) {
+                        inesperados.merge(e.getClass().getSimpleName() + ": " + e.getMessage(), 1, Integer::sum);
+                    }
+                }
+            }
+        });
+        assertTrue(inesperados.isEmpty(), "errores inesperados al agendar: " + inesperados);
+        assertEquals(todos.size(), agendadas.get());
+        assertEquals(todos.size(), contar("SELECT count(c) FROM Cita c WHERE c.motivo = :marca"));
+
+        List<Long> citas = ids();
+        EstadoCita[] estados = EstadoCita.values();
+        AtomicInteger efectivos = new AtomicInteger();
+        correr(h -> {
+            MedicalService servicio = h % 2 == 0 ? servicioA : servicioB;
+            Random random = new Random(1000 + h);
+            for (int i = 0; i < CAMBIOS / HILOS; i++) {
+                Long citaId = citas.get(random.nextInt(Math.min(citas.size(), 8)));
+                EstadoCita nuevo = estados[random.nextInt(estados.length)];
+                try {
+                    if (servicio.cambiarEstadoCita(citaId, nuevo) != nuevo) {
+                        efectivos.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    // Sin reintentos restantes: el cambio no se aplicó y no cuenta
+                }
+            }
+        });
+        assertEquals(efectivos.get(), contar("SELECT coalesce(sum(c.version), 0) FROM Cita c WHERE c.motivo = :marca"));
+
+        for (Medico m : medicos) {
+            assertEquals(ocupadosEnBase(m.getId()), new HashSet<>(IndiceDisponibilidad.getInstancia()
+                    .ocupados(m.getId(), LocalDateTime.MIN, LocalDateTime.MAX).keySet()), "médico " + m.getId());
+        }
+    }
+
+    private interface Tarea {
+        void correr(int hilo) throws Exception;
+    }
+
+    private static void correr(Tarea tarea) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(HILOS);
+        try {
+            List<Future<?>> futuros = new ArrayList<>();
+            for (int h = 0; h < HILOS; h++) {
+                int hilo = h;
+                futuros.add(executor.submit(() -> {
+                    tarea.correr(hilo);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futuros) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Set<LocalDateTime> ocupadosEnBase(Long medicoId) {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            return new HashSet<>(em.createQuery(
+                            "SELECT c.fechaHora FROM Cita c WHERE c.medico.id = :id AND c.estado <> :cancelada",
+                            LocalDateTime.class)
+                    .setParameter("id", medicoId)
+                    .setParameter("cancelada", EstadoCita.CANCELADA)
+                    .getResultList());
+        } finally {
+            em.close();
+        }
+    }
+
+    private static List<Long> ids() {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            return em.createQuery("SELECT c.id FROM Cita c WHERE c.motivo = :marca ORDER BY c.id", Long.class)
+                    .setParameter("marca", MARCA).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    private static long contar(String jpql) {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            return ((Number) em.createQuery(jpql).setParameter("marca", MARCA).getSingleResult()).longValue();
+        } finally {
+            em.close();
+        }
+    }
+}
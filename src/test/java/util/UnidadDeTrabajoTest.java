@@ -0,0 +1,31 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import prueba.DatosPrueba;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Abre una transacción en la base del entorno activo sin escribir nada (no corre con hospital.entorno=prod)
+class UnidadDeTrabajoTest {
+
+    // Después de confirmar, una acción que falla no convierte la escritura en un error y no impide
+    // que corran las demás
+    @Test
+    void accionQueFallaDespuesDeConfirmarNoLlegaAQuienLlamo() throws Exception {
+        assumeTrue(DatosPrueba.entornoDePruebas(), "hospital.entorno=prod");
+        AtomicInteger corridas = new AtomicInteger();
+        String resultado = UnidadDeTrabajo.ejecutar(em -> {
+            UnidadDeTrabajo.despuesDeConfirmar(() -> {
+                corridas.incrementAndGet();
+                throw new IllegalStateException("falla de prueba");
+            });
+            UnidadDeTrabajo.despuesDeConfirmar(corridas::incrementAndGet);
+            return "confirmada";
+        });
+        assertEquals("confirmada", resultado);
+        assertEquals(2, corridas.get());
+    }
+}